@@ -0,0 +1,614 @@
+package bench;
+
+import controllers.Renderer;
+import io.Deserializer;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.WritableImage;
+import models.FXGame;
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the number of bytes allocated by each call of the operations which run on every move, flow or frame, and
+ * checks them against a budget.
+ *
+ * <p>
+ * Allocation is measured on the calling thread through
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} around every single call, after enough warmup
+ * calls for the JIT compiler to have compiled (and possibly scalar-replaced) the operation. The overhead of the
+ * measurement itself is measured beforehand and subtracted.
+ * </p>
+ *
+ * <p>
+ * The process exits with status 1 if any operation allocates more than its budget on average, so that this can be run
+ * as a release gate. Budgets can be overridden with a properties file mapping operation names to bytes per call.
+ * Operations on a {@link Canvas} are run on the JavaFX application thread, and are skipped if JavaFX cannot be
+ * started.
+ * </p>
+ */
+public class AllocationBudget {
+
+    private int size = 10;
+    private int warmupCalls = 10_000;
+    private int measuredCalls = 2_000;
+    private boolean reportOnly = false;
+    @Nullable
+    private String budgetPath = null;
+    @Nullable
+    private String filter = null;
+
+    @NotNull
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Whether JavaFX has been started by {@link AllocationBudget#measureOnFx(Operation)}.
+     */
+    private boolean fxStarted = false;
+
+    /**
+     * Bytes allocated by the measurement itself.
+     */
+    private long overhead = 0;
+
+    /**
+     * Consumes the result of every call, so that calls cannot be optimized away.
+     */
+    private long sink = 0;
+
+    /**
+     * A measured operation.
+     */
+    private abstract static class Operation {
+
+        /**
+         * Name of the operation, which is also its key in the budget file.
+         */
+        @NotNull
+        final String name;
+        /**
+         * Whether the operation must run on the JavaFX application thread.
+         */
+        final boolean needsFx;
+        /**
+         * Maximum number of bytes allocated per call on average.
+         */
+        long budget;
+
+        Operation(@NotNull String name, boolean needsFx, long budget) {
+            this.name = name;
+            this.needsFx = needsFx;
+            this.budget = budget;
+        }
+
+        /**
+         * Prepares the state for measurement.
+         *
+         * @param size Number of rows and columns of the map.
+         * @throws Exception if the state cannot be prepared.
+         */
+        abstract void setup(int size) throws Exception;
+
+        /**
+         * Prepares the next call. This is not measured.
+         */
+        void prepare() {
+        }
+
+        /**
+         * Runs one call.
+         *
+         * @return A value derived from the result of the call.
+         * @throws Exception if the call fails.
+         */
+        abstract long invoke() throws Exception;
+
+        /**
+         * Releases the state after measurement.
+         *
+         * @throws Exception if the state cannot be released.
+         */
+        void tearDown() throws Exception {
+        }
+    }
+
+    /**
+     * Measurement of an operation.
+     */
+    private static class Result {
+        @NotNull
+        final Operation operation;
+        final double meanBytes;
+        final long maxBytes;
+
+        Result(@NotNull Operation operation, double meanBytes, long maxBytes) {
+            this.operation = operation;
+            this.meanBytes = meanBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        boolean withinBudget() {
+            return meanBytes <= operation.budget;
+        }
+    }
+
+    /**
+     * @param size  Number of rows and columns.
+     * @param cells Cells of the level.
+     * @return A new game on the level, where water flows into a new pipe on every tick.
+     */
+    @NotNull
+    private static FXGame newGame(int size, @NotNull Cell[][] cells) {
+        return new FXGame(size, size, 0, cells, null, 0, 1);
+    }
+
+    /**
+     * Places a pipe into an empty cell. The pipe is removed outside of the measurement.
+     */
+    private static class PlacePipe extends Operation {
+
+        FXGame game;
+        Coordinate[] path;
+        int next;
+        boolean placed = false;
+
+        PlacePipe() {
+            this("FXGame.placePipe", 128);
+        }
+
+        PlacePipe(@NotNull String name, long budget) {
+            super(name, false, budget);
+        }
+
+        @Override
+        void setup(int size) {
+            game = newGame(size, Levels.serpentineCells(size, false));
+            path = Levels.serpentinePath(size);
+            next = 0;
+        }
+
+        @Override
+        void prepare() {
+            if (placed) {
+                game.undoStep();
+                placed = false;
+            }
+        }
+
+        @Override
+        long invoke() {
+            place();
+            return next;
+        }
+
+        void place() {
+            final var coord = path[next];
+            next = next + 1 == path.length ? 0 : next + 1;
+            game.placePipe(coord.row, coord.col);
+            placed = true;
+        }
+
+        @Override
+        void tearDown() {
+            game.stopCountdown();
+        }
+    }
+
+    /**
+     * Undoes the placement of a pipe. The pipe is placed outside of the measurement.
+     */
+    private static class UndoStep extends PlacePipe {
+
+        UndoStep() {
+            super("FXGame.undoStep", 128);
+        }
+
+        @Override
+        void prepare() {
+            place();
+        }
+
+        @Override
+        long invoke() {
+            game.undoStep();
+            placed = false;
+            return next;
+        }
+    }
+
+    /**
+     * Updates the flow of water after a tick. The tick is run outside of the measurement.
+     */
+    private static class UpdateState extends Operation {
+
+        int size;
+        FXGame game;
+        int flowed;
+
+        UpdateState() {
+            super("FXGame.updateState", false, 256);
+        }
+
+        @Override
+        void setup(int size) {
+            this.size = size;
+            reset();
+        }
+
+        @Override
+        void prepare() {
+            if (flowed > Levels.serpentineLength(size)) {
+                game.stopCountdown();
+                reset();
+            }
+            game.tick();
+            ++flowed;
+        }
+
+        @Override
+        long invoke() {
+            game.updateState();
+            return flowed;
+        }
+
+        private void reset() {
+            game = newGame(size, Levels.serpentineCells(size, true));
+            flowed = 0;
+        }
+
+        @Override
+        void tearDown() {
+            game.stopCountdown();
+        }
+    }
+
+    /**
+     * Checks whether a level with an incomplete path is won, as done after every flow of water.
+     */
+    private static class HasWon extends Operation {
+
+        FXGame game;
+
+        HasWon() {
+            super("FXGame.hasWon", false, 64);
+        }
+
+        @Override
+        void setup(int size) {
+            final var cells = Levels.serpentineCells(size, true);
+            final var path = Levels.serpentinePath(size);
+            final var last = path[path.length - 1];
+            cells[last.row][last.col] = new FillableCell(last);
+            game = newGame(size, cells);
+        }
+
+        @Override
+        long invoke() {
+            return game.hasWon() ? 1 : 0;
+        }
+
+        @Override
+        void tearDown() {
+            game.stopCountdown();
+        }
+    }
+
+    /**
+     * Redraws every tile of a map. The canvas is synchronized outside of the measurement, so that its command buffer
+     * does not grow without bound.
+     */
+    private static class RenderMap extends Operation {
+
+        /**
+         * Number of calls between each synchronization of the canvas.
+         */
+        private static final int SYNC_INTERVAL = 16;
+
+        FXGame game;
+        Canvas canvas;
+        WritableImage image;
+        int calls;
+
+        RenderMap() {
+            super("Renderer.renderMap", true, 4096);
+        }
+
+        @Override
+        void setup(int size) {
+            game = newGame(size, Levels.serpentineCells(size, true));
+            canvas = new Canvas();
+            game.renderMap(canvas);
+            image = new WritableImage((int) canvas.getWidth(), (int) canvas.getHeight());
+            calls = 0;
+        }
+
+        @Override
+        void prepare() {
+            if (++calls % SYNC_INTERVAL == 0) {
+                canvas.snapshot(null, image);
+            }
+        }
+
+        @Override
+        long invoke() {
+            Renderer.invalidate(canvas);
+            game.renderMap(canvas);
+            return calls;
+        }
+
+        @Override
+        void tearDown() {
+            game.stopCountdown();
+        }
+    }
+
+    /**
+     * Parses a map file from disk.
+     */
+    private static class ParseGameFile extends Operation {
+
+        Path path;
+
+        ParseGameFile() {
+            super("Deserializer.parseGameFile", false, 49152);
+        }
+
+        @Override
+        void setup(int size) throws IOException {
+            path = Files.createTempFile("pipes-alloc-", ".map");
+            Files.writeString(path, size + "\n" + size + "\n10\n" + Levels.serpentineRep(size)
+                    + "\nTR, TL, BL, BR, CR, VT, HZ\n");
+        }
+
+        @Override
+        long invoke() throws Exception {
+            return new Deserializer(path).parseGameFile().rows;
+        }
+
+        @Override
+        void tearDown() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    public static void main(String[] args) {
+        final var runner = new AllocationBudget();
+        if (!runner.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+        if (!runner.threadBean.isThreadAllocatedMemorySupported()) {
+            System.err.println("Allocation measurement is not supported by this JVM!");
+            System.exit(1);
+        }
+        runner.threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        final var operations = List.of(new PlacePipe(), new UndoStep(), new UpdateState(), new HasWon(),
+                new RenderMap(), new ParseGameFile());
+        if (runner.budgetPath != null && !runner.loadBudgets(operations)) {
+            System.exit(1);
+        }
+
+        final var results = runner.runAll(operations);
+        final boolean passed = results.stream().allMatch(Result::withinBudget);
+        if (runner.fxStarted) {
+            Platform.exit();
+        }
+
+        if (!passed && !runner.reportOnly) {
+            System.err.println("Allocation budget exceeded!");
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --alloc [options]");
+        System.out.println("  --size <n>          Map size to measure with (default: 10)");
+        System.out.println("  --warmup <n>        Number of unmeasured calls of each operation (default: 10000)");
+        System.out.println("  --calls <n>         Number of measured calls of each operation (default: 2000)");
+        System.out.println("  --budget <file>     Properties file of budgets in bytes per call, keyed by operation");
+        System.out.println("  --filter <text>     Only measure operations whose name contains the text");
+        System.out.println("  --report            Only report, and do not fail if a budget is exceeded");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--size":
+                        size = Integer.parseInt(args[++i]);
+                        if (size < Levels.MIN_SIZE) {
+                            System.err.println("Map size must be at least " + Levels.MIN_SIZE + "!");
+                            return false;
+                        }
+                        break;
+                    case "--warmup":
+                        warmupCalls = Integer.parseInt(args[++i]);
+                        break;
+                    case "--calls":
+                        measuredCalls = Integer.parseInt(args[++i]);
+                        break;
+                    case "--budget":
+                        budgetPath = args[++i];
+                        break;
+                    case "--filter":
+                        filter = args[++i];
+                        break;
+                    case "--report":
+                        reportOnly = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return warmupCalls >= 0 && measuredCalls > 0;
+    }
+
+    /**
+     * Overrides the budget of the operations from {@link AllocationBudget#budgetPath}.
+     *
+     * @param operations Operations to override the budget of.
+     * @return Whether the budgets are loaded.
+     */
+    private boolean loadBudgets(@NotNull List<Operation> operations) {
+        final var props = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(budgetPath))) {
+            props.load(in);
+        } catch (IOException e) {
+            System.err.println("Cannot read budgets from " + budgetPath + "!");
+            e.printStackTrace();
+            return false;
+        }
+
+        for (var op : operations) {
+            final var value = props.getProperty(op.name);
+            if (value == null) {
+                continue;
+            }
+            try {
+                op.budget = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid budget for " + op.name + ": " + value);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    private List<Result> runAll(@NotNull List<Operation> operations) {
+        overhead = measureOverhead();
+
+        final var results = new ArrayList<Result>();
+        System.out.println(String.format("%-28s %12s %12s %12s  %s", "Operation", "B/call", "max B/call", "budget",
+                "status"));
+        for (var op : operations) {
+            if (filter != null && !op.name.contains(filter)) {
+                continue;
+            }
+
+            try {
+                final Result result = op.needsFx ? measureOnFx(op) : measure(op);
+                if (result == null) {
+                    System.out.println(String.format("%-28s %12s", op.name, "skipped (JavaFX unavailable)"));
+                    continue;
+                }
+                results.add(result);
+                System.out.println(String.format(Locale.ROOT, "%-28s %12.1f %12d %12d  %s", op.name,
+                        result.meanBytes, result.maxBytes, op.budget, result.withinBudget() ? "ok" : "OVER BUDGET"));
+            } catch (Exception e) {
+                System.err.println("Operation " + op.name + " failed!");
+                e.printStackTrace();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return Bytes allocated by a pair of calls to {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+     * with nothing in between.
+     */
+    private long measureOverhead() {
+        final long threadId = Thread.currentThread().getId();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; ++i) {
+            final long before = threadBean.getThreadAllocatedBytes(threadId);
+            final long after = threadBean.getThreadAllocatedBytes(threadId);
+            min = Math.min(min, after - before);
+        }
+        return min;
+    }
+
+    @NotNull
+    private Result measure(@NotNull Operation op) throws Exception {
+        op.setup(size);
+        try {
+            for (int i = 0; i < warmupCalls; ++i) {
+                op.prepare();
+                sink += op.invoke();
+            }
+
+            final long threadId = Thread.currentThread().getId();
+            long total = 0;
+            long max = 0;
+            for (int i = 0; i < measuredCalls; ++i) {
+                op.prepare();
+                final long before = threadBean.getThreadAllocatedBytes(threadId);
+                sink += op.invoke();
+                final long allocated = Math.max(0, threadBean.getThreadAllocatedBytes(threadId) - before - overhead);
+                total += allocated;
+                max = Math.max(max, allocated);
+            }
+            return new Result(op, (double) total / measuredCalls, max);
+        } finally {
+            op.tearDown();
+        }
+    }
+
+    /**
+     * Measures an operation on the JavaFX application thread, starting JavaFX if necessary.
+     *
+     * @param op Operation to measure.
+     * @return The measurement, or {@code null} if JavaFX cannot be started.
+     * @throws Exception if the operation fails.
+     */
+    @Nullable
+    private Result measureOnFx(@NotNull Operation op) throws Exception {
+        if (!fxStarted) {
+            try {
+                Platform.startup(() -> {
+                });
+            } catch (IllegalStateException e) {
+                // JavaFX is already running
+            } catch (RuntimeException | UnsatisfiedLinkError e) {
+                return null;
+            }
+            fxStarted = true;
+        }
+
+        final var done = new CountDownLatch(1);
+        final Result[] result = new Result[1];
+        final Exception[] failure = new Exception[1];
+        Platform.runLater(() -> {
+            try {
+                result[0] = measure(op);
+            } catch (Exception e) {
+                failure[0] = e;
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result[0];
+    }
+}
@@ -0,0 +1,352 @@
+package bench;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the benchmarks in {@link EngineBenchmarks} and reports their throughput and allocation rate.
+ *
+ * <p>
+ * Each benchmark is run in the current JVM on the current thread, for a number of warmup iterations followed by a
+ * number of measurement iterations of fixed duration. Operations are timed in batches, and the allocation of each batch
+ * is measured through {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}. Time spent in
+ * {@link EngineBenchmark#reset()} is excluded from both the throughput and the allocation, but may contribute to the
+ * reported GC count and time.
+ * </p>
+ *
+ * <p>
+ * Results can be written as JSON, using the same layout as the JSON output of JMH, so that existing tooling for
+ * comparing JMH results can be used to track regressions between releases.
+ * </p>
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Target duration of a single timed batch.
+     */
+    private static final long TARGET_BATCH_NS = 1_000_000;
+
+    private int[] sizes = {8, 64, 512, 2048};
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMs = 1000;
+    @Nullable
+    private String filter = null;
+    @Nullable
+    private String jsonPath = null;
+    private boolean force = false;
+
+    @NotNull
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    @NotNull
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /**
+     * Consumes the result of every operation, so that operations cannot be optimized away.
+     */
+    private long sink = 0;
+
+    /**
+     * Measurement of a single iteration.
+     */
+    private static class Iteration {
+        long ops = 0;
+        long timedNs = 0;
+        long allocatedBytes = 0;
+
+        double opsPerSecond() {
+            return timedNs == 0 ? 0 : ops * 1e9 / timedNs;
+        }
+
+        double bytesPerOp() {
+            return ops == 0 ? 0 : (double) allocatedBytes / ops;
+        }
+
+        double allocMBPerSecond() {
+            return timedNs == 0 ? 0 : allocatedBytes * 1e9 / timedNs / (1024 * 1024);
+        }
+    }
+
+    /**
+     * Measurement of a benchmark at one size.
+     */
+    private static class RunResult {
+        @NotNull
+        final String name;
+        final int size;
+        @NotNull
+        final List<Iteration> iterations;
+        final long gcCount;
+        final long gcTimeMs;
+
+        RunResult(@NotNull String name, int size, @NotNull List<Iteration> iterations, long gcCount, long gcTimeMs) {
+            this.name = name;
+            this.size = size;
+            this.iterations = iterations;
+            this.gcCount = gcCount;
+            this.gcTimeMs = gcTimeMs;
+        }
+    }
+
+    public static void main(String[] args) {
+        final var runner = new BenchmarkRunner();
+        if (!runner.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        if (!runner.threadBean.isThreadAllocatedMemorySupported()) {
+            System.err.println("Allocation measurement is not supported by this JVM!");
+        } else {
+            runner.threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        final var results = runner.runAll();
+
+        if (runner.jsonPath != null) {
+            try {
+                Files.writeString(Paths.get(runner.jsonPath), runner.toJson(results));
+            } catch (IOException e) {
+                System.err.println("Cannot write results to " + runner.jsonPath + "!");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --bench [options]");
+        System.out.println("  --sizes <n,n,...>   Map sizes to benchmark (default: 8,64,512,2048)");
+        System.out.println("  --warmup <n>        Number of warmup iterations (default: 3)");
+        System.out.println("  --iterations <n>    Number of measurement iterations (default: 5)");
+        System.out.println("  --time <ms>         Duration of each iteration (default: 1000)");
+        System.out.println("  --filter <text>     Only run benchmarks whose name contains the text");
+        System.out.println("  --json <file>       Write results to the file in JMH JSON format");
+        System.out.println("  --force             Run sizes larger than the default limit of each benchmark");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--sizes":
+                        sizes = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                        if (Arrays.stream(sizes).anyMatch(s -> s < Levels.MIN_SIZE)) {
+                            System.err.println("Map sizes must be at least " + Levels.MIN_SIZE + "!");
+                            return false;
+                        }
+                        break;
+                    case "--warmup":
+                        warmupIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--iterations":
+                        measurementIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--time":
+                        iterationMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--filter":
+                        filter = args[++i];
+                        break;
+                    case "--json":
+                        jsonPath = args[++i];
+                        break;
+                    case "--force":
+                        force = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return measurementIterations > 0 && warmupIterations >= 0 && iterationMs > 0;
+    }
+
+    @NotNull
+    private List<RunResult> runAll() {
+        final var results = new ArrayList<RunResult>();
+
+        System.out.println(String.format("%-32s %6s %16s %12s %14s", "Benchmark", "Size", "ops/s", "error", "B/op"));
+        for (var benchmark : EngineBenchmarks.all()) {
+            if (filter != null && !benchmark.name.contains(filter)) {
+                continue;
+            }
+
+            final int[] benchSizes = benchmark.sized ? sizes : new int[]{0};
+            for (int size : benchSizes) {
+                if (benchmark.sized && size > benchmark.maxSize && !force) {
+                    System.out.println(String.format("%-32s %6d %16s", benchmark.name, size,
+                            "skipped (limit " + benchmark.maxSize + ")"));
+                    continue;
+                }
+
+                try {
+                    final var result = run(benchmark, size);
+                    results.add(result);
+                    printResult(result);
+                } catch (Exception e) {
+                    System.err.println("Benchmark " + benchmark.name + " failed at size " + size + "!");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return results;
+    }
+
+    @NotNull
+    private RunResult run(@NotNull EngineBenchmark benchmark, int size) throws Exception {
+        benchmark.setup(size);
+        try {
+            for (int i = 0; i < warmupIterations; ++i) {
+                runIteration(benchmark);
+            }
+
+            final long gcCountBefore = gcCount();
+            final long gcTimeBefore = gcTime();
+
+            final var iterations = new ArrayList<Iteration>(measurementIterations);
+            for (int i = 0; i < measurementIterations; ++i) {
+                iterations.add(runIteration(benchmark));
+            }
+
+            return new RunResult(benchmark.name, size, iterations, gcCount() - gcCountBefore,
+                    gcTime() - gcTimeBefore);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    @NotNull
+    private Iteration runIteration(@NotNull EngineBenchmark benchmark) throws Exception {
+        final var iteration = new Iteration();
+        final long threadId = Thread.currentThread().getId();
+        final long iterationNs = iterationMs * 1_000_000;
+        final long end = System.nanoTime() + iterationNs;
+
+        int batch = 1;
+        do {
+            if (benchmark.isExhausted()) {
+                benchmark.reset();
+            }
+
+            final long allocBefore = threadBean.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            int ops = 0;
+            while (ops < batch && !benchmark.isExhausted()) {
+                sink += benchmark.invoke();
+                ++ops;
+            }
+            final long elapsed = System.nanoTime() - start;
+            final long allocAfter = threadBean.getThreadAllocatedBytes(threadId);
+
+            iteration.ops += ops;
+            iteration.timedNs += elapsed;
+            iteration.allocatedBytes += allocAfter - allocBefore;
+
+            if (elapsed < TARGET_BATCH_NS && batch < (1 << 20)) {
+                batch *= 2;
+            }
+        } while (System.nanoTime() < end);
+
+        return iteration;
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (var bean : gcBeans) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcTime() {
+        long time = 0;
+        for (var bean : gcBeans) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static void printResult(@NotNull RunResult result) {
+        final double[] throughput = result.iterations.stream().mapToDouble(Iteration::opsPerSecond).toArray();
+        final double[] bytesPerOp = result.iterations.stream().mapToDouble(Iteration::bytesPerOp).toArray();
+
+        System.out.println(String.format(Locale.ROOT, "%-32s %6s %16.3f %12.3f %14.1f",
+                result.name, result.size == 0 ? "-" : String.valueOf(result.size),
+                JmhJson.mean(throughput), JmhJson.error(throughput), JmhJson.mean(bytesPerOp)));
+    }
+
+    /**
+     * Converts the results into JSON, in the same layout as the JSON output of JMH.
+     *
+     * @param results Results to convert.
+     * @return The JSON document.
+     */
+    @NotNull
+    private String toJson(@NotNull List<RunResult> results) {
+        final var sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); ++i) {
+            final var result = results.get(i);
+
+            sb.append("    {\n");
+            sb.append("        \"benchmark\" : ").append(JmhJson.quote(result.name)).append(",\n");
+            sb.append("        \"mode\" : \"thrpt\",\n");
+            sb.append("        \"threads\" : 1,\n");
+            sb.append("        \"forks\" : 0,\n");
+            sb.append("        \"jdkVersion\" : ").append(JmhJson.quote(System.getProperty("java.version"))).append(",\n");
+            sb.append("        \"vmName\" : ").append(JmhJson.quote(System.getProperty("java.vm.name"))).append(",\n");
+            sb.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+            sb.append("        \"warmupTime\" : ").append(JmhJson.quote(iterationMs + " ms")).append(",\n");
+            sb.append("        \"measurementIterations\" : ").append(measurementIterations).append(",\n");
+            sb.append("        \"measurementTime\" : ").append(JmhJson.quote(iterationMs + " ms")).append(",\n");
+            if (result.size != 0) {
+                sb.append("        \"params\" : {\n");
+                sb.append("            \"size\" : ").append(JmhJson.quote(String.valueOf(result.size))).append("\n");
+                sb.append("        },\n");
+            }
+
+            sb.append("        \"primaryMetric\" : ");
+            JmhJson.appendMetric(sb, result.iterations.stream().mapToDouble(Iteration::opsPerSecond).toArray(), "ops/s");
+            sb.append(",\n");
+
+            sb.append("        \"secondaryMetrics\" : {\n");
+            sb.append("            \"gc.alloc.rate\" : ");
+            JmhJson.appendMetric(sb, result.iterations.stream().mapToDouble(Iteration::allocMBPerSecond).toArray(), "MB/sec");
+            sb.append(",\n");
+            sb.append("            \"gc.alloc.rate.norm\" : ");
+            JmhJson.appendMetric(sb, result.iterations.stream().mapToDouble(Iteration::bytesPerOp).toArray(), "B/op");
+            sb.append(",\n");
+            sb.append("            \"gc.count\" : ");
+            JmhJson.appendMetric(sb, new double[]{result.gcCount}, "counts");
+            sb.append(",\n");
+            sb.append("            \"gc.time\" : ");
+            JmhJson.appendMetric(sb, new double[]{result.gcTimeMs}, "ms");
+            sb.append("\n");
+            sb.append("        }\n");
+
+            sb.append(i == results.size() - 1 ? "    }\n" : "    },\n");
+        }
+        return sb.append("]\n").toString();
+    }
+}
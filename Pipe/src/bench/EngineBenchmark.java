@@ -0,0 +1,77 @@
+package bench;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single benchmarked operation of the game engine.
+ *
+ * <p>
+ * {@link EngineBenchmark#setup(int)} is invoked once per map size, before any invocation. Operations which mutate
+ * their state until they can no longer run (e.g. filling a map) report so via {@link EngineBenchmark#isExhausted()},
+ * and the runner invokes {@link EngineBenchmark#reset()} outside of the measured time before the next invocation.
+ * </p>
+ */
+abstract class EngineBenchmark {
+
+    /**
+     * Name of the benchmark, in the form of {@code Class.method}.
+     */
+    @NotNull
+    final String name;
+
+    /**
+     * Whether the benchmark depends on the map size.
+     */
+    final boolean sized;
+
+    /**
+     * Largest map size which the benchmark runs at by default. Larger sizes take too long to measure with the current
+     * implementation, and are skipped unless forced.
+     */
+    final int maxSize;
+
+    EngineBenchmark(@NotNull String name, boolean sized, int maxSize) {
+        this.name = name;
+        this.sized = sized;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Prepares the state for benchmarking.
+     *
+     * @param size Number of rows and columns of the map, or 0 if the benchmark is not sized.
+     * @throws Exception if the state cannot be prepared.
+     */
+    abstract void setup(int size) throws Exception;
+
+    /**
+     * Runs one operation.
+     *
+     * @return A value derived from the result of the operation, so that the operation cannot be optimized away.
+     * @throws Exception if the operation fails.
+     */
+    abstract long invoke() throws Exception;
+
+    /**
+     * @return Whether {@link EngineBenchmark#reset()} must be invoked before the next operation.
+     */
+    boolean isExhausted() {
+        return false;
+    }
+
+    /**
+     * Restores the state prepared by {@link EngineBenchmark#setup(int)}.
+     *
+     * @throws Exception if the state cannot be restored.
+     */
+    void reset() throws Exception {
+    }
+
+    /**
+     * Releases resources held by the state.
+     *
+     * @throws Exception if the resources cannot be released.
+     */
+    void tearDown() throws Exception {
+    }
+}
@@ -0,0 +1,426 @@
+package bench;
+
+import bots.GreedyStrategy;
+import bots.MctsStrategy;
+import bots.Move;
+import io.Deserializer;
+import io.GameProperties;
+import io.Serializer;
+import models.FXGame;
+import models.PipeQueue;
+import models.Simulation;
+import models.map.Map;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import util.Coordinate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Benchmarks of the hot paths of the game engine.
+ */
+final class EngineBenchmarks {
+
+    private EngineBenchmarks() {
+    }
+
+    /**
+     * @return All benchmarks, in the order they are run.
+     */
+    @NotNull
+    static List<EngineBenchmark> all() {
+        return List.of(
+                new FillTiles(),
+                new FillTilesMultiSource(),
+                new CheckPath(),
+                new FillAll(),
+                new PlaceAndUndo(),
+                new GreedyMove(),
+                new SimulationFork(),
+                new ParseString(),
+                new ParseGameFile(),
+                new SerializeGameProp(),
+                new PipeQueueConsume()
+        );
+    }
+
+    /**
+     * Fills a solved level one distance at a time, as done by the flow timer.
+     */
+    static class FillTiles extends EngineBenchmark {
+
+        private int size;
+        private Map map;
+        private int distance;
+
+        FillTiles() {
+            super("Map.fillTiles", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            this.size = size;
+            reset();
+        }
+
+        @Override
+        long invoke() {
+            map.fillTiles(++distance);
+            return distance;
+        }
+
+        @Override
+        boolean isExhausted() {
+            return distance > Levels.serpentineLength(size);
+        }
+
+        @Override
+        void reset() {
+            map = new Map(size, size, Levels.serpentineCells(size, true));
+            distance = 0;
+        }
+    }
+
+    /**
+     * Fills a solved level with many sources one distance at a time, so that many flow fronts advance at once.
+     */
+    static class FillTilesMultiSource extends EngineBenchmark {
+
+        /**
+         * Largest number of sources in the level.
+         */
+        private static final int MAX_SOURCES = 32;
+
+        private int size;
+        private Map map;
+        private int distance;
+
+        FillTilesMultiSource() {
+            super("Map.fillTiles.multiSource", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            this.size = size;
+            reset();
+        }
+
+        @Override
+        long invoke() {
+            map.fillTiles(++distance);
+            return distance;
+        }
+
+        @Override
+        boolean isExhausted() {
+            return distance > Levels.laneLength(size);
+        }
+
+        @Override
+        void reset() {
+            map = new Map(size, size, Levels.laneCells(size, Math.min(MAX_SOURCES, size - 2)));
+            distance = 0;
+        }
+    }
+
+    /**
+     * Checks the path of a solved level after removing and placing back a pipe, which visits every cell of the map as
+     * the search starts again from the sources.
+     */
+    static class CheckPath extends EngineBenchmark {
+
+        private Map map;
+        private Coordinate coord;
+        private Pipe pipe;
+
+        CheckPath() {
+            super("Map.checkPath", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            map = new Map(size, size, Levels.serpentineCells(size, true));
+            coord = new Coordinate(size - 2, size - 2);
+            pipe = new Pipe(Levels.serpentineShape(size, coord.row, coord.col));
+        }
+
+        @Override
+        long invoke() {
+            map.undo(coord);
+            map.tryPlacePipe(coord, pipe);
+            return map.checkPath() ? 1 : 0;
+        }
+    }
+
+    /**
+     * Plays a move decided by {@link GreedyStrategy} on an empty serpentine level, followed by a tick, as done by the
+     * tournament runner.
+     */
+    static class GreedyMove extends EngineBenchmark {
+
+        private int size;
+        private FXGame game;
+        private final GreedyStrategy strategy = new GreedyStrategy();
+        private boolean ended;
+
+        GreedyMove() {
+            super("FXGame.greedyMove", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            this.size = size;
+            reset();
+        }
+
+        @Override
+        void reset() {
+            game = new FXGame(size, size, 0, Levels.serpentineCells(size, false), null, 0, 1);
+            game.addOnFlowHandler(game::updateState);
+            ended = false;
+        }
+
+        @Override
+        boolean isExhausted() {
+            return ended;
+        }
+
+        @Override
+        long invoke() {
+            final var move = strategy.decide(game.getView());
+            if (move.kind == Move.Kind.PLACE) {
+                game.placePipe(move.row, move.col);
+                ended = game.hasWon();
+            } else {
+                game.skipPipe();
+            }
+            if (!ended) {
+                game.tick();
+                ended = game.hasLost();
+            }
+            return move.row;
+        }
+    }
+
+    /**
+     * Forks a simulation of a game and plays one move on the fork, as done by every rollout of {@link MctsStrategy}.
+     */
+    static class SimulationFork extends EngineBenchmark {
+
+        private Simulation snapshot;
+        private long seed;
+
+        SimulationFork() {
+            super("Simulation.forkAndMove", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            final var game = new FXGame(size, size, 0, Levels.serpentineCells(size, false), null, 0, 1);
+            snapshot = game.getView().simulate(0);
+            seed = 0;
+        }
+
+        @Override
+        long invoke() {
+            final var sim = snapshot.fork(++seed);
+            final int index = sim.bestOpenCell();
+            if (index >= 0) {
+                sim.place(index / sim.getCols(), index % sim.getCols());
+            } else {
+                sim.skip();
+            }
+            sim.tick();
+            return index;
+        }
+    }
+
+    /**
+     * Fills a solved level at once, as done when the game is won.
+     */
+    static class FillAll extends EngineBenchmark {
+
+        private int size;
+        private Map map;
+
+        FillAll() {
+            super("Map.fillAll", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            this.size = size;
+            reset();
+        }
+
+        @Override
+        long invoke() {
+            map.fillAll();
+            final var m = map;
+            map = null;
+            return m.hasLost() ? 1 : 0;
+        }
+
+        @Override
+        boolean isExhausted() {
+            return map == null;
+        }
+
+        @Override
+        void reset() {
+            map = new Map(size, size, Levels.serpentineCells(size, true));
+        }
+    }
+
+    /**
+     * Places a pipe on an empty level and undoes it, cycling through every fillable cell.
+     */
+    static class PlaceAndUndo extends EngineBenchmark {
+
+        private Map map;
+        private Coordinate[] coords;
+        private int next;
+        private final Pipe pipe = new Pipe(Pipe.Shape.CROSS);
+
+        PlaceAndUndo() {
+            super("Map.tryPlacePipe+undo", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) {
+            map = new Map(size, size, Levels.serpentineCells(size, false));
+
+            final int inner = size - 2;
+            coords = new Coordinate[inner * inner - 1];
+            int i = 0;
+            for (int r = 1; r <= inner; ++r) {
+                for (int c = 1; c <= inner; ++c) {
+                    if (r != 1 || c != 1) {
+                        coords[i++] = new Coordinate(r, c);
+                    }
+                }
+            }
+            next = 0;
+        }
+
+        @Override
+        long invoke() {
+            final var coord = coords[next];
+            next = next + 1 == coords.length ? 0 : next + 1;
+
+            final boolean placed = map.tryPlacePipe(coord, pipe);
+            map.undo(coord);
+            return placed ? 1 : 0;
+        }
+    }
+
+    /**
+     * Parses the map section of a map file.
+     */
+    static class ParseString extends EngineBenchmark {
+
+        private int size;
+        private String rep;
+
+        ParseString() {
+            super("Deserializer.parseString", true, 64);
+        }
+
+        @Override
+        void setup(int size) {
+            this.size = size;
+            rep = Levels.serpentineRep(size);
+        }
+
+        @Override
+        long invoke() {
+            return Deserializer.parseString(size, size, rep).length;
+        }
+    }
+
+    /**
+     * Parses a map file from disk.
+     */
+    static class ParseGameFile extends EngineBenchmark {
+
+        private Path path;
+
+        ParseGameFile() {
+            super("Deserializer.parseGameFile", true, 64);
+        }
+
+        @Override
+        void setup(int size) throws Exception {
+            path = Files.createTempFile("pipes-bench-", ".map");
+            Files.writeString(path, size + "\n" + size + "\n10\n" + Levels.serpentineRep(size)
+                    + "\nTR, TL, BL, BR, CR, VT, HZ\n");
+        }
+
+        @Override
+        long invoke() throws Exception {
+            return new Deserializer(path).parseGameFile().rows;
+        }
+
+        @Override
+        void tearDown() throws Exception {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Serializes a level into a map file on disk.
+     */
+    static class SerializeGameProp extends EngineBenchmark {
+
+        private Path path;
+        private Serializer serializer;
+        private GameProperties prop;
+
+        SerializeGameProp() {
+            super("Serializer.serializeGameProp", true, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void setup(int size) throws Exception {
+            path = Files.createTempFile("pipes-bench-", ".map");
+            serializer = new Serializer(path);
+            prop = new GameProperties(size, size, Levels.serpentineCells(size, false), 10);
+        }
+
+        @Override
+        long invoke() throws Exception {
+            serializer.serializeGameProp(prop);
+            return prop.rows;
+        }
+
+        @Override
+        void tearDown() throws Exception {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Consumes pipes from the pipe queue.
+     */
+    static class PipeQueueConsume extends EngineBenchmark {
+
+        private PipeQueue queue;
+
+        PipeQueueConsume() {
+            super("PipeQueue.consume", false, 0);
+        }
+
+        @Override
+        void setup(int size) {
+            queue = new PipeQueue(null, 0);
+        }
+
+        @Override
+        long invoke() {
+            queue.consume();
+            return queue.peekShape(0).ordinal();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Helpers for writing benchmark results in the same layout as the JSON output of JMH.
+ */
+final class JmhJson {
+
+    /**
+     * Z-score of the 99.9% confidence interval, which is used for the error of each metric.
+     */
+    private static final double Z_999 = 3.2905;
+
+    private JmhJson() {
+    }
+
+    /**
+     * @param values Measurement of each iteration.
+     * @return Mean of the measurements, or 0 if there are none.
+     */
+    static double mean(@NotNull double[] values) {
+        return Arrays.stream(values).average().orElse(0);
+    }
+
+    /**
+     * @param values Measurement of each iteration.
+     * @return Half-width of the 99.9% confidence interval of the mean, or {@link Double#NaN} if there are fewer than
+     * two measurements.
+     */
+    static double error(@NotNull double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+
+        final double mean = mean(values);
+        double sumSq = 0;
+        for (double v : values) {
+            sumSq += (v - mean) * (v - mean);
+        }
+        return Z_999 * Math.sqrt(sumSq / (values.length - 1)) / Math.sqrt(values.length);
+    }
+
+    /**
+     * Appends a metric object, containing the score, its error and the raw data.
+     *
+     * @param sb     Builder to append to.
+     * @param values Measurement of each iteration.
+     * @param unit   Unit of the measurements.
+     */
+    static void appendMetric(@NotNull StringBuilder sb, @NotNull double[] values, @NotNull String unit) {
+        final double score = mean(values);
+        final double error = error(values);
+
+        sb.append("{ \"score\" : ").append(number(score));
+        sb.append(", \"scoreError\" : ").append(number(error));
+        sb.append(", \"scoreConfidence\" : [ ").append(number(score - error)).append(", ")
+                .append(number(score + error)).append(" ]");
+        sb.append(", \"scoreUnit\" : ").append(quote(unit));
+        sb.append(", \"rawData\" : [ [ ");
+        for (int i = 0; i < values.length; ++i) {
+            if (i != 0) {
+                sb.append(", ");
+            }
+            sb.append(number(values[i]));
+        }
+        sb.append(" ] ] }");
+    }
+
+    @NotNull
+    static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    @NotNull
+    static String quote(@NotNull String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,204 @@
+package bench;
+
+import io.Deserializer;
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import util.Coordinate;
+
+/**
+ * Generates square levels of arbitrary size for benchmarking.
+ *
+ * <p>
+ * The generated level has a source at the top-left inner cell pointing right, and a sink on the side border of the
+ * last inner row. The solution is a serpentine path which passes through every inner cell, so that filling the path
+ * touches every cell of the map.
+ * </p>
+ */
+final class Levels {
+
+    /**
+     * Minimum size of a level, so that there are at least two inner rows and columns.
+     */
+    static final int MIN_SIZE = 4;
+
+    private Levels() {
+    }
+
+    /**
+     * @param size Number of rows and columns.
+     * @return The map section of a map file, with rows delimited by {@code '\n'}.
+     * @throws IllegalArgumentException if {@code size} is less than {@link Levels#MIN_SIZE}.
+     */
+    @NotNull
+    static String serpentineRep(int size) {
+        if (size < MIN_SIZE) {
+            throw new IllegalArgumentException("Level size must be at least " + MIN_SIZE);
+        }
+
+        final int lastRow = size - 2;
+        final boolean sinkOnRight = (lastRow - 1) % 2 == 0;
+
+        final var sb = new StringBuilder(size * (size + 1));
+        for (int r = 0; r < size; ++r) {
+            for (int c = 0; c < size; ++c) {
+                final char ch;
+                if (r == 1 && c == 1) {
+                    ch = '>';
+                } else if (r == lastRow && c == size - 1 && sinkOnRight) {
+                    ch = '>';
+                } else if (r == lastRow && c == 0 && !sinkOnRight) {
+                    ch = '<';
+                } else if (r == 0 || c == 0 || r == size - 1 || c == size - 1) {
+                    ch = 'W';
+                } else {
+                    ch = '.';
+                }
+                sb.append(ch);
+            }
+            if (r != size - 1) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates the cells of a serpentine level.
+     *
+     * @param size      Number of rows and columns.
+     * @param withPipes Whether to place the pipes of the solution.
+     * @return A new cell array.
+     */
+    @NotNull
+    static Cell[][] serpentineCells(int size, boolean withPipes) {
+        final var rep = serpentineRep(size);
+
+        final var cells = new Cell[size][size];
+        for (int r = 0; r < size; ++r) {
+            for (int c = 0; c < size; ++c) {
+                cells[r][c] = Deserializer.parseCell(size, size, r, c, rep.charAt(r * (size + 1) + c));
+            }
+        }
+
+        if (withPipes) {
+            for (int r = 1; r <= size - 2; ++r) {
+                for (int c = 1; c <= size - 2; ++c) {
+                    if (r != 1 || c != 1) {
+                        cells[r][c] = new FillableCell(new Coordinate(r, c), new Pipe(serpentineShape(size, r, c)));
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @param size Number of rows and columns.
+     * @return Number of pipes in the solution of a serpentine level.
+     */
+    static int serpentineLength(int size) {
+        return (size - 2) * (size - 2) - 1;
+    }
+
+    /**
+     * @param size Number of rows and columns.
+     * @return Coordinates of the pipes in the solution of a serpentine level, in the order the water flows through them.
+     */
+    @NotNull
+    static Coordinate[] serpentinePath(int size) {
+        final int first = 1;
+        final int last = size - 2;
+
+        final var path = new Coordinate[serpentineLength(size)];
+        int i = 0;
+        for (int r = first; r <= last; ++r) {
+            final boolean goingRight = (r - 1) % 2 == 0;
+            for (int k = first; k <= last; ++k) {
+                final int c = goingRight ? k : last + first - k;
+                if (r != 1 || c != 1) {
+                    path[i++] = new Coordinate(r, c);
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Creates the cells of a level with several sources, where each source flows along its own straight lane into a
+     * sink on the right border.
+     *
+     * <p>
+     * Lanes are spread evenly across the inner rows. Each source is on the first inner column pointing right, and each
+     * lane is filled with horizontal pipes, so that every source runs a separate flow front of
+     * {@link Levels#laneLength(int)} pipes.
+     * </p>
+     *
+     * @param size  Number of rows and columns.
+     * @param lanes Number of lanes, between 1 and {@code size - 2}.
+     * @return A new cell array.
+     * @throws IllegalArgumentException if {@code size} is less than {@link Levels#MIN_SIZE}, or if there are too many
+     *                                  lanes.
+     */
+    @NotNull
+    static Cell[][] laneCells(int size, int lanes) {
+        if (size < MIN_SIZE) {
+            throw new IllegalArgumentException("Level size must be at least " + MIN_SIZE);
+        }
+        if (lanes < 1 || lanes > size - 2) {
+            throw new IllegalArgumentException("Number of lanes must be between 1 and " + (size - 2));
+        }
+
+        final var cells = new Cell[size][size];
+        for (int r = 0; r < size; ++r) {
+            for (int c = 0; c < size; ++c) {
+                final boolean border = r == 0 || c == 0 || r == size - 1 || c == size - 1;
+                cells[r][c] = Deserializer.parseCell(size, size, r, c, border ? 'W' : '.');
+            }
+        }
+
+        for (int i = 0; i < lanes; ++i) {
+            final int r = 1 + i * (size - 2) / lanes;
+            cells[r][1] = Deserializer.parseCell(size, size, r, 1, '>');
+            cells[r][size - 1] = Deserializer.parseCell(size, size, r, size - 1, '>');
+            for (int c = 2; c <= size - 2; ++c) {
+                cells[r][c] = new FillableCell(new Coordinate(r, c), new Pipe(Pipe.Shape.HORIZONTAL));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @param size Number of rows and columns.
+     * @return Number of pipes in each lane of a level created by {@link Levels#laneCells(int, int)}.
+     */
+    static int laneLength(int size) {
+        return size - 3;
+    }
+
+    @NotNull
+    static Pipe.Shape serpentineShape(int size, int r, int c) {
+        final int first = 1;
+        final int last = size - 2;
+        final boolean goingRight = (r - 1) % 2 == 0;
+        final boolean lastRow = r == last;
+
+        if (goingRight) {
+            if (c == first && r != 1) {
+                return Pipe.Shape.TOP_RIGHT;
+            }
+            if (c == last && !lastRow) {
+                return Pipe.Shape.BOTTOM_LEFT;
+            }
+        } else {
+            if (c == last) {
+                return Pipe.Shape.TOP_LEFT;
+            }
+            if (c == first && !lastRow) {
+                return Pipe.Shape.BOTTOM_RIGHT;
+            }
+        }
+        return Pipe.Shape.HORIZONTAL;
+    }
+}
@@ -0,0 +1,264 @@
+package bench;
+
+import io.Deserializer;
+import io.GameProperties;
+import io.LevelPack;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the size and the load time of a level stored as a text map file, in a {@link LevelPack}, and in a
+ * compressed {@link LevelPack}.
+ *
+ * <p>
+ * For every size, a serpentine level is written as a map file and packed both ways into a temporary directory. Each
+ * format is then loaded repeatedly: the map file with {@link Deserializer#parseGameFile()}, and the packs with
+ * {@link LevelPack#load(int)}. Files are read through the page cache of the operating system, so the load times do not
+ * include reading from the disk, whose cost grows with the number of bytes stored.
+ * </p>
+ */
+public class PackBenchmark {
+
+    private int[] sizes = {8, 64, 512, 2048};
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMs = 1000;
+
+    /**
+     * Sum of the number of rows of every loaded level, so that loads cannot be optimized away.
+     */
+    private long loadedRows = 0;
+
+    /**
+     * A way of storing a level.
+     */
+    private abstract static class Format {
+
+        @NotNull
+        final String name;
+
+        Format(@NotNull String name) {
+            this.name = name;
+        }
+
+        /**
+         * Stores the level.
+         *
+         * @param directory Directory containing the map file of the level.
+         * @param level     File name of the level.
+         * @return Number of bytes stored.
+         * @throws IOException if the level cannot be stored.
+         */
+        abstract long setup(@NotNull Path directory, @NotNull String level) throws IOException;
+
+        /**
+         * Loads the level.
+         *
+         * @return Properties of the level.
+         * @throws IOException if the level cannot be loaded.
+         */
+        @NotNull
+        abstract GameProperties load() throws IOException;
+
+        /**
+         * Releases resources held by the format.
+         *
+         * @throws IOException if the resources cannot be released.
+         */
+        void tearDown() throws IOException {
+        }
+    }
+
+    /**
+     * A text map file, parsed by {@link Deserializer}.
+     */
+    private static class MapFile extends Format {
+
+        private Path path;
+
+        MapFile() {
+            super("Deserializer.parseGameFile");
+        }
+
+        @Override
+        long setup(@NotNull Path directory, @NotNull String level) throws IOException {
+            path = directory.resolve(level);
+            return Files.size(path);
+        }
+
+        @NotNull
+        @Override
+        GameProperties load() throws IOException {
+            return new Deserializer(path).parseGameFile();
+        }
+    }
+
+    /**
+     * A level pack, loaded by {@link LevelPack#load(int)}.
+     */
+    private static class Pack extends Format {
+
+        private final boolean deflate;
+        private LevelPack pack;
+
+        Pack(boolean deflate) {
+            super(deflate ? "LevelPack.load:deflate" : "LevelPack.load");
+            this.deflate = deflate;
+        }
+
+        @Override
+        long setup(@NotNull Path directory, @NotNull String level) throws IOException {
+            final Path path = directory.resolve(deflate ? "deflate.pack" : "plain.pack");
+            LevelPack.write(path, directory, List.of(level), deflate);
+            pack = LevelPack.open(path);
+            return Files.size(path);
+        }
+
+        @NotNull
+        @Override
+        GameProperties load() throws IOException {
+            return pack.load(0);
+        }
+
+        @Override
+        void tearDown() throws IOException {
+            if (pack != null) {
+                pack.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        final var runner = new PackBenchmark();
+        if (!runner.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        try {
+            runner.runAll();
+        } catch (IOException e) {
+            System.err.println("Cannot prepare the levels!");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --bench-pack [options]");
+        System.out.println("  --sizes <n,n,...>   Map sizes to benchmark (default: 8,64,512,2048)");
+        System.out.println("  --warmup <n>        Number of warmup iterations (default: 3)");
+        System.out.println("  --iterations <n>    Number of measurement iterations (default: 5)");
+        System.out.println("  --time <ms>         Duration of each iteration (default: 1000)");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--sizes":
+                        sizes = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                        if (Arrays.stream(sizes).anyMatch(s -> s < Levels.MIN_SIZE)) {
+                            System.err.println("Map sizes must be at least " + Levels.MIN_SIZE + "!");
+                            return false;
+                        }
+                        break;
+                    case "--warmup":
+                        warmupIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--iterations":
+                        measurementIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--time":
+                        iterationMs = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return measurementIterations > 0 && warmupIterations >= 0 && iterationMs > 0;
+    }
+
+    private void runAll() throws IOException {
+        System.out.println(String.format("%-32s %6s %12s %10s %12s %8s",
+                "Benchmark", "Size", "ms/load", "error", "bytes", "ratio"));
+        for (int size : sizes) {
+            final Path directory = Files.createTempDirectory("pipes-bench-");
+            final String level = "level.map";
+            try {
+                Files.writeString(directory.resolve(level), size + "\n" + size + "\n10\n" + Levels.serpentineRep(size)
+                        + "\nTR, TL, BL, BR, CR, VT, HZ\n");
+                final long textBytes = Files.size(directory.resolve(level));
+
+                for (var format : List.of(new MapFile(), new Pack(false), new Pack(true))) {
+                    try {
+                        final long bytes = format.setup(directory, level);
+                        final double[] msPerLoad = run(format);
+                        System.out.println(String.format(Locale.ROOT, "%-32s %6d %12.3f %10.3f %12d %8.3f",
+                                format.name, size, JmhJson.mean(msPerLoad), JmhJson.error(msPerLoad), bytes,
+                                (double) bytes / textBytes));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Benchmark " + format.name + " failed at size " + size + "!");
+                        e.printStackTrace();
+                    } finally {
+                        format.tearDown();
+                    }
+                }
+            } finally {
+                try (var files = Files.list(directory)) {
+                    for (var file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+
+    /**
+     * @param format Format to load the level from.
+     * @return Mean time in milliseconds of a load in every measurement iteration.
+     * @throws IOException if the level cannot be loaded.
+     */
+    @NotNull
+    private double[] run(@NotNull Format format) throws IOException {
+        for (int i = 0; i < warmupIterations; ++i) {
+            runIteration(format);
+        }
+
+        final double[] msPerLoad = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; ++i) {
+            msPerLoad[i] = runIteration(format);
+        }
+        return msPerLoad;
+    }
+
+    private double runIteration(@NotNull Format format) throws IOException {
+        long loads = 0;
+        final long start = System.nanoTime();
+        final long end = start + iterationMs * 1_000_000;
+        long now;
+        do {
+            loadedRows += format.load().rows;
+            ++loads;
+            now = System.nanoTime();
+        } while (now < end);
+        return (now - start) / 1e6 / loads;
+    }
+}
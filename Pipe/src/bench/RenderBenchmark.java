@@ -0,0 +1,464 @@
+package bench;
+
+import controllers.Metrics;
+import controllers.Renderer;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.WritableImage;
+import models.PipeQueue;
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the time taken by {@link Renderer} to render maps of increasing size onto an offscreen {@link Canvas}.
+ *
+ * <p>
+ * Every frame is followed by a snapshot of the canvas into a {@link WritableImage}, which forces the rendering commands
+ * buffered by the canvas to be executed, so that each frame is timed until its pixels are available. Frames are timed
+ * on the JavaFX application thread, which is otherwise idle as no stage is shown.
+ * </p>
+ *
+ * <p>
+ * The software rendering pipeline is used unless {@code prism.order} is set explicitly, so that results do not depend
+ * on the graphics card of the machine. With {@code --headless}, the Monocle headless platform is used as well, which
+ * allows the benchmark to run without a display. Monocle is not part of the JavaFX SDK, and must be supplied on the
+ * module path separately.
+ * </p>
+ */
+public class RenderBenchmark {
+
+    /**
+     * Number of pipes drawn by {@link PipeQueue#render(Canvas)}.
+     */
+    private static final int QUEUE_TILES = 5;
+
+    private int[] sizes = {8, 16, 32, 64, 128};
+    private int warmupIterations = 2;
+    private int measurementIterations = 5;
+    private long iterationMs = 1000;
+    private boolean headless = false;
+    @Nullable
+    private String filter = null;
+    @Nullable
+    private String jsonPath = null;
+
+    /**
+     * A way of rendering a frame.
+     */
+    private abstract static class RenderCase {
+
+        @NotNull
+        final String name;
+        final boolean sized;
+
+        RenderCase(@NotNull String name, boolean sized) {
+            this.name = name;
+            this.sized = sized;
+        }
+
+        /**
+         * Prepares the case, and renders the first frame onto the canvas.
+         *
+         * @param canvas Canvas to render to.
+         * @param size   Number of rows and columns of the map.
+         */
+        abstract void setup(@NotNull Canvas canvas, int size);
+
+        /**
+         * Prepares the next frame. This is not timed.
+         *
+         * @param canvas Canvas to render to.
+         */
+        void prepare(@NotNull Canvas canvas) {
+        }
+
+        /**
+         * Renders a frame.
+         *
+         * @param canvas Canvas to render to.
+         * @return Number of tiles drawn.
+         */
+        abstract long render(@NotNull Canvas canvas);
+    }
+
+    /**
+     * Redraws every tile of the map in each frame, as done when the map is first shown.
+     */
+    private static class FullRedraw extends RenderCase {
+
+        private Cell[][] cells;
+
+        FullRedraw() {
+            super("Renderer.renderMap:full", true);
+        }
+
+        @Override
+        void setup(@NotNull Canvas canvas, int size) {
+            cells = Levels.serpentineCells(size, true);
+            Renderer.renderMap(canvas, cells);
+        }
+
+        @Override
+        long render(@NotNull Canvas canvas) {
+            final long before = Metrics.getInstance().getTileCacheMisses();
+            Renderer.invalidate(canvas);
+            Renderer.renderMap(canvas, cells);
+            return Metrics.getInstance().getTileCacheMisses() - before;
+        }
+    }
+
+    /**
+     * Fills one more pipe in each frame, and only redraws the tiles which have changed, as done while the water flows.
+     */
+    private static class IncrementalRedraw extends RenderCase {
+
+        private int size;
+        private Coordinate[] path;
+        private Cell[][] cells;
+        private int next;
+
+        IncrementalRedraw() {
+            super("Renderer.renderMap:incremental", true);
+        }
+
+        @Override
+        void setup(@NotNull Canvas canvas, int size) {
+            this.size = size;
+            this.path = Levels.serpentinePath(size);
+            reset(canvas);
+        }
+
+        @Override
+        void prepare(@NotNull Canvas canvas) {
+            if (next == path.length) {
+                reset(canvas);
+            }
+        }
+
+        @Override
+        long render(@NotNull Canvas canvas) {
+            final var coord = path[next++];
+            ((FillableCell) cells[coord.row][coord.col]).getPipe().ifPresent(Pipe::setFilled);
+
+            final long before = Metrics.getInstance().getTileCacheMisses();
+            Renderer.renderMap(canvas, cells);
+            return Metrics.getInstance().getTileCacheMisses() - before;
+        }
+
+        private void reset(@NotNull Canvas canvas) {
+            cells = Levels.serpentineCells(size, true);
+            next = 0;
+            Renderer.renderMap(canvas, cells);
+        }
+    }
+
+    /**
+     * Consumes a pipe from the pipe queue and redraws the queue in each frame, as done when a pipe is placed.
+     */
+    private static class QueueRedraw extends RenderCase {
+
+        private PipeQueue queue;
+
+        QueueRedraw() {
+            super("Renderer.renderQueue", false);
+        }
+
+        @Override
+        void setup(@NotNull Canvas canvas, int size) {
+            queue = new PipeQueue(null, 0);
+            queue.render(canvas);
+        }
+
+        @Override
+        long render(@NotNull Canvas canvas) {
+            queue.consume();
+            queue.render(canvas);
+            return QUEUE_TILES;
+        }
+    }
+
+    /**
+     * Measurement of a single iteration.
+     */
+    private static class Iteration {
+        long frames = 0;
+        long timedNs = 0;
+        long tiles = 0;
+
+        double msPerFrame() {
+            return frames == 0 ? 0 : timedNs / 1e6 / frames;
+        }
+
+        double msPerTile() {
+            return tiles == 0 ? 0 : timedNs / 1e6 / tiles;
+        }
+
+        double tilesPerFrame() {
+            return frames == 0 ? 0 : (double) tiles / frames;
+        }
+    }
+
+    /**
+     * Measurement of a case at one size.
+     */
+    private static class RunResult {
+        @NotNull
+        final String name;
+        final int size;
+        @NotNull
+        final List<Iteration> iterations;
+
+        RunResult(@NotNull String name, int size, @NotNull List<Iteration> iterations) {
+            this.name = name;
+            this.size = size;
+            this.iterations = iterations;
+        }
+    }
+
+    public static void main(String[] args) {
+        final var runner = new RenderBenchmark();
+        if (!runner.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        if (System.getProperty("prism.order") == null) {
+            System.setProperty("prism.order", "sw");
+        }
+        if (runner.headless) {
+            System.setProperty("glass.platform", "Monocle");
+            System.setProperty("monocle.platform", "Headless");
+        }
+
+        final var results = new ArrayList<RunResult>();
+        final var done = new CountDownLatch(1);
+        try {
+            Platform.startup(() -> {
+            });
+        } catch (IllegalStateException e) {
+            // JavaFX is already running
+        }
+        Platform.runLater(() -> {
+            try {
+                results.addAll(runner.runAll());
+            } finally {
+                done.countDown();
+            }
+        });
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            Platform.exit();
+        }
+
+        if (runner.jsonPath != null) {
+            try {
+                Files.writeString(Paths.get(runner.jsonPath), runner.toJson(results));
+            } catch (IOException e) {
+                System.err.println("Cannot write results to " + runner.jsonPath + "!");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --bench-render [options]");
+        System.out.println("  --sizes <n,n,...>   Map sizes to benchmark (default: 8,16,32,64,128)");
+        System.out.println("  --warmup <n>        Number of warmup iterations (default: 2)");
+        System.out.println("  --iterations <n>    Number of measurement iterations (default: 5)");
+        System.out.println("  --time <ms>         Duration of each iteration (default: 1000)");
+        System.out.println("  --filter <text>     Only run cases whose name contains the text");
+        System.out.println("  --json <file>       Write results to the file in JMH JSON format");
+        System.out.println("  --headless          Use the Monocle headless platform");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--sizes":
+                        sizes = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                        if (Arrays.stream(sizes).anyMatch(s -> s < Levels.MIN_SIZE)) {
+                            System.err.println("Map sizes must be at least " + Levels.MIN_SIZE + "!");
+                            return false;
+                        }
+                        break;
+                    case "--warmup":
+                        warmupIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--iterations":
+                        measurementIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--time":
+                        iterationMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--filter":
+                        filter = args[++i];
+                        break;
+                    case "--json":
+                        jsonPath = args[++i];
+                        break;
+                    case "--headless":
+                        headless = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return measurementIterations > 0 && warmupIterations >= 0 && iterationMs > 0;
+    }
+
+    @NotNull
+    private List<RunResult> runAll() {
+        final var results = new ArrayList<RunResult>();
+        final var cases = List.of(new FullRedraw(), new IncrementalRedraw(), new QueueRedraw());
+
+        System.out.println(String.format("%-32s %6s %12s %10s %12s %12s",
+                "Benchmark", "Size", "ms/frame", "error", "ms/tile", "tiles/frame"));
+        for (var renderCase : cases) {
+            if (filter != null && !renderCase.name.contains(filter)) {
+                continue;
+            }
+
+            final int[] caseSizes = renderCase.sized ? sizes : new int[]{0};
+            for (int size : caseSizes) {
+                try {
+                    final var result = run(renderCase, size);
+                    results.add(result);
+                    printResult(result);
+                } catch (RuntimeException e) {
+                    System.err.println("Benchmark " + renderCase.name + " failed at size " + size + "!");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return results;
+    }
+
+    @NotNull
+    private RunResult run(@NotNull RenderCase renderCase, int size) {
+        final var canvas = new Canvas();
+        renderCase.setup(canvas, size);
+        final var image = new WritableImage((int) canvas.getWidth(), (int) canvas.getHeight());
+
+        for (int i = 0; i < warmupIterations; ++i) {
+            runIteration(renderCase, canvas, image);
+        }
+
+        final var iterations = new ArrayList<Iteration>(measurementIterations);
+        for (int i = 0; i < measurementIterations; ++i) {
+            iterations.add(runIteration(renderCase, canvas, image));
+        }
+        return new RunResult(renderCase.name, size, iterations);
+    }
+
+    @NotNull
+    private Iteration runIteration(@NotNull RenderCase renderCase, @NotNull Canvas canvas, @NotNull WritableImage image) {
+        final var iteration = new Iteration();
+        final long end = System.nanoTime() + iterationMs * 1_000_000;
+
+        do {
+            renderCase.prepare(canvas);
+
+            final long start = System.nanoTime();
+            iteration.tiles += renderCase.render(canvas);
+            canvas.snapshot(null, image);
+            iteration.timedNs += System.nanoTime() - start;
+            ++iteration.frames;
+        } while (System.nanoTime() < end);
+
+        return iteration;
+    }
+
+    private static void printResult(@NotNull RunResult result) {
+        final double[] msPerFrame = result.iterations.stream().mapToDouble(Iteration::msPerFrame).toArray();
+        final double[] msPerTile = result.iterations.stream().mapToDouble(Iteration::msPerTile).toArray();
+        final double[] tilesPerFrame = result.iterations.stream().mapToDouble(Iteration::tilesPerFrame).toArray();
+
+        System.out.println(String.format(Locale.ROOT, "%-32s %6s %12.3f %10.3f %12.5f %12.1f",
+                result.name, result.size == 0 ? "-" : String.valueOf(result.size),
+                JmhJson.mean(msPerFrame), JmhJson.error(msPerFrame), JmhJson.mean(msPerTile),
+                JmhJson.mean(tilesPerFrame)));
+    }
+
+    /**
+     * Converts the results into JSON, in the same layout as the JSON output of JMH in average time mode.
+     *
+     * @param results Results to convert.
+     * @return The JSON document.
+     */
+    @NotNull
+    private String toJson(@NotNull List<RunResult> results) {
+        final var sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); ++i) {
+            final var result = results.get(i);
+
+            sb.append("    {\n");
+            sb.append("        \"benchmark\" : ").append(JmhJson.quote(result.name)).append(",\n");
+            sb.append("        \"mode\" : \"avgt\",\n");
+            sb.append("        \"threads\" : 1,\n");
+            sb.append("        \"forks\" : 0,\n");
+            sb.append("        \"jdkVersion\" : ").append(JmhJson.quote(System.getProperty("java.version"))).append(",\n");
+            sb.append("        \"vmName\" : ").append(JmhJson.quote(System.getProperty("java.vm.name"))).append(",\n");
+            sb.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+            sb.append("        \"warmupTime\" : ").append(JmhJson.quote(iterationMs + " ms")).append(",\n");
+            sb.append("        \"measurementIterations\" : ").append(measurementIterations).append(",\n");
+            sb.append("        \"measurementTime\" : ").append(JmhJson.quote(iterationMs + " ms")).append(",\n");
+            sb.append("        \"params\" : {\n");
+            if (result.size != 0) {
+                sb.append("            \"size\" : ").append(JmhJson.quote(String.valueOf(result.size))).append(",\n");
+            }
+            sb.append("            \"prism.order\" : ")
+                    .append(JmhJson.quote(System.getProperty("prism.order", ""))).append(",\n");
+            sb.append("            \"glass.platform\" : ")
+                    .append(JmhJson.quote(System.getProperty("glass.platform", "default"))).append("\n");
+            sb.append("        },\n");
+
+            sb.append("        \"primaryMetric\" : ");
+            JmhJson.appendMetric(sb, result.iterations.stream().mapToDouble(Iteration::msPerFrame).toArray(), "ms/op");
+            sb.append(",\n");
+
+            sb.append("        \"secondaryMetrics\" : {\n");
+            sb.append("            \"ms.per.tile\" : ");
+            JmhJson.appendMetric(sb, result.iterations.stream().mapToDouble(Iteration::msPerTile).toArray(), "ms/tile");
+            sb.append(",\n");
+            sb.append("            \"tiles.per.frame\" : ");
+            JmhJson.appendMetric(sb, result.iterations.stream().mapToDouble(Iteration::tilesPerFrame).toArray(),
+                    "tiles/op");
+            sb.append("\n");
+            sb.append("        }\n");
+
+            sb.append(i == results.size() - 1 ? "    }\n" : "    },\n");
+        }
+        return sb.append("]\n").toString();
+    }
+}
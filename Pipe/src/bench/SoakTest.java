@@ -0,0 +1,348 @@
+package bench;
+
+import controllers.AudioManager;
+import controllers.GameSession;
+import controllers.Metrics;
+import io.Deserializer;
+import io.GameProperties;
+import javafx.application.Platform;
+import models.FXGame;
+import models.FlowTimer;
+import models.VirtualClock;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Plays thousands of consecutive games on a {@link VirtualClock}, and checks that the resources held by the process do
+ * not grow with the number of games played.
+ *
+ * <p>
+ * Every game goes through the same lifecycle as in the gameplay screen: a level is parsed and previewed without being
+ * started, parsed again and played in a {@link GameSession} with random moves while the clock advances one second per
+ * move, and the session is ended once the game is won or lost. Games are not recorded, and nothing is rendered.
+ * </p>
+ *
+ * <p>
+ * The thread count and the live heap after a full GC are sampled periodically. After the warmup games, neither may
+ * grow beyond a tolerance, and once all games have ended no flow timer may be left running. With {@code --audio},
+ * sounds are played as in the gameplay screen, and all media players must be released once the sounds have finished.
+ * The process exits with status 1 if any check fails.
+ * </p>
+ */
+public class SoakTest {
+
+    /**
+     * Maximum number of moves in a single game, after which the game is abandoned.
+     */
+    private static final int MAX_MOVES_PER_GAME = 10_000;
+
+    /**
+     * Maximum time to wait for sounds to finish playing at the end of the test.
+     */
+    private static final long SOUND_DRAIN_TIMEOUT_MS = 10_000;
+
+    private int games = 5000;
+    private int warmupGames = 500;
+    private int sampleInterval = 500;
+    private long maxHeapGrowthMB = 8;
+    private int maxThreadGrowth = 1;
+    private long seed = 0;
+    private boolean audio = false;
+    @NotNull
+    private Path mapDirectory = Paths.get("resources", "maps");
+
+    @NotNull
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    @NotNull
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    @NotNull
+    private final VirtualClock clock = new VirtualClock();
+
+    /**
+     * Resources held by the process at one point in time.
+     */
+    private static class Sample {
+        final int gamesPlayed;
+        final int threads;
+        final long heapBytes;
+        final int sounds;
+        final long liveTimers;
+
+        Sample(int gamesPlayed, int threads, long heapBytes, int sounds, long liveTimers) {
+            this.gamesPlayed = gamesPlayed;
+            this.threads = threads;
+            this.heapBytes = heapBytes;
+            this.sounds = sounds;
+            this.liveTimers = liveTimers;
+        }
+    }
+
+    public static void main(String[] args) {
+        final var test = new SoakTest();
+        if (!test.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        final List<Path> levels;
+        try (var files = Files.list(test.mapDirectory)) {
+            levels = files.filter(p -> p.toString().endsWith(".map")).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            System.err.println("Cannot list levels in " + test.mapDirectory + "!");
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        AudioManager.getInstance().setEnabled(test.audio);
+        if (test.audio) {
+            try {
+                Platform.startup(() -> {
+                });
+            } catch (IllegalStateException e) {
+                // JavaFX is already running
+            }
+        }
+
+        FlowTimer.setVirtualClock(test.clock);
+        final boolean passed;
+        try {
+            passed = test.run(levels);
+        } finally {
+            FlowTimer.setVirtualClock(null);
+            if (test.audio) {
+                Platform.exit();
+            }
+        }
+
+        if (!passed) {
+            System.err.println("Soak test failed!");
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --soak [options]");
+        System.out.println("  --games <n>            Number of games to play (default: 5000)");
+        System.out.println("  --warmup <n>           Number of games played before the baseline sample (default: 500)");
+        System.out.println("  --sample <n>           Number of games between each sample (default: 500)");
+        System.out.println("  --max-heap-growth <mb> Allowed growth of the live heap (default: 8)");
+        System.out.println("  --max-thread-growth <n> Allowed growth of the thread count (default: 1)");
+        System.out.println("  --seed <n>             Seed for the moves and pipes (default: 0)");
+        System.out.println("  --maps <dir>           Directory of levels to play (default: resources/maps)");
+        System.out.println("  --audio                Play sounds");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--warmup":
+                        warmupGames = Integer.parseInt(args[++i]);
+                        break;
+                    case "--sample":
+                        sampleInterval = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-heap-growth":
+                        maxHeapGrowthMB = Long.parseLong(args[++i]);
+                        break;
+                    case "--max-thread-growth":
+                        maxThreadGrowth = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--maps":
+                        mapDirectory = Paths.get(args[++i]);
+                        break;
+                    case "--audio":
+                        audio = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return games > warmupGames && warmupGames >= 0 && sampleInterval > 0;
+    }
+
+    /**
+     * Plays all games and checks the samples.
+     *
+     * @param levels Levels to play. Randomly generated levels are played in between.
+     * @return Whether all checks pass.
+     */
+    private boolean run(@NotNull List<Path> levels) {
+        final var rng = new SplittableRandom(seed);
+
+        System.out.println(String.format("%8s %8s %10s %8s %8s %12s", "Games", "Threads", "Heap (KB)", "Sounds",
+                "Timers", "Clock (s)"));
+
+        Sample baseline = warmupGames == 0 ? sample(0) : null;
+        Sample last = baseline;
+        for (int i = 1; i <= games; ++i) {
+            final int k = i % (levels.size() + 1);
+            playGame(k == levels.size() ? null : levels.get(k), rng);
+
+            if (i == warmupGames) {
+                baseline = sample(i);
+                last = baseline;
+            } else if (i % sampleInterval == 0 || i == games) {
+                last = sample(i);
+            }
+        }
+
+        if (audio) {
+            drainSounds();
+            last = sample(games);
+        }
+
+        return check(baseline, last);
+    }
+
+    /**
+     * Plays a single game until it is won, lost or abandoned.
+     *
+     * @param level Level to play, or {@code null} to play a randomly generated level.
+     * @param rng   Source of moves and seeds.
+     */
+    private void playGame(@Nullable Path level, @NotNull SplittableRandom rng) {
+        final FXGame game;
+        if (level == null) {
+            game = new FXGame();
+        } else {
+            try {
+                // previewed as in the level selection screen, without starting the game
+                new Deserializer(level).parseFXGame();
+
+                final GameProperties prop = new Deserializer(level).parseGameFile();
+                game = new FXGame(prop.rows, prop.cols, prop.delay, prop.cells, prop.pipes, rng.nextLong(),
+                        FlowTimer.getDefaultFlowDuration(), prop.weights);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load level " + level, e);
+            }
+        }
+
+        final int rows = game.getInitialProperties().rows;
+        final int cols = game.getInitialProperties().cols;
+        final boolean[] lost = {false};
+        final var session = new GameSession(game, null, new GameSession.Listener() {
+            @Override
+            public void onLost(@NotNull GameSession s) {
+                AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
+                lost[0] = true;
+            }
+        });
+        session.start();
+
+        for (int move = 0; move < MAX_MOVES_PER_GAME && !lost[0]; ++move) {
+            final int action = rng.nextInt(20);
+            if (action == 0) {
+                game.undoStep();
+            } else if (action == 1) {
+                game.skipPipe();
+            } else {
+                game.placePipe(1 + rng.nextInt(rows - 2), 1 + rng.nextInt(cols - 2));
+                if (game.hasWon()) {
+                    AudioManager.getInstance().playSound(AudioManager.SoundRes.WIN);
+                    break;
+                }
+                AudioManager.getInstance().playSound(AudioManager.SoundRes.MOVE);
+            }
+            clock.advance(1000);
+        }
+
+        session.end();
+    }
+
+    /**
+     * Waits until all sounds have finished playing, or until {@link SoakTest#SOUND_DRAIN_TIMEOUT_MS} has elapsed.
+     */
+    private void drainSounds() {
+        final long deadline = System.currentTimeMillis() + SOUND_DRAIN_TIMEOUT_MS;
+        while (AudioManager.getInstance().getActiveSoundCount() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Samples the resources held by the process after a full GC.
+     *
+     * @param gamesPlayed Number of games played so far.
+     * @return The sample.
+     */
+    @NotNull
+    private Sample sample(int gamesPlayed) {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+
+        final var sample = new Sample(gamesPlayed, threadBean.getThreadCount(),
+                memoryBean.getHeapMemoryUsage().getUsed(), AudioManager.getInstance().getActiveSoundCount(),
+                Metrics.getInstance().getLiveFlowTimers());
+        System.out.println(String.format("%8d %8d %10d %8d %8d %12d", sample.gamesPlayed, sample.threads,
+                sample.heapBytes >> 10, sample.sounds, sample.liveTimers, clock.currentTimeMillis() / 1000));
+        return sample;
+    }
+
+    /**
+     * @param baseline Sample after the warmup games.
+     * @param last     Sample after all games.
+     * @return Whether the resources held after all games are within the tolerance of the baseline.
+     */
+    private boolean check(@NotNull Sample baseline, @NotNull Sample last) {
+        boolean passed = true;
+
+        final int threadGrowth = last.threads - baseline.threads;
+        if (threadGrowth > maxThreadGrowth) {
+            System.err.println("Thread count grew by " + threadGrowth + " after " + baseline.gamesPlayed + " games");
+            passed = false;
+        }
+
+        final long heapGrowthKB = (last.heapBytes - baseline.heapBytes) >> 10;
+        if (heapGrowthKB > maxHeapGrowthMB * 1024) {
+            System.err.println("Live heap grew by " + heapGrowthKB + " KB after " + baseline.gamesPlayed + " games");
+            passed = false;
+        }
+
+        if (last.liveTimers != 0 || clock.getScheduledCount() != 0) {
+            System.err.println(last.liveTimers + " flow timers are still running after all games have ended");
+            passed = false;
+        }
+
+        if (audio && last.sounds != 0) {
+            System.err.println(last.sounds + " media players are not released after all sounds have finished");
+            passed = false;
+        }
+
+        return passed;
+    }
+}
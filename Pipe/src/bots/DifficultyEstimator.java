@@ -0,0 +1,322 @@
+package bots;
+
+import controllers.LevelManager;
+import io.Deserializer;
+import io.DifficultyIndex;
+import io.GameProperties;
+import models.FXGame;
+import models.FlowTimer;
+import models.Simulation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Zobrist;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Estimates the difficulty of levels, and keeps the {@link DifficultyIndex} of a map directory up to date.
+ *
+ * <p>
+ * The difficulty of a level is estimated from the shortest route from a source to a sink, as found by
+ * {@link models.map.Map#getShortestRouteLength()}, and from a batch of rollouts which play the level with random pipes
+ * after the starting pipes. Every rollout places each pipe at its best open end, or skips it if there is none, and
+ * makes one move per tick until the level is won or lost. The rollouts give the fraction of games won, the number of
+ * open ends the player has to choose from, the number of pipes which have to be skipped, and how much time is left
+ * when the level is won. These are combined into a score by {@link DifficultyEstimator#combine(int, double, double,
+ * double, double)}.
+ * </p>
+ *
+ * <p>
+ * When run from the command line, every level in a directory whose hash differs from its entry in the index is
+ * estimated, in parallel over levels. Levels whose hash is unchanged keep their entry. The seed of every level is
+ * derived from its hash, so a level is given the same score regardless of the other levels in the directory.
+ * </p>
+ */
+public class DifficultyEstimator {
+
+    /**
+     * Weights of the terms of the score, which add up to 100.
+     */
+    private static final double WEIGHT_LOSSES = 50;
+    private static final double WEIGHT_SLACK = 20;
+    private static final double WEIGHT_SKIPS = 10;
+    private static final double WEIGHT_BRANCHING = 10;
+    private static final double WEIGHT_LENGTH = 10;
+
+    /**
+     * Average number of open ends at which {@link DifficultyEstimator#WEIGHT_BRANCHING} is reached.
+     */
+    private static final double MAX_BRANCHING = 4;
+    /**
+     * Route length at which {@link DifficultyEstimator#WEIGHT_LENGTH} is reached.
+     */
+    private static final double MAX_ROUTE_LENGTH = 40;
+    /**
+     * Number of moves after which a rollout is abandoned.
+     */
+    private static final int MAX_ROLLOUT_MOVES = 10_000;
+
+    @NotNull
+    private Path mapDirectory = Paths.get("resources", "maps");
+    private int rollouts = 64;
+    private long seed = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int movesPerTick = 1;
+    private int flowDuration = FlowTimer.getDefaultFlowDuration();
+    private boolean force = false;
+
+    /**
+     * Creates an estimator with the default options, which are changed by the command line arguments.
+     */
+    private DifficultyEstimator() {
+    }
+
+    public static void main(String[] args) {
+        final var estimator = new DifficultyEstimator();
+        if (!estimator.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        if (!estimator.run()) {
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --difficulty [options]");
+        System.out.println("  --maps <dir>           Directory of levels to index (default: resources/maps)");
+        System.out.println("  --rollouts <n>         Number of rollouts per level (default: 64)");
+        System.out.println("  --seed <n>             Seed combined with the hash of every level (default: 0)");
+        System.out.println("  --threads <n>          Number of levels estimated in parallel (default: number of CPUs)");
+        System.out.println("  --moves-per-tick <n>   Number of moves made between each tick (default: 1)");
+        System.out.println("  --flow-duration <n>    Number of ticks between each water flow (default: "
+                + FlowTimer.getDefaultFlowDuration() + ")");
+        System.out.println("  --force                Estimate levels whose hash is unchanged");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--maps":
+                        mapDirectory = Paths.get(args[++i]);
+                        break;
+                    case "--rollouts":
+                        rollouts = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--moves-per-tick":
+                        movesPerTick = Integer.parseInt(args[++i]);
+                        break;
+                    case "--flow-duration":
+                        flowDuration = Integer.parseInt(args[++i]);
+                        break;
+                    case "--force":
+                        force = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return rollouts > 0 && threads > 0 && movesPerTick > 0 && flowDuration > 0;
+    }
+
+    /**
+     * Estimates every level which is not indexed with its current hash, and writes the index.
+     *
+     * @return Whether the index is written.
+     */
+    private boolean run() {
+        LevelManager.getInstance().setMapDirectory(mapDirectory);
+        final List<String> levels = new ArrayList<>(LevelManager.getInstance().getLevelNames());
+        final var index = DifficultyIndex.load(mapDirectory);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            final var t = new Thread(r, "difficulty");
+            t.setDaemon(true);
+            return t;
+        });
+
+        final long start = System.nanoTime();
+        final var futures = new ArrayList<Future<DifficultyIndex.Entry>>(levels.size());
+        for (var level : levels) {
+            final var current = index.get(level);
+            futures.add(executor.submit(() -> estimateIfChanged(level, current)));
+        }
+
+        int estimated = 0;
+        int failed = 0;
+        try {
+            for (int i = 0; i < levels.size(); ++i) {
+                final var entry = futures.get(i).get();
+                if (entry == null) {
+                    ++failed;
+                } else if (entry != index.get(levels.get(i))) {
+                    ++estimated;
+                    index.put(levels.get(i), entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+        index.retainAll(levels);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        try {
+            index.save(mapDirectory);
+        } catch (IOException e) {
+            System.err.println("Cannot write difficulty index into " + mapDirectory + "!");
+            e.printStackTrace();
+            return false;
+        }
+
+        System.out.println(String.format("%d levels: %d estimated, %d unchanged, %d failed in %.3f s (%.0f levels/s)",
+                levels.size(), estimated, levels.size() - estimated - failed, failed, seconds,
+                estimated / seconds));
+        return true;
+    }
+
+    /**
+     * @param level   File name of the level.
+     * @param current Entry of the level in the index, if any.
+     * @return {@code current} if the hash of the level is unchanged, a new entry if the level is estimated, or
+     * {@code null} if the level cannot be loaded.
+     */
+    @Nullable
+    private DifficultyIndex.Entry estimateIfChanged(@NotNull String level,
+                                                    @Nullable DifficultyIndex.Entry current) {
+        final GameProperties prop;
+        try {
+            prop = new Deserializer(mapDirectory.resolve(level)).parseGameFile();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot load level " + level + "!");
+            return null;
+        }
+
+        final long hash = prop.computeHash();
+        if (!force && current != null && current.levelHash == hash) {
+            return current;
+        }
+        return estimate(prop, Zobrist.mix64(seed ^ hash));
+    }
+
+    /**
+     * Estimates the difficulty of a level.
+     *
+     * @param prop      The level.
+     * @param levelSeed Seed for the pipes of the rollouts.
+     * @return Estimated difficulty of the level.
+     */
+    @NotNull
+    private DifficultyIndex.Entry estimate(@NotNull GameProperties prop, long levelSeed) {
+        final long hash = prop.computeHash();
+        final var game = new FXGame(prop.rows, prop.cols, prop.delay, prop.cells, prop.pipes, levelSeed, flowDuration,
+                prop.weights);
+        final var view = game.getView();
+        final int routeLength = view.getShortestRouteLength();
+        if (routeLength < 0) {
+            return new DifficultyIndex.Entry(hash, 100, -1, 0, 0, 0, 0);
+        }
+
+        // ticks until the water would flow through the shortest route into the sink
+        final double horizon = Math.max(1, prop.delay + routeLength * flowDuration);
+        final var root = view.simulate(levelSeed);
+        final var rng = new SplittableRandom(levelSeed);
+
+        int wins = 0;
+        long decisions = 0;
+        long openEnds = 0;
+        long skips = 0;
+        double slack = 0;
+        for (int i = 0; i < rollouts; ++i) {
+            final Simulation sim = root.fork(rng.nextLong());
+            final int cols = sim.getCols();
+            int moves = 0;
+            int skipped = 0;
+            while (!sim.isOver() && moves < MAX_ROLLOUT_MOVES) {
+                openEnds += sim.getOpenCount();
+                ++decisions;
+
+                final int cell = sim.bestOpenCell();
+                if (cell >= 0) {
+                    sim.place(cell / cols, cell % cols);
+                } else {
+                    sim.skip();
+                    ++skipped;
+                }
+                if (++moves % movesPerTick == 0) {
+                    sim.tick();
+                }
+            }
+
+            if (sim.isWon()) {
+                ++wins;
+                skips += skipped;
+                slack += Math.max(0, horizon - moves / movesPerTick) / horizon;
+            }
+        }
+
+        final double winRate = (double) wins / rollouts;
+        final double branching = decisions == 0 ? 0 : (double) openEnds / decisions;
+        final double avgSkips = wins == 0 ? 0 : (double) skips / wins;
+        final double avgSlack = wins == 0 ? 0 : slack / wins;
+        return new DifficultyIndex.Entry(hash, combine(routeLength, winRate, branching, avgSkips, avgSlack),
+                routeLength, winRate, branching, avgSkips, avgSlack);
+    }
+
+    /**
+     * Combines the measurements of a level into a score.
+     *
+     * <p>
+     * Losses weigh the most. The skips and slack are only measured from the rollouts which won, so a level which is
+     * never won takes the full weight of both.
+     * </p>
+     *
+     * @param routeLength Number of pipes on the shortest route, which is positive.
+     * @param winRate     Fraction of the rollouts which won.
+     * @param branching   Average number of open ends.
+     * @param skips       Average number of pipes skipped to win.
+     * @param slack       Average fraction of the time left when winning.
+     * @return Score between 0 and 100.
+     */
+    static double combine(int routeLength, double winRate, double branching, double skips, double slack) {
+        final boolean won = winRate > 0;
+        double score = WEIGHT_LOSSES * (1 - winRate);
+        score += WEIGHT_SLACK * (won ? 1 - Math.min(1, slack) : 1);
+        score += WEIGHT_SKIPS * (won ? Math.min(1, skips / routeLength) : 1);
+        score += WEIGHT_BRANCHING * Math.min(1, Math.max(0, branching - 1) / (MAX_BRANCHING - 1));
+        score += WEIGHT_LENGTH * Math.min(1, routeLength / MAX_ROUTE_LENGTH);
+        return score;
+    }
+}
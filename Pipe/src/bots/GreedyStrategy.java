@@ -0,0 +1,40 @@
+package bots;
+
+import models.GameView;
+import models.HintEngine;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Places every pipe at the best placement found by the {@link HintEngine}, or skips it if the engine recommends so.
+ *
+ * <p>
+ * This is the baseline which other strategies are measured against. Every decision takes time proportional to the
+ * number of open ends of the wetted path.
+ * </p>
+ */
+public class GreedyStrategy implements Strategy {
+
+    /**
+     * Creates a strategy, as done by {@link java.util.ServiceLoader}.
+     */
+    public GreedyStrategy() {
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "greedy";
+    }
+
+    @NotNull
+    @Override
+    public Move decide(@NotNull GameView view) {
+        final var hints = view.getHints(1);
+        if (hints.skipRecommended || hints.placements.isEmpty()) {
+            return Move.skip();
+        }
+
+        final var best = hints.placements.get(0);
+        return Move.place(best.row, best.col);
+    }
+}
@@ -0,0 +1,427 @@
+package bots;
+
+import models.GameView;
+import models.HintEngine;
+import models.Simulation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Decides every move by Monte Carlo tree search over {@link Simulation}s of the game.
+ *
+ * <p>
+ * The tree branches on the placements of the pipes displayed in the queue, as the pipes after them are not known to the
+ * player. Each node only considers the placements which the {@link HintEngine} scores higher than an idle placement,
+ * one idle placement, and skipping the pipe. Below the tree, every rollout plays on with random pipes, placing each pipe
+ * at its best open end and occasionally skipping it at random, until the game is won or lost.
+ * </p>
+ *
+ * <p>
+ * Rollouts run in parallel on all cores and share a single tree without locking. Every node keeps its visit count and
+ * total reward in atomic fields, and children are attached to a node by a single compare-and-set. A rollout counts its
+ * visit when it descends through a node but only adds its reward when it finishes, so that a rollout in flight counts as
+ * a loss (a virtual loss), which steers concurrent rollouts towards other branches. Each worker forks its own copy of
+ * the game once per move, and then forks that copy for every rollout, so no simulation is shared between threads.
+ * </p>
+ *
+ * <p>
+ * The search of each move stops after a time budget, so that the strategy can keep up with the flow of water when
+ * played in real time, or after a number of rollouts. Both are set by system properties when the strategy is created
+ * with the no-argument constructor:
+ * </p>
+ * <ul>
+ *     <li>{@code bots.mcts.budgetMillis}: time budget per move in milliseconds, or 0 for none (default: 10)</li>
+ *     <li>{@code bots.mcts.rollouts}: maximum number of rollouts per move, or 0 for no limit (default: 0)</li>
+ *     <li>{@code bots.mcts.threads}: number of threads searching each move (default: number of CPUs)</li>
+ *     <li>{@code bots.mcts.movesPerTick}: number of moves made between each tick of the game (default: 1)</li>
+ * </ul>
+ */
+public class MctsStrategy implements Strategy {
+
+    /**
+     * Action of a node which skips the pipe.
+     */
+    private static final int SKIP = -1;
+    /**
+     * Maximum number of placements considered at each node, excluding skipping.
+     */
+    private static final int MAX_PLACEMENTS = 6;
+    /**
+     * Exploration constant of UCT.
+     */
+    private static final double EXPLORATION = 0.7;
+    /**
+     * Rewards are accumulated as fixed-point numbers with this scale.
+     */
+    private static final long REWARD_SCALE = 1L << 20;
+    /**
+     * Reward lost for every move it takes to win, so that faster wins are preferred.
+     */
+    private static final double REWARD_PER_MOVE = 1e-3;
+    /**
+     * Number of moves after which a rollout is abandoned without reward.
+     */
+    private static final int MAX_ROLLOUT_MOVES = 1000;
+    /**
+     * A rollout skips a pipe instead of placing it at its best open end with a probability of one in this.
+     */
+    private static final int ROLLOUT_SKIP_ODDS = 8;
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Threads shared by all instances, so that the number of threads does not grow with the number of games played at
+     * once.
+     */
+    @NotNull
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(CPUS, r -> {
+        final var t = new Thread(r, "mcts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final long budgetNanos;
+    private final int maxRollouts;
+    private final int threads;
+    private final int movesPerTick;
+
+    @NotNull
+    private SplittableRandom rng = new SplittableRandom(0);
+
+    /**
+     * A node of the search tree, for the state reached by the moves from the root to the node.
+     */
+    private static final class Node {
+        private static final AtomicIntegerFieldUpdater<Node> VISITS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+        private static final AtomicLongFieldUpdater<Node> REWARD =
+                AtomicLongFieldUpdater.newUpdater(Node.class, "reward");
+        private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+
+        /**
+         * Flattened index of the cell the pipe is placed on to reach this node, or {@link MctsStrategy#SKIP}.
+         */
+        final int action;
+        /**
+         * Number of rollouts which have descended through this node, including those still in flight.
+         */
+        volatile int visits = 0;
+        /**
+         * Total reward of the finished rollouts, scaled by {@link MctsStrategy#REWARD_SCALE}.
+         */
+        volatile long reward = 0;
+        /**
+         * Children of this node, or {@code null} if the node has not been expanded yet.
+         */
+        @Nullable
+        volatile Node[] children = null;
+
+        Node(int action) {
+            this.action = action;
+        }
+
+        /**
+         * Sets the children of this node, unless another thread has already done so.
+         *
+         * @param expanded Children to set.
+         * @return The children of this node.
+         */
+        @NotNull
+        Node[] expand(@NotNull Node[] expanded) {
+            if (CHILDREN.compareAndSet(this, null, expanded)) {
+                return expanded;
+            }
+            return children;
+        }
+
+        void addVisit() {
+            VISITS.incrementAndGet(this);
+        }
+
+        void addReward(long scaledReward) {
+            REWARD.addAndGet(this, scaledReward);
+        }
+    }
+
+    /**
+     * Creates a strategy configured by system properties.
+     */
+    public MctsStrategy() {
+        this(Long.getLong("bots.mcts.budgetMillis", 10), Integer.getInteger("bots.mcts.rollouts", 0),
+                Integer.getInteger("bots.mcts.threads", CPUS), Integer.getInteger("bots.mcts.movesPerTick", 1));
+    }
+
+    /**
+     * @param budgetMillis Time budget of the search of each move in milliseconds, or 0 for no time budget.
+     * @param maxRollouts  Maximum number of rollouts of each move, or 0 for no limit.
+     * @param threads      Number of threads searching each move.
+     * @param movesPerTick Number of moves made between each tick of the game.
+     * @throws IllegalArgumentException if the search is unbounded, or a count is not positive.
+     */
+    public MctsStrategy(long budgetMillis, int maxRollouts, int threads, int movesPerTick) {
+        if (budgetMillis < 0 || maxRollouts < 0 || (budgetMillis == 0 && maxRollouts == 0)) {
+            throw new IllegalArgumentException("Search of each move must be bounded by time or rollouts");
+        }
+        if (threads <= 0 || movesPerTick <= 0) {
+            throw new IllegalArgumentException("Number of threads and moves per tick must be positive");
+        }
+
+        this.budgetNanos = budgetMillis * 1_000_000;
+        this.maxRollouts = maxRollouts;
+        this.threads = threads;
+        this.movesPerTick = movesPerTick;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "mcts";
+    }
+
+    @Override
+    public void begin(@NotNull GameView view, long seed) {
+        rng = new SplittableRandom(seed);
+    }
+
+    @NotNull
+    @Override
+    public Move decide(@NotNull GameView view) {
+        final long deadline = System.nanoTime() + budgetNanos;
+        final var snapshot = view.simulate(rng.nextLong());
+        final int cols = snapshot.getCols();
+
+        final var root = new Node(SKIP);
+        final var candidates = root.expand(expand(snapshot));
+        if (candidates.length == 1) {
+            return toMove(candidates[0].action, cols);
+        }
+        final int winning = findWinningPlacement(snapshot, candidates);
+        if (winning != SKIP) {
+            return toMove(winning, cols);
+        }
+
+        final var rollouts = new AtomicInteger();
+        final var futures = new ArrayList<Future<?>>(threads - 1);
+        for (int t = 1; t < threads; ++t) {
+            final var copy = snapshot.fork(rng.nextLong());
+            final var workerRng = rng.split();
+            futures.add(WORKERS.submit(() -> search(root, copy, workerRng, deadline, rollouts)));
+        }
+        search(root, snapshot.fork(rng.nextLong()), rng.split(), deadline, rollouts);
+
+        try {
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+
+        return toMove(mostVisited(candidates).action, cols);
+    }
+
+    /**
+     * @param action Action of a node.
+     * @param cols   Number of columns of the map.
+     * @return Move of the action.
+     */
+    @NotNull
+    private static Move toMove(int action, int cols) {
+        return action == SKIP ? Move.skip() : Move.place(action / cols, action % cols);
+    }
+
+    /**
+     * @param snapshot   State of the game.
+     * @param candidates Children of the root.
+     * @return Action of a placement which wins the game immediately, or {@link MctsStrategy#SKIP} if there is none.
+     */
+    private int findWinningPlacement(@NotNull Simulation snapshot, @NotNull Node[] candidates) {
+        final int cols = snapshot.getCols();
+        for (var child : candidates) {
+            if (child.action == SKIP) {
+                continue;
+            }
+            final var sim = snapshot.fork(0);
+            if (sim.place(child.action / cols, child.action % cols) && sim.isWon()) {
+                return child.action;
+            }
+        }
+        return SKIP;
+    }
+
+    /**
+     * @param children Children of a node.
+     * @return The child with the most visits, preferring the higher mean reward among children with as many visits.
+     */
+    @NotNull
+    private static Node mostVisited(@NotNull Node[] children) {
+        Node best = children[0];
+        for (var child : children) {
+            if (child.visits > best.visits
+                    || (child.visits == best.visits && child.reward > best.reward)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs rollouts from the root until the budget of the move is used up.
+     *
+     * @param root     Root of the tree.
+     * @param copy     State of the game at the root, used only by this worker.
+     * @param rng      Random number generator of this worker.
+     * @param deadline {@link System#nanoTime()} at which to stop, if there is a time budget.
+     * @param rollouts Number of rollouts started by all workers.
+     */
+    private void search(@NotNull Node root, @NotNull Simulation copy, @NotNull SplittableRandom rng, long deadline,
+                        @NotNull AtomicInteger rollouts) {
+        final int maxDepth = Simulation.getKnownPipes();
+        final var path = new Node[maxDepth + 1];
+
+        while ((budgetNanos == 0 || System.nanoTime() - deadline < 0)
+                && (maxRollouts == 0 || rollouts.getAndIncrement() < maxRollouts)) {
+            final var sim = copy.fork(rng.nextLong());
+            final int cols = sim.getCols();
+
+            // selection and expansion
+            var node = root;
+            node.addVisit();
+            path[0] = node;
+            int depth = 0;
+            int moves = 0;
+            while (!sim.isOver()) {
+                var children = node.children;
+                if (children == null) {
+                    if (depth == maxDepth || (node.visits < 2 && depth > 0)) {
+                        break;
+                    }
+                    children = node.expand(expand(sim));
+                }
+
+                node = select(node, children);
+                node.addVisit();
+                path[++depth] = node;
+                apply(sim, node.action, cols);
+                if (++moves % movesPerTick == 0) {
+                    sim.tick();
+                }
+            }
+
+            final long reward = Math.round(rollout(sim, moves, rng) * REWARD_SCALE);
+            for (int i = 0; i <= depth; ++i) {
+                path[i].addReward(reward);
+            }
+        }
+    }
+
+    /**
+     * Finds the actions to consider in a state.
+     *
+     * @param sim State to expand.
+     * @return A child for every action to consider, of which there is at least one.
+     */
+    @NotNull
+    private static Node[] expand(@NotNull Simulation sim) {
+        final var hints = sim.getHints(MAX_PLACEMENTS);
+        final int cols = sim.getCols();
+
+        final var children = new ArrayList<Node>(MAX_PLACEMENTS + 1);
+        for (var placement : hints.placements) {
+            if (placement.score < HintEngine.SCORE_IDLE_LIVE) {
+                break;
+            }
+            children.add(new Node(placement.row * cols + placement.col));
+            if (placement.score == HintEngine.SCORE_IDLE_LIVE) {
+                // all idle placements lead to the same outcome, so one of them is enough
+                break;
+            }
+        }
+        children.add(new Node(SKIP));
+        return children.toArray(new Node[0]);
+    }
+
+    /**
+     * Selects the child to descend into by UCT, counting rollouts in flight as losses.
+     *
+     * @param parent   Node to descend from.
+     * @param children Children of the node.
+     * @return The selected child.
+     */
+    @NotNull
+    private static Node select(@NotNull Node parent, @NotNull Node[] children) {
+        final double logVisits = Math.log(Math.max(1, parent.visits));
+        Node best = children[0];
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (var child : children) {
+            final int visits = child.visits;
+            if (visits == 0) {
+                return child;
+            }
+            final double value = (double) child.reward / REWARD_SCALE / visits
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Applies an action to a simulation.
+     *
+     * @param sim    Simulation to apply to.
+     * @param action Action to apply.
+     * @param cols   Number of columns of the map.
+     */
+    private static void apply(@NotNull Simulation sim, int action, int cols) {
+        if (action == SKIP) {
+            sim.skip();
+        } else {
+            sim.place(action / cols, action % cols);
+        }
+    }
+
+    /**
+     * Plays a simulation until the game is over, placing each pipe at its best open end.
+     *
+     * @param sim   Simulation to play.
+     * @param moves Number of moves made in the simulation so far.
+     * @param rng   Random number generator of the worker.
+     * @return Reward of the outcome, between 0 for a loss and 1 for an immediate win.
+     */
+    private double rollout(@NotNull Simulation sim, int moves, @NotNull SplittableRandom rng) {
+        final int cols = sim.getCols();
+        while (!sim.isOver() && moves < MAX_ROLLOUT_MOVES) {
+            final int index = sim.bestOpenCell();
+            if (index >= 0 && rng.nextInt(ROLLOUT_SKIP_ODDS) != 0) {
+                sim.place(index / cols, index % cols);
+            } else {
+                sim.skip();
+            }
+            if (++moves % movesPerTick == 0) {
+                sim.tick();
+            }
+        }
+
+        if (!sim.isWon()) {
+            return 0;
+        }
+        return Math.max(0.5, 1 - moves * REWARD_PER_MOVE);
+    }
+}
@@ -0,0 +1,73 @@
+package bots;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A move decided by a {@link Strategy}.
+ *
+ * <p>
+ * Skips and undos have no parameters, so they are shared instances, and deciding them does not allocate.
+ * </p>
+ */
+public final class Move {
+
+    /**
+     * Kind of a move.
+     */
+    public enum Kind {
+        PLACE, SKIP, UNDO
+    }
+
+    @NotNull
+    private static final Move SKIP = new Move(Kind.SKIP, -1, -1);
+    @NotNull
+    private static final Move UNDO = new Move(Kind.UNDO, -1, -1);
+
+    @NotNull
+    public final Kind kind;
+    /**
+     * Row to place the next pipe at, or {@code -1} if this move is not a placement.
+     */
+    public final int row;
+    /**
+     * Column to place the next pipe at, or {@code -1} if this move is not a placement.
+     */
+    public final int col;
+
+    private Move(@NotNull Kind kind, int row, int col) {
+        this.kind = kind;
+        this.row = row;
+        this.col = col;
+    }
+
+    /**
+     * @param row Row to place the next pipe at.
+     * @param col Column to place the next pipe at.
+     * @return A move which places the next pipe at the given cell.
+     */
+    @NotNull
+    public static Move place(int row, int col) {
+        return new Move(Kind.PLACE, row, col);
+    }
+
+    /**
+     * @return A move which skips the next pipe.
+     */
+    @NotNull
+    public static Move skip() {
+        return SKIP;
+    }
+
+    /**
+     * @return A move which undoes the last placed pipe.
+     */
+    @NotNull
+    public static Move undo() {
+        return UNDO;
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.PLACE ? "place (" + row + ", " + col + ")" : kind.name().toLowerCase();
+    }
+}
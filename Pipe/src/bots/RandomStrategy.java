@@ -0,0 +1,54 @@
+package bots;
+
+import models.GameView;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.SplittableRandom;
+
+/**
+ * Places every pipe on a random cell which may lie on a route from a source to a sink.
+ *
+ * <p>
+ * This is the lower bound which any strategy should beat.
+ * </p>
+ */
+public class RandomStrategy implements Strategy {
+
+    /**
+     * Number of cells tried before the pipe is skipped.
+     */
+    private static final int MAX_TRIES = 64;
+
+    @NotNull
+    private SplittableRandom rng = new SplittableRandom(0);
+
+    /**
+     * Creates a strategy, as done by {@link java.util.ServiceLoader}.
+     */
+    public RandomStrategy() {
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "random";
+    }
+
+    @Override
+    public void begin(@NotNull GameView view, long seed) {
+        rng = new SplittableRandom(seed);
+    }
+
+    @NotNull
+    @Override
+    public Move decide(@NotNull GameView view) {
+        for (int i = 0; i < MAX_TRIES; ++i) {
+            final int row = rng.nextInt(view.getRows());
+            final int col = rng.nextInt(view.getCols());
+            if (view.isLiveCell(row, col) && view.getShapeAt(row, col) == null) {
+                return Move.place(row, col);
+            }
+        }
+        return Move.skip();
+    }
+}
@@ -0,0 +1,47 @@
+package bots;
+
+import models.GameView;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A bot which plays the game by deciding one move at a time.
+ *
+ * <p>
+ * Strategies are discovered with {@link java.util.ServiceLoader}, so a strategy must be declared as a provider of this
+ * interface in the {@code module-info.java} of its module, and must have a public no-argument constructor. A new
+ * instance is created for every game, so a strategy may keep state between the moves of a game, but is never used by
+ * two games at once.
+ * </p>
+ */
+public interface Strategy {
+
+    /**
+     * @return Name of this strategy, as displayed in the tournament table. Names must be unique.
+     */
+    @NotNull
+    String getName();
+
+    /**
+     * Invoked once before the first move of a game.
+     *
+     * @param view View of the game.
+     * @param seed Seed for any randomness used by this strategy, which is the same for every strategy playing the same
+     *             level.
+     */
+    default void begin(@NotNull GameView view, long seed) {
+    }
+
+    /**
+     * Decides the next move.
+     *
+     * <p>
+     * The game only changes between invocations, by applying the returned move and advancing the clock. A placement
+     * which is not legal wastes the move without changing the game.
+     * </p>
+     *
+     * @param view View of the game.
+     * @return The next move.
+     */
+    @NotNull
+    Move decide(@NotNull GameView view);
+}
@@ -0,0 +1,359 @@
+package bots;
+
+import controllers.LevelManager;
+import io.Deserializer;
+import io.GameProperties;
+import models.FXGame;
+import models.FlowTimer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Plays every {@link Strategy} against every level in a directory, and prints the strategies ranked by their results.
+ *
+ * <p>
+ * Strategies are discovered with {@link ServiceLoader}, and levels are listed by {@link LevelManager}. Every game is
+ * played on its own virtual clock: the strategy makes a fixed number of moves per tick, after which the game is
+ * advanced by one tick immediately, as when replaying a game. Games therefore do not wait in real time, do not share
+ * any timer, and are played in parallel. All strategies play a level with the same pipe queue seed, so they are given
+ * the same pipes in the same order.
+ * </p>
+ *
+ * <p>
+ * Strategies are ranked by the number of levels won, then by the total number of ticks taken to win them.
+ * </p>
+ */
+public class TournamentRunner {
+
+    @NotNull
+    private Path mapDirectory = Paths.get("resources", "maps");
+    private long seed = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int movesPerTick = 1;
+    private int maxTicks = 10_000;
+    private int flowDuration = FlowTimer.getDefaultFlowDuration();
+    @Nullable
+    private List<String> strategyNames = null;
+
+    /**
+     * Creates a runner with the default options, which are changed by the command line arguments.
+     */
+    private TournamentRunner() {
+    }
+
+    /**
+     * Result of a single game.
+     */
+    private static class GameResult {
+        final boolean won;
+        final boolean lost;
+        final boolean failed;
+        final int ticks;
+        final int steps;
+        final long moves;
+
+        GameResult(boolean won, boolean lost, boolean failed, int ticks, int steps, long moves) {
+            this.won = won;
+            this.lost = lost;
+            this.failed = failed;
+            this.ticks = ticks;
+            this.steps = steps;
+            this.moves = moves;
+        }
+    }
+
+    /**
+     * Accumulated results of a strategy.
+     */
+    private static class Standing {
+        @NotNull
+        final String name;
+        int games = 0;
+        int wins = 0;
+        int losses = 0;
+        int abandoned = 0;
+        int failures = 0;
+        long winTicks = 0;
+        long steps = 0;
+        long moves = 0;
+
+        Standing(@NotNull String name) {
+            this.name = name;
+        }
+
+        void add(@NotNull GameResult result) {
+            ++games;
+            if (result.failed) {
+                ++failures;
+            } else if (result.won) {
+                ++wins;
+                winTicks += result.ticks;
+            } else if (result.lost) {
+                ++losses;
+            } else {
+                ++abandoned;
+            }
+            steps += result.steps;
+            moves += result.moves;
+        }
+    }
+
+    public static void main(String[] args) {
+        final var runner = new TournamentRunner();
+        if (!runner.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        if (!runner.run()) {
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --tournament [options]");
+        System.out.println("  --maps <dir>           Directory of levels to play (default: resources/maps)");
+        System.out.println("  --strategies <a,b,..>  Names of the strategies to play (default: all)");
+        System.out.println("  --seed <n>             Seed for the pipes of every level (default: 0)");
+        System.out.println("  --threads <n>          Number of games played in parallel (default: number of CPUs)");
+        System.out.println("  --moves-per-tick <n>   Number of moves made between each tick (default: 1)");
+        System.out.println("  --max-ticks <n>        Number of ticks after which a game is abandoned (default: 10000)");
+        System.out.println("  --flow-duration <n>    Number of ticks between each water flow (default: "
+                + FlowTimer.getDefaultFlowDuration() + ")");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--maps":
+                        mapDirectory = Paths.get(args[++i]);
+                        break;
+                    case "--strategies":
+                        strategyNames = Arrays.asList(args[++i].split(","));
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--moves-per-tick":
+                        movesPerTick = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-ticks":
+                        maxTicks = Integer.parseInt(args[++i]);
+                        break;
+                    case "--flow-duration":
+                        flowDuration = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return threads > 0 && movesPerTick > 0 && maxTicks > 0 && flowDuration > 0;
+    }
+
+    /**
+     * Plays all games and prints the table.
+     *
+     * @return Whether any game is played.
+     */
+    private boolean run() {
+        final var providers = findStrategies();
+        if (providers.isEmpty()) {
+            System.err.println("No strategies found!");
+            return false;
+        }
+
+        LevelManager.getInstance().setMapDirectory(mapDirectory);
+        final List<Path> levels = LevelManager.getInstance().getLevelNames().stream()
+                .map(mapDirectory::resolve)
+                .collect(Collectors.toList());
+        if (levels.isEmpty()) {
+            System.err.println("No levels found in " + mapDirectory + "!");
+            return false;
+        }
+
+        // the same seed for every strategy playing a level
+        final var rng = new SplittableRandom(seed);
+        final long[] levelSeeds = new long[levels.size()];
+        for (int i = 0; i < levelSeeds.length; ++i) {
+            levelSeeds[i] = rng.nextLong();
+        }
+
+        final var standings = new ArrayList<Standing>();
+        final var futures = new ArrayList<List<Future<GameResult>>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            final var t = new Thread(r, "tournament");
+            t.setDaemon(true);
+            return t;
+        });
+
+        final long start = System.nanoTime();
+        try {
+            for (var entry : providers.entrySet()) {
+                final var provider = entry.getValue();
+                standings.add(new Standing(entry.getKey()));
+                final var games = new ArrayList<Future<GameResult>>();
+                for (int i = 0; i < levels.size(); ++i) {
+                    final var level = levels.get(i);
+                    final long levelSeed = levelSeeds[i];
+                    games.add(executor.submit(() -> play(provider.get(), level, levelSeed)));
+                }
+                futures.add(games);
+            }
+
+            for (int s = 0; s < standings.size(); ++s) {
+                for (var future : futures.get(s)) {
+                    standings.get(s).add(future.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        printTable(standings, levels.size(), elapsed);
+        return true;
+    }
+
+    /**
+     * @return Providers of all strategies to play by name, in the order of their names.
+     */
+    @NotNull
+    private TreeMap<String, ServiceLoader.Provider<Strategy>> findStrategies() {
+        final var providers = new TreeMap<String, ServiceLoader.Provider<Strategy>>();
+        ServiceLoader.load(Strategy.class).stream().forEach(provider -> {
+            final String name = provider.get().getName();
+            if (providers.containsKey(name)) {
+                System.err.println("Duplicate strategy " + name + " from " + provider.type().getName() + "!");
+            } else if (strategyNames == null || strategyNames.contains(name)) {
+                providers.put(name, provider);
+            }
+        });
+        return providers;
+    }
+
+    /**
+     * Plays a strategy against a level until the game is won, lost or abandoned.
+     *
+     * @param strategy  Strategy to play.
+     * @param level     Path to the level.
+     * @param levelSeed Seed for the pipes and the strategy.
+     * @return Result of the game.
+     */
+    @NotNull
+    private GameResult play(@NotNull Strategy strategy, @NotNull Path level, long levelSeed) {
+        final FXGame game;
+        try {
+            final GameProperties prop = new Deserializer(level).parseGameFile();
+            game = new FXGame(prop.rows, prop.cols, prop.delay, prop.cells, prop.pipes, levelSeed, flowDuration,
+                    prop.weights);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot load level " + level + "!");
+            e.printStackTrace();
+            return new GameResult(false, false, true, 0, 0, 0);
+        }
+        game.addOnFlowHandler(game::updateState);
+
+        final var view = game.getView();
+        int ticks = 0;
+        long moves = 0;
+        boolean won = false;
+        boolean lost = false;
+        try {
+            strategy.begin(view, levelSeed);
+            while (ticks < maxTicks && !won && !lost) {
+                for (int i = 0; i < movesPerTick && !won; ++i) {
+                    final var move = strategy.decide(view);
+                    ++moves;
+                    switch (move.kind) {
+                        case PLACE:
+                            game.placePipe(move.row, move.col);
+                            won = game.hasWon();
+                            break;
+                        case SKIP:
+                            game.skipPipe();
+                            break;
+                        case UNDO:
+                            game.undoStep();
+                            break;
+                    }
+                }
+                if (!won) {
+                    game.tick();
+                    ++ticks;
+                    lost = game.hasLost();
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Strategy " + strategy.getName() + " failed on level " + level + "!");
+            e.printStackTrace();
+            return new GameResult(false, false, true, ticks, game.getNumOfSteps().get(), moves);
+        }
+
+        return new GameResult(won, lost, false, ticks, game.getNumOfSteps().get(), moves);
+    }
+
+    /**
+     * Prints the strategies ranked by their results.
+     *
+     * @param standings    Results of every strategy.
+     * @param levels       Number of levels played by every strategy.
+     * @param elapsedNanos Duration of the tournament.
+     */
+    private static void printTable(@NotNull List<Standing> standings, int levels, long elapsedNanos) {
+        final var ranked = new ArrayList<>(standings);
+        ranked.sort(Comparator.<Standing>comparingInt(s -> -s.wins)
+                .thenComparingLong(s -> s.winTicks)
+                .thenComparing(s -> s.name));
+
+        System.out.println(String.format("%4s %-20s %6s %6s %6s %9s %6s %10s %10s", "Rank", "Strategy", "Games",
+                "Wins", "Lost", "Abandoned", "Failed", "Avg ticks", "Avg steps"));
+        long totalMoves = 0;
+        for (int i = 0; i < ranked.size(); ++i) {
+            final var s = ranked.get(i);
+            totalMoves += s.moves;
+            System.out.println(String.format("%4d %-20s %6d %6d %6d %9d %6d %10.1f %10.1f", i + 1, s.name, s.games,
+                    s.wins, s.losses, s.abandoned, s.failures, s.wins == 0 ? 0.0 : (double) s.winTicks / s.wins,
+                    s.games == 0 ? 0.0 : (double) s.steps / s.games));
+        }
+
+        final double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format("%d levels, %d moves in %.3f s (%.0f moves/s)", levels, totalMoves, seconds,
+                totalMoves / seconds));
+    }
+}
@@ -4,8 +4,9 @@ import javafx.scene.media.Media;
 import javafx.scene.media.MediaException;
 import javafx.scene.media.MediaPlayer;
 
-import java.util.HashSet;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -15,13 +16,22 @@ public class AudioManager {
 
     private static final AudioManager INSTANCE = new AudioManager();
     /**
-     * Set of all currently playing sounds.
+     * Maximum number of sounds playing at once. The oldest sound is stopped when another one is played, so that rapid
+     * moves cannot accumulate players faster than they finish.
+     */
+    private static final int MAX_CONCURRENT_SOUNDS = 8;
+    /**
+     * Set of all currently playing sounds, in the order they are played.
      *
      * <p>
      * Use this to keep a reference to the sound until it finishes playing.
      * </p>
      */
-    private final Set<MediaPlayer> soundPool = new HashSet<>();
+    private final Set<MediaPlayer> soundPool = new LinkedHashSet<>();
+    /**
+     * Parsed sound resources, which are shared by all players of the same sound.
+     */
+    private final Map<String, Media> mediaCache = new HashMap<>();
     private boolean enabled = true;
 
     /**
@@ -73,19 +83,69 @@ public class AudioManager {
         if(!this.enabled){
             return;
         }
-        Media sound=new Media(ResourceLoader.getResource
-                        ("assets/audio/"+name+".mp3"));
-        MediaPlayer player=new MediaPlayer(sound);
-        player.onEndOfMediaProperty().setValue(
-                ()->{
-                    this.soundPool.remove(player);
-                    player.dispose();
-                }
-        );
-        this.soundPool.add(player);
+
+        final MediaPlayer player;
+        try {
+            player = new MediaPlayer(getMedia(name));
+        } catch (MediaException e) {
+            e.printStackTrace();
+            return;
+        }
+        final Runnable release = () -> release(player);
+        player.setOnEndOfMedia(release);
+        player.setOnStopped(release);
+        player.setOnError(release);
+
+        MediaPlayer evicted = null;
+        synchronized (soundPool) {
+            if (soundPool.size() >= MAX_CONCURRENT_SOUNDS) {
+                evicted = soundPool.iterator().next();
+                soundPool.remove(evicted);
+            }
+            soundPool.add(player);
+        }
+        if (evicted != null) {
+            evicted.dispose();
+        }
         player.play();
     }
 
+    /**
+     * @param name the name of the sound file, excluding .mp3
+     * @return The parsed sound resource.
+     * @throws MediaException if the sound resource cannot be parsed.
+     */
+    private Media getMedia(final String name) {
+        synchronized (mediaCache) {
+            return mediaCache.computeIfAbsent(name, n -> new Media(ResourceLoader.getResource("assets/audio/" + n + ".mp3")));
+        }
+    }
+
+    /**
+     * Removes a player from {@link AudioManager#soundPool} and releases its native resources, if it has not been
+     * released already.
+     *
+     * @param player Player to release.
+     */
+    private void release(final MediaPlayer player) {
+        final boolean removed;
+        synchronized (soundPool) {
+            removed = soundPool.remove(player);
+        }
+        if (removed) {
+            player.dispose();
+        }
+    }
+
+    /**
+     * @return Number of players which are holding native resources, i.e. playing or waiting to be released.
+     */
+    public int getActiveSoundCount() {
+        synchronized (soundPool) {
+            return soundPool.size();
+        }
+    }
+
     /**
      * Plays a sound.
      *
@@ -0,0 +1,174 @@
+package controllers;
+
+import io.MoveLog;
+import io.ReplayRecorder;
+import models.FXGame;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Lifecycle of a single game being played, from the start of the countdown until the game is ended.
+ *
+ * <p>
+ * The session registers the tick and flow handlers of the game, and forwards them to a {@link Listener} while the
+ * session is active. Once {@link GameSession#end()} is invoked, the timer of the game is stopped, the recording is
+ * finished, the move log is closed, and handlers which are already in flight no longer reach the listener, so that a
+ * game which has been replaced can neither update the screen nor keep the listener alive.
+ * </p>
+ */
+public class GameSession {
+
+    /**
+     * Receives the events of a session. All methods are invoked on the thread running the timer of the game.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked when a tick has passed.
+         *
+         * @param session Session of the game.
+         */
+        default void onTick(@NotNull GameSession session) {
+        }
+
+        /**
+         * Invoked when the water has flowed into an additional tile, after the state of the game is updated.
+         *
+         * @param session Session of the game.
+         */
+        default void onFlow(@NotNull GameSession session) {
+        }
+
+        /**
+         * Invoked when the game is lost because the water cannot flow any further.
+         *
+         * @param session Session of the game.
+         */
+        default void onLost(@NotNull GameSession session) {
+        }
+    }
+
+    @NotNull
+    private final FXGame game;
+    @Nullable
+    private final ReplayRecorder recorder;
+    @Nullable
+    private final MoveLog moveLog;
+
+    private volatile boolean active = true;
+
+    /**
+     * @param game     Game to play.
+     * @param recorder Recorder to record the game into, or {@code null} if the game is not recorded.
+     * @param listener Listener of the events of the game.
+     */
+    public GameSession(@NotNull FXGame game, @Nullable ReplayRecorder recorder, @NotNull Listener listener) {
+        this(game, recorder, null, listener);
+    }
+
+    /**
+     * @param game     Game to play.
+     * @param recorder Recorder to record the game into, or {@code null} if the game is not recorded.
+     * @param moveLog  Move log to autosave the game with, or {@code null} if the game is not autosaved.
+     * @param listener Listener of the events of the game.
+     */
+    public GameSession(@NotNull FXGame game, @Nullable ReplayRecorder recorder, @Nullable MoveLog moveLog,
+                       @NotNull Listener listener) {
+        this.game = game;
+        this.recorder = recorder;
+        this.moveLog = moveLog;
+
+        game.addOnTickHandler(() -> {
+            if (active) {
+                listener.onTick(this);
+            }
+        });
+        game.addOnFlowHandler(() -> {
+            if (!active) {
+                return;
+            }
+            game.updateState();
+            listener.onFlow(this);
+            if (game.hasLost()) {
+                listener.onLost(this);
+            }
+        });
+        if (recorder != null) {
+            game.setRecorder(recorder);
+        }
+        if (moveLog != null) {
+            game.setMoveLog(moveLog);
+        }
+    }
+
+    /**
+     * Starts the flow of water.
+     */
+    public void start() {
+        game.startCountdown();
+    }
+
+    /**
+     * Ends the session, stopping the flow of water and finishing the recording.
+     *
+     * <p>
+     * Ending a session which has already ended has no effect.
+     * </p>
+     */
+    public void end() {
+        end(false);
+    }
+
+    /**
+     * Ends the session, stopping the flow of water and finishing the recording.
+     *
+     * <p>
+     * If {@code keepMoveLog} is set, the files of the move log are kept so that the game can still be recovered, until
+     * {@link MoveLog#deleteFiles()} is invoked on {@link GameSession#getMoveLog()}. Ending a session which has already
+     * ended has no effect.
+     * </p>
+     *
+     * @param keepMoveLog Whether to keep the files of the move log.
+     */
+    public void end(boolean keepMoveLog) {
+        if (!active) {
+            return;
+        }
+        active = false;
+
+        game.stopCountdown();
+        // a tick which is already running holds the lock of the game, and is recorded before the recording ends
+        synchronized (game) {
+            if (recorder != null) {
+                game.setRecorder(null);
+                recorder.finish(game);
+            }
+            if (moveLog != null) {
+                game.setMoveLog(null);
+            }
+        }
+        if (moveLog != null) {
+            moveLog.close(!keepMoveLog);
+        }
+    }
+
+    /**
+     * @return Whether the session has not ended.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return Move log of the game, or {@code null} if the game is not autosaved.
+     */
+    @Nullable
+    public MoveLog getMoveLog() {
+        return moveLog;
+    }
+
+    @NotNull
+    public FXGame getGame() {
+        return game;
+    }
+}
@@ -1,5 +1,6 @@
 package controllers;
 //done
+import io.DifficultyIndex;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
@@ -7,12 +8,14 @@ import javafx.collections.ObservableList;
 import javafx.scene.control.Alert;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import util.jfr.LevelScanEvent;
 
 import java.io.IOException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -47,6 +50,16 @@ public class LevelManager {
     @NotNull
     private Path mapDirectory = Paths.get("");
 
+    /**
+     * Estimated difficulty of the levels in {@link LevelManager#mapDirectory}, loaded with the level names.
+     */
+    @NotNull
+    private DifficultyIndex difficulties = new DifficultyIndex();
+    /**
+     * Whether {@link LevelManager#levelNames} is sorted by difficulty instead of by name.
+     */
+    private boolean sortByDifficulty = false;
+
     private LevelManager() {
         setMapDirectory(mapDirectory);
     }
@@ -85,6 +98,9 @@ public class LevelManager {
      */
     private void loadLevelNamesFromDisk() {
         // TODO
+        final var event = new LevelScanEvent();
+        event.begin();
+
         try(Stream<Path> f=Files.walk(this.mapDirectory,1)){
             Stream<Path> files=f.filter(e-> e.toFile().isFile());
             if(files!=null){
@@ -92,6 +108,10 @@ public class LevelManager {
                         filter(e->e.endsWith(".map")).
                         sorted(String::compareTo).
                         collect(Collectors.toList());
+                this.difficulties = DifficultyIndex.load(this.mapDirectory);
+                if (this.sortByDifficulty) {
+                    maps.sort(byDifficulty());
+                }
                 this.levelNames.clear();
                 this.levelNames.addAll(maps);
             }
@@ -102,6 +122,13 @@ public class LevelManager {
             a.setHeaderText("cannot load level names from disk");
             a.showAndWait();
         }
+
+        Metrics.getInstance().recordLevelScan(this.levelNames.size());
+        if (event.shouldCommit()) {
+            event.directory = this.mapDirectory.toString();
+            event.levelsFound = this.levelNames.size();
+            event.commit();
+        }
     }
 
     @NotNull
@@ -109,6 +136,52 @@ public class LevelManager {
         return levelNames;
     }
 
+    /**
+     * Sets whether the level names are sorted by their estimated difficulty, from the easiest level, or by their names.
+     *
+     * <p>
+     * Levels with the same difficulty are sorted by name. Levels which are not in the {@link DifficultyIndex} of the map
+     * directory are placed after all other levels, so they are played last by {@link LevelManager#getAndSetNextLevel()}.
+     * </p>
+     *
+     * @param sortByDifficulty Whether to sort by difficulty.
+     */
+    public void setSortByDifficulty(boolean sortByDifficulty) {
+        this.sortByDifficulty = sortByDifficulty;
+
+        final List<String> sorted = this.levelNames.stream()
+                .sorted(sortByDifficulty ? byDifficulty() : Comparator.naturalOrder())
+                .collect(Collectors.toList());
+        this.levelNames.setAll(sorted);
+    }
+
+    /**
+     * @return Whether the level names are sorted by difficulty.
+     */
+    public boolean isSortByDifficulty() {
+        return sortByDifficulty;
+    }
+
+    /**
+     * @param levelName Name of a level in the current map directory.
+     * @return Estimated difficulty of the level, or {@code null} if the level is not indexed.
+     */
+    @Nullable
+    public DifficultyIndex.Entry getDifficulty(@NotNull String levelName) {
+        return difficulties.get(levelName);
+    }
+
+    /**
+     * @return Comparator of level names by estimated difficulty, then by name.
+     */
+    @NotNull
+    private Comparator<String> byDifficulty() {
+        return Comparator.<String>comparingDouble(name -> {
+            final var entry = difficulties.get(name);
+            return entry != null ? entry.score : Double.POSITIVE_INFINITY;
+        }).thenComparing(Comparator.naturalOrder());
+    }
+
     /**
      * @return Full path to the currently selected level.
      */
@@ -143,6 +216,8 @@ public class LevelManager {
      * Retrieves and sets the next level.
      * <p>
      * If there is a "next map" in the directory, set the level to that map. Otherwise, set the level to {@code null}.
+     * The next map follows the order of {@link LevelManager#getLevelNames()}, so when the levels are sorted by
+     * difficulty, the player progresses to the next harder level.
      * </p>
      * <p>
      * Hint:
@@ -0,0 +1,439 @@
+package controllers;
+
+import org.jetbrains.annotations.NotNull;
+import util.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Singleton registry of live game and engine statistics.
+ *
+ * <p>
+ * Counters are backed by {@link LongAdder}, so that recording from the flow timer threads and the JavaFX thread does
+ * not contend. The registry is exposed as a platform MBean, so that a running instance can be inspected using JConsole
+ * or VisualVM.
+ * </p>
+ */
+public class Metrics implements MetricsMBean {
+
+    /**
+     * Name of the MBean in the platform MBean server.
+     */
+    @NotNull
+    public static final String OBJECT_NAME = "pipes:type=Metrics";
+
+    /**
+     * Default threshold of the 99th percentile of flow tick jitter, above which a warning is printed.
+     */
+    public static final long DEFAULT_TICK_JITTER_THRESHOLD_MICROS = 50_000;
+
+    /**
+     * Number of recorded ticks between each check of the tick jitter against the threshold.
+     */
+    private static final int TICK_JITTER_CHECK_INTERVAL = 30;
+
+    /**
+     * Singleton instance.
+     */
+    @NotNull
+    private static final Metrics INSTANCE = new Metrics();
+
+    /**
+     * Whether the moves and ticks of games on the current thread are recorded.
+     */
+    @NotNull
+    private static final ThreadLocal<Boolean> RECORDING_MOVES = ThreadLocal.withInitial(() -> true);
+
+    private final LongAdder gamesStarted = new LongAdder();
+    private final LongAdder activeGames = new LongAdder();
+    private final LongAdder ticksProcessed = new LongAdder();
+    private final LongAdder flowSteps = new LongAdder();
+    private final LongAdder pipesPlaced = new LongAdder();
+    private final LongAdder undos = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    private final LongAdder tileCacheHits = new LongAdder();
+    private final LongAdder tileCacheMisses = new LongAdder();
+    private final LongAdder levelScans = new LongAdder();
+    private final LongAdder liveFlowTimers = new LongAdder();
+    private volatile long levelsFound = 0;
+    private volatile long lastRenderNanos = 0;
+    private volatile long lastTickLatenessMillis = 0;
+    private volatile long tickJitterThresholdMicros = DEFAULT_TICK_JITTER_THRESHOLD_MICROS;
+    private volatile boolean tickJitterAboveThreshold = false;
+
+    @NotNull
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    @NotNull
+    private final LatencyHistogram renderLatency = new LatencyHistogram();
+    @NotNull
+    private final LatencyHistogram tickLateness = new LatencyHistogram();
+    @NotNull
+    private final LatencyHistogram tickJitter = new LatencyHistogram();
+
+    @NotNull
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private Metrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return Singleton instance of this class.
+     */
+    @NotNull
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Stops recording the moves and ticks of games on the current thread.
+     *
+     * <p>
+     * This is used by threads which replay a game in the background while it is being played, such as the writer of a
+     * {@link io.MoveLog}, so that each move is only counted once.
+     * </p>
+     */
+    public static void stopRecordingMovesOnCurrentThread() {
+        RECORDING_MOVES.set(false);
+    }
+
+    /**
+     * Records a game whose flow of water is started.
+     */
+    public void recordGameStarted() {
+        gamesStarted.increment();
+        activeGames.increment();
+    }
+
+    /**
+     * Records a started game whose flow of water is stopped.
+     */
+    public void recordGameStopped() {
+        activeGames.decrement();
+    }
+
+    public void recordTick() {
+        if (RECORDING_MOVES.get()) {
+            ticksProcessed.increment();
+        }
+    }
+
+    public void recordFlow() {
+        if (RECORDING_MOVES.get()) {
+            flowSteps.increment();
+        }
+    }
+
+    public void recordPipePlaced() {
+        if (RECORDING_MOVES.get()) {
+            pipesPlaced.increment();
+        }
+    }
+
+    public void recordUndo() {
+        if (RECORDING_MOVES.get()) {
+            undos.increment();
+        }
+    }
+
+    public void recordSkip() {
+        if (RECORDING_MOVES.get()) {
+            skips.increment();
+        }
+    }
+
+    public void recordFlowTimerStarted() {
+        liveFlowTimers.increment();
+    }
+
+    public void recordFlowTimerStopped() {
+        liveFlowTimers.decrement();
+    }
+
+    /**
+     * @param nanos Time taken to parse a level.
+     */
+    public void recordParse(long nanos) {
+        parseLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos       Time taken to render a map.
+     * @param cellsDrawn  Number of cells drawn.
+     * @param cellsCached Number of cells skipped because they are unchanged since the last render.
+     */
+    public void recordRender(long nanos, int cellsDrawn, int cellsCached) {
+        lastRenderNanos = nanos;
+        renderLatency.record(nanos);
+        tileCacheMisses.add(cellsDrawn);
+        tileCacheHits.add(cellsCached);
+    }
+
+    /**
+     * Records the timing of a flow timer tick, and prints a warning when the 99th percentile of the jitter first
+     * exceeds {@link Metrics#getTickJitterThresholdMicros()}.
+     *
+     * @param latenessNanos Time between the ideal time of the tick and when it actually runs.
+     * @param jitterNanos   Deviation of the interval since the previous tick from the tick period.
+     */
+    public void recordTickTiming(long latenessNanos, long jitterNanos) {
+        lastTickLatenessMillis = latenessNanos / 1_000_000;
+        tickLateness.record(latenessNanos);
+        tickJitter.record(jitterNanos);
+
+        if (tickJitter.getCount() % TICK_JITTER_CHECK_INTERVAL == 0) {
+            checkTickJitter();
+        }
+    }
+
+    private void checkTickJitter() {
+        final long p99 = getTickJitterP99Micros();
+        final boolean above = p99 > tickJitterThresholdMicros;
+        if (above && !tickJitterAboveThreshold) {
+            System.err.println("Warning: p99 flow tick jitter is " + p99 / 1000 + " ms, which exceeds the threshold of "
+                    + tickJitterThresholdMicros / 1000 + " ms. Flow cadence is inaccurate.");
+        }
+        tickJitterAboveThreshold = above;
+    }
+
+    /**
+     * @param levelsFound Number of levels found by the scan.
+     */
+    public void recordLevelScan(int levelsFound) {
+        levelScans.increment();
+        this.levelsFound = levelsFound;
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return gamesStarted.sum();
+    }
+
+    @Override
+    public long getActiveGames() {
+        return activeGames.sum();
+    }
+
+    @Override
+    public long getTicksProcessed() {
+        return ticksProcessed.sum();
+    }
+
+    @Override
+    public long getFlowSteps() {
+        return flowSteps.sum();
+    }
+
+    @Override
+    public long getPipesPlaced() {
+        return pipesPlaced.sum();
+    }
+
+    @Override
+    public long getUndos() {
+        return undos.sum();
+    }
+
+    @Override
+    public long getSkips() {
+        return skips.sum();
+    }
+
+    @Override
+    public long getLevelsParsed() {
+        return parseLatency.getCount();
+    }
+
+    @Override
+    public double getParseLatencyMeanMicros() {
+        return parseLatency.getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getParseLatencyP50Micros() {
+        return parseLatency.getPercentileNanos(0.5) / 1000;
+    }
+
+    @Override
+    public long getParseLatencyP99Micros() {
+        return parseLatency.getPercentileNanos(0.99) / 1000;
+    }
+
+    @Override
+    public long getParseLatencyMaxMicros() {
+        return parseLatency.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long[] getParseLatencyHistogram() {
+        return parseLatency.snapshot();
+    }
+
+    @Override
+    public long getRenders() {
+        return renderLatency.getCount();
+    }
+
+    @Override
+    public double getRenderLatencyMeanMicros() {
+        return renderLatency.getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getRenderLatencyP50Micros() {
+        return renderLatency.getPercentileNanos(0.5) / 1000;
+    }
+
+    @Override
+    public long getRenderLatencyP99Micros() {
+        return renderLatency.getPercentileNanos(0.99) / 1000;
+    }
+
+    @Override
+    public long getRenderLatencyMaxMicros() {
+        return renderLatency.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long[] getRenderLatencyHistogram() {
+        return renderLatency.snapshot();
+    }
+
+    @Override
+    public long getLastRenderMicros() {
+        return lastRenderNanos / 1000;
+    }
+
+    @Override
+    public long getLastTickLatenessMillis() {
+        return lastTickLatenessMillis;
+    }
+
+    @Override
+    public long getTickLatenessP50Micros() {
+        return tickLateness.getPercentileNanos(0.5) / 1000;
+    }
+
+    @Override
+    public long getTickLatenessP99Micros() {
+        return tickLateness.getPercentileNanos(0.99) / 1000;
+    }
+
+    @Override
+    public long getTickLatenessMaxMicros() {
+        return tickLateness.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long[] getTickLatenessHistogram() {
+        return tickLateness.snapshot();
+    }
+
+    @Override
+    public long getTickJitterP50Micros() {
+        return tickJitter.getPercentileNanos(0.5) / 1000;
+    }
+
+    @Override
+    public long getTickJitterP99Micros() {
+        return tickJitter.getPercentileNanos(0.99) / 1000;
+    }
+
+    @Override
+    public long getTickJitterMaxMicros() {
+        return tickJitter.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long[] getTickJitterHistogram() {
+        return tickJitter.snapshot();
+    }
+
+    @Override
+    public long getTickJitterThresholdMicros() {
+        return tickJitterThresholdMicros;
+    }
+
+    @Override
+    public void setTickJitterThresholdMicros(long threshold) {
+        tickJitterThresholdMicros = threshold;
+    }
+
+    @Override
+    public boolean isTickJitterAboveThreshold() {
+        return tickJitterAboveThreshold;
+    }
+
+    @Override
+    public long getTileCacheHits() {
+        return tileCacheHits.sum();
+    }
+
+    @Override
+    public long getTileCacheMisses() {
+        return tileCacheMisses.sum();
+    }
+
+    @Override
+    public double getTileCacheHitRatio() {
+        final long hits = tileCacheHits.sum();
+        final long total = hits + tileCacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getLevelScans() {
+        return levelScans.sum();
+    }
+
+    @Override
+    public long getLevelsFound() {
+        return levelsFound;
+    }
+
+    @Override
+    public long getLiveFlowTimers() {
+        return liveFlowTimers.sum();
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadBean.getThreadCount();
+    }
+
+    @Override
+    public int getDaemonThreadCount() {
+        return threadBean.getDaemonThreadCount();
+    }
+
+    @Override
+    public int getPeakThreadCount() {
+        return threadBean.getPeakThreadCount();
+    }
+
+    @Override
+    public void reset() {
+        gamesStarted.reset();
+        ticksProcessed.reset();
+        flowSteps.reset();
+        pipesPlaced.reset();
+        undos.reset();
+        skips.reset();
+        tileCacheHits.reset();
+        tileCacheMisses.reset();
+        levelScans.reset();
+        parseLatency.reset();
+        renderLatency.reset();
+        tickLateness.reset();
+        tickJitter.reset();
+        tickJitterAboveThreshold = false;
+    }
+}
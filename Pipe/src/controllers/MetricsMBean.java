@@ -0,0 +1,117 @@
+package controllers;
+
+/**
+ * Management interface of {@link Metrics}, which is exposed as a platform MBean under {@link Metrics#OBJECT_NAME}.
+ *
+ * <p>
+ * All latencies are in microseconds.
+ * </p>
+ */
+public interface MetricsMBean {
+
+    long getGamesStarted();
+
+    long getActiveGames();
+
+    long getTicksProcessed();
+
+    long getFlowSteps();
+
+    long getPipesPlaced();
+
+    long getUndos();
+
+    long getSkips();
+
+    long getLevelsParsed();
+
+    double getParseLatencyMeanMicros();
+
+    long getParseLatencyP50Micros();
+
+    long getParseLatencyP99Micros();
+
+    long getParseLatencyMaxMicros();
+
+    long[] getParseLatencyHistogram();
+
+    long getRenders();
+
+    double getRenderLatencyMeanMicros();
+
+    long getRenderLatencyP50Micros();
+
+    long getRenderLatencyP99Micros();
+
+    long getRenderLatencyMaxMicros();
+
+    long[] getRenderLatencyHistogram();
+
+    long getLastRenderMicros();
+
+    /**
+     * @return Time between when the last flow timer tick is scheduled and when it actually runs, in milliseconds.
+     */
+    long getLastTickLatenessMillis();
+
+    /**
+     * @return 50th percentile of the time between the ideal time of each flow timer tick and when it actually runs.
+     */
+    long getTickLatenessP50Micros();
+
+    long getTickLatenessP99Micros();
+
+    long getTickLatenessMaxMicros();
+
+    long[] getTickLatenessHistogram();
+
+    /**
+     * @return 50th percentile of the deviation of the interval between consecutive flow timer ticks from one second.
+     */
+    long getTickJitterP50Micros();
+
+    long getTickJitterP99Micros();
+
+    long getTickJitterMaxMicros();
+
+    long[] getTickJitterHistogram();
+
+    long getTickJitterThresholdMicros();
+
+    /**
+     * @param threshold Threshold of the 99th percentile of flow tick jitter, above which a warning is printed.
+     */
+    void setTickJitterThresholdMicros(long threshold);
+
+    boolean isTickJitterAboveThreshold();
+
+    long getTileCacheHits();
+
+    long getTileCacheMisses();
+
+    /**
+     * @return Ratio of tiles which are not redrawn because they are unchanged since the last render, or 0 if nothing
+     * is rendered yet.
+     */
+    double getTileCacheHitRatio();
+
+    long getLevelScans();
+
+    long getLevelsFound();
+
+    /**
+     * @return Number of {@link models.FlowTimer} which are started but not stopped.
+     */
+    long getLiveFlowTimers();
+
+    int getThreadCount();
+
+    int getDaemonThreadCount();
+
+    int getPeakThreadCount();
+
+    /**
+     * Clears all counters and histograms, except gauges which reflect the current state.
+     */
+    void reset();
+}
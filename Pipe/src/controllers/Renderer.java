@@ -3,14 +3,18 @@ package controllers;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
 import javafx.scene.transform.Rotate;
 import models.Config;
 import models.PipeQueue;
 import models.map.cells.Cell;
 import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
+import util.jfr.RenderMapEvent;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.WeakHashMap;
 
 import static models.Config.TILE_SIZE;
 
@@ -24,6 +28,37 @@ public class Renderer {
      */
     private static final int QUEUE_TILE_PADDING = 8;
 
+    /**
+     * Images of the cells last drawn onto each canvas, used for only redrawing cells which have changed.
+     */
+    private static final WeakHashMap<Canvas, TileCache> TILE_CACHES = new WeakHashMap<>();
+
+    /**
+     * Cells last drawn onto a canvas.
+     */
+    private static class TileCache {
+
+        /**
+         * Cells of the map drawn onto the canvas.
+         */
+        @NotNull
+        final Cell[][] map;
+        final int rows;
+        final int cols;
+        /**
+         * Image drawn for each cell in row-major order, or {@code null} if the cell is not drawn.
+         */
+        @NotNull
+        final CellImage[] drawn;
+
+        TileCache(@NotNull Cell[][] map, int rows, int cols) {
+            this.map = map;
+            this.rows = rows;
+            this.cols = cols;
+            this.drawn = new CellImage[rows * cols];
+        }
+    }
+
     /**
      * An image of a cell, with support for rotated images.
      */
@@ -52,19 +87,38 @@ public class Renderer {
     /**
      * Sets the current rotation of a {@link GraphicsContext}.
      *
+     * <p>
+     * This computes the same transform as {@link Rotate}, without allocating one for every tile. Quarter turns are
+     * computed exactly, so that rotated tiles stay aligned to the pixel grid.
+     * </p>
+     *
      * @param gc     Target Graphics Context.
      * @param angle  Angle to rotate the context by.
      * @param pivotX X-coordinate of the pivot point.
      * @param pivotY Y-coordinate of the pivot point.
      */
     private static void rotate(@NotNull GraphicsContext gc, double angle, double pivotX, double pivotY) {
-        final var r = new Rotate(angle, pivotX, pivotY);
-        gc.setTransform(r.getMxx(), r.getMyx(), r.getMxy(), r.getMyy(), r.getTx(), r.getTy());
+        final double cos;
+        final double sin;
+        if (angle % 90 == 0) {
+            final int quarter = Math.floorMod((int) (angle / 90), 4);
+            cos = quarter == 0 ? 1 : quarter == 2 ? -1 : 0;
+            sin = quarter == 1 ? 1 : quarter == 3 ? -1 : 0;
+        } else {
+            cos = Math.cos(Math.toRadians(angle));
+            sin = Math.sin(Math.toRadians(angle));
+        }
+        gc.setTransform(cos, sin, -sin, cos, pivotX - cos * pivotX + sin * pivotY, pivotY - sin * pivotX - cos * pivotY);
     }
 
     /**
      * Draws a rotated image onto a {@link GraphicsContext}.
      *
+     * <p>
+     * The transform of the context is reset to the identity afterwards, rather than saved and restored, as saving the
+     * state of the context allocates a copy of it.
+     * </p>
+     *
      * @param gc    Target Graphics Context.
      * @param image Image to draw.
      * @param angle Angle to rotate the image by.
@@ -73,29 +127,106 @@ public class Renderer {
      */
     private static void drawRotatedImage(@NotNull GraphicsContext gc, @NotNull Image image, double angle, double x, double y) {
         // TODO
-        gc.save();
         rotate(gc,angle,x+image.getWidth()/2.0,y+image.getHeight()/2.0);
         gc.drawImage(image,x,y);
-        gc.restore();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
     }
 
     /**
      * Renders a map into a {@link Canvas}.
      *
+     * <p>
+     * Only cells whose image or rotation has changed since the last time the same map is rendered onto the same canvas
+     * are redrawn. The whole map is redrawn if another map has been rendered onto the canvas, or if the canvas has been
+     * resized since.
+     * </p>
+     *
      * @param canvas Canvas to render to.
      * @param map    Map to render.
      */
     public static void renderMap(@NotNull Canvas canvas, @NotNull Cell[][] map) {
         // TODO
-        canvas.setWidth(map[0].length* TILE_SIZE);
-        canvas.setHeight(map.length*TILE_SIZE);
+        final var event = new RenderMapEvent();
+        event.begin();
+        final long start = System.nanoTime();
+
+        final int rows = map.length;
+        final int cols = map[0].length;
+        TileCache cache;
+        synchronized (TILE_CACHES) {
+            cache = TILE_CACHES.get(canvas);
+            if (cache == null || cache.map != map || cache.rows != rows || cache.cols != cols
+                    || canvas.getWidth() != cols * TILE_SIZE || canvas.getHeight() != rows * TILE_SIZE) {
+                canvas.setWidth(cols * TILE_SIZE);
+                canvas.setHeight(rows * TILE_SIZE);
+                cache = new TileCache(map, rows, cols);
+                TILE_CACHES.put(canvas, cache);
+            }
+        }
+
         GraphicsContext gc=canvas.getGraphicsContext2D();
-        for(int i=0;i<map.length;i++){
-            for(int j=0;j<map[i].length;j++){
+        int cellsDrawn = 0;
+        for(int i=0;i<rows;i++){
+            for(int j=0;j<cols;j++){
                 CellImage cell=map[i][j].getImageRep();
+                final CellImage drawn = cache.drawn[i * cols + j];
+                if (drawn != null && drawn.image == cell.image && drawn.rotation == cell.rotation) {
+                    continue;
+                }
+                cache.drawn[i * cols + j] = cell;
+                ++cellsDrawn;
+
                 drawRotatedImage(gc,cell.image,cell.rotation,j*TILE_SIZE,i*TILE_SIZE);
             }
         }
+
+        Metrics.getInstance().recordRender(System.nanoTime() - start, cellsDrawn, rows * cols - cellsDrawn);
+        if (event.shouldCommit()) {
+            event.cellsDrawn = cellsDrawn;
+            event.cellsCached = rows * cols - cellsDrawn;
+            event.commit();
+        }
+    }
+
+    /**
+     * Discards the cells last drawn onto a canvas, so that the whole map is redrawn the next time it is rendered onto
+     * the canvas.
+     *
+     * @param canvas Canvas to invalidate.
+     */
+    public static void invalidate(@NotNull Canvas canvas) {
+        synchronized (TILE_CACHES) {
+            final var cache = TILE_CACHES.get(canvas);
+            if (cache != null) {
+                Arrays.fill(cache.drawn, null);
+            }
+        }
+    }
+
+    /**
+     * Outlines a tile on a {@link Canvas}, such as the tile suggested by a hint.
+     *
+     * <p>
+     * If a map has been rendered onto the canvas, the tile is redrawn without the outline the next time the map is
+     * rendered.
+     * </p>
+     *
+     * @param canvas Canvas to render to.
+     * @param row    Row of the tile.
+     * @param col    Column of the tile.
+     */
+    public static void renderHighlight(@NotNull Canvas canvas, int row, int col) {
+        synchronized (TILE_CACHES) {
+            final var cache = TILE_CACHES.get(canvas);
+            if (cache != null && row >= 0 && row < cache.rows && col >= 0 && col < cache.cols) {
+                cache.drawn[row * cache.cols + col] = null;
+            }
+        }
+
+        final GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setStroke(Color.GOLD);
+        gc.setLineWidth(3);
+        gc.strokeRect(col * TILE_SIZE + 1.5, row * TILE_SIZE + 1.5, TILE_SIZE - 3, TILE_SIZE - 3);
     }
 
     /**
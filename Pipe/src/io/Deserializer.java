@@ -1,6 +1,9 @@
 package io;
 
+import controllers.Metrics;
 import models.FXGame;
+import models.FlowTimer;
+import models.PipeQueue;
 import models.exceptions.InvalidMapException;
 import models.map.Map;
 import models.map.cells.Cell;
@@ -10,6 +13,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import textgame.game.Game;
 import util.Coordinate;
+import util.jfr.LevelParseEvent;
 
 import java.io.*;
 import java.nio.file.Path;
@@ -17,6 +21,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 /**
@@ -63,7 +69,8 @@ public class Deserializer {
     @Nullable
     public FXGame parseFXGame() {
         final var properties = parseGameFile();
-        return new FXGame(properties.rows, properties.cols, properties.delay, properties.cells, properties.pipes);
+        return new FXGame(properties.rows, properties.cols, properties.delay, properties.cells, properties.pipes,
+                new Random().nextLong(), FlowTimer.getDefaultFlowDuration(), properties.weights);
     }
 
     /**
@@ -74,7 +81,55 @@ public class Deserializer {
      */
     @NotNull
     public GameProperties parseGameFile() {
+        final var event = new LevelParseEvent();
+        event.begin();
+        final long start = System.nanoTime();
+
+        try {
+            final var prop = doParseGameFile();
+            event.succeeded = true;
+            return prop;
+        } finally {
+            Metrics.getInstance().recordParse(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.path = path.toString();
+                event.bytes = path.toFile().length();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Implementation of {@link Deserializer#parseGameFile()}.
+     *
+     * @return An instance of {@link GameProperties}.
+     * @throws InvalidMapException if the map cannot be parsed.
+     */
+    @NotNull
+    private GameProperties doParseGameFile() {
         try (var reader = new BufferedReader(new FileReader(path.toFile()))) {
+            return parse(reader);
+        } catch (IOException ioe) {
+            throw new InvalidMapException(ioe);
+        }
+    }
+
+    /**
+     * Parses the contents of a game file from a reader.
+     *
+     * <p>
+     * The map may be followed by a line listing the starting pipes, and then by a line listing the relative weight of
+     * each pipe shape as comma-separated non-negative integers, in the order of {@link Pipe.Shape}. Either line may be
+     * omitted. A line starting with a digit is the list of weights.
+     * </p>
+     *
+     * @param reader Reader of the contents, which is not closed.
+     * @return An instance of {@link GameProperties}.
+     * @throws InvalidMapException if the map cannot be parsed.
+     */
+    @NotNull
+    public static GameProperties parse(@NotNull final BufferedReader reader) {
+        try {
             String line;
 
             var rows = 0;
@@ -111,18 +166,73 @@ public class Deserializer {
 
             List<Pipe> defaultPipes = null;
             String s = getFirstNonEmptyLine(reader);
-            if (s != null) {
+            if (s != null && !isWeightsLine(s)) {
                 defaultPipes = Arrays.stream(s.split(","))
                         .map(Pipe::fromString)
                         .collect(Collectors.toList());
+                s = getFirstNonEmptyLine(reader);
+            }
+
+            int[] weights = null;
+            if (s != null && isWeightsLine(s)) {
+                weights = parseWeights(s);
             }
 
-            return new GameProperties(rows, cols, cells, delay, defaultPipes);
+            return new GameProperties(rows, cols, cells, delay, defaultPipes, weights);
         } catch (IOException ioe) {
             throw new InvalidMapException(ioe);
         }
     }
 
+    /**
+     * @param line A non-empty line after the map.
+     * @return Whether the line is the list of pipe weights.
+     */
+    private static boolean isWeightsLine(@NotNull final String line) {
+        final String trimmed = line.trim();
+        return !trimmed.isEmpty() && trimmed.charAt(0) >= '0' && trimmed.charAt(0) <= '9';
+    }
+
+    /**
+     * Parses the list of pipe weights.
+     *
+     * @param line Comma-separated list of the weight of each pipe shape.
+     * @return The weights, indexed by {@link Pipe.Shape#ordinal()}.
+     * @throws InvalidMapException if the list is malformed, or the weights cannot be used by a {@link PipeQueue}.
+     */
+    @NotNull
+    private static int[] parseWeights(@NotNull final String line) {
+        final String[] reps = line.split(",", -1);
+        final var weights = new int[reps.length];
+        for (int i = 0; i < reps.length; ++i) {
+            final String rep = reps[i].trim();
+            if (!rep.matches("[0-9]+")) {
+                throw new InvalidMapException("Invalid list of pipe weights");
+            }
+            try {
+                weights[i] = Integer.parseInt(rep);
+            } catch (NumberFormatException e) {
+                throw new InvalidMapException("Invalid list of pipe weights");
+            }
+        }
+        checkWeights(weights);
+        return weights;
+    }
+
+    /**
+     * Checks whether a {@link PipeQueue} can be created with the given pipe weights.
+     *
+     * @param weights Relative weight of each pipe shape.
+     * @throws InvalidMapException if the weights are negative, all zero, or do not cover every shape.
+     */
+    static void checkWeights(@NotNull final int[] weights) {
+        try {
+            PipeQueue.checkWeights(weights);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidMapException(e.getMessage());
+        }
+    }
+
     /**
      * Deserializes a map from a {@link String}.
      *
@@ -130,30 +240,57 @@ public class Deserializer {
      * @param cols     Columns of the given map.
      * @param cellsRep String representation of the map, with rows delimited by {@code '\n'}.
      * @return A 2D cell array from the string. Note that this cell array may not fully conform to the requirements of
-     * an actual game map; The "map conformance" checks are performed in the {@link Map} constructor.
+     * an actual game map; The "map conformance" checks are performed in the {@link Map} constructor, and by
+     * {@link LevelValidator}.
+     * @throws InvalidMapException if a character does not represent a cell.
      */
     @NotNull
     public static Cell[][] parseString(final int rows, final int cols, @NotNull final String cellsRep) {
         var cells = new Cell[rows][cols];
+        final var lines = cellsRep.lines().limit(rows).toArray(String[]::new);
         for (int r = 0; r < rows; ++r) {
+            if (r >= lines.length) {
+                throw new NoSuchElementException("Missing row " + r + " of map");
+            }
             for (int c = 0; c < cols; ++c) {
-                var coord = new Coordinate(r, c);
-                var ch = cellsRep.lines().skip(r).findFirst().orElseThrow().charAt(c);
-
-                Cell cell;
-                if (r == 0 || r == rows - 1 || c == 0 || c == cols - 1) {
-                    cell = Cell.fromChar(ch, coord, TerminationCell.Type.SINK);
-                } else {
-                    cell = Cell.fromChar(ch, coord, TerminationCell.Type.SOURCE);
-                }
+                var ch = lines[r].charAt(c);
 
-                cells[r][c] = cell;
+                cells[r][c] = parseCell(rows, cols, r, c, ch);
+                if (cells[r][c] == null) {
+                    throw new InvalidMapException("Unknown cell '" + ch + "' at row " + r + ", column " + c);
+                }
             }
         }
 
         return cells;
     }
 
+    /**
+     * Deserializes a single cell of a map.
+     *
+     * <p>
+     * Termination cells on the border of the map are sinks, and all other termination cells are sources. A map may
+     * contain any number of each.
+     * </p>
+     *
+     * @param rows Rows of the map.
+     * @param cols Columns of the map.
+     * @param r    Row of the cell.
+     * @param c    Column of the cell.
+     * @param ch   Character representation of the cell.
+     * @return The cell, or {@code null} if the character does not represent a cell.
+     */
+    @Nullable
+    public static Cell parseCell(final int rows, final int cols, final int r, final int c, final char ch) {
+        var coord = new Coordinate(r, c);
+
+        if (r == 0 || r == rows - 1 || c == 0 || c == cols - 1) {
+            return Cell.fromChar(ch, coord, TerminationCell.Type.SINK);
+        } else {
+            return Cell.fromChar(ch, coord, TerminationCell.Type.SOURCE);
+        }
+    }
+
     /**
      * Returns the first non-empty and non-comment line from the reader.
      *
@@ -162,7 +299,7 @@ public class Deserializer {
      * @throws IOException if the reader fails to read a line.
      */
     @Nullable
-    private String getFirstNonEmptyLine(@NotNull final BufferedReader br) throws IOException {
+    private static String getFirstNonEmptyLine(@NotNull final BufferedReader br) throws IOException {
         do {
 
             String s = br.readLine();
@@ -0,0 +1,206 @@
+package io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Estimated difficulty of the levels in a map directory, stored in the file {@link DifficultyIndex#FILE_NAME} next to
+ * the maps.
+ *
+ * <p>
+ * The index is a text file with one line per level, holding the following fields separated by tabs: the file name of
+ * the level, the hash of the level as given by {@link GameProperties#computeHash()} in hexadecimal, and the fields of
+ * {@link Entry} in the order they are declared. Lines starting with {@code #} are comments. An entry is only valid
+ * while the hash of its level is unchanged; the index itself does not check this, so that reading it does not need to
+ * parse every level.
+ * </p>
+ */
+public class DifficultyIndex {
+
+    /**
+     * Name of the index file in a map directory.
+     */
+    @NotNull
+    public static final String FILE_NAME = "difficulty.index";
+
+    @NotNull
+    private static final String HEADER = "# level\thash\tscore\troute-length\twin-rate\tbranching\tskips\tslack";
+    private static final int FIELDS = 8;
+
+    /**
+     * Estimated difficulty of a level.
+     */
+    public static class Entry {
+        /**
+         * Hash of the level the difficulty is estimated for.
+         */
+        public final long levelHash;
+        /**
+         * Difficulty between 0 (trivial) and 100 (unsolvable), combined from all other fields.
+         */
+        public final double score;
+        /**
+         * Number of pipes on the shortest route from a source to a sink, or {@code -1} if there is no route.
+         */
+        public final int routeLength;
+        /**
+         * Fraction of the bot rollouts which won the level.
+         */
+        public final double winRate;
+        /**
+         * Average number of open ends of the wetted path at every move of the rollouts.
+         */
+        public final double branching;
+        /**
+         * Average number of pipes skipped in the rollouts which won.
+         */
+        public final double skips;
+        /**
+         * Average fraction of the time until the water would flow through the shortest route which is left when the
+         * rollouts win.
+         */
+        public final double slack;
+
+        public Entry(long levelHash, double score, int routeLength, double winRate, double branching, double skips,
+                     double slack) {
+            this.levelHash = levelHash;
+            this.score = score;
+            this.routeLength = routeLength;
+            this.winRate = winRate;
+            this.branching = branching;
+            this.skips = skips;
+            this.slack = slack;
+        }
+    }
+
+    /**
+     * Entries by level name, in the order they are written.
+     */
+    @NotNull
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Loads the index of a map directory.
+     *
+     * <p>
+     * A missing index is treated as empty. Lines which cannot be parsed are skipped.
+     * </p>
+     *
+     * @param mapDirectory Directory containing the maps and the index.
+     * @return The index.
+     */
+    @NotNull
+    public static DifficultyIndex load(@NotNull Path mapDirectory) {
+        final var index = new DifficultyIndex();
+        final Path path = mapDirectory.resolve(FILE_NAME);
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("\t");
+                if (fields.length != FIELDS) {
+                    System.err.println("Skipping malformed line in " + path + ": " + line);
+                    continue;
+                }
+                try {
+                    index.entries.put(fields[0], new Entry(Long.parseUnsignedLong(fields[1], 16),
+                            Double.parseDouble(fields[2]), Integer.parseInt(fields[3]), Double.parseDouble(fields[4]),
+                            Double.parseDouble(fields[5]), Double.parseDouble(fields[6]),
+                            Double.parseDouble(fields[7])));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping malformed line in " + path + ": " + line);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // no level has been indexed yet
+        } catch (IOException e) {
+            System.err.println("Cannot read difficulty index " + path + "!");
+            e.printStackTrace();
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index into a map directory.
+     *
+     * <p>
+     * The index is written to a temporary file first, which then replaces the existing index, so that a reader never
+     * sees a partially written index.
+     * </p>
+     *
+     * @param mapDirectory Directory containing the maps.
+     * @throws IOException if the index cannot be written.
+     */
+    public void save(@NotNull Path mapDirectory) throws IOException {
+        final Path path = mapDirectory.resolve(FILE_NAME);
+        final Path temp = mapDirectory.resolve(FILE_NAME + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (var e : entries.entrySet()) {
+                final var entry = e.getValue();
+                writer.write(String.format(Locale.ROOT, "%s\t%016x\t%.2f\t%d\t%.4f\t%.3f\t%.3f\t%.4f", e.getKey(),
+                        entry.levelHash, entry.score, entry.routeLength, entry.winRate, entry.branching, entry.skips,
+                        entry.slack));
+                writer.newLine();
+            }
+        }
+
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param level File name of a level.
+     * @return The entry of the level, or {@code null} if the level is not indexed.
+     */
+    @Nullable
+    public Entry get(@NotNull String level) {
+        return entries.get(level);
+    }
+
+    /**
+     * @param level File name of a level.
+     * @param entry Entry of the level, replacing any existing entry.
+     */
+    public void put(@NotNull String level, @NotNull Entry entry) {
+        entries.put(level, entry);
+    }
+
+    /**
+     * Removes the entries of all levels which are not given.
+     *
+     * @param levels File names of the levels to keep.
+     */
+    public void retainAll(@NotNull Collection<String> levels) {
+        entries.keySet().retainAll(new HashSet<>(levels));
+    }
+
+    /**
+     * @return Number of indexed levels.
+     */
+    public int size() {
+        return entries.size();
+    }
+}
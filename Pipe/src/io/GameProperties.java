@@ -18,6 +18,12 @@ public class GameProperties {
     public Cell[][] cells;
     @Nullable
     public List<Pipe> pipes;
+    /**
+     * Relative weight of each pipe shape generated after the starting pipes, indexed by {@link Pipe.Shape#ordinal()},
+     * or {@code null} if every shape has equal weight.
+     */
+    @Nullable
+    public int[] weights;
 
     public GameProperties(int rows, int cols) {
         this.rows = rows;
@@ -42,4 +48,57 @@ public class GameProperties {
 
         this.pipes = pipes;
     }
+
+    public GameProperties(int rows, int cols, @NotNull Cell[][] cells, int delay, @Nullable List<Pipe> pipes,
+                          @Nullable int[] weights) {
+        this(rows, cols, cells, delay, pipes);
+
+        this.weights = weights;
+    }
+
+    /**
+     * Computes a hash of the level described by these properties, covering the dimensions, delay, cells, starting
+     * pipes and pipe weights. The hash does not depend on the state of the cells or pipes, so it stays the same during
+     * a game.
+     *
+     * @return 64-bit FNV-1a hash of the serialized representation of the level.
+     */
+    public long computeHash() {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv1a(hash, rows);
+        hash = fnv1a(hash, cols);
+        hash = fnv1a(hash, delay);
+        for (var row : cells) {
+            for (var cell : row) {
+                hash = fnv1a(hash, cell != null ? cell.toSerializedRep() : "");
+            }
+        }
+        if (pipes != null) {
+            for (var pipe : pipes) {
+                hash = fnv1a(hash, pipe.toSerializedRep());
+            }
+        }
+        if (weights != null) {
+            for (int weight : weights) {
+                hash = fnv1a(hash, weight);
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, int value) {
+        for (int i = 0; i < 4; ++i) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, @NotNull String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return fnv1a(hash, value.length());
+    }
 }
@@ -0,0 +1,552 @@
+package io;
+
+import models.exceptions.InvalidMapException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A single file holding many levels, which can be read in any order.
+ *
+ * <p>
+ * A pack starts with a header and an index, followed by the contents of the map file of every level:
+ * <ul>
+ * <li>The magic bytes {@link LevelPack#MAGIC} and the version of the format as an {@code int}.</li>
+ * <li>The number of levels as an {@code int}.</li>
+ * <li>For every level, the length of its name in UTF-8 as an unsigned {@code short}, its name in UTF-8, the offset of
+ * its contents from the start of the pack as a {@code long}, the length of its contents as an {@code int}, and a
+ * {@code byte} of flags describing the encoding of its contents, which is 0 for plain text, or
+ * {@link LevelPack#FLAG_DEFLATE} for text compressed by {@link Deflater} in the zlib format.</li>
+ * </ul>
+ * All numbers are big-endian. The levels are in the order of their names, and their contents are stored in the same
+ * order.
+ * </p>
+ *
+ * <p>
+ * Opening a pack only reads the index. Levels are then read with positional reads, so a pack can be read from several
+ * threads at once. Every level is compressed on its own, so any level can still be read without reading the others.
+ * {@link LevelPack#load(int)} decompresses a level while it decodes it, so the text of a level is never held in
+ * memory.
+ * </p>
+ */
+public class LevelPack implements Closeable {
+
+    @NotNull
+    private static final byte[] MAGIC = {'P', 'I', 'P', 'E', 'P', 'A', 'C', 'K'};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 8;
+    /**
+     * Length of an entry of the index, excluding the name.
+     */
+    private static final int ENTRY_LENGTH = 2 + 8 + 4 + 1;
+    /**
+     * Flag of a level whose contents are compressed by {@link Deflater}.
+     */
+    private static final int FLAG_DEFLATE = 1;
+    /**
+     * Size of the buffers used to compress levels.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Size of the buffer of compressed contents used to decompress a level.
+     */
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+
+    @NotNull
+    private final FileChannel channel;
+    @NotNull
+    private final String[] names;
+    @NotNull
+    private final long[] offsets;
+    @NotNull
+    private final int[] lengths;
+    @NotNull
+    private final byte[] flags;
+
+    private LevelPack(@NotNull FileChannel channel, @NotNull String[] names, @NotNull long[] offsets,
+                      @NotNull int[] lengths, @NotNull byte[] flags) {
+        this.channel = channel;
+        this.names = names;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.flags = flags;
+    }
+
+    public static void main(String[] args) {
+        Path mapDirectory = Paths.get("resources", "maps");
+        Path out = null;
+        boolean deflate = false;
+        boolean valid = true;
+        try {
+            for (int i = 0; i < args.length && valid; ++i) {
+                switch (args[i]) {
+                    case "--maps":
+                        mapDirectory = Paths.get(args[++i]);
+                        break;
+                    case "--out":
+                        out = Paths.get(args[++i]);
+                        break;
+                    case "--deflate":
+                        deflate = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        valid = false;
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Cannot parse arguments!");
+            valid = false;
+        }
+        if (!valid || out == null) {
+            System.out.println("Usage: --pack [options] --out <file>");
+            System.out.println("  --maps <dir>           Directory of levels to pack (default: resources/maps)");
+            System.out.println("  --out <file>           Level pack to write");
+            System.out.println("  --deflate              Compress every level which becomes smaller when compressed");
+            System.exit(1);
+        }
+
+        try {
+            final long start = System.nanoTime();
+            final var levels = listLevels(mapDirectory);
+            write(out, mapDirectory, levels, deflate);
+            System.out.println(String.format("%d levels packed into %s (%d bytes) in %.3f s", levels.size(), out,
+                    Files.size(out), (System.nanoTime() - start) / 1e9));
+        } catch (IOException e) {
+            System.err.println("Cannot pack levels of " + mapDirectory + " into " + out + "!");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param mapDirectory Directory of levels.
+     * @return File names of the levels in the directory, in order.
+     * @throws IOException if the directory cannot be listed.
+     */
+    @NotNull
+    public static List<String> listLevels(@NotNull Path mapDirectory) throws IOException {
+        final var levels = new ArrayList<String>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(mapDirectory, "*.map")) {
+            for (var path : stream) {
+                levels.add(path.getFileName().toString());
+            }
+        }
+        Collections.sort(levels);
+        return levels;
+    }
+
+    /**
+     * Writes a pack of uncompressed levels.
+     *
+     * @param pack         Path of the pack.
+     * @param mapDirectory Directory of the levels.
+     * @param levels       File names of the levels, which are packed in order of their names.
+     * @throws IOException if a level cannot be read, or the pack cannot be written.
+     * @see LevelPack#write(Path, Path, List, boolean)
+     */
+    public static void write(@NotNull Path pack, @NotNull Path mapDirectory, @NotNull List<String> levels)
+            throws IOException {
+        write(pack, mapDirectory, levels, false);
+    }
+
+    /**
+     * Writes a pack of levels.
+     *
+     * <p>
+     * The contents of the levels are copied from their files without being parsed. If {@code deflate} is set, every
+     * level is compressed while it is copied, and is stored uncompressed instead if compressing does not make it
+     * smaller. The index is written after the contents, once their lengths are known. The pack is written to a
+     * temporary file first, which then replaces any existing pack, so that a reader never sees a partially written
+     * pack.
+     * </p>
+     *
+     * @param pack         Path of the pack.
+     * @param mapDirectory Directory of the levels.
+     * @param levels       File names of the levels, which are packed in order of their names.
+     * @param deflate      Whether to compress the levels.
+     * @throws IOException if a level cannot be read, or the pack cannot be written.
+     */
+    public static void write(@NotNull Path pack, @NotNull Path mapDirectory, @NotNull List<String> levels,
+                             boolean deflate) throws IOException {
+        final String[] names = levels.toArray(new String[0]);
+        Arrays.sort(names);
+        if (new HashSet<>(Arrays.asList(names)).size() != names.length) {
+            throw new IllegalArgumentException("Level names are not unique");
+        }
+
+        final byte[][] encodedNames = new byte[names.length][];
+        long offset = HEADER_LENGTH;
+        for (int i = 0; i < names.length; ++i) {
+            encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            if (encodedNames[i].length > 0xffff) {
+                throw new IllegalArgumentException("Level name is too long: " + names[i]);
+            }
+            offset += ENTRY_LENGTH + encodedNames[i].length;
+        }
+
+        final long[] offsets = new long[names.length];
+        final long[] lengths = new long[names.length];
+        final byte[] flags = new byte[names.length];
+        final Deflater deflater = deflate ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+        final ByteBuffer input = deflate ? ByteBuffer.allocate(CHUNK_SIZE) : null;
+        final ByteBuffer output = deflate ? ByteBuffer.allocate(CHUNK_SIZE) : null;
+
+        final Path temp = pack.resolveSibling(pack.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < names.length; ++i) {
+                try (FileChannel in = FileChannel.open(mapDirectory.resolve(names[i]), StandardOpenOption.READ)) {
+                    final long size = in.size();
+                    if (size > Integer.MAX_VALUE) {
+                        throw new IOException("Level is too large: " + names[i]);
+                    }
+                    offsets[i] = offset;
+
+                    if (deflater != null) {
+                        out.position(offset);
+                        final long compressed = deflate(in, out, deflater, input, output);
+                        if (compressed < size) {
+                            lengths[i] = compressed;
+                            flags[i] = FLAG_DEFLATE;
+                            offset += compressed;
+                            continue;
+                        }
+                    }
+
+                    out.position(offset);
+                    long copied = 0;
+                    while (copied < size) {
+                        final long n = in.transferTo(copied, size - copied, out);
+                        if (n <= 0) {
+                            throw new EOFException("Level changed while packing: " + names[i]);
+                        }
+                        copied += n;
+                    }
+                    lengths[i] = size;
+                    offset += size;
+                }
+            }
+            // a compressed level which was replaced by its uncompressed contents may have been longer
+            out.truncate(offset);
+
+            // the stream is not closed, as it would close the channel
+            out.position(0);
+            final var index = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+            index.write(MAGIC);
+            index.writeInt(VERSION);
+            index.writeInt(names.length);
+            for (int i = 0; i < names.length; ++i) {
+                index.writeShort(encodedNames[i].length);
+                index.write(encodedNames[i]);
+                index.writeLong(offsets[i]);
+                index.writeInt((int) lengths[i]);
+                index.writeByte(flags[i]);
+            }
+            index.flush();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        try {
+            Files.move(temp, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, pack, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Compresses a level from its file into the pack at the current position of the pack.
+     *
+     * @param in       Channel of the level.
+     * @param out      Channel of the pack.
+     * @param deflater Deflater to compress with, which is reset.
+     * @param input    Buffer for the contents of the level.
+     * @param output   Buffer for the compressed contents.
+     * @return Length of the compressed contents.
+     * @throws IOException if the level cannot be read, or the pack cannot be written.
+     */
+    private static long deflate(@NotNull FileChannel in, @NotNull FileChannel out, @NotNull Deflater deflater,
+                                @NotNull ByteBuffer input, @NotNull ByteBuffer output) throws IOException {
+        deflater.reset();
+        long written = 0;
+        boolean finished = false;
+        while (!deflater.finished()) {
+            if (!finished && deflater.needsInput()) {
+                input.clear();
+                finished = in.read(input) < 0;
+                deflater.setInput(input.flip());
+                if (finished) {
+                    deflater.finish();
+                }
+            }
+
+            deflater.deflate(output.clear());
+            output.flip();
+            written += output.remaining();
+            while (output.hasRemaining()) {
+                out.write(output);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Opens a pack, and reads its index.
+     *
+     * @param pack Path of the pack.
+     * @return The pack, which must be closed.
+     * @throws IOException if the pack cannot be read, or is not a valid pack.
+     */
+    @NotNull
+    public static LevelPack open(@NotNull Path pack) throws IOException {
+        final FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            // the stream is not closed, as it would close the channel
+            final var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+            final byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a level pack: " + pack);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported level pack version " + version + ": " + pack);
+            }
+            final int count = in.readInt();
+            if (count < 0 || (long) count * ENTRY_LENGTH > size - HEADER_LENGTH) {
+                throw new IOException("Corrupt level pack: " + pack);
+            }
+
+            final var names = new String[count];
+            final var offsets = new long[count];
+            final var lengths = new int[count];
+            final var flags = new byte[count];
+            for (int i = 0; i < count; ++i) {
+                final byte[] name = new byte[in.readUnsignedShort()];
+                in.readFully(name);
+                names[i] = new String(name, StandardCharsets.UTF_8);
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                flags[i] = in.readByte();
+                if (offsets[i] < HEADER_LENGTH || lengths[i] < 0 || offsets[i] + lengths[i] > size) {
+                    throw new IOException("Corrupt level pack: " + pack);
+                }
+                if (flags[i] != 0 && flags[i] != FLAG_DEFLATE) {
+                    throw new IOException("Unsupported encoding " + flags[i] + " of " + names[i] + ": " + pack);
+                }
+            }
+            return new LevelPack(channel, names, offsets, lengths, flags);
+        } catch (EOFException e) {
+            channel.close();
+            throw new IOException("Truncated level pack: " + pack, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Number of levels.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param index Index of a level.
+     * @return File name of the level.
+     */
+    @NotNull
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @param index Index of a level.
+     * @return Whether the contents of the level are compressed.
+     */
+    public boolean isCompressed(int index) {
+        return flags[index] == FLAG_DEFLATE;
+    }
+
+    /**
+     * @param index Index of a level.
+     * @return Length of the contents of the level as stored in the pack, i.e. after compression.
+     */
+    public int getStoredLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Reads the contents of a level, decompressing them if needed.
+     *
+     * @param index  Index of the level.
+     * @param buffer Buffer to read into, which is reused if it is large enough.
+     * @return The buffer holding the contents between its position and limit, which is {@code buffer} or a larger
+     * buffer.
+     * @throws IOException if the level cannot be read.
+     */
+    @NotNull
+    public ByteBuffer read(int index, @NotNull ByteBuffer buffer) throws IOException {
+        if (isCompressed(index)) {
+            return inflate(index, buffer);
+        }
+
+        final int length = lengths[index];
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+        buffer.clear().limit(length);
+
+        long position = offsets[index];
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Truncated level " + names[index]);
+            }
+            position += n;
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads and decompresses the contents of a level.
+     *
+     * @param index  Index of the level.
+     * @param buffer Buffer to decompress into, which is reused if it is large enough.
+     * @return The buffer holding the contents between its position and limit, which is {@code buffer} or a larger
+     * buffer.
+     * @throws IOException if the level cannot be read or decompressed.
+     */
+    @NotNull
+    private ByteBuffer inflate(int index, @NotNull ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        if (!buffer.hasArray()) {
+            buffer = ByteBuffer.allocate(buffer.capacity());
+        }
+        final var inflater = new Inflater();
+        try (var in = new InflaterInputStream(new LevelInputStream(index), inflater, INFLATE_BUFFER_SIZE)) {
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    final var larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, CHUNK_SIZE));
+                    buffer = larger.put(buffer.flip());
+                }
+                final int n = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (n < 0) {
+                    break;
+                }
+                buffer.position(buffer.position() + n);
+            }
+        } catch (ZipException e) {
+            throw new IOException("Corrupt level " + names[index], e);
+        } finally {
+            inflater.end();
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads and parses a level.
+     *
+     * <p>
+     * The contents are decoded while they are read and decompressed, so the level is parsed without holding its text
+     * in memory.
+     * </p>
+     *
+     * @param index Index of the level.
+     * @return Properties of the level.
+     * @throws IOException         if the level cannot be read.
+     * @throws InvalidMapException if the level cannot be parsed.
+     */
+    @NotNull
+    public GameProperties load(int index) throws IOException {
+        final InputStream contents = new LevelInputStream(index);
+        final Inflater inflater = isCompressed(index) ? new Inflater() : null;
+        try (var in = inflater != null ? new InflaterInputStream(contents, inflater, INFLATE_BUFFER_SIZE) : contents) {
+            return new MapDecoder(in).decode();
+        } catch (ZipException e) {
+            throw new IOException("Corrupt level " + names[index], e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Stream of the stored contents of a level, which reads from the pack with positional reads.
+     */
+    private class LevelInputStream extends InputStream {
+
+        private final int index;
+        private long position;
+        private final long end;
+
+        LevelInputStream(int index) {
+            this.index = index;
+            this.position = offsets[index];
+            this.end = offsets[index] + lengths[index];
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == end) {
+                return -1;
+            }
+
+            final int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                throw new EOFException("Truncated level " + names[index]);
+            }
+            position += n;
+            return n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
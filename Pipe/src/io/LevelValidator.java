@@ -0,0 +1,803 @@
+package io;
+
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks whether levels are valid, and reports every problem found instead of stopping at the first one.
+ *
+ * <p>
+ * A level can be validated from the bytes of its map file, as written by {@link Serializer}, without creating any
+ * {@link Cell}, or from its {@link GameProperties}, as done by the level editor before saving. Both go through the same
+ * checks:
+ * <ul>
+ * <li>The file has the number of rows, the number of columns, the delay and every row of the map, and the starting
+ * pipes, if any, are known shapes.</li>
+ * <li>The map is at least 2x2, and the delay is positive.</li>
+ * <li>Every tile is known, i.e. {@link Cell#fromChar} would not return {@code null} for it.</li>
+ * <li>The border only holds walls and sinks, so that no pipe can be placed on it.</li>
+ * <li>There is at least one source and one sink. Every sink faces out of the map, and is entered from an empty tile.
+ * Every source opens into an empty tile.</li>
+ * <li>Every sink can be reached from a source through empty tiles. A source which cannot reach any sink is only a
+ * warning, as the level can still be won.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * A validator keeps its buffers between levels, so that validating many levels does not allocate in proportion to
+ * their size. It is therefore not thread-safe; every thread should use its own validator.
+ * </p>
+ */
+public class LevelValidator {
+
+    private static final String MSG_MISSING_SOURCE = "Source tile is missing!";
+    private static final String MSG_MISSING_SINK = "Sink tile is missing!";
+    private static final String MSG_BAD_DIMS = "Map size must be at least 2x2!";
+    private static final String MSG_BAD_DELAY = "Delay must be a positive value!";
+    private static final String MSG_SOURCE_TO_WALL = "Source tile is blocked by a wall!";
+    private static final String MSG_SINK_TO_WALL = "Sink tile is blocked by a wall!";
+
+    /**
+     * Largest number of tiles of a map, so that the flattened index of every tile fits in an {@code int}.
+     */
+    private static final long MAX_TILES = Integer.MAX_VALUE - 8;
+
+    /**
+     * Code of a tile which is missing, e.g. beyond the end of a short row. Missing tiles are reported once for their
+     * row, and then treated as walls.
+     */
+    private static final byte MISSING = 0;
+
+    /**
+     * Serialized representation of the pipe of each shape, indexed by ordinal.
+     */
+    @NotNull
+    private static final String[] SHAPE_REPS = Arrays.stream(Pipe.Shape.values())
+            .map(shape -> new Pipe(shape).toSerializedRep())
+            .toArray(String[]::new);
+
+    /**
+     * Severity of a problem.
+     */
+    public enum Severity {
+        /**
+         * The level cannot be loaded or won.
+         */
+        ERROR,
+        /**
+         * The level can be played, but is probably not what its author intended.
+         */
+        WARNING
+    }
+
+    /**
+     * A problem found in a level.
+     */
+    public static class Issue {
+        @NotNull
+        public final Severity severity;
+        /**
+         * Row and column of the tile the problem is about, or {@code -1} if it is not about a single tile.
+         */
+        public final int row;
+        public final int col;
+        @NotNull
+        public final String message;
+
+        public Issue(@NotNull Severity severity, int row, int col, @NotNull String message) {
+            this.severity = severity;
+            this.row = row;
+            this.col = col;
+            this.message = message;
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            final String prefix = severity == Severity.ERROR ? "error" : "warning";
+            if (row < 0) {
+                return prefix + ": " + message;
+            }
+            return prefix + " at (" + row + ", " + col + "): " + message;
+        }
+    }
+
+    /**
+     * Problems of the level being validated, or {@code null} if none has been found yet.
+     */
+    private List<Issue> issues;
+    private boolean hasErrors;
+
+    private int rows;
+    private int cols;
+    private int delay;
+    /**
+     * Character of every tile by flattened index.
+     */
+    @NotNull
+    private byte[] grid = new byte[0];
+    /**
+     * Shapes of the starting pipes.
+     */
+    @NotNull
+    private int[] pipes = new int[16];
+    private int pipeCount;
+    /**
+     * Weight of each pipe shape, which is only valid if {@link LevelValidator#hasWeights} is set.
+     */
+    @NotNull
+    private final int[] weights = new int[SHAPE_REPS.length];
+    private boolean hasWeights;
+
+    /**
+     * Flattened indices of the outlets of the sources and of the inlets of the sinks which are empty tiles, or
+     * {@code -1} for those which are not.
+     */
+    @NotNull
+    private int[] outlets = new int[16];
+    @NotNull
+    private int[] inlets = new int[16];
+    @NotNull
+    private int[] sinkIndices = new int[16];
+    @NotNull
+    private int[] sourceIndices = new int[16];
+    private int sourceCount;
+    private int sinkCount;
+
+    /**
+     * Region of empty tiles every tile belongs to, numbered from 1, or 0 if not reachable from a source.
+     */
+    @NotNull
+    private int[] regions = new int[0];
+    @NotNull
+    private int[] queue = new int[0];
+
+    /**
+     * Text being parsed, and the bounds of the current line.
+     */
+    private byte[] text;
+    private int textLength;
+    private int pos;
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber;
+
+    private long levelHash;
+
+    /**
+     * Validates a level from the contents of its map file.
+     *
+     * <p>
+     * The text is read as {@link Deserializer} does: blank lines and lines starting with {@code #} are skipped, the
+     * first three lines hold the number of rows, the number of columns and the delay, followed by the rows of the map,
+     * an optional line of starting pipes and an optional line of pipe weights.
+     * </p>
+     *
+     * @param data   Contents of the map file.
+     * @param length Number of bytes of {@code data} to read.
+     * @return Problems found in the level, which is empty if the level is valid.
+     */
+    @NotNull
+    public List<Issue> validate(@NotNull byte[] data, int length) {
+        reset();
+        text = data;
+        textLength = length;
+        try {
+            if (parseText()) {
+                checkTiles();
+            }
+        } finally {
+            text = null;
+        }
+        return finish();
+    }
+
+    /**
+     * Validates a level from its properties.
+     *
+     * @param prop Properties of the level, whose cells may be {@code null}.
+     * @return Problems found in the level, which is empty if the level is valid.
+     */
+    @NotNull
+    public List<Issue> validate(@NotNull GameProperties prop) {
+        reset();
+        rows = prop.rows;
+        cols = prop.cols;
+        delay = prop.delay;
+        if (checkHeader(true)) {
+            if (prop.cells.length < rows) {
+                error(-1, -1, "Map has only " + prop.cells.length + " of " + rows + " rows!");
+            }
+            for (int r = 0; r < rows; ++r) {
+                final Cell[] row = r < prop.cells.length ? prop.cells[r] : new Cell[0];
+                for (int c = 0; c < cols; ++c) {
+                    final Cell cell = c < row.length ? row[c] : null;
+                    if (cell == null) {
+                        if (r < prop.cells.length) {
+                            error(r, c, "Tile is missing!");
+                        }
+                        grid[r * cols + c] = MISSING;
+                    } else {
+                        grid[r * cols + c] = (byte) cell.toSerializedRep().charAt(0);
+                    }
+                }
+            }
+            if (prop.pipes != null) {
+                for (var pipe : prop.pipes) {
+                    addPipe(pipe.getShape().ordinal());
+                }
+            }
+            if (prop.weights != null) {
+                if (prop.weights.length != weights.length) {
+                    error(-1, -1, "Expected " + weights.length + " pipe weights, got " + prop.weights.length + "!");
+                } else {
+                    System.arraycopy(prop.weights, 0, weights, 0, weights.length);
+                    hasWeights = true;
+                    checkWeights();
+                }
+            }
+            checkTiles();
+        }
+        return finish();
+    }
+
+    /**
+     * @return Hash of the last level validated, as given by {@link GameProperties#computeHash()}, or 0 if the level
+     * has errors.
+     */
+    public long getLevelHash() {
+        return levelHash;
+    }
+
+    private void reset() {
+        issues = null;
+        hasErrors = false;
+        rows = 0;
+        cols = 0;
+        delay = 0;
+        pipeCount = 0;
+        hasWeights = false;
+        sourceCount = 0;
+        sinkCount = 0;
+        levelHash = 0;
+    }
+
+    @NotNull
+    private List<Issue> finish() {
+        if (!hasErrors) {
+            levelHash = computeHash();
+        }
+        return issues == null ? Collections.emptyList() : issues;
+    }
+
+    private void error(int row, int col, @NotNull String message) {
+        hasErrors = true;
+        report(new Issue(Severity.ERROR, row, col, message));
+    }
+
+    private void warning(int row, int col, @NotNull String message) {
+        report(new Issue(Severity.WARNING, row, col, message));
+    }
+
+    private void report(@NotNull Issue issue) {
+        if (issues == null) {
+            issues = new ArrayList<>();
+        }
+        issues.add(issue);
+    }
+
+    /**
+     * Checks the dimensions and the delay, and prepares the buffers for the tiles.
+     *
+     * @param checkDelay Whether to check the delay, which is not done if it cannot be parsed.
+     * @return Whether the dimensions allow the tiles to be checked.
+     */
+    private boolean checkHeader(boolean checkDelay) {
+        if (rows < 2 || cols < 2) {
+            error(-1, -1, MSG_BAD_DIMS);
+            return false;
+        }
+        if ((long) rows * cols > MAX_TILES) {
+            error(-1, -1, "Map size must be at most " + MAX_TILES + " tiles!");
+            return false;
+        }
+        if (checkDelay && delay <= 0) {
+            error(-1, -1, MSG_BAD_DELAY);
+        }
+
+        final int tiles = rows * cols;
+        if (grid.length < tiles) {
+            final int capacity = (int) Math.min(MAX_TILES, Math.max(tiles, 2L * grid.length));
+            grid = new byte[capacity];
+            regions = new int[capacity];
+            queue = new int[capacity];
+        }
+        return true;
+    }
+
+    // region Text
+
+    /**
+     * Parses the text into the dimensions, the tiles and the starting pipes.
+     *
+     * @return Whether every row of the map is read, so that the tiles can be checked.
+     */
+    private boolean parseText() {
+        pos = 0;
+        lineNumber = 0;
+
+        rows = parseHeaderLine("number of rows");
+        if (hasErrors) {
+            return false;
+        }
+        cols = parseHeaderLine("number of columns");
+        if (hasErrors) {
+            return false;
+        }
+        delay = parseHeaderLine("amount of delay");
+        if (!checkHeader(!hasErrors)) {
+            return false;
+        }
+
+        for (int r = 0; r < rows; ++r) {
+            if (!nextLine()) {
+                error(-1, -1, "Unexpected end of file when parsing row " + r + " of map!");
+                return false;
+            }
+            final int length = lineEnd - lineStart;
+            final int copied = Math.min(length, cols);
+            System.arraycopy(text, lineStart, grid, r * cols, copied);
+            if (length < cols) {
+                error(r, length, "Row " + r + " has only " + length + " of " + cols + " tiles!");
+                Arrays.fill(grid, r * cols + length, (r + 1) * cols, MISSING);
+            } else if (length > cols) {
+                warning(r, cols, "Row " + r + " has " + (length - cols) + " extra characters, which are ignored!");
+            }
+        }
+
+        boolean more = nextLine();
+        if (more && !isWeightsLine()) {
+            parsePipes();
+            more = nextLine();
+        }
+        if (more && isWeightsLine()) {
+            parseWeights();
+            more = nextLine();
+        }
+        if (more) {
+            final String after = hasWeights ? "pipe weights" : "starting pipes";
+            warning(-1, -1, "Line " + lineNumber + " after the " + after + " is ignored!");
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the next line which is not blank and not a comment.
+     *
+     * @return Whether there is such a line.
+     */
+    private boolean nextLine() {
+        while (pos < textLength) {
+            lineStart = pos;
+            while (pos < textLength && text[pos] != '\n' && text[pos] != '\r') {
+                ++pos;
+            }
+            lineEnd = pos;
+            if (pos < textLength && text[pos] == '\r') {
+                ++pos;
+            }
+            if (pos < textLength && text[pos] == '\n' && (pos == lineEnd || text[pos - 1] == '\r')) {
+                ++pos;
+            }
+            ++lineNumber;
+
+            if (lineEnd > lineStart && text[lineStart] != '#' && !isBlank(lineStart, lineEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; ++i) {
+            final byte b = text[i];
+            if (b != ' ' && b != '\t' && b != 0x0b && b != '\f' && (b < 0x1c || b > 0x1f)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a line holding a single integer, as accepted by {@link Integer#parseInt(String)}.
+     *
+     * @param what Description of the value.
+     * @return The value, or 0 if the line cannot be parsed, in which case an error is reported.
+     */
+    private int parseHeaderLine(@NotNull String what) {
+        if (!nextLine()) {
+            error(-1, -1, "Unexpected end of file when parsing " + what + "!");
+            return 0;
+        }
+
+        int i = lineStart;
+        final boolean negative = text[i] == '-';
+        if (negative || text[i] == '+') {
+            ++i;
+        }
+        long value = 0;
+        if (i == lineEnd || lineEnd - i > 10) {
+            value = -1;
+        }
+        for (; i < lineEnd && value >= 0; ++i) {
+            final int digit = text[i] - '0';
+            value = digit >= 0 && digit <= 9 ? value * 10 + digit : -1;
+        }
+        if (value < 0 || value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+            error(-1, -1, "Cannot parse " + what + " on line " + lineNumber + "!");
+            return 0;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parses the line of starting pipes, which are separated by commas, as done by {@link Pipe#fromString(String)}.
+     */
+    private void parsePipes() {
+        int end = lineEnd;
+        // trailing empty shapes are dropped, as by String#split
+        while (end > lineStart && text[end - 1] == ',') {
+            --end;
+        }
+
+        int start = lineStart;
+        while (start <= end) {
+            int comma = start;
+            while (comma < end && text[comma] != ',') {
+                ++comma;
+            }
+
+            int first = start;
+            int last = comma;
+            while (first < last && (text[first] & 0xff) <= ' ') {
+                ++first;
+            }
+            while (last > first && (text[last - 1] & 0xff) <= ' ') {
+                --last;
+            }
+            final int shape = findShape(first, last);
+            if (shape < 0) {
+                final String rep = new String(text, first, last - first, StandardCharsets.UTF_8);
+                error(-1, -1, "Unknown pipe '" + rep + "' in the starting pipes!");
+            } else {
+                addPipe(shape);
+            }
+            start = comma + 1;
+        }
+    }
+
+    /**
+     * @return Whether the current line is the line of pipe weights, which starts with a digit.
+     */
+    private boolean isWeightsLine() {
+        int i = lineStart;
+        while (i < lineEnd && (text[i] & 0xff) <= ' ') {
+            ++i;
+        }
+        return i < lineEnd && text[i] >= '0' && text[i] <= '9';
+    }
+
+    /**
+     * Parses the line of pipe weights, which are non-negative integers separated by commas.
+     */
+    private void parseWeights() {
+        int count = 0;
+        int start = lineStart;
+        while (start <= lineEnd) {
+            int comma = start;
+            while (comma < lineEnd && text[comma] != ',') {
+                ++comma;
+            }
+
+            int first = start;
+            int last = comma;
+            while (first < last && (text[first] & 0xff) <= ' ') {
+                ++first;
+            }
+            while (last > first && (text[last - 1] & 0xff) <= ' ') {
+                --last;
+            }
+            long value = first == last || last - first > 10 ? -1 : 0;
+            for (int i = first; i < last && value >= 0; ++i) {
+                final int digit = text[i] - '0';
+                value = digit >= 0 && digit <= 9 ? value * 10 + digit : -1;
+            }
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                error(-1, -1, "Cannot parse pipe weights on line " + lineNumber + "!");
+                return;
+            }
+            if (count < weights.length) {
+                weights[count] = (int) value;
+            }
+            ++count;
+            start = comma + 1;
+        }
+
+        if (count != weights.length) {
+            error(-1, -1, "Expected " + weights.length + " pipe weights, got " + count + "!");
+            return;
+        }
+        hasWeights = true;
+        checkWeights();
+    }
+
+    /**
+     * Checks that pipes can be generated with {@link LevelValidator#weights}, as required by
+     * {@link models.PipeQueue}.
+     */
+    private void checkWeights() {
+        long total = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                error(-1, -1, "Pipe weights must not be negative!");
+                return;
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            error(-1, -1, "At least one pipe shape must have a positive weight!");
+        } else if (total > Integer.MAX_VALUE) {
+            error(-1, -1, "Sum of pipe weights is too large!");
+        }
+    }
+
+    private int findShape(int start, int end) {
+        for (int shape = 0; shape < SHAPE_REPS.length; ++shape) {
+            final String rep = SHAPE_REPS[shape];
+            if (rep.length() != end - start) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < rep.length() && matches; ++i) {
+                matches = text[start + i] == rep.charAt(i);
+            }
+            if (matches) {
+                return shape;
+            }
+        }
+        return -1;
+    }
+
+    // endregion
+
+    private void addPipe(int shape) {
+        if (pipeCount == pipes.length) {
+            pipes = Arrays.copyOf(pipes, pipeCount * 2);
+        }
+        pipes[pipeCount++] = shape;
+    }
+
+    /**
+     * Checks the tiles of the map, which are in {@link LevelValidator#grid}.
+     */
+    private void checkTiles() {
+        for (int r = 0; r < rows; ++r) {
+            final boolean borderRow = r == 0 || r == rows - 1;
+            for (int c = 0; c < cols; ++c) {
+                final int index = r * cols + c;
+                final boolean border = borderRow || c == 0 || c == cols - 1;
+                final byte ch = grid[index];
+
+                switch (ch) {
+                    case 'W':
+                    case MISSING:
+                        break;
+                    case '.':
+                        if (border) {
+                            error(r, c, "Border tile must be a wall or a sink!");
+                        }
+                        break;
+                    case '^':
+                    case '>':
+                    case 'v':
+                    case '<':
+                        if (border) {
+                            checkSink(r, c, ch);
+                        } else {
+                            checkSource(r, c, ch);
+                        }
+                        break;
+                    default:
+                        error(r, c, "Unknown tile " + describe(ch) + "!");
+                        break;
+                }
+            }
+        }
+
+        if (sourceCount == 0) {
+            error(-1, -1, MSG_MISSING_SOURCE);
+        }
+        if (sinkCount == 0) {
+            error(-1, -1, MSG_MISSING_SINK);
+        }
+        if (sourceCount > 0 && sinkCount > 0) {
+            checkRoutes();
+        }
+    }
+
+    private void checkSink(int r, int c, byte ch) {
+        // water enters a sink from the opposite side of where it points to
+        final int inR = r - rowOffset(ch);
+        final int inC = c - colOffset(ch);
+        int inlet = -1;
+        if (inR <= 0 || inR >= rows - 1 || inC <= 0 || inC >= cols - 1) {
+            error(r, c, "Sink tile does not face out of the map!");
+        } else if (grid[inR * cols + inC] == 'W') {
+            error(r, c, MSG_SINK_TO_WALL);
+        } else if (grid[inR * cols + inC] != '.') {
+            error(r, c, "Sink tile must be entered from an empty tile!");
+        } else {
+            inlet = inR * cols + inC;
+        }
+
+        if (sinkCount == inlets.length) {
+            inlets = Arrays.copyOf(inlets, sinkCount * 2);
+            sinkIndices = Arrays.copyOf(sinkIndices, sinkCount * 2);
+        }
+        sinkIndices[sinkCount] = r * cols + c;
+        inlets[sinkCount++] = inlet;
+    }
+
+    private void checkSource(int r, int c, byte ch) {
+        final int outR = r + rowOffset(ch);
+        final int outC = c + colOffset(ch);
+        int outlet = -1;
+        if (grid[outR * cols + outC] == 'W') {
+            error(r, c, MSG_SOURCE_TO_WALL);
+        } else if (grid[outR * cols + outC] != '.' || outR == 0 || outR == rows - 1 || outC == 0
+                || outC == cols - 1) {
+            error(r, c, "Source tile must open into an empty tile!");
+        } else {
+            outlet = outR * cols + outC;
+        }
+
+        if (sourceCount == outlets.length) {
+            outlets = Arrays.copyOf(outlets, sourceCount * 2);
+            sourceIndices = Arrays.copyOf(sourceIndices, sourceCount * 2);
+        }
+        sourceIndices[sourceCount] = r * cols + c;
+        outlets[sourceCount++] = outlet;
+    }
+
+    /**
+     * Checks that every sink can be reached from a source, and that every source can reach a sink.
+     *
+     * <p>
+     * The empty tiles reachable from the outlets of the sources are split into regions by a breadth-first search from
+     * each outlet which is not in a region yet. A sink can be reached if its inlet is in a region, and a source can
+     * reach a sink if the region of its outlet contains the inlet of a sink.
+     * </p>
+     */
+    private void checkRoutes() {
+        Arrays.fill(regions, 0, rows * cols, 0);
+        int regionCount = 0;
+        for (int i = 0; i < sourceCount; ++i) {
+            if (outlets[i] >= 0 && regions[outlets[i]] == 0) {
+                fillRegion(outlets[i], ++regionCount);
+            }
+        }
+
+        final var reached = new boolean[regionCount + 1];
+        for (int i = 0; i < sinkCount; ++i) {
+            final int inlet = inlets[i];
+            if (inlet < 0) {
+                // already reported
+                continue;
+            }
+            if (regions[inlet] == 0) {
+                error(sinkIndices[i] / cols, sinkIndices[i] % cols, "Sink tile cannot be reached from any source!");
+            } else {
+                reached[regions[inlet]] = true;
+            }
+        }
+        for (int i = 0; i < sourceCount; ++i) {
+            if (outlets[i] >= 0 && !reached[regions[outlets[i]]]) {
+                warning(sourceIndices[i] / cols, sourceIndices[i] % cols, "Source tile cannot reach any sink!");
+            }
+        }
+    }
+
+    private void fillRegion(int start, int region) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        regions[start] = region;
+        while (head != tail) {
+            final int index = queue[head++];
+            final int r = index / cols;
+            final int c = index % cols;
+            // empty tiles on the border are reported, and never entered
+            if (r > 1) {
+                tail = visit(index - cols, region, tail);
+            }
+            if (r < rows - 2) {
+                tail = visit(index + cols, region, tail);
+            }
+            if (c > 1) {
+                tail = visit(index - 1, region, tail);
+            }
+            if (c < cols - 2) {
+                tail = visit(index + 1, region, tail);
+            }
+        }
+    }
+
+    private int visit(int index, int region, int tail) {
+        if (grid[index] == '.' && regions[index] == 0) {
+            regions[index] = region;
+            queue[tail++] = index;
+        }
+        return tail;
+    }
+
+    private static int rowOffset(byte ch) {
+        return ch == '^' ? -1 : ch == 'v' ? 1 : 0;
+    }
+
+    private static int colOffset(byte ch) {
+        return ch == '<' ? -1 : ch == '>' ? 1 : 0;
+    }
+
+    @NotNull
+    private static String describe(byte ch) {
+        if (ch > ' ' && ch < 0x7f) {
+            return "'" + (char) ch + "'";
+        }
+        return String.format("0x%02x", ch & 0xff);
+    }
+
+    /**
+     * @return Hash of the level, computed as {@link GameProperties#computeHash()} would for the parsed level.
+     */
+    private long computeHash() {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv1a(hash, rows);
+        hash = fnv1a(hash, cols);
+        hash = fnv1a(hash, delay);
+        final int tiles = rows * cols;
+        for (int i = 0; i < tiles; ++i) {
+            hash ^= grid[i] & 0xff;
+            hash *= 0x100000001b3L;
+            hash = fnv1a(hash, 1);
+        }
+        for (int i = 0; i < pipeCount; ++i) {
+            final String rep = SHAPE_REPS[pipes[i]];
+            for (int j = 0; j < rep.length(); ++j) {
+                hash ^= rep.charAt(j);
+                hash *= 0x100000001b3L;
+            }
+            hash = fnv1a(hash, rep.length());
+        }
+        if (hasWeights) {
+            for (int weight : weights) {
+                hash = fnv1a(hash, weight);
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, int value) {
+        for (int i = 0; i < 4; ++i) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,365 @@
+package io;
+
+import models.exceptions.InvalidMapException;
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes a map file from a stream in a single pass, e.g. a level being decompressed from a {@link LevelPack}.
+ *
+ * <p>
+ * The stream is read in chunks into a fixed buffer, and every cell is created directly from its byte, so that no line
+ * of the map is ever held as a {@link String}. Lines are delimited and skipped in the same way as by
+ * {@link Deserializer#parse(java.io.BufferedReader)}, and the same files are accepted, except that every malformed file
+ * is reported with an {@link InvalidMapException}.
+ * </p>
+ */
+final class MapDecoder {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int EOF = -1;
+
+    @NotNull
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+    /**
+     * Serialized representation of the pipe of each shape, indexed by ordinal.
+     */
+    @NotNull
+    private static final String[] SHAPE_REPS = new String[SHAPES.length];
+
+    static {
+        for (int i = 0; i < SHAPES.length; ++i) {
+            SHAPE_REPS[i] = new Pipe(SHAPES[i]).toSerializedRep();
+        }
+    }
+
+    @NotNull
+    private final InputStream in;
+    @NotNull
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    /**
+     * Bytes of the pipe being decoded, trimmed on both ends.
+     */
+    @NotNull
+    private final byte[] token = new byte[8];
+    private int tokenLength;
+
+    /**
+     * @param in Stream of the map file, which is not closed.
+     */
+    MapDecoder(@NotNull InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Decodes the map file.
+     *
+     * @return An instance of {@link GameProperties}.
+     * @throws IOException         if the stream cannot be read.
+     * @throws InvalidMapException if the map cannot be parsed.
+     */
+    @NotNull
+    GameProperties decode() throws IOException {
+        final int rows = readInt("number of rows");
+        final int cols = readInt("number of columns");
+        final int delay = readInt("amount of delay");
+        if (rows < 0 || cols < 0) {
+            throw new InvalidMapException("Invalid map size " + rows + "x" + cols);
+        }
+
+        final var cells = new Cell[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            final int indent = skipToContent();
+            if (indent == EOF) {
+                throw new InvalidMapException("Unexpected EOF when parsing row " + r + " of map");
+            }
+            if (indent > 0) {
+                throw new InvalidMapException("Unknown cell ' ' at row " + r + ", column 0");
+            }
+
+            final Cell[] row = cells[r];
+            for (int c = 0; c < cols; ++c) {
+                final int b = next();
+                if (b == EOF || b == '\n' || b == '\r') {
+                    throw new InvalidMapException("Missing column " + c + " of row " + r + " of map");
+                }
+                row[c] = Deserializer.parseCell(rows, cols, r, c, (char) b);
+                if (row[c] == null) {
+                    throw new InvalidMapException("Unknown cell '" + (char) b + "' at row " + r + ", column " + c);
+                }
+            }
+            skipLine();
+        }
+
+        List<Pipe> pipes = null;
+        boolean more = skipToContent() != EOF;
+        if (more && !isDigit(peek())) {
+            pipes = readPipes();
+            more = skipToContent() != EOF;
+        }
+
+        int[] weights = null;
+        if (more && isDigit(peek())) {
+            weights = readWeights();
+        }
+
+        return new GameProperties(rows, cols, cells, delay, pipes, weights);
+    }
+
+    /**
+     * Reads the next non-empty and non-comment line as an {@code int}.
+     *
+     * @param name Name of the value, for error messages.
+     * @return The value.
+     * @throws IOException if the stream cannot be read.
+     */
+    private int readInt(@NotNull String name) throws IOException {
+        final int indent = skipToContent();
+        if (indent == EOF) {
+            throw new InvalidMapException("Unexpected EOF when parsing " + name);
+        }
+
+        int b = next();
+        final boolean negative = b == '-';
+        if (b == '-' || b == '+') {
+            b = next();
+        }
+        if (indent > 0 || !isDigit(b)) {
+            throw new InvalidMapException("Invalid " + name);
+        }
+
+        long value = 0;
+        while (isDigit(b)) {
+            value = value * 10 + (b - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new InvalidMapException("Invalid " + name);
+            }
+            b = next();
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (!isLineEnd(b) || value > Integer.MAX_VALUE) {
+            throw new InvalidMapException("Invalid " + name);
+        }
+        skipLineEnd(b);
+        return (int) value;
+    }
+
+    /**
+     * Reads the comma-separated list of pipes on the current line.
+     *
+     * @return The pipes.
+     * @throws IOException if the stream cannot be read.
+     */
+    @NotNull
+    private List<Pipe> readPipes() throws IOException {
+        final var pipes = new ArrayList<Pipe>();
+        boolean skipped = false;
+        int rawLength = 0;
+        int trimmedLength = 0;
+        tokenLength = 0;
+        int b;
+        do {
+            b = next();
+            if (b == ',' || isLineEnd(b)) {
+                if (rawLength == 0) {
+                    skipped = true;
+                } else {
+                    // empty pipes are only allowed at the end of the list
+                    if (skipped) {
+                        throw new InvalidMapException("Unknown pipe '' in list of pipes");
+                    }
+                    tokenLength = trimmedLength;
+                    pipes.add(new Pipe(matchShape()));
+                }
+                rawLength = 0;
+                trimmedLength = 0;
+                tokenLength = 0;
+            } else {
+                ++rawLength;
+                if (tokenLength > 0 || !isWhitespace(b)) {
+                    if (tokenLength == token.length) {
+                        throw new InvalidMapException("Unknown pipe in list of pipes");
+                    }
+                    token[tokenLength++] = (byte) b;
+                    if (!isWhitespace(b)) {
+                        trimmedLength = tokenLength;
+                    }
+                }
+            }
+        } while (!isLineEnd(b));
+        skipLineEnd(b);
+
+        return pipes;
+    }
+
+    /**
+     * Reads the comma-separated list of pipe weights on the current line.
+     *
+     * @return The weights, indexed by {@link Pipe.Shape#ordinal()}.
+     * @throws IOException if the stream cannot be read.
+     */
+    @NotNull
+    private int[] readWeights() throws IOException {
+        final var weights = new int[SHAPES.length];
+        int count = 0;
+        int b;
+        do {
+            b = next();
+            while (isWhitespace(b)) {
+                b = next();
+            }
+            if (!isDigit(b)) {
+                throw new InvalidMapException("Invalid list of pipe weights");
+            }
+
+            long value = 0;
+            while (isDigit(b)) {
+                value = value * 10 + (b - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new InvalidMapException("Invalid list of pipe weights");
+                }
+                b = next();
+            }
+            while (isWhitespace(b)) {
+                b = next();
+            }
+            if (b != ',' && !isLineEnd(b)) {
+                throw new InvalidMapException("Invalid list of pipe weights");
+            }
+
+            if (count < weights.length) {
+                weights[count] = (int) value;
+            }
+            ++count;
+        } while (!isLineEnd(b));
+        skipLineEnd(b);
+
+        if (count != weights.length) {
+            throw new InvalidMapException("Expected " + SHAPES.length + " weights, got " + count);
+        }
+        Deserializer.checkWeights(weights);
+        return weights;
+    }
+
+    /**
+     * @return Shape whose representation is the current token.
+     */
+    @NotNull
+    private Pipe.Shape matchShape() {
+        for (int i = 0; i < SHAPES.length; ++i) {
+            final String rep = SHAPE_REPS[i];
+            if (rep.length() != tokenLength) {
+                continue;
+            }
+            int j = 0;
+            while (j < tokenLength && rep.charAt(j) == token[j]) {
+                ++j;
+            }
+            if (j == tokenLength) {
+                return SHAPES[i];
+            }
+        }
+
+        final var sb = new StringBuilder(tokenLength);
+        for (int j = 0; j < tokenLength; ++j) {
+            sb.append((char) (token[j] & 0xff));
+        }
+        throw new InvalidMapException("Unknown pipe '" + sb + "' in list of pipes");
+    }
+
+    /**
+     * Skips empty lines and comment lines, and then the leading whitespace of the next line.
+     *
+     * @return Number of whitespace bytes skipped on the next line, or {@link MapDecoder#EOF} if there are no more lines.
+     * @throws IOException if the stream cannot be read.
+     */
+    private int skipToContent() throws IOException {
+        while (true) {
+            int indent = 0;
+            int b = peek();
+            while (isWhitespace(b)) {
+                ++pos;
+                ++indent;
+                b = peek();
+            }
+
+            if (b == EOF) {
+                return EOF;
+            }
+            if (b == '\n' || b == '\r') {
+                skipLine();
+            } else if (b == '#' && indent == 0) {
+                skipLine();
+            } else {
+                return indent;
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of the current line, including its terminator.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    private void skipLine() throws IOException {
+        int b;
+        do {
+            b = next();
+        } while (!isLineEnd(b));
+        skipLineEnd(b);
+    }
+
+    /**
+     * Completes a line terminator, so that {@code "\r\n"} ends a single line.
+     *
+     * @param b Byte which ended the line.
+     * @throws IOException if the stream cannot be read.
+     */
+    private void skipLineEnd(int b) throws IOException {
+        if (b == '\r' && peek() == '\n') {
+            ++pos;
+        }
+    }
+
+    private int next() throws IOException {
+        final int b = peek();
+        if (b != EOF) {
+            ++pos;
+        }
+        return b;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit) {
+            pos = 0;
+            limit = Math.max(in.read(chunk, 0, chunk.length), 0);
+            if (limit == 0) {
+                return EOF;
+            }
+        }
+        return chunk[pos] & 0xff;
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isLineEnd(int b) {
+        return b == EOF || b == '\n' || b == '\r';
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\f' || b == 0x0B || b == 0x1C || b == 0x1D || b == 0x1E || b == 0x1F;
+    }
+}
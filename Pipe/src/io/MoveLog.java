@@ -0,0 +1,589 @@
+package io;
+
+import controllers.Metrics;
+import models.FXGame;
+import models.GameSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the moves and ticks of a {@link FXGame}, from which the game can be recovered after a crash or a
+ * power loss.
+ *
+ * <p>
+ * Every session logs into two files named after its id. The {@code .wal} file holds every event since the session
+ * started, and the {@code .save} file holds the latest autosave, which is a {@link SaveGame} whose
+ * {@link SaveGame#logPosition} is the number of events it includes. Recovering restores the autosave and replays the
+ * events after it.
+ * </p>
+ *
+ * <p>
+ * The {@code .wal} file starts with the magic bytes {@code PWAL}, the version of the format as an {@code int} and the
+ * session id as a {@code long}, followed by frames. Each frame is the length of its payload and the CRC-32 of its
+ * payload as {@code int}s, followed by the payload, which is a sequence of events encoded as in {@link ReplayFormat}.
+ * All numbers are big-endian. Recovery stops at the first incomplete or corrupted frame, which is where the writing was
+ * interrupted.
+ * </p>
+ *
+ * <p>
+ * Appending an event stores it into a preallocated ring buffer and returns. A background writer drains all events in
+ * the buffer at once, appends them to the log as a single frame with a single write, and syncs the log to disk as given
+ * by its {@link FsyncPolicy}. The writer also applies the events to its own copy of the game, and writes an autosave of
+ * the copy every {@link MoveLog#AUTOSAVE_INTERVAL} events, so that autosaving never touches the game being played.
+ * </p>
+ */
+public class MoveLog implements Closeable {
+
+    /**
+     * When the log is synced to disk.
+     */
+    public enum FsyncPolicy {
+        /**
+         * After every frame, so that no event is lost on a power loss.
+         */
+        ALWAYS,
+        /**
+         * At most once per {@link MoveLog#FSYNC_INTERVAL_MS}, so that the events of at most one interval are lost on a
+         * power loss.
+         */
+        PERIODIC,
+        /**
+         * Never, leaving it to the operating system. Events survive a crash of the game, but not of the system.
+         */
+        NEVER
+    }
+
+    /**
+     * Default directory to log sessions into, relative to the current working directory.
+     */
+    @NotNull
+    public static final Path DEFAULT_DIRECTORY = Paths.get("saves", "autosave");
+
+    @NotNull
+    private static final byte[] MAGIC = {'P', 'W', 'A', 'L'};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + 8;
+    private static final int FRAME_HEADER_LENGTH = 8;
+
+    private static final String LOG_SUFFIX = ".wal";
+    private static final String SAVE_SUFFIX = ".save";
+
+    /**
+     * Capacity of the ring buffer. Must be a power of two.
+     */
+    private static final int RING_CAPACITY = 1 << 12;
+    private static final int RING_MASK = RING_CAPACITY - 1;
+
+    /**
+     * Maximum time in milliseconds between a frame being written and the log being synced, for
+     * {@link FsyncPolicy#PERIODIC}.
+     */
+    private static final long FSYNC_INTERVAL_MS = 1000;
+
+    /**
+     * Number of events between each autosave.
+     */
+    private static final int AUTOSAVE_INTERVAL = 256;
+
+    /**
+     * Policy of subsequently created logs.
+     */
+    @NotNull
+    private static volatile FsyncPolicy defaultFsyncPolicy = FsyncPolicy.PERIODIC;
+
+    /**
+     * Ids of the sessions of this process whose files are still in use.
+     */
+    @NotNull
+    private static final Set<Long> OPEN_SESSIONS = ConcurrentHashMap.newKeySet();
+
+    private final long sessionId;
+    @NotNull
+    private final Path logPath;
+    @NotNull
+    private final Path savePath;
+    @Nullable
+    private final String levelName;
+    @NotNull
+    private final FsyncPolicy fsyncPolicy;
+    private final int cols;
+
+    /**
+     * State of the game when the log is created, which is written as the first autosave.
+     */
+    @NotNull
+    private final GameSnapshot base;
+    /**
+     * Copy of the game, to which the writer applies the events it has written. Only accessed by the writer.
+     */
+    @NotNull
+    private final FXGame replica;
+
+    @NotNull
+    private final Object lock = new Object();
+    /**
+     * Events appended and not drained yet. The event with sequence number {@code i} is at {@code ring[i & RING_MASK]}.
+     */
+    @NotNull
+    private final long[] ring = new long[RING_CAPACITY];
+    /**
+     * Sequence number of the next event to drain, and of the next event to append. Guarded by {@link MoveLog#lock}.
+     */
+    private long head = 0;
+    private long tail = 0;
+    private boolean writerWaiting = false;
+    private boolean closed = false;
+    /**
+     * Whether the files of the session are deleted once the writer stops, and whether the writer has stopped. Guarded
+     * by {@link MoveLog#lock}.
+     */
+    private boolean deleteOnClose = true;
+    private boolean writerStopped = false;
+
+    /**
+     * Sets the policy of all subsequently created logs.
+     *
+     * @param policy New default policy.
+     */
+    public static void setDefaultFsyncPolicy(@NotNull FsyncPolicy policy) {
+        defaultFsyncPolicy = policy;
+    }
+
+    /**
+     * @return Current default policy of all logs.
+     */
+    @NotNull
+    public static FsyncPolicy getDefaultFsyncPolicy() {
+        return defaultFsyncPolicy;
+    }
+
+    /**
+     * Creates a log of a game into {@link MoveLog#DEFAULT_DIRECTORY}, with {@link MoveLog#getDefaultFsyncPolicy()}.
+     *
+     * @param levelName Name of the level being played, or {@code null} if the level is generated.
+     * @param game      Game to log.
+     * @see MoveLog#MoveLog(Path, String, FXGame, FsyncPolicy)
+     */
+    public MoveLog(@Nullable String levelName, @NotNull FXGame game) {
+        this(DEFAULT_DIRECTORY, levelName, game, defaultFsyncPolicy);
+    }
+
+    /**
+     * Creates a log of a game, and starts its writer.
+     *
+     * <p>
+     * The water of the game should not be flowing when the log is created, as the log takes a snapshot of the game.
+     * The files are created by the writer, so this does not wait on the disk. If the files cannot be written, the error
+     * is printed and all subsequent events are ignored.
+     * </p>
+     *
+     * @param directory   Directory to create the files of the session in.
+     * @param levelName   Name of the level being played, or {@code null} if the level is generated.
+     * @param game        Game to log.
+     * @param fsyncPolicy When the log is synced to disk.
+     */
+    public MoveLog(@NotNull Path directory, @Nullable String levelName, @NotNull FXGame game,
+                   @NotNull FsyncPolicy fsyncPolicy) {
+        long id;
+        do {
+            id = new Random().nextLong() & Long.MAX_VALUE;
+        } while (!OPEN_SESSIONS.add(id));
+        this.sessionId = id;
+
+        final var name = String.format("%016x", sessionId);
+        this.logPath = directory.resolve(name + LOG_SUFFIX);
+        this.savePath = directory.resolve(name + SAVE_SUFFIX);
+        this.levelName = levelName;
+        this.fsyncPolicy = fsyncPolicy;
+
+        this.base = game.snapshot();
+        this.cols = base.cols;
+        this.replica = FXGame.restore(base);
+        ReplayFormat.replayFlow(replica);
+
+        final var writer = new Thread(this::runWriter, "move-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records a pipe placed at (row, col).
+     *
+     * @param row Row of the placed pipe.
+     * @param col Column of the placed pipe.
+     */
+    public void recordPlace(int row, int col) {
+        append(((long) row * cols + col) << ReplayFormat.TAG_BITS | ReplayFormat.PLACE);
+    }
+
+    /**
+     * Records a skipped pipe.
+     */
+    public void recordSkip() {
+        append(ReplayFormat.SKIP);
+    }
+
+    /**
+     * Records an undo request, regardless of whether a step is actually undone.
+     */
+    public void recordUndo() {
+        append(ReplayFormat.UNDO);
+    }
+
+    /**
+     * Records an elapsed tick of the flow timer.
+     */
+    public void recordTick() {
+        append(ReplayFormat.TICK);
+    }
+
+    /**
+     * Closes the log of a session which has ended normally, and deletes its files.
+     *
+     * @see MoveLog#close(boolean)
+     */
+    @Override
+    public void close() {
+        close(true);
+    }
+
+    /**
+     * Closes the log of a session which has ended.
+     *
+     * <p>
+     * The writer writes all remaining events, then deletes the files of the session if {@code deleteFiles} is set, as
+     * there is nothing to recover. Otherwise the files are kept, so that the game can still be recovered until
+     * {@link MoveLog#deleteFiles()} is invoked, e.g. once the game is saved elsewhere. All subsequent events are
+     * ignored. Closing a closed log has no effect.
+     * </p>
+     *
+     * @param deleteFiles Whether to delete the files of the session.
+     */
+    public void close(boolean deleteFiles) {
+        synchronized (lock) {
+            if (!closed) {
+                deleteOnClose = deleteFiles;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Deletes the files of a session whose log is closed with {@link MoveLog#close(boolean)}, once the writer has
+     * written all remaining events.
+     */
+    public void deleteFiles() {
+        synchronized (lock) {
+            deleteOnClose = true;
+            if (!writerStopped) {
+                return;
+            }
+        }
+        try {
+            Files.deleteIfExists(logPath);
+            Files.deleteIfExists(savePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stores an event into the ring buffer.
+     *
+     * <p>
+     * This only waits if the writer has fallen {@link MoveLog#RING_CAPACITY} events behind.
+     * </p>
+     *
+     * @param event Event to append.
+     */
+    private void append(long event) {
+        synchronized (lock) {
+            while (tail - head == RING_CAPACITY && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (closed) {
+                return;
+            }
+
+            ring[(int) (tail & RING_MASK)] = event;
+            ++tail;
+            if (writerWaiting) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void runWriter() {
+        Metrics.stopRecordingMovesOnCurrentThread();
+
+        final long[] batch = new long[RING_CAPACITY];
+        final byte[] frame = new byte[FRAME_HEADER_LENGTH + RING_CAPACITY * ReplayFormat.MAX_VARINT_LENGTH];
+        final var crc = new CRC32();
+
+        boolean completed = false;
+        try {
+            new SaveGame(levelName, base, 0).write(savePath);
+
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final var header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.put(MAGIC).putInt(VERSION).putLong(sessionId).flip();
+                writeFully(channel, header);
+                if (fsyncPolicy != FsyncPolicy.NEVER) {
+                    channel.force(false);
+                }
+
+                long written = 0;
+                long autosaved = 0;
+                boolean unsynced = false;
+                long lastSyncNanos = System.nanoTime();
+
+                while (true) {
+                    final int count;
+                    final boolean closing;
+                    synchronized (lock) {
+                        while (head == tail && !closed) {
+                            long timeout = 0;
+                            if (unsynced) {
+                                timeout = FSYNC_INTERVAL_MS - (System.nanoTime() - lastSyncNanos) / 1_000_000;
+                                if (timeout <= 0) {
+                                    break;
+                                }
+                            }
+                            writerWaiting = true;
+                            lock.wait(timeout);
+                            writerWaiting = false;
+                        }
+
+                        count = (int) (tail - head);
+                        for (int i = 0; i < count; ++i) {
+                            batch[i] = ring[(int) ((head + i) & RING_MASK)];
+                        }
+                        head = tail;
+                        closing = closed;
+                        lock.notifyAll();
+                    }
+
+                    if (count > 0) {
+                        int length = FRAME_HEADER_LENGTH;
+                        for (int i = 0; i < count; ++i) {
+                            length = ReplayFormat.writeVarint(frame, length, batch[i]);
+                        }
+                        crc.reset();
+                        crc.update(frame, FRAME_HEADER_LENGTH, length - FRAME_HEADER_LENGTH);
+                        ByteBuffer.wrap(frame).putInt(length - FRAME_HEADER_LENGTH).putInt((int) crc.getValue());
+                        writeFully(channel, ByteBuffer.wrap(frame, 0, length));
+                        unsynced = fsyncPolicy != FsyncPolicy.NEVER;
+                    }
+
+                    if (unsynced && (fsyncPolicy == FsyncPolicy.ALWAYS || closing
+                            || System.nanoTime() - lastSyncNanos >= FSYNC_INTERVAL_MS * 1_000_000)) {
+                        channel.force(false);
+                        unsynced = false;
+                        lastSyncNanos = System.nanoTime();
+                    }
+
+                    for (int i = 0; i < count; ++i) {
+                        ReplayFormat.applyEvent(replica, batch[i], cols);
+                    }
+                    written += count;
+                    if (closing) {
+                        break;
+                    }
+                    if (written - autosaved >= AUTOSAVE_INTERVAL) {
+                        new SaveGame(levelName, replica.snapshot(), written).write(savePath);
+                        autosaved = written;
+                    }
+                }
+            }
+
+            final boolean delete;
+            synchronized (lock) {
+                writerStopped = true;
+                delete = deleteOnClose;
+            }
+            if (delete) {
+                Files.deleteIfExists(logPath);
+                Files.deleteIfExists(savePath);
+            }
+            completed = true;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            if (!completed) {
+                // stop accepting events, so that the game never waits for a writer which has stopped
+                synchronized (lock) {
+                    closed = true;
+                    writerStopped = true;
+                    lock.notifyAll();
+                }
+            }
+            OPEN_SESSIONS.remove(sessionId);
+        }
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Recovers the sessions in a directory which did not end normally.
+     *
+     * <p>
+     * The game of the latest such session which has not ended is recovered from its autosave and log, and written to
+     * {@code savePath} unless the save there is newer. The files of all such sessions are then deleted. Sessions which
+     * are still being logged by this process are skipped.
+     * </p>
+     *
+     * @param directory Directory containing the files of the sessions.
+     * @param savePath  Path to write the recovered game to.
+     * @return Whether a game is recovered into {@code savePath}.
+     * @throws IOException if the directory cannot be read, or the recovered game cannot be written.
+     */
+    public static boolean recover(@NotNull Path directory, @NotNull Path savePath) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+
+        final List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + LOG_SUFFIX)) {
+            for (Path log : stream) {
+                final var name = log.getFileName().toString();
+                try {
+                    final long id = Long.parseUnsignedLong(name.substring(0, name.length() - LOG_SUFFIX.length()), 16);
+                    if (!OPEN_SESSIONS.contains(id)) {
+                        logs.add(log);
+                    }
+                } catch (NumberFormatException e) {
+                    // not a log of a session
+                }
+            }
+        }
+
+        SaveGame latest = null;
+        FileTime latestTime = null;
+        for (Path log : logs) {
+            final var name = log.getFileName().toString();
+            final Path save = log.resolveSibling(name.substring(0, name.length() - LOG_SUFFIX.length()) + SAVE_SUFFIX);
+            try {
+                final FileTime time = Files.getLastModifiedTime(log);
+                final var recovered = recoverSession(log, save);
+                if (recovered != null && (latestTime == null || time.compareTo(latestTime) > 0)) {
+                    latest = recovered;
+                    latestTime = time;
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        boolean written = false;
+        if (latest != null && (!Files.exists(savePath) || latestTime.compareTo(Files.getLastModifiedTime(savePath)) > 0)) {
+            latest.write(savePath);
+            written = true;
+        }
+
+        for (Path log : logs) {
+            final var name = log.getFileName().toString();
+            Files.deleteIfExists(log.resolveSibling(name.substring(0, name.length() - LOG_SUFFIX.length()) + SAVE_SUFFIX));
+            Files.deleteIfExists(log);
+        }
+        return written;
+    }
+
+    /**
+     * Recovers the game of a session.
+     *
+     * @param log  Path of the log of the session.
+     * @param save Path of the autosave of the session.
+     * @return Save of the recovered game, or {@code null} if the game has ended.
+     * @throws IOException if the files cannot be read.
+     */
+    @Nullable
+    private static SaveGame recoverSession(@NotNull Path log, @NotNull Path save) throws IOException {
+        final var autosave = SaveGame.read(save);
+        final var game = FXGame.restore(autosave.snapshot);
+        ReplayFormat.replayFlow(game);
+
+        final var data = ByteBuffer.wrap(Files.readAllBytes(log));
+        final var magic = new byte[MAGIC.length];
+        if (data.remaining() < HEADER_LENGTH) {
+            throw new IOException("Log is too short: " + log);
+        }
+        data.get(magic);
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a move log: " + log);
+            }
+        }
+        final int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported move log version " + version + ": " + log);
+        }
+        data.getLong();
+
+        final var crc = new CRC32();
+        final var bytes = data.array();
+        long position = 0;
+        while (data.remaining() >= FRAME_HEADER_LENGTH) {
+            final int length = data.getInt();
+            final int checksum = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, data.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            final int end = data.position() + length;
+            int pos = data.position();
+            while (pos < end) {
+                long event = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[pos++];
+                    event |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0 && pos < end);
+
+                if (position++ >= autosave.logPosition) {
+                    ReplayFormat.applyEvent(game, event, autosave.snapshot.cols);
+                }
+            }
+            data.position(end);
+        }
+
+        if (game.hasWon() || game.hasLost()) {
+            return null;
+        }
+        return new SaveGame(autosave.levelName, game.snapshot());
+    }
+}
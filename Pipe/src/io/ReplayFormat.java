@@ -0,0 +1,147 @@
+package io;
+
+import models.FXGame;
+import models.exceptions.InvalidMapException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Constants and encoding helpers shared by {@link ReplayRecorder} and {@link ReplayPlayer}, whose events are also used
+ * by {@link MoveLog}.
+ *
+ * <p>
+ * A replay file consists of a header followed by a stream of events. The header contains, in order:
+ * <ul>
+ * <li>The magic bytes {@code PREP}, and the format version as a varint.</li>
+ * <li>The seed used to generate pipes, and the level hash as given by {@link GameProperties#computeHash()}, each as
+ * 8 big-endian bytes.</li>
+ * <li>The flow duration, number of rows, number of columns and delay, each as a varint.</li>
+ * <li>The serialized representation of every cell, one byte per cell in row-major order.</li>
+ * <li>The number of starting pipes as a varint, followed by the ordinal of each pipe shape as one byte.</li>
+ * <li>The number of pipe shape weights as a varint, which is 0 if every shape has equal weight, followed by the weight
+ * of each shape as a varint.</li>
+ * </ul>
+ * Each event is a single varint, with the event type in the lowest {@link ReplayFormat#TAG_BITS} bits and the payload
+ * in the remaining bits. The payload of {@link ReplayFormat#PLACE} is the row-major index of the cell. The
+ * {@link ReplayFormat#END} event is followed by the final state hash as 8 big-endian bytes, then the number of steps
+ * and number of undos as varints.
+ * </p>
+ */
+final class ReplayFormat {
+
+    private ReplayFormat() {
+    }
+
+    static final byte[] MAGIC = {'P', 'R', 'E', 'P'};
+    static final int VERSION = 3;
+
+    static final int TAG_BITS = 3;
+    static final int TAG_MASK = (1 << TAG_BITS) - 1;
+
+    /**
+     * A tick of the flow timer has elapsed.
+     */
+    static final int TICK = 0;
+    /**
+     * A pipe is placed.
+     */
+    static final int PLACE = 1;
+    /**
+     * A pipe is skipped.
+     */
+    static final int SKIP = 2;
+    /**
+     * An undo is requested.
+     */
+    static final int UNDO = 3;
+    /**
+     * The recording has ended.
+     */
+    static final int END = 4;
+
+    /**
+     * Maximum number of bytes taken by a varint-encoded {@code long}.
+     */
+    static final int MAX_VARINT_LENGTH = 10;
+
+    /**
+     * Writes a value as an unsigned varint.
+     *
+     * @param buf    Buffer to write to.
+     * @param offset Offset to start writing at.
+     * @param value  Value to write.
+     * @return The offset after the written value.
+     */
+    static int writeVarint(@NotNull byte[] buf, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Writes a value as 8 big-endian bytes.
+     *
+     * @param buf    Buffer to write to.
+     * @param offset Offset to start writing at.
+     * @param value  Value to write.
+     * @return The offset after the written value.
+     */
+    static int writeLong(@NotNull byte[] buf, int offset, long value) {
+        for (int i = 7; i >= 0; --i) {
+            buf[offset++] = (byte) (value >>> (i * 8));
+        }
+        return offset;
+    }
+
+    /**
+     * Makes the water of a game flow when it is driven by {@link FXGame#tick()}, in the same way as in a
+     * {@link controllers.GameSession}.
+     *
+     * @param game Game to drive.
+     */
+    static void replayFlow(@NotNull FXGame game) {
+        game.addOnFlowHandler(() -> {
+            game.updateState();
+            game.hasLost();
+        });
+    }
+
+    /**
+     * Applies an event other than {@link ReplayFormat#END} to a game, in the same way as it is handled by
+     * {@link views.panes.GameplayPane}. Moves made after the game has ended are ignored.
+     *
+     * @param game  Game to apply the event to, driven as given by {@link ReplayFormat#replayFlow(FXGame)}.
+     * @param event Event to apply.
+     * @param cols  Number of columns of the map.
+     * @throws InvalidMapException if the event is unknown.
+     */
+    static void applyEvent(@NotNull FXGame game, long event, int cols) {
+        final int tag = (int) (event & TAG_MASK);
+        if (tag == TICK) {
+            game.tick();
+            return;
+        }
+        if (game.hasWon() || game.hasLost()) {
+            return;
+        }
+
+        switch (tag) {
+            case PLACE:
+                final long index = event >>> TAG_BITS;
+                game.placePipe((int) (index / cols), (int) (index % cols));
+                game.hasWon();
+                game.hasLost();
+                break;
+            case SKIP:
+                game.skipPipe();
+                break;
+            case UNDO:
+                game.undoStep();
+                break;
+            default:
+                throw new InvalidMapException("Unknown replay event " + tag);
+        }
+    }
+}
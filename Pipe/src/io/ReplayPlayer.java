@@ -0,0 +1,188 @@
+package io;
+
+import models.FXGame;
+import models.exceptions.InvalidMapException;
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a recorded game without rendering, as fast as possible.
+ *
+ * <p>
+ * The moves are applied in the same way as they are handled by {@link views.panes.GameplayPane}, so the final state of
+ * the replayed game is identical to the recorded game.
+ * </p>
+ *
+ * @see ReplayFormat
+ * @see ReplayRecorder
+ */
+public class ReplayPlayer {
+
+    /**
+     * Result of a replay.
+     */
+    public static class Result {
+
+        /**
+         * The game after all events are applied.
+         */
+        @NotNull
+        public final FXGame game;
+        /**
+         * Hash of the level, as recorded in the replay.
+         */
+        public final long levelHash;
+        /**
+         * Number of events applied.
+         */
+        public final long events;
+        /**
+         * Whether the replay contains the final state of the recorded game.
+         */
+        public final boolean complete;
+        /**
+         * Whether the final state of the replayed game matches the recorded state. Always {@code false} if the replay is
+         * not complete.
+         */
+        public final boolean verified;
+
+        Result(@NotNull FXGame game, long levelHash, long events, boolean complete, boolean verified) {
+            this.game = game;
+            this.levelHash = levelHash;
+            this.events = events;
+            this.complete = complete;
+            this.verified = verified;
+        }
+    }
+
+    @NotNull
+    private final byte[] data;
+    private int pos = 0;
+
+    /**
+     * Reads a replay file into memory.
+     *
+     * @param path Path to the replay file.
+     * @throws IOException if the file cannot be read.
+     */
+    public ReplayPlayer(@NotNull Path path) throws IOException {
+        this.data = Files.readAllBytes(path);
+    }
+
+    /**
+     * Plays the replay from the beginning.
+     *
+     * @return Result of the replay.
+     * @throws InvalidMapException if the replay is malformed.
+     */
+    @NotNull
+    public Result play() {
+        pos = 0;
+        try {
+            return doPlay();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new InvalidMapException("Unexpected end of replay");
+        }
+    }
+
+    @NotNull
+    private Result doPlay() {
+        for (byte b : ReplayFormat.MAGIC) {
+            if (data[pos++] != b) {
+                throw new InvalidMapException("Not a replay file");
+            }
+        }
+        final long version = readVarint();
+        if (version != ReplayFormat.VERSION) {
+            throw new InvalidMapException("Unsupported replay version " + version);
+        }
+
+        final long seed = readLong();
+        final long levelHash = readLong();
+        final int flowDuration = (int) readVarint();
+        final int rows = (int) readVarint();
+        final int cols = (int) readVarint();
+        final int delay = (int) readVarint();
+
+        final var cells = new Cell[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                cells[r][c] = Deserializer.parseCell(rows, cols, r, c, (char) data[pos++]);
+                if (cells[r][c] == null) {
+                    throw new InvalidMapException("Invalid cell at row " + r + ", column " + c);
+                }
+            }
+        }
+
+        final int pipeCount = (int) readVarint();
+        final var shapes = Pipe.Shape.values();
+        List<Pipe> pipes = null;
+        if (pipeCount != 0) {
+            pipes = new ArrayList<>(pipeCount);
+            for (int i = 0; i < pipeCount; ++i) {
+                pipes.add(new Pipe(shapes[data[pos++]]));
+            }
+        }
+
+        final long weightCount = readVarint();
+        int[] weights = null;
+        if (weightCount != 0) {
+            if (weightCount != shapes.length) {
+                throw new InvalidMapException("Expected " + shapes.length + " pipe weights, got " + weightCount);
+            }
+            weights = new int[shapes.length];
+            for (int i = 0; i < weights.length; ++i) {
+                weights[i] = (int) readVarint();
+            }
+            Deserializer.checkWeights(weights);
+        }
+
+        final var game = new FXGame(rows, cols, delay, cells, pipes, seed, flowDuration, weights);
+        ReplayFormat.replayFlow(game);
+
+        long events = 0;
+        while (pos < data.length) {
+            final long event = readVarint();
+            final int tag = (int) (event & ReplayFormat.TAG_MASK);
+
+            if (tag == ReplayFormat.END) {
+                final boolean verified = readLong() == game.getStateHash()
+                        && readVarint() == game.getNumOfSteps().get()
+                        && readVarint() == game.getNumOfUndo().get();
+                return new Result(game, levelHash, events, true, verified);
+            }
+
+            ++events;
+            ReplayFormat.applyEvent(game, event, cols);
+        }
+
+        return new Result(game, levelHash, events, false, false);
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = data[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidMapException("Malformed varint in replay");
+    }
+
+    private long readLong() {
+        long value = 0;
+        for (int i = 0; i < 8; ++i) {
+            value = (value << 8) | (data[pos++] & 0xFF);
+        }
+        return value;
+    }
+}
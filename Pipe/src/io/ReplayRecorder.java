@@ -0,0 +1,251 @@
+package io;
+
+import models.FXGame;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records the moves and ticks of a {@link FXGame} into a replay file.
+ *
+ * <p>
+ * Events are appended into an in-memory buffer, which is handed to a background writer once it is full. The writer
+ * appends the buffer into the file, so that the thread recording the events never waits on the disk.
+ * </p>
+ *
+ * @see ReplayFormat
+ * @see ReplayPlayer
+ */
+public class ReplayRecorder {
+
+    /**
+     * Default directory to save replays to, relative to the current working directory.
+     */
+    @NotNull
+    public static final Path DEFAULT_DIRECTORY = Paths.get("replays");
+
+    /**
+     * Number of buffered bytes before the buffer is handed to the writer.
+     */
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    /**
+     * Writer shared by all recorders.
+     */
+    @NotNull
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        final var t = new Thread(r, "replay-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @NotNull
+    private final Path path;
+    @NotNull
+    private final FileChannel channel;
+    private final int cols;
+
+    @NotNull
+    private byte[] buffer = new byte[0];
+    private int length = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a recorder for a game, and writes the header of the replay.
+     *
+     * <p>
+     * The game should not have any moves made before this recorder is created.
+     * </p>
+     *
+     * @param path Path to save the replay to. Existing files are overwritten.
+     * @param game Game to record.
+     * @throws IOException if the file cannot be created.
+     */
+    public ReplayRecorder(@NotNull Path path, @NotNull FXGame game) throws IOException {
+        this.path = path;
+
+        final var prop = game.getInitialProperties();
+        final var pipes = prop.pipes;
+        final int pipeCount = pipes != null ? pipes.size() : 0;
+        final var weights = prop.weights;
+        final int weightCount = weights != null ? weights.length : 0;
+        this.cols = prop.cols;
+
+        final byte[] header = new byte[ReplayFormat.MAGIC.length + 16
+                + (6 + weightCount) * ReplayFormat.MAX_VARINT_LENGTH + prop.rows * prop.cols + pipeCount];
+        int offset = 0;
+        for (byte b : ReplayFormat.MAGIC) {
+            header[offset++] = b;
+        }
+        offset = ReplayFormat.writeVarint(header, offset, ReplayFormat.VERSION);
+        offset = ReplayFormat.writeLong(header, offset, game.getSeed());
+        offset = ReplayFormat.writeLong(header, offset, prop.computeHash());
+        offset = ReplayFormat.writeVarint(header, offset, game.getFlowDuration());
+        offset = ReplayFormat.writeVarint(header, offset, prop.rows);
+        offset = ReplayFormat.writeVarint(header, offset, prop.cols);
+        offset = ReplayFormat.writeVarint(header, offset, prop.delay);
+        for (var row : prop.cells) {
+            for (var cell : row) {
+                header[offset++] = (byte) cell.toSerializedRep().charAt(0);
+            }
+        }
+        offset = ReplayFormat.writeVarint(header, offset, pipeCount);
+        if (pipes != null) {
+            for (Pipe pipe : pipes) {
+                header[offset++] = (byte) pipe.getShape().ordinal();
+            }
+        }
+        offset = ReplayFormat.writeVarint(header, offset, weightCount);
+        if (weights != null) {
+            for (int weight : weights) {
+                offset = ReplayFormat.writeVarint(header, offset, weight);
+            }
+        }
+
+        final var parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        buffer = header;
+        length = offset;
+        flush();
+    }
+
+    /**
+     * Creates a path for recording a new session into {@link ReplayRecorder#DEFAULT_DIRECTORY}.
+     *
+     * @param levelName Name of the level being played, or {@code null} if the level is generated.
+     * @return Path to the new replay file.
+     */
+    @NotNull
+    public static Path newSessionPath(@Nullable String levelName) {
+        final var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+        final var name = levelName != null ? levelName.replaceAll("\\.map$", "") : "generated";
+        return DEFAULT_DIRECTORY.resolve(timestamp + "-" + name + ".replay");
+    }
+
+    /**
+     * Records a pipe placed at (row, col).
+     *
+     * @param row Row of the placed pipe.
+     * @param col Column of the placed pipe.
+     */
+    public void recordPlace(int row, int col) {
+        append(((long) row * cols + col) << ReplayFormat.TAG_BITS | ReplayFormat.PLACE);
+    }
+
+    /**
+     * Records a skipped pipe.
+     */
+    public void recordSkip() {
+        append(ReplayFormat.SKIP);
+    }
+
+    /**
+     * Records an undo request, regardless of whether a step is actually undone.
+     */
+    public void recordUndo() {
+        append(ReplayFormat.UNDO);
+    }
+
+    /**
+     * Records an elapsed tick of the flow timer.
+     */
+    public void recordTick() {
+        append(ReplayFormat.TICK);
+    }
+
+    /**
+     * Records the end of the game along with its final state, then writes all remaining events and closes the file.
+     *
+     * <p>
+     * All subsequent events are ignored.
+     * </p>
+     *
+     * @param game Game being recorded.
+     */
+    public synchronized void finish(@NotNull FXGame game) {
+        if (finished) {
+            return;
+        }
+
+        ensureCapacity();
+        length = ReplayFormat.writeVarint(buffer, length, ReplayFormat.END);
+        length = ReplayFormat.writeLong(buffer, length, game.getStateHash());
+        length = ReplayFormat.writeVarint(buffer, length, game.getNumOfSteps().get());
+        length = ReplayFormat.writeVarint(buffer, length, game.getNumOfUndo().get());
+        flush();
+        finished = true;
+
+        WRITER.execute(() -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * @return Path of the replay file.
+     */
+    @NotNull
+    public Path getPath() {
+        return path;
+    }
+
+    private synchronized void append(long event) {
+        if (finished) {
+            return;
+        }
+
+        length = ReplayFormat.writeVarint(buffer, length, event);
+        if (length >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    private void ensureCapacity() {
+        if (buffer.length - length < 3 * ReplayFormat.MAX_VARINT_LENGTH + 8) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands the current buffer to the writer, and starts a new buffer.
+     */
+    private void flush() {
+        if (length == 0) {
+            return;
+        }
+
+        final var toWrite = ByteBuffer.wrap(buffer, 0, length);
+        buffer = new byte[FLUSH_THRESHOLD + 32];
+        length = 0;
+
+        WRITER.execute(() -> {
+            try {
+                while (toWrite.hasRemaining()) {
+                    channel.write(toWrite);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+}
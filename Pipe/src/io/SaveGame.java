@@ -0,0 +1,342 @@
+package io;
+
+import models.GameSnapshot;
+import models.exceptions.InvalidMapException;
+import models.map.MapState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * A saved game in progress, from which the game can be resumed.
+ *
+ * <p>
+ * A save file consists of:
+ * <ul>
+ * <li>The magic bytes {@code PSAV} and the version of the format as an {@code int}.</li>
+ * <li>The length of the level name in UTF-8 as an {@code int}, or -1 if the level is generated, followed by the name.
+ * </li>
+ * <li>The number of rows, number of columns, delay and flow duration as {@code int}s, and the seed as a
+ * {@code long}.</li>
+ * <li>The number of pipe shape weights as an {@code int}, which is 0 if every shape has equal weight, followed by the
+ * weight of each shape as an {@code int}.</li>
+ * <li>The serialized representation of every cell of the level, one byte per cell in row-major order, then the number
+ * of starting pipes as an {@code int} followed by the ordinal of each pipe shape as one byte.</li>
+ * <li>The code of every cell as given by {@link models.map.Map#encodeCell(models.map.cells.Cell)}, one byte per cell in
+ * row-major order.</li>
+ * <li>The number of tiles at the flow fronts as an {@code int}, or -1 if the water has not been let out, followed by
+ * their indices as {@code int}s, then the number of filled tiles, the number of tiles filled in the last distance, and
+ * the distance filled to, as {@code int}s.</li>
+ * <li>The number of pipes generated as a {@code long}, then the number of pipes in the queue as an {@code int} followed
+ * by the ordinal of each pipe shape as one byte.</li>
+ * <li>The number of placed pipes which can be undone as an {@code int} followed by their indices as {@code int}s.</li>
+ * <li>The number of steps, number of undos, ticks elapsed and distance of the water as {@code int}s.</li>
+ * <li>The number of events of the {@link MoveLog} of the game which are included in the save as a {@code long}.</li>
+ * <li>The CRC-32 of everything before it as an {@code int}.</li>
+ * </ul>
+ * All numbers are big-endian.
+ * </p>
+ *
+ * <p>
+ * A save is encoded into a single buffer, which is written to a temporary file and then moved over the existing save,
+ * so that a power loss leaves either the old or the new save intact. Resuming reads the whole file at once, and copies
+ * each array out of the buffer in bulk.
+ * </p>
+ */
+public class SaveGame {
+
+    /**
+     * Default path to save the game in progress to, relative to the current working directory.
+     */
+    @NotNull
+    public static final Path DEFAULT_PATH = Paths.get("saves", "resume.save");
+
+    @NotNull
+    private static final byte[] MAGIC = {'P', 'S', 'A', 'V'};
+    private static final int VERSION = 3;
+
+    /**
+     * Writer shared by all saves, so that saves are written in the order they are requested.
+     */
+    @NotNull
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        final var t = new Thread(r, "save-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Name of the level being played, or {@code null} if the level is generated.
+     */
+    @Nullable
+    public final String levelName;
+    @NotNull
+    public final GameSnapshot snapshot;
+    /**
+     * Number of events of the {@link MoveLog} of the game which are included in {@link SaveGame#snapshot}, or 0 if the
+     * save does not belong to a move log.
+     */
+    public final long logPosition;
+
+    /**
+     * @param levelName Name of the level being played, or {@code null} if the level is generated.
+     * @param snapshot  Snapshot of the game.
+     */
+    public SaveGame(@Nullable String levelName, @NotNull GameSnapshot snapshot) {
+        this(levelName, snapshot, 0);
+    }
+
+    /**
+     * @param levelName   Name of the level being played, or {@code null} if the level is generated.
+     * @param snapshot    Snapshot of the game.
+     * @param logPosition Number of events of the move log of the game which are included in the snapshot.
+     */
+    public SaveGame(@Nullable String levelName, @NotNull GameSnapshot snapshot, long logPosition) {
+        this.levelName = levelName;
+        this.snapshot = snapshot;
+        this.logPosition = logPosition;
+    }
+
+    /**
+     * Writes this save on a background thread.
+     *
+     * @param path Path to save to. An existing save is replaced once the new save is completely written.
+     * @return Future which completes once the save is written, or completes exceptionally with the {@link IOException}
+     * if the save cannot be written.
+     */
+    @NotNull
+    public CompletableFuture<Void> writeAsync(@NotNull Path path) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                write(path);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, WRITER);
+    }
+
+    /**
+     * Deletes a save on a background thread, after all saves requested before are written.
+     *
+     * @param path Path of the save.
+     */
+    public static void deleteAsync(@NotNull Path path) {
+        WRITER.execute(() -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Writes this save on the current thread.
+     *
+     * @param path Path to save to. An existing save is replaced once the new save is completely written.
+     * @throws IOException if the save cannot be written.
+     */
+    public void write(@NotNull Path path) throws IOException {
+        final var buffer = encode();
+
+        final var parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return Buffer containing the encoded save, ready to be written.
+     */
+    @NotNull
+    private ByteBuffer encode() {
+        final var s = snapshot;
+        final byte[] name = levelName != null ? levelName.getBytes(StandardCharsets.UTF_8) : null;
+        final int[] front = s.map.front;
+        final int cells = s.rows * s.cols;
+
+        final int length = MAGIC.length + 4 + 4 + (name != null ? name.length : 0) + 4 * 4 + 8
+                + 4 + s.weights.length * 4
+                + cells + 4 + s.startingPipes.length
+                + cells
+                + 4 + (front != null ? front.length * 4 : 0) + 3 * 4
+                + 8 + 4 + s.queue.length
+                + 4 + s.placed.length * 4
+                + 4 * 4
+                + 8
+                + 4;
+        final var buffer = ByteBuffer.allocate(length);
+
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        if (name != null) {
+            buffer.putInt(name.length);
+            buffer.put(name);
+        } else {
+            buffer.putInt(-1);
+        }
+        buffer.putInt(s.rows);
+        buffer.putInt(s.cols);
+        buffer.putInt(s.delay);
+        buffer.putInt(s.flowDuration);
+        buffer.putLong(s.seed);
+        buffer.putInt(s.weights.length);
+        buffer.asIntBuffer().put(s.weights);
+        buffer.position(buffer.position() + s.weights.length * 4);
+        buffer.put(s.level);
+        buffer.putInt(s.startingPipes.length);
+        buffer.put(s.startingPipes);
+
+        buffer.put(s.map.codes);
+        if (front != null) {
+            buffer.putInt(front.length);
+            buffer.asIntBuffer().put(front);
+            buffer.position(buffer.position() + front.length * 4);
+        } else {
+            buffer.putInt(-1);
+        }
+        buffer.putInt(s.map.filledTileCount);
+        buffer.putInt(s.map.prevFilledTiles);
+        buffer.putInt(s.map.prevFilledDistance);
+
+        buffer.putLong(s.generatedPipes);
+        buffer.putInt(s.queue.length);
+        buffer.put(s.queue);
+
+        buffer.putInt(s.placed.length);
+        buffer.asIntBuffer().put(s.placed);
+        buffer.position(buffer.position() + s.placed.length * 4);
+
+        buffer.putInt(s.steps);
+        buffer.putInt(s.undos);
+        buffer.putInt(s.ticksElapsed);
+        buffer.putInt(s.distance);
+        buffer.putLong(logPosition);
+
+        final var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a save.
+     *
+     * @param path Path of the save.
+     * @return The save.
+     * @throws IOException         if the save cannot be read.
+     * @throws InvalidMapException if the save is malformed or corrupted.
+     */
+    @NotNull
+    public static SaveGame read(@NotNull Path path) throws IOException {
+        final var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            return decode(buffer);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new InvalidMapException("Unexpected end of save");
+        }
+    }
+
+    @NotNull
+    private static SaveGame decode(@NotNull ByteBuffer buffer) {
+        final var magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (magic[i] != MAGIC[i]) {
+                throw new InvalidMapException("Not a save file");
+            }
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new InvalidMapException("Unsupported save version " + version);
+        }
+
+        final var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new InvalidMapException("Save is corrupted");
+        }
+
+        final int nameLength = buffer.getInt();
+        String levelName = null;
+        if (nameLength >= 0) {
+            levelName = new String(buffer.array(), buffer.position(), nameLength, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + nameLength);
+        }
+
+        final int rows = buffer.getInt();
+        final int cols = buffer.getInt();
+        final int delay = buffer.getInt();
+        final int flowDuration = buffer.getInt();
+        final long seed = buffer.getLong();
+        final int[] weights = readInts(buffer, buffer.getInt());
+        if (rows <= 0 || cols <= 0 || (long) rows * cols > buffer.remaining()) {
+            throw new InvalidMapException("Invalid map size " + rows + "x" + cols);
+        }
+        final var level = new byte[rows * cols];
+        buffer.get(level);
+        final var startingPipes = new byte[buffer.getInt()];
+        buffer.get(startingPipes);
+
+        final var codes = new byte[rows * cols];
+        buffer.get(codes);
+        final int frontLength = buffer.getInt();
+        int[] front = null;
+        if (frontLength >= 0) {
+            front = readInts(buffer, frontLength);
+        }
+        final var map = new MapState(codes, front, buffer.getInt(), buffer.getInt(), buffer.getInt());
+
+        final long generatedPipes = buffer.getLong();
+        final var queue = new byte[buffer.getInt()];
+        buffer.get(queue);
+
+        final int[] placed = readInts(buffer, buffer.getInt());
+
+        final var snapshot = new GameSnapshot(rows, cols, delay, flowDuration, seed, weights, level, startingPipes, map,
+                queue, generatedPipes, placed, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        return new SaveGame(levelName, snapshot, buffer.getLong());
+    }
+
+    @NotNull
+    private static int[] readInts(@NotNull ByteBuffer buffer, int count) {
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new InvalidMapException("Invalid array length " + count);
+        }
+        final var values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+}
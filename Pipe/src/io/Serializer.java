@@ -1,51 +1,179 @@
 package io;
 //done
+import models.map.cells.Cell;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A serializer for converting {@link GameProperties} into a map file.
+ *
+ * <p>
+ * The whole map file is encoded into a buffer which is reused by subsequent calls, and written to a temporary file with
+ * a single write. The temporary file is then moved over the map file, so that a failure leaves either the old or the
+ * new map file intact.
+ * </p>
  */
 public class Serializer {
 
+    /**
+     * Maximum length of an {@code int} in decimal, including the sign.
+     */
+    private static final int MAX_INT_LENGTH = 11;
+    /**
+     * Length of the representation of a starting pipe, including the separator.
+     */
+    private static final int PIPE_LENGTH = 4;
+
     /**
      * Path to the map to serialize to.
      */
     @NotNull
     private Path path;
 
+    /**
+     * Buffer to encode map files into, which is grown as needed.
+     */
+    @NotNull
+    private byte[] buffer = new byte[0];
+
     public Serializer(@NotNull final Path path) {
         this.path = path;
     }
 
+    /**
+     * Changes the file to serialize to, keeping the buffer for subsequent calls.
+     *
+     * @param path Path to the map to serialize to.
+     */
+    public void setPath(@NotNull final Path path) {
+        this.path = path;
+    }
+
     /**
      * Serializes a {@link GameProperties} object and saves it into a file.
      *
+     * <p>
+     * The starting pipes and the pipe weights are written after the map in the format read by {@link Deserializer}. An
+     * empty list of starting pipes is written in the same way as {@code null}.
+     * </p>
+     *
      * @param prop {@link GameProperties} objeect to serialize and save.
-     * @throws IOException if an I/O exception has occurred.
+     * @throws IOException              if an I/O exception has occurred.
+     * @throws IllegalArgumentException if a cell of the map is missing.
      */
     public void serializeGameProp(@NotNull final GameProperties prop) throws IOException {
-        // TODO
-        File f=this.path.toFile();
-        if(f.exists()&&f.delete());
-        if(f.createNewFile());
-        try(BufferedWriter writer=new BufferedWriter(new PrintWriter(f))){
-            writer.write(String.valueOf(prop.rows));
-            writer.newLine();
-            writer.write(String.valueOf(prop.cols));
-            writer.newLine();
-            writer.write(String.valueOf(prop.delay));
-            writer.newLine();
-            for(int i=0;i<prop.rows;i++){
-                for(int j=0;j<prop.cols;j++){
-                    writer.write(prop.cells[i][j].toSerializedRep());
+        final int length = encode(prop);
+
+        final var parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final var data = ByteBuffer.wrap(buffer, 0, length);
+                while (data.hasRemaining()) {
+                    channel.write(data);
                 }
-                writer.newLine();
+                channel.force(false);
             }
-        }catch (Exception e){
-            throw new IOException("cannot do IO");
+
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
         }
     }
+
+    /**
+     * Encodes a map file into {@link Serializer#buffer}.
+     *
+     * @param prop {@link GameProperties} object to encode.
+     * @return Length of the encoded map file.
+     * @throws IllegalArgumentException if a cell of the map is missing.
+     */
+    private int encode(@NotNull final GameProperties prop) {
+        final var pipes = prop.pipes;
+        final var weights = prop.weights;
+        final long capacity = 3L * (MAX_INT_LENGTH + 1)
+                + (long) prop.rows * (prop.cols + 1)
+                + (pipes != null ? (long) pipes.size() * PIPE_LENGTH + 1 : 0)
+                + (weights != null ? (long) weights.length * (MAX_INT_LENGTH + 2) + 1 : 0);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Map of size " + prop.rows + "x" + prop.cols + " is too large");
+        }
+        if (buffer.length < capacity) {
+            buffer = new byte[(int) capacity];
+        }
+        final byte[] buf = buffer;
+
+        int pos = 0;
+        pos = putLine(buf, pos, Integer.toString(prop.rows));
+        pos = putLine(buf, pos, Integer.toString(prop.cols));
+        pos = putLine(buf, pos, Integer.toString(prop.delay));
+
+        for (int r = 0; r < prop.rows; ++r) {
+            final Cell[] row = prop.cells[r];
+            for (int c = 0; c < prop.cols; ++c) {
+                final Cell cell = row[c];
+                if (cell == null) {
+                    throw new IllegalArgumentException("Missing cell at row " + r + ", column " + c);
+                }
+                buf[pos++] = (byte) cell.toSerializedRep().charAt(0);
+            }
+            buf[pos++] = '\n';
+        }
+
+        if (pipes != null && !pipes.isEmpty()) {
+            for (int i = 0; i < pipes.size(); ++i) {
+                if (i > 0) {
+                    buf[pos++] = ',';
+                    buf[pos++] = ' ';
+                }
+                final String rep = pipes.get(i).toSerializedRep();
+                for (int j = 0; j < rep.length(); ++j) {
+                    buf[pos++] = (byte) rep.charAt(j);
+                }
+            }
+            buf[pos++] = '\n';
+        }
+
+        if (weights != null) {
+            for (int i = 0; i < weights.length; ++i) {
+                if (i > 0) {
+                    buf[pos++] = ',';
+                    buf[pos++] = ' ';
+                }
+                final String rep = Integer.toString(weights[i]);
+                for (int j = 0; j < rep.length(); ++j) {
+                    buf[pos++] = (byte) rep.charAt(j);
+                }
+            }
+            buf[pos++] = '\n';
+        }
+
+        return pos;
+    }
+
+    private static int putLine(@NotNull byte[] buf, int pos, @NotNull String s) {
+        final byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+        buf[pos++] = '\n';
+        return pos;
+    }
 }
@@ -0,0 +1,310 @@
+package io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates every level of a map directory or of a {@link LevelPack} with {@link LevelValidator}, and reports the
+ * problems found.
+ *
+ * <p>
+ * Levels are validated in parallel. Every worker takes the next level which is not validated yet, reads it into a
+ * buffer it reuses for all its levels, and validates it without creating any cell. Besides the problems of every
+ * level, levels which are identical to an earlier level are reported as warnings.
+ * </p>
+ *
+ * <p>
+ * The report has one line per problem, prefixed by the name of the level, followed by a summary. The exit status is
+ * non-zero if any level has an error.
+ * </p>
+ */
+public class ValidationRunner {
+
+    @NotNull
+    private Path mapDirectory = Paths.get("resources", "maps");
+    @Nullable
+    private Path packPath = null;
+    @Nullable
+    private Path reportPath = null;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Source of the levels being validated, which is either a map directory or {@link ValidationRunner#pack}.
+     */
+    private List<String> levels;
+    @Nullable
+    private LevelPack pack;
+
+    /**
+     * Problems and hash of every level, by index. Workers only set the elements of the levels they validate, so the
+     * size of {@link ValidationRunner#issues} never changes while they run.
+     */
+    private List<List<LevelValidator.Issue>> issues;
+    private long[] hashes;
+
+    public static void main(String[] args) {
+        final var runner = new ValidationRunner();
+        if (!runner.parseArgs(args)) {
+            printUsage();
+            System.exit(1);
+        }
+
+        if (!runner.run()) {
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --validate [options]");
+        System.out.println("  --maps <dir>           Directory of levels to validate (default: resources/maps)");
+        System.out.println("  --pack <file>          Level pack to validate instead of a directory");
+        System.out.println("  --threads <n>          Number of levels validated in parallel (default: number of CPUs)");
+        System.out.println("  --report <file>        Write the problems into a file instead of the standard output");
+    }
+
+    /**
+     * @param args Command line arguments.
+     * @return Whether the arguments are valid.
+     */
+    private boolean parseArgs(@NotNull String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--maps":
+                        mapDirectory = Paths.get(args[++i]);
+                        break;
+                    case "--pack":
+                        packPath = Paths.get(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--report":
+                        reportPath = Paths.get(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i] + "!");
+                        return false;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Cannot parse arguments!");
+            return false;
+        }
+
+        return threads > 0;
+    }
+
+    /**
+     * Validates every level, and writes the report.
+     *
+     * @return Whether every level is valid.
+     */
+    private boolean run() {
+        try {
+            if (packPath != null) {
+                pack = LevelPack.open(packPath);
+                levels = new ArrayList<>(pack.size());
+                for (int i = 0; i < pack.size(); ++i) {
+                    levels.add(pack.getName(i));
+                }
+            } else {
+                levels = LevelPack.listLevels(mapDirectory);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read levels from " + (packPath != null ? packPath : mapDirectory) + "!");
+            e.printStackTrace();
+            return false;
+        }
+
+        try {
+            final long start = System.nanoTime();
+            if (!validateAll()) {
+                return false;
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            return report(seconds);
+        } finally {
+            if (pack != null) {
+                try {
+                    pack.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates every level on {@link ValidationRunner#threads} workers.
+     *
+     * @return Whether every worker completed.
+     */
+    private boolean validateAll() {
+        issues = new ArrayList<>(Collections.nCopies(levels.size(), null));
+        hashes = new long[levels.size()];
+
+        final var next = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            final var t = new Thread(r, "validation");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            final var futures = new ArrayList<Future<?>>(threads);
+            for (int i = 0; i < threads; ++i) {
+                futures.add(executor.submit(() -> validateNext(next)));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Validates levels until there are none left.
+     *
+     * @param next Index of the next level to validate, shared by all workers.
+     */
+    private void validateNext(@NotNull AtomicInteger next) {
+        final var validator = new LevelValidator();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        for (int i = next.getAndIncrement(); i < levels.size(); i = next.getAndIncrement()) {
+            try {
+                buffer = pack != null ? pack.read(i, buffer) : readFile(mapDirectory.resolve(levels.get(i)), buffer);
+            } catch (IOException e) {
+                issues.set(i, Collections.singletonList(new LevelValidator.Issue(LevelValidator.Severity.ERROR, -1, -1,
+                        "Cannot read level: " + e.getMessage())));
+                continue;
+            }
+            issues.set(i, validator.validate(buffer.array(), buffer.limit()));
+            hashes[i] = validator.getLevelHash();
+        }
+    }
+
+    /**
+     * Reads a file into a buffer.
+     *
+     * @param path   Path of the file.
+     * @param buffer Buffer to read into, which is reused if it is large enough.
+     * @return The buffer holding the contents of the file between its position and limit, which is {@code buffer} or
+     * a larger buffer.
+     * @throws IOException if the file cannot be read.
+     */
+    @NotNull
+    private static ByteBuffer readFile(@NotNull Path path, @NotNull ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File is too large");
+            }
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate((int) Math.max(size, Math.min(Integer.MAX_VALUE - 8,
+                        2L * buffer.capacity())));
+            }
+            buffer.clear().limit((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // the file may shrink while it is read, in which case only what is left is validated
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Writes the problems of every level in order, and prints a summary.
+     *
+     * @param seconds Time taken to validate the levels.
+     * @return Whether every level is valid.
+     */
+    private boolean report(double seconds) {
+        final var firstByHash = new HashMap<Long, String>();
+        int invalid = 0;
+        int warned = 0;
+        long errors = 0;
+        long warnings = 0;
+
+        try (Writer writer = reportPath != null
+                ? Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+                    @Override
+                    public void close() throws IOException {
+                        // leave the standard output open
+                        flush();
+                    }
+                }) {
+            for (int i = 0; i < levels.size(); ++i) {
+                final String level = levels.get(i);
+                List<LevelValidator.Issue> levelIssues = issues.get(i);
+                if (hashes[i] != 0) {
+                    final String first = firstByHash.putIfAbsent(hashes[i], level);
+                    if (first != null) {
+                        levelIssues = new ArrayList<>(levelIssues);
+                        levelIssues.add(new LevelValidator.Issue(LevelValidator.Severity.WARNING, -1, -1,
+                                "Level is identical to " + first + "!"));
+                    }
+                }
+
+                boolean hasError = false;
+                boolean hasWarning = false;
+                for (var issue : levelIssues) {
+                    if (issue.severity == LevelValidator.Severity.ERROR) {
+                        hasError = true;
+                        ++errors;
+                    } else {
+                        hasWarning = true;
+                        ++warnings;
+                    }
+                    writer.write(level);
+                    writer.write(": ");
+                    writer.write(issue.toString());
+                    writer.write(System.lineSeparator());
+                }
+                if (hasError) {
+                    ++invalid;
+                } else if (hasWarning) {
+                    ++warned;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot write validation report" + (reportPath != null ? " " + reportPath : "") + "!");
+            e.printStackTrace();
+            return false;
+        }
+
+        System.out.println(String.format("%d levels: %d valid, %d with warnings, %d invalid (%d errors, %d warnings) "
+                        + "in %.3f s (%.0f levels/s)", levels.size(), levels.size() - invalid - warned, warned,
+                invalid, errors, warnings, seconds, levels.size() / seconds));
+        return invalid == 0;
+    }
+}
@@ -1,11 +1,23 @@
 package main;
 
+import bench.AllocationBudget;
+import bench.BenchmarkRunner;
+import bench.PackBenchmark;
+import bench.RenderBenchmark;
+import bench.SoakTest;
+import bots.DifficultyEstimator;
+import bots.TournamentRunner;
 import controllers.SceneManager;
+import io.LevelPack;
+import io.ReplayPlayer;
+import io.ValidationRunner;
 import javafx.application.Application;
 import javafx.stage.Stage;
 import textgame.Main;
 import views.panes.MainMenuPane;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -26,8 +38,65 @@ public class PipesMain extends Application {
             Main.main(txtArgs.toArray(txtArrayArgs));
 
             System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--bench")) {
+            BenchmarkRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--alloc")) {
+            AllocationBudget.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--soak")) {
+            SoakTest.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--tournament")) {
+            TournamentRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--difficulty")) {
+            DifficultyEstimator.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--validate")) {
+            ValidationRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--pack")) {
+            LevelPack.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--bench-render")) {
+            RenderBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--bench-pack")) {
+            PackBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            System.exit(0);
+        } else if (args.length == 2 && args[0].equals("--replay")) {
+            System.exit(replay(args[1]) ? 0 : 1);
         } else {
             PipesMain.launch(args);
         }
     }
+
+    /**
+     * Replays a recorded game without rendering, and prints the result.
+     *
+     * @param path Path to the replay file.
+     * @return {@code true} if the final state of the replay matches the recorded state.
+     */
+    private static boolean replay(String path) {
+        try {
+            final long start = System.nanoTime();
+            final var result = new ReplayPlayer(Paths.get(path)).play();
+            final long elapsed = System.nanoTime() - start;
+
+            System.out.println("level-hash: " + Long.toHexString(result.levelHash));
+            System.out.println("state-hash: " + Long.toHexString(result.game.getStateHash()));
+            System.out.println("steps: " + result.game.getNumOfSteps().get());
+            System.out.println("undos: " + result.game.getNumOfUndo().get());
+            System.out.println("events: " + result.events);
+            System.out.println("complete: " + result.complete);
+            System.out.println("verified: " + result.verified);
+            System.out.println("elapsed-ms: " + String.format("%.3f", elapsed / 1e6));
+            return result.verified;
+        } catch (IOException e) {
+            System.err.println("Cannot read replay from " + path + "!");
+            e.printStackTrace();
+            return false;
+        }
+    }
 }
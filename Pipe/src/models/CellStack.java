@@ -5,8 +5,12 @@ import javafx.beans.property.SimpleIntegerProperty;
 import models.map.cells.FillableCell;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * Class encapsulating an undo stack.
@@ -14,7 +18,7 @@ import java.util.Stack;
 public class CellStack {
 
     @NotNull
-    private final Stack<@NotNull FillableCell> cellStack = new Stack<>();
+    private final Deque<@NotNull FillableCell> cellStack = new ArrayDeque<>();
     private IntegerProperty undoCountProperty = new SimpleIntegerProperty(0);
 
     /**
@@ -33,7 +37,7 @@ public class CellStack {
      */
     @Nullable
     public FillableCell pop() {
-        if (cellStack.empty()) {
+        if (cellStack.isEmpty()) {
             return null;
         }
 
@@ -41,6 +45,28 @@ public class CellStack {
         return cellStack.pop();
     }
 
+    /**
+     * @return Coordinates of the cells in the stack, starting from the first-pushed cell.
+     */
+    @NotNull
+    public List<Coordinate> getCoordinates() {
+        final var coords = new ArrayList<Coordinate>(cellStack.size());
+        final var it = cellStack.descendingIterator();
+        while (it.hasNext()) {
+            coords.add(it.next().coord);
+        }
+        return coords;
+    }
+
+    /**
+     * Sets the undo count, e.g. when resuming a saved game.
+     *
+     * @param undoCount New undo count.
+     */
+    public void setUndoCount(int undoCount) {
+        undoCountProperty.set(undoCount);
+    }
+
     @NotNull
     public IntegerProperty getUndoCountProperty() {
         return undoCountProperty;
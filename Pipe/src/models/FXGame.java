@@ -1,5 +1,12 @@
 package models;
 
+import io.Deserializer;
+import io.GameProperties;
+import io.MoveLog;
+import io.ReplayRecorder;
+import controllers.Metrics;
+import controllers.Renderer;
+import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.canvas.Canvas;
@@ -12,11 +19,20 @@ import org.jetbrains.annotations.Nullable;
 import textgame.game.Game;
 import util.Coordinate;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.TimerTask;
+import java.util.Objects;
+import java.util.Random;
 
 /**
  * JavaFX version of {@link textgame.game.Game}.
+ *
+ * <p>
+ * Moves are made on the JavaFX application thread, while the water flows on the thread of the timer, and both change
+ * the map. Every method which reads or changes the state of the game is therefore synchronized on the game, and the
+ * timer holds the same lock while a tick runs. Moves and ticks are recorded while holding the lock too, so that the
+ * replay and the move log list them in the order they are applied.
+ * </p>
  */
 public class FXGame {
 
@@ -37,9 +53,49 @@ public class FXGame {
     private final FlowTimer flowTimer;
     @NotNull
     private final CellStack cellStack = new CellStack();
+    /**
+     * Scores the placements of the next pipe, updated as pipes are placed and undone.
+     */
+    @NotNull
+    private final HintEngine hintEngine;
+    /**
+     * Read-only view of this game, created on first use.
+     */
+    @Nullable
+    private GameView view;
 
     private IntegerProperty numOfSteps = new SimpleIntegerProperty(0);
 
+    /**
+     * Seed used to generate the pipes in {@link FXGame#pipeQueue}.
+     */
+    private final long seed;
+    /**
+     * The level as it was when this game is created, before any pipes are placed.
+     */
+    @NotNull
+    private final GameProperties initialProperties;
+    /**
+     * Recorder of the moves made in this game, if the game is being recorded.
+     */
+    @Nullable
+    private volatile ReplayRecorder recorder;
+    /**
+     * Write-ahead log of the moves made in this game, if the game is being autosaved.
+     */
+    @Nullable
+    private volatile MoveLog moveLog;
+    /**
+     * Timeline of the state of all cells, with one step for every move and every change of water flow.
+     */
+    @NotNull
+    private final MoveHistory history;
+    /**
+     * Whether the flow of water has been started, and whether it has been stopped since.
+     */
+    private boolean countdownStarted = false;
+    private boolean countdownStopped = false;
+
     /**
      * Sets the default number of rows for generated maps.
      *
@@ -88,8 +144,13 @@ public class FXGame {
     private FXGame(int rows, int cols) {
         // TODO
         this.map=new Map(rows+2,cols+2);
-        this.pipeQueue=new PipeQueue();
-        this.flowTimer=new FlowTimer();
+        this.seed=new Random().nextLong();
+        this.pipeQueue=new PipeQueue(null, seed);
+        this.flowTimer=new FlowTimer(FlowTimer.getDefaultDelay(),FlowTimer.getDefaultFlowDuration(),this);
+        this.initialProperties=new GameProperties(rows+2,cols+2,map.copyCells(),FlowTimer.getDefaultDelay());
+        this.history=createHistory();
+        this.hintEngine=new HintEngine(map);
+        registerTickRecorder();
     }
 
     /**
@@ -102,11 +163,219 @@ public class FXGame {
      * @param pipes Initial pipes, if provided.
      */
     public FXGame(int rows, int cols, int delay, @NotNull Cell[][] cells, @Nullable List<Pipe> pipes) {
+        this(rows, cols, delay, cells, pipes, new Random().nextLong(), FlowTimer.getDefaultFlowDuration());
+    }
+
+    /**
+     * Constructs an instance with all given parameters, generating pipes from a given seed.
+     *
+     * <p>
+     * Two games constructed with the same parameters behave identically when given the same sequence of moves and
+     * ticks.
+     * </p>
+     *
+     * @param rows         Number of rows including side walls
+     * @param cols         Number of columns including side walls
+     * @param delay        Delay in seconds before water starts flowing.
+     * @param cells        Initial map.
+     * @param pipes        Initial pipes, if provided.
+     * @param seed         Seed for generating pipes after the initial pipes.
+     * @param flowDuration Duration in seconds between each water flow.
+     */
+    public FXGame(int rows, int cols, int delay, @NotNull Cell[][] cells, @Nullable List<Pipe> pipes, long seed,
+                  int flowDuration) {
+        this(rows, cols, delay, cells, pipes, seed, flowDuration, null);
+    }
+
+    /**
+     * Constructs an instance with all given parameters, generating pipes from a given seed with the given weights.
+     *
+     * @param rows         Number of rows including side walls
+     * @param cols         Number of columns including side walls
+     * @param delay        Delay in seconds before water starts flowing.
+     * @param cells        Initial map.
+     * @param pipes        Initial pipes, if provided.
+     * @param seed         Seed for generating pipes after the initial pipes.
+     * @param flowDuration Duration in seconds between each water flow.
+     * @param weights      Relative weight of each pipe shape, or {@code null} to generate every shape with equal
+     *                     probability.
+     * @throws IllegalArgumentException if the weights are invalid.
+     * @see PipeQueue#PipeQueue(List, long, int[])
+     */
+    public FXGame(int rows, int cols, int delay, @NotNull Cell[][] cells, @Nullable List<Pipe> pipes, long seed,
+                  int flowDuration, @Nullable int[] weights) {
         // TODO
         map = new Map(rows,cols,cells);
-        flowTimer = new FlowTimer(delay);
-        pipeQueue = new PipeQueue(pipes);
+        flowTimer = new FlowTimer(delay, flowDuration, this);
+        this.seed = seed;
+        pipeQueue = new PipeQueue(pipes, seed, weights);
+        initialProperties = new GameProperties(rows, cols, map.copyCells(), delay,
+                pipes != null ? new ArrayList<>(pipes) : null, weights != null ? weights.clone() : null);
+        history = createHistory();
+        hintEngine = new HintEngine(map);
+        registerTickRecorder();
+    }
+
+    /**
+     * Recreates a game from a snapshot.
+     *
+     * @param snapshot Snapshot to restore.
+     * @param pipes    Starting pipes of the level, or {@code null} if there are none.
+     * @throws IllegalArgumentException if the snapshot is inconsistent.
+     */
+    private FXGame(@NotNull GameSnapshot snapshot, @Nullable List<Pipe> pipes) {
+        final int rows = snapshot.rows;
+        final int cols = snapshot.cols;
+
+        map = new Map(rows, cols, parseLevel(snapshot));
+        map.restoreState(snapshot.map);
+        flowTimer = new FlowTimer(snapshot.delay, snapshot.flowDuration, this);
+        flowTimer.restore(snapshot.ticksElapsed, snapshot.distance);
+        seed = snapshot.seed;
+        final int[] weights = snapshot.weights.length != 0 ? snapshot.weights.clone() : null;
+        pipeQueue = new PipeQueue(seed, weights, snapshot.queue, snapshot.generatedPipes);
+        // the map changes its cells, so the level is parsed again instead of being copied from the map
+        initialProperties = new GameProperties(rows, cols, parseLevel(snapshot), snapshot.delay, pipes, weights);
+
+        final var cells = map.copyCells();
+        for (int index : snapshot.placed) {
+            if (index < 0 || index >= rows * cols || !(cells[index / cols][index % cols] instanceof FillableCell)) {
+                throw new IllegalArgumentException("Invalid placed pipe at " + index);
+            }
+            final var cell = (FillableCell) cells[index / cols][index % cols];
+            final var pipe = cell.getPipeOrNull();
+            if (pipe == null) {
+                throw new IllegalArgumentException("No pipe placed at " + index);
+            }
+            cellStack.push(new FillableCell(cell.coord, pipe));
+        }
+        cellStack.setUndoCount(snapshot.undos);
+        numOfSteps.set(snapshot.steps);
+
+        history = createHistory(snapshot.map.codes);
+        hintEngine = new HintEngine(map);
+        registerTickRecorder();
+    }
+
+    /**
+     * Recreates a game from a snapshot, in the same state as the game the snapshot was taken from.
+     *
+     * <p>
+     * The water of the returned game does not flow until {@link FXGame#startCountdown()} is invoked.
+     * </p>
+     *
+     * @param snapshot Snapshot to restore, as given by {@link FXGame#snapshot()}.
+     * @return The restored game.
+     * @throws IllegalArgumentException if the snapshot is inconsistent.
+     */
+    @NotNull
+    public static FXGame restore(@NotNull GameSnapshot snapshot) {
+        final var shapes = Pipe.Shape.values();
+        List<Pipe> pipes = null;
+        if (snapshot.startingPipes.length != 0) {
+            pipes = new ArrayList<>(snapshot.startingPipes.length);
+            for (byte ordinal : snapshot.startingPipes) {
+                if (ordinal < 0 || ordinal >= shapes.length) {
+                    throw new IllegalArgumentException("Invalid pipe shape " + ordinal);
+                }
+                pipes.add(new Pipe(shapes[ordinal]));
+            }
+        }
+        return new FXGame(snapshot, pipes);
+    }
+
+    @NotNull
+    private static Cell[][] parseLevel(@NotNull GameSnapshot snapshot) {
+        final int rows = snapshot.rows;
+        final int cols = snapshot.cols;
+        if (rows <= 0 || cols <= 0 || snapshot.level.length != rows * cols) {
+            throw new IllegalArgumentException("Level does not have " + rows + "x" + cols + " cells");
+        }
+
+        final var cells = new Cell[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                cells[r][c] = Deserializer.parseCell(rows, cols, r, c, (char) snapshot.level[r * cols + c]);
+                if (cells[r][c] == null) {
+                    throw new IllegalArgumentException("Invalid cell at row " + r + ", column " + c);
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Takes a snapshot of the current state of this game.
+     *
+     * <p>
+     * This should not be invoked while the water is flowing, as the snapshot would only reflect the flow up to the
+     * moment it is taken.
+     * </p>
+     *
+     * @return Snapshot which shares nothing with this game.
+     */
+    @NotNull
+    public synchronized GameSnapshot snapshot() {
+        final int rows = initialProperties.rows;
+        final int cols = initialProperties.cols;
+
+        final var level = new byte[rows * cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                level[r * cols + c] = (byte) initialProperties.cells[r][c].toSerializedRep().charAt(0);
+            }
+        }
+        final var pipes = initialProperties.pipes;
+        final var startingPipes = new byte[pipes != null ? pipes.size() : 0];
+        for (int i = 0; i < startingPipes.length; ++i) {
+            startingPipes[i] = (byte) pipes.get(i).getShape().ordinal();
+        }
+        final var weights = initialProperties.weights;
+        final var placed = cellStack.getCoordinates().stream().mapToInt(coord -> coord.row * cols + coord.col)
+                .toArray();
 
+        return new GameSnapshot(rows, cols, initialProperties.delay, flowTimer.getFlowDuration(), seed,
+                weights != null ? weights.clone() : new int[0], level, startingPipes, map.captureState(),
+                pipeQueue.copyPending(), pipeQueue.getGeneratedCount(), placed, numOfSteps.get(),
+                cellStack.getUndoCountProperty().get(), flowTimer.getTicksElapsed(), flowTimer.distance());
+    }
+
+    @NotNull
+    private MoveHistory createHistory() {
+        final var cells = initialProperties.cells;
+        final int cols = initialProperties.cols;
+        final var grid = new byte[initialProperties.rows * cols];
+        for (int r = 0; r < initialProperties.rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                grid[r * cols + c] = (byte) Map.encodeCell(cells[r][c]);
+            }
+        }
+        return createHistory(grid);
+    }
+
+    /**
+     * @param grid Codes of all cells at the start of the history.
+     * @return History starting from the given codes, which records all subsequent changes to {@link FXGame#map}.
+     */
+    @NotNull
+    private MoveHistory createHistory(@NotNull byte[] grid) {
+        final int cols = initialProperties.cols;
+        final var h = new MoveHistory(grid);
+        map.setCellChangeListener((row, col, cell) -> h.record(row * cols + col, Map.encodeCell(cell)));
+        return h;
+    }
+
+    private void registerTickRecorder() {
+        flowTimer.registerTickCallback(() -> {
+            final var r = recorder;
+            if (r != null) {
+                r.recordTick();
+            }
+            final var log = moveLog;
+            if (log != null) {
+                log.recordTick();
+            }
+        });
     }
 
     /**
@@ -132,6 +401,10 @@ public class FXGame {
      */
     public void startCountdown() {
         flowTimer.start();
+        if (!countdownStarted) {
+            countdownStarted = true;
+            Metrics.getInstance().recordGameStarted();
+        }
     }
 
     /**
@@ -139,6 +412,40 @@ public class FXGame {
      */
     public void stopCountdown() {
         flowTimer.stop();
+        if (countdownStarted && !countdownStopped) {
+            countdownStopped = true;
+            Metrics.getInstance().recordGameStopped();
+        }
+    }
+
+    /**
+     * Advances the flow of water by one tick immediately.
+     *
+     * <p>
+     * This is used to drive games which are not started using {@link FXGame#startCountdown()}, e.g. when replaying a
+     * recorded game.
+     * </p>
+     */
+    public void tick() {
+        flowTimer.tick();
+    }
+
+    /**
+     * Sets the recorder to record all subsequent moves and ticks into.
+     *
+     * @param recorder Recorder to use, or {@code null} to stop recording.
+     */
+    public void setRecorder(@Nullable ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the move log to append all subsequent moves and ticks to.
+     *
+     * @param moveLog Move log to use, or {@code null} to stop logging.
+     */
+    public void setMoveLog(@Nullable MoveLog moveLog) {
+        this.moveLog = moveLog;
     }
 
     /**
@@ -146,14 +453,25 @@ public class FXGame {
      * @param col Column index to place pipe
      * @see Game#placePipe(int, char)
      */
-    public void placePipe(int row, int col) {
+    public synchronized void placePipe(int row, int col) {
         // TODO
         Pipe p=this.pipeQueue.peek();
         Coordinate c=new Coordinate(row, col);
         if(this.map.tryPlacePipe(c,p)){
             this.pipeQueue.consume();
             this.cellStack.push(new FillableCell(c,p));
+            hintEngine.onPlaced(row, col);
             addStep();
+            history.commitStep();
+            Metrics.getInstance().recordPipePlaced();
+            final var r = recorder;
+            if (r != null) {
+                r.recordPlace(row, col);
+            }
+            final var log = moveLog;
+            if (log != null) {
+                log.recordPlace(row, col);
+            }
         }
     }
 
@@ -164,30 +482,51 @@ public class FXGame {
     /**
      * @see Game#skipPipe()
      */
-    public void skipPipe() {
+    public synchronized void skipPipe() {
         // TODO
         this.pipeQueue.consume();
         addStep();
-
+        history.commitStep();
+        Metrics.getInstance().recordSkip();
+        final var r = recorder;
+        if (r != null) {
+            r.recordSkip();
+        }
+        final var log = moveLog;
+        if (log != null) {
+            log.recordSkip();
+        }
     }
 
     /**
      * @see Game#undoStep()
      */
-    public void undoStep() {
+    public synchronized void undoStep() {
         // TODO
+        final var r = recorder;
+        if (r != null) {
+            r.recordUndo();
+        }
+        final var log = moveLog;
+        if (log != null) {
+            log.recordUndo();
+        }
         FillableCell undoCell=this.cellStack.pop();
         if(undoCell==null){
             return;
         }
-        if (undoCell.getPipe().isPresent()&&undoCell.getPipe().get().getFilled()) {
+        final var undoPipe = undoCell.getPipeOrNull();
+        if (undoPipe != null && undoPipe.getFilled()) {
             cellStack.push(undoCell);
             return;
         }
         //i think if the pipe is filled then undo count should not increase
-        pipeQueue.undo(undoCell.getPipe().orElseThrow());
+        pipeQueue.undo(Objects.requireNonNull(undoPipe));
         map.undo(undoCell.coord);
+        hintEngine.onUndone(undoCell.coord.row, undoCell.coord.col);
         addStep();
+        history.commitStep();
+        Metrics.getInstance().recordUndo();
     }
 
     /**
@@ -208,10 +547,45 @@ public class FXGame {
         pipeQueue.render(canvas);
     }
 
+    /**
+     * @return Number of steps in the history of this game, including changes of water flow.
+     */
+    public int getHistoryLength() {
+        return history.getStepCount();
+    }
+
+    /**
+     * Renders the map as it was at a step in the history of this game.
+     *
+     * <p>
+     * This does not change the state of the game.
+     * </p>
+     *
+     * @param canvas {@link Canvas} to render to.
+     * @param step   Step in history to render, between 0 and {@link FXGame#getHistoryLength()} inclusive.
+     */
+    public void renderHistory(@NotNull Canvas canvas, int step) {
+        final var template = initialProperties.cells;
+        final int cols = initialProperties.cols;
+        final var cells = new Cell[initialProperties.rows][cols];
+
+        synchronized (history) {
+            final var grid = history.seek(step);
+            for (int r = 0; r < cells.length; ++r) {
+                for (int c = 0; c < cols; ++c) {
+                    cells[r][c] = Map.decodeCell(template[r][c], grid[r * cols + c]);
+                }
+            }
+            history.seek(history.getStepCount());
+        }
+
+        Platform.runLater(() -> Renderer.renderMap(canvas, cells));
+    }
+
     /**
      * @see Game#updateState()
      */
-    public void updateState() {
+    public synchronized void updateState() {
         // TODO
         if(this.flowTimer.distance()==0){
             this.map.fillBeginTile();
@@ -219,12 +593,19 @@ public class FXGame {
         }else if(this.flowTimer.distance()>0){
             this.map.fillTiles(this.flowTimer.distance());
         }
+        commitPendingHistory();
+    }
+
+    private void commitPendingHistory() {
+        if (history.hasPendingChanges()) {
+            history.commitStep();
+        }
     }
 
     /**
      * @see Game#updateState()
      */
-    public boolean hasWon() {
+    public synchronized boolean hasWon() {
         // TODO
         boolean win=this.map.checkPath();
         if(win){
@@ -237,7 +618,7 @@ public class FXGame {
     /**
      * @see Game#hasLost()
      */
-    public boolean hasLost() {
+    public synchronized boolean hasLost() {
         // TODO
         if(this.flowTimer.distance()<=0){
             return false;
@@ -252,8 +633,9 @@ public class FXGame {
     /**
      * Fills all reachable pipes in the map.
      */
-    public void fillAllPipes() {
+    public synchronized void fillAllPipes() {
         map.fillAll();
+        commitPendingHistory();
     }
 
     public IntegerProperty getNumOfSteps() {
@@ -263,4 +645,73 @@ public class FXGame {
     public IntegerProperty getNumOfUndo() {
         return cellStack.getUndoCountProperty();
     }
+
+    /**
+     * @return Number of ticks elapsed since the countdown is started.
+     */
+    public int getTicksSinceStart() {
+        return flowTimer.getTicksElapsed() + initialProperties.delay;
+    }
+
+    /**
+     * @return Seed used to generate pipes in this game.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return Duration in seconds between each water flow.
+     */
+    public int getFlowDuration() {
+        return flowTimer.getFlowDuration();
+    }
+
+    /**
+     * @return The level as it was when this game is created.
+     */
+    @NotNull
+    public GameProperties getInitialProperties() {
+        return initialProperties;
+    }
+
+    /**
+     * @return Hash of the current state of the map.
+     * @see Map#stateHash()
+     */
+    public synchronized long getStateHash() {
+        return map.stateHash();
+    }
+
+    /**
+     * @return Zobrist hash of the current state of the map and the pipes displayed in the queue.
+     * @see Map#zobristHash()
+     * @see PipeQueue#windowHash()
+     */
+    public synchronized long getZobristHash() {
+        return map.zobristHash() ^ pipeQueue.windowHash();
+    }
+
+    /**
+     * @return Read-only view of this game, which reflects all subsequent changes to the game.
+     */
+    @NotNull
+    public GameView getView() {
+        if (view == null) {
+            view = new GameView(this, map, pipeQueue, flowTimer, hintEngine);
+        }
+        return view;
+    }
+
+    /**
+     * Finds the best placements of the next pipe, and whether it should be skipped instead.
+     *
+     * @param k Maximum number of placements to return.
+     * @return Hints for the next pipe.
+     * @see HintEngine#hints(Pipe.Shape, Pipe.Shape, int)
+     */
+    @NotNull
+    public synchronized HintEngine.Hints getHints(int k) {
+        return hintEngine.hints(pipeQueue.peek().getShape(), pipeQueue.peekShape(1), k);
+    }
 }
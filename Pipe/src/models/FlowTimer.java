@@ -1,8 +1,12 @@
 package models;
 
+import controllers.Metrics;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.jfr.FlowEvent;
+import util.jfr.FlowTickEvent;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,10 +29,34 @@ public class FlowTimer {
     private static int defaultFlowDuration = 5;
 
     /**
-     * Backing timer.
+     * Duration between each tick in milliseconds.
+     */
+    private static final long TICK_PERIOD_MS = 1000;
+    private static final long TICK_PERIOD_NANOS = TICK_PERIOD_MS * 1_000_000;
+
+    /**
+     * Backing timer shared by all instances, so that the number of threads does not grow with the number of games
+     * created.
      */
     @NotNull
-    private final Timer flowTimer = new Timer(true);
+    private static final Timer SHARED_TIMER = new Timer("flow-timer", true);
+
+    /**
+     * Clock which drives all subsequently started timers instead of {@link FlowTimer#SHARED_TIMER}, if set.
+     */
+    @Nullable
+    private static volatile VirtualClock virtualClock = null;
+
+    /**
+     * Task scheduled on {@link FlowTimer#SHARED_TIMER}, or {@code null} if not scheduled.
+     */
+    @Nullable
+    private TimerTask task = null;
+    /**
+     * Clock driving this timer, or {@code null} if not driven by a virtual clock.
+     */
+    @Nullable
+    private VirtualClock clock = null;
 
     /**
      * Current value of the flow timer.
@@ -44,8 +72,36 @@ public class FlowTimer {
      */
     private final List<Runnable> onFlowCallbacks = new ArrayList<>();
 
+    /**
+     * Duration between each water flow of this timer.
+     */
+    private final int flowDuration;
+
     private int ticksElapsed;
 
+    /**
+     * Lock held while a tick and its callbacks run, which the owner of this timer also holds while changing the state
+     * read and changed by the callbacks.
+     */
+    @NotNull
+    private final Object lock;
+
+    /**
+     * Whether the timer has been started and not stopped since.
+     */
+    private boolean running = false;
+
+    /**
+     * {@link System#nanoTime()} at which the first tick is scheduled, and the number of ticks run by the backing timer
+     * so far. Together they give the ideal time of each tick.
+     */
+    private long firstTickNanos;
+    private long scheduledTicks = 0;
+    /**
+     * {@link System#nanoTime()} at which the last tick is run by the backing timer, or 0 if no tick has run yet.
+     */
+    private long lastTickNanos = 0;
+
     /**
      * Sets the default delay of all {@link FlowTimer}.
      *
@@ -78,6 +134,19 @@ public class FlowTimer {
         return defaultFlowDuration;
     }
 
+    /**
+     * Drives all subsequently started timers by a {@link VirtualClock} instead of real time.
+     *
+     * <p>
+     * Timers which are already running are not affected.
+     * </p>
+     *
+     * @param clock Clock to drive timers with, or {@code null} to use real time.
+     */
+    public static void setVirtualClock(@Nullable VirtualClock clock) {
+        virtualClock = clock;
+    }
+
     /**
      * Creates an instance with default delay.
      *
@@ -99,7 +168,30 @@ public class FlowTimer {
      * @param initialValue Initial delay value.
      */
     FlowTimer(int initialValue) {
+        this(initialValue, defaultFlowDuration);
+    }
+
+    /**
+     * Creates an instance with custom delay and flow duration.
+     *
+     * @param initialValue Initial delay value.
+     * @param flowDuration Duration between each water flow.
+     */
+    FlowTimer(int initialValue, int flowDuration) {
+        this(initialValue, flowDuration, new Object());
+    }
+
+    /**
+     * Creates an instance with custom delay and flow duration, whose ticks run while holding a given lock.
+     *
+     * @param initialValue Initial delay value.
+     * @param flowDuration Duration between each water flow.
+     * @param lock         Lock to hold while a tick runs.
+     */
+    FlowTimer(int initialValue, int flowDuration, @NotNull Object lock) {
         // TODO
+        this.flowDuration = flowDuration;
+        this.lock = lock;
         this.ticksElapsed=-1*initialValue;
         this.currentValue.set(-1);
         this.registerFlowCallback(() -> FlowTimer.this.currentValue.set(FlowTimer.this.currentValue.get()+1));
@@ -131,21 +223,105 @@ public class FlowTimer {
      * The timer should tick down every one second, with a delay of one second. The water should flow an additional tile
      * every {@link FlowTimer#defaultFlowDuration} seconds.
      * </p>
+     *
+     * <p>
+     * Starting a running timer has no effect.
+     * </p>
      */
     void start() {
         // TODO
-        this.flowTimer.scheduleAtFixedRate(new TimerTask() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Metrics.getInstance().recordFlowTimerStarted();
+
+        final var vc = virtualClock;
+        if (vc != null) {
+            this.clock = vc;
+            vc.schedule(this, TICK_PERIOD_MS);
+            return;
+        }
+
+        this.firstTickNanos = System.nanoTime() + TICK_PERIOD_NANOS;
+        this.scheduledTicks = 0;
+        this.lastTickNanos = 0;
+        this.task = new TimerTask() {
             @Override
             public void run() {
-                FlowTimer.this.ticksElapsed++;
-                FlowTimer.this.onTickCallbacks.forEach(Runnable::run);
-                if (FlowTimer.this.ticksElapsed >= 0) {
-                    if(FlowTimer.this.ticksElapsed%defaultFlowDuration==0){
-                        FlowTimer.this.onFlowCallbacks.forEach(Runnable::run);
+                try {
+                    FlowTimer.this.recordTickTiming();
+                    FlowTimer.this.tick();
+                } catch (RuntimeException e) {
+                    // an exception would otherwise terminate the timer thread shared with all other games
+                    e.printStackTrace();
+                }
+            }
+        };
+        SHARED_TIMER.scheduleAtFixedRate(task,TICK_PERIOD_MS,TICK_PERIOD_MS);
+    }
+
+    /**
+     * Records the timing of a tick run by the backing timer.
+     *
+     * <p>
+     * The lateness is the time between the ideal time of the tick and when it actually runs, which grows if a slow
+     * callback delays the subsequent ticks. The jitter is the deviation of the interval since the previous tick from
+     * {@link FlowTimer#TICK_PERIOD_MS}.
+     * </p>
+     */
+    private void recordTickTiming() {
+        final long now = System.nanoTime();
+        final long lateness = now - (firstTickNanos + scheduledTicks * TICK_PERIOD_NANOS);
+        final long jitter = lastTickNanos == 0 ? 0 : Math.abs(now - lastTickNanos - TICK_PERIOD_NANOS);
+        ++scheduledTicks;
+        lastTickNanos = now;
+
+        Metrics.getInstance().recordTickTiming(lateness, jitter);
+    }
+
+    /**
+     * Advances the timer by one tick, running all tick callbacks and, if the water flows in this tick, all flow
+     * callbacks.
+     *
+     * <p>
+     * This is invoked by the backing timer every second after {@link FlowTimer#start()}. It can also be invoked
+     * directly to drive a timer which is never started, e.g. when replaying a game. The whole tick runs while holding
+     * {@link FlowTimer#lock}, so that a move made on another thread happens either before the tick callbacks or after
+     * the flow callbacks, and never in between.
+     * </p>
+     */
+    void tick() {
+        final var tickEvent = new FlowTickEvent();
+        tickEvent.begin();
+
+        boolean flowed = false;
+        synchronized (lock) {
+            ticksElapsed++;
+            Metrics.getInstance().recordTick();
+            onTickCallbacks.forEach(Runnable::run);
+            if (ticksElapsed >= 0) {
+                if (ticksElapsed % flowDuration == 0) {
+                    final var flowEvent = new FlowEvent();
+                    flowEvent.begin();
+
+                    onFlowCallbacks.forEach(Runnable::run);
+                    Metrics.getInstance().recordFlow();
+                    flowed = true;
+
+                    if (flowEvent.shouldCommit()) {
+                        flowEvent.distance = distance();
+                        flowEvent.commit();
                     }
                 }
             }
-        },1000,1000);
+        }
+
+        if (tickEvent.shouldCommit()) {
+            tickEvent.ticksElapsed = ticksElapsed;
+            tickEvent.flowed = flowed;
+            tickEvent.commit();
+        }
     }
 
     /**
@@ -153,9 +329,48 @@ public class FlowTimer {
      */
     void stop() {
         // TODO
-        if(this.flowTimer!=null){
-            this.flowTimer.cancel();
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        if (task != null) {
+            task.cancel();
+            task = null;
+            // drop the reference from the timer queue to this timer and everything its callbacks capture
+            SHARED_TIMER.purge();
+        }
+        if (clock != null) {
+            clock.cancel(this);
+            clock = null;
         }
+        Metrics.getInstance().recordFlowTimerStopped();
+    }
+
+    /**
+     * Sets the progress of a timer which has not been started, e.g. when resuming a saved game.
+     *
+     * @param ticksElapsed Number of ticks elapsed, as given by {@link FlowTimer#getTicksElapsed()}.
+     * @param distance     Distance of the water flow, as given by {@link FlowTimer#distance()}.
+     */
+    void restore(int ticksElapsed, int distance) {
+        this.ticksElapsed = ticksElapsed;
+        this.currentValue.set(distance);
+    }
+
+    /**
+     * @return Duration between each water flow of this timer.
+     */
+    int getFlowDuration() {
+        return flowDuration;
+    }
+
+    /**
+     * @return Number of ticks elapsed since the water started flowing, which is negative before the water starts
+     * flowing.
+     */
+    int getTicksElapsed() {
+        return ticksElapsed;
     }
 
     /**
@@ -164,4 +379,14 @@ public class FlowTimer {
     int distance() {
         return currentValue.get();
     }
+
+    /**
+     * @return Number of ticks until the water flows into the next tile, which is at least 1.
+     */
+    int ticksUntilFlow() {
+        if (ticksElapsed < 0) {
+            return -ticksElapsed;
+        }
+        return flowDuration - ticksElapsed % flowDuration;
+    }
 }
@@ -0,0 +1,133 @@
+package models;
+
+import models.map.MapState;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable copy of the state of a {@link FXGame}, from which the game can be resumed.
+ *
+ * <p>
+ * A snapshot is created by {@link FXGame#snapshot()}, and a game is recreated from it by
+ * {@link FXGame#restore(GameSnapshot)}. It shares nothing with the game it is taken from, so it can be written to disk
+ * on another thread while the game goes on. The arrays must not be modified.
+ * </p>
+ *
+ * <p>
+ * The history of moves for {@link FXGame#renderHistory(javafx.scene.canvas.Canvas, int)} is not included, so the
+ * history of a resumed game starts from the state it is resumed in.
+ * </p>
+ */
+public final class GameSnapshot {
+
+    /**
+     * Number of rows including side walls.
+     */
+    public final int rows;
+    /**
+     * Number of columns including side walls.
+     */
+    public final int cols;
+    /**
+     * Delay in seconds before water starts flowing.
+     */
+    public final int delay;
+    /**
+     * Duration in seconds between each water flow.
+     */
+    public final int flowDuration;
+    /**
+     * Seed used to generate pipes.
+     */
+    public final long seed;
+    /**
+     * Relative weight of each pipe shape, indexed by {@link models.pipes.Pipe.Shape#ordinal()}, or empty if every shape
+     * has equal weight.
+     */
+    @NotNull
+    public final int[] weights;
+    /**
+     * Serialized representation of every cell of the level, one character per cell in row-major order.
+     */
+    @NotNull
+    public final byte[] level;
+    /**
+     * Shape ordinals of the starting pipes of the level.
+     */
+    @NotNull
+    public final byte[] startingPipes;
+    /**
+     * State of the cells and the water.
+     */
+    @NotNull
+    public final MapState map;
+    /**
+     * Shape ordinals of the pipes in the queue, starting from the next pipe.
+     */
+    @NotNull
+    public final byte[] queue;
+    /**
+     * Number of pipes generated from {@link GameSnapshot#seed} so far.
+     */
+    public final long generatedPipes;
+    /**
+     * Flattened indices of the placed pipes which can be undone, starting from the first placed pipe.
+     */
+    @NotNull
+    public final int[] placed;
+    /**
+     * Number of steps made.
+     */
+    public final int steps;
+    /**
+     * Number of undos made.
+     */
+    public final int undos;
+    /**
+     * Number of ticks elapsed since the water started flowing, which is negative before the water starts flowing.
+     */
+    public final int ticksElapsed;
+    /**
+     * Distance of the water flow.
+     */
+    public final int distance;
+
+    /**
+     * @param rows           Number of rows including side walls.
+     * @param cols           Number of columns including side walls.
+     * @param delay          Delay in seconds before water starts flowing.
+     * @param flowDuration   Duration in seconds between each water flow.
+     * @param seed           Seed used to generate pipes.
+     * @param weights        Relative weight of each pipe shape, or empty if every shape has equal weight.
+     * @param level          Serialized representation of every cell of the level.
+     * @param startingPipes  Shape ordinals of the starting pipes.
+     * @param map            State of the cells and the water.
+     * @param queue          Shape ordinals of the pipes in the queue.
+     * @param generatedPipes Number of pipes generated so far.
+     * @param placed         Flattened indices of the placed pipes which can be undone.
+     * @param steps          Number of steps made.
+     * @param undos          Number of undos made.
+     * @param ticksElapsed   Number of ticks elapsed since the water started flowing.
+     * @param distance       Distance of the water flow.
+     */
+    public GameSnapshot(int rows, int cols, int delay, int flowDuration, long seed, @NotNull int[] weights,
+                        @NotNull byte[] level, @NotNull byte[] startingPipes, @NotNull MapState map,
+                        @NotNull byte[] queue, long generatedPipes, @NotNull int[] placed, int steps, int undos,
+                        int ticksElapsed, int distance) {
+        this.rows = rows;
+        this.cols = cols;
+        this.delay = delay;
+        this.flowDuration = flowDuration;
+        this.seed = seed;
+        this.weights = weights;
+        this.level = level;
+        this.startingPipes = startingPipes;
+        this.map = map;
+        this.queue = queue;
+        this.generatedPipes = generatedPipes;
+        this.placed = placed;
+        this.steps = steps;
+        this.undos = undos;
+        this.ticksElapsed = ticksElapsed;
+        this.distance = distance;
+    }
+}
@@ -0,0 +1,169 @@
+package models;
+
+import models.map.Map;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Read-only view of a {@link FXGame}, given to bots to decide their moves.
+ *
+ * <p>
+ * The view reflects the current state of the game, and does not copy anything, so it is cheap to query from the
+ * decision of every move. Nothing in the game can be changed through the view.
+ * </p>
+ */
+public final class GameView {
+
+    @NotNull
+    private final Map map;
+    @NotNull
+    private final PipeQueue pipeQueue;
+    @NotNull
+    private final FlowTimer flowTimer;
+    @NotNull
+    private final HintEngine hintEngine;
+    @NotNull
+    private final FXGame game;
+
+    GameView(@NotNull FXGame game, @NotNull Map map, @NotNull PipeQueue pipeQueue, @NotNull FlowTimer flowTimer,
+             @NotNull HintEngine hintEngine) {
+        this.game = game;
+        this.map = map;
+        this.pipeQueue = pipeQueue;
+        this.flowTimer = flowTimer;
+        this.hintEngine = hintEngine;
+    }
+
+    /**
+     * @return Number of rows, including the side walls.
+     */
+    public int getRows() {
+        return map.getRows();
+    }
+
+    /**
+     * @return Number of columns, including the side walls.
+     */
+    public int getCols() {
+        return map.getCols();
+    }
+
+    /**
+     * @see Map#isFillable(int, int)
+     */
+    public boolean isFillable(int row, int col) {
+        return map.isFillable(row, col);
+    }
+
+    /**
+     * @see Map#getShapeAt(int, int)
+     */
+    @Nullable
+    public Pipe.Shape getShapeAt(int row, int col) {
+        return map.getShapeAt(row, col);
+    }
+
+    /**
+     * @see Map#isFilled(int, int)
+     */
+    public boolean isFilled(int row, int col) {
+        return map.isFilled(row, col);
+    }
+
+    /**
+     * @see Map#isLiveCell(int, int)
+     */
+    public boolean isLiveCell(int row, int col) {
+        return map.isLiveCell(row, col);
+    }
+
+    /**
+     * @see Map#getSinkDistance(int, int)
+     */
+    public int getSinkDistance(int row, int col) {
+        return map.getSinkDistance(row, col);
+    }
+
+    /**
+     * @see Map#getShortestRouteLength()
+     */
+    public int getShortestRouteLength() {
+        return map.getShortestRouteLength();
+    }
+
+    /**
+     * @param depth Position of the pipe in the queue, where 0 is the next pipe to be placed.
+     * @return Shape of the pipe at the given position.
+     * @see PipeQueue#peekShape(int)
+     */
+    @NotNull
+    public Pipe.Shape peekShape(int depth) {
+        return pipeQueue.peekShape(depth);
+    }
+
+    /**
+     * @return Number of tiles the water has flowed, or a negative number if the water has not started flowing yet.
+     */
+    public int getFlowDistance() {
+        return flowTimer.distance();
+    }
+
+    /**
+     * @return Number of ticks until the water flows into the next tile.
+     */
+    public int getTicksUntilFlow() {
+        return flowTimer.ticksUntilFlow();
+    }
+
+    /**
+     * @return Number of moves made so far, including skips and undos.
+     */
+    public int getNumOfSteps() {
+        return game.getNumOfSteps().get();
+    }
+
+    /**
+     * @return Zobrist hash of the map and the pipes displayed in the queue.
+     * @see FXGame#getZobristHash()
+     */
+    public long getZobristHash() {
+        return game.getZobristHash();
+    }
+
+    /**
+     * @param k Maximum number of placements to return.
+     * @return The best placements of the next pipe, as scored by the {@link HintEngine} of the game.
+     */
+    @NotNull
+    public HintEngine.Hints getHints(int k) {
+        return hintEngine.hints(pipeQueue.peekShape(0), pipeQueue.peekShape(1), k);
+    }
+
+    /**
+     * Creates a simulation of the game in its current state, which can be played ahead without changing the game.
+     *
+     * @param seed Seed for generating the pipes after the pipes displayed in the queue.
+     * @return The simulation.
+     */
+    @NotNull
+    public Simulation simulate(long seed) {
+        // forking gives up the ownership of the nodes of the map, so it must not race with the water flowing
+        synchronized (game) {
+            final var forkMap = map.fork();
+            return new Simulation(forkMap, pipeQueue.fork(seed), new HintEngine(hintEngine, forkMap),
+                    flowTimer.getFlowDuration(), flowTimer.getTicksElapsed(), flowTimer.distance());
+        }
+    }
+
+    /**
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     * @param shape Shape of the pipe.
+     * @return Score of placing a pipe on the cell.
+     * @see HintEngine#score(int, int, Pipe.Shape)
+     */
+    public int getHintScore(int row, int col, @NotNull Pipe.Shape shape) {
+        return hintEngine.score(row, col, shape);
+    }
+}
@@ -0,0 +1,708 @@
+package models;
+
+import models.map.Map;
+import models.map.cells.TerminationCell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Direction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scores the placements of a pipe by how much they extend the wetted path towards a sink.
+ *
+ * <p>
+ * The wetted path consists of the pipes which water will flow through, i.e. the pipes connected back-to-back to a
+ * source, whether they are filled yet or not. The empty cells which a pipe on the path (or a source) opens into are the
+ * open ends of the path. A pipe placed at an open end which connects back to the path extends the path, and is scored
+ * by how much closer its outlets lead to a sink according to {@link Map#getSinkDistance(int, int)}. All other
+ * placements do not extend the path, and are scored by category only.
+ * </p>
+ *
+ * <p>
+ * The path and its open ends are updated incrementally as pipes are placed, in time proportional to the number of pipes
+ * joining the path, and without allocating except to copy shared chunks as described below. Undoing a pipe rebuilds
+ * them from scratch, as removing a pipe may cut off any part of the path. Scoring then only needs to visit the open
+ * ends, so it takes time proportional to the number of open ends and not to the size of the map.
+ * </p>
+ *
+ * <p>
+ * The state of each cell is stored in chunks of {@link HintEngine#CHUNK_CELLS} cells. An engine copied for a fork
+ * shares all chunks with the engine it is copied from, and a chunk is only copied by the first engine which changes a
+ * cell in it, in the same way as the cells of a {@link Map} are shared with its forks. Copying an engine therefore
+ * takes time proportional to the number of open ends, and each engine afterwards copies at most the chunks it changes.
+ * </p>
+ *
+ * <p>
+ * The engine must be notified of every pipe placed on or removed from the map, via {@link HintEngine#onPlaced(int,
+ * int)} and {@link HintEngine#onUndone(int, int)}.
+ * </p>
+ */
+public class HintEngine {
+
+    /**
+     * Score of a placement which leads the path into a sink which it has not reached yet.
+     */
+    public static final int SCORE_WIN = 1000;
+    /**
+     * Score of a placement on a cell which is not an open end, but may lie on a route from a source to a sink.
+     */
+    public static final int SCORE_IDLE_LIVE = -10;
+    /**
+     * Score of a placement on a cell which can never lie on a route from a source to a sink.
+     */
+    public static final int SCORE_IDLE_DEAD = -20;
+    /**
+     * Score of a placement which connects back to the path, but none of whose outlets lead towards a sink.
+     */
+    public static final int SCORE_DEAD_END = -50;
+    /**
+     * Score of a placement at an open end which does not connect back to the path, which closes the open end.
+     */
+    public static final int SCORE_BLOCKED = -100;
+
+    /**
+     * A scored placement of a pipe.
+     */
+    public static class Placement {
+        public final int row;
+        public final int col;
+        public final int score;
+
+        public Placement(int row, int col, int score) {
+            this.row = row;
+            this.col = col;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + row + ", " + col + ") " + score;
+        }
+    }
+
+    /**
+     * Hints for the next pipe in the queue.
+     */
+    public static class Hints {
+        /**
+         * The best placements of the next pipe, in descending order of score.
+         */
+        @NotNull
+        public final List<Placement> placements;
+        /**
+         * Whether the pipe after the next pipe can be placed with a higher score than the next pipe, in which case the
+         * next pipe should be skipped.
+         */
+        public final boolean skipRecommended;
+
+        public Hints(@NotNull List<Placement> placements, boolean skipRecommended) {
+            this.placements = placements;
+            this.skipRecommended = skipRecommended;
+        }
+    }
+
+    /**
+     * Number of open ends and pipes joining the path which an engine copied for a fork has room for before growing.
+     */
+    private static final int FORK_SLACK = 16;
+
+    private static final int CHUNK_BITS = 6;
+    /**
+     * Number of cells in each chunk of per-cell state.
+     */
+    private static final int CHUNK_CELLS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_CELLS - 1;
+
+    /**
+     * The state of {@link HintEngine#CHUNK_CELLS} consecutive cells, by flattened index.
+     */
+    private static final class Chunk {
+        /**
+         * Token of the engine which may change this chunk in place.
+         */
+        @NotNull
+        final Object owner;
+        /**
+         * Whether each cell has a pipe on the path.
+         */
+        @NotNull
+        final boolean[] onPath;
+        /**
+         * For every empty cell, bit {@code d.ordinal()} is set if the path opens into the cell from its neighbour
+         * towards {@code d}.
+         */
+        @NotNull
+        final byte[] inflow;
+        /**
+         * Position of every open end in {@link HintEngine#openCells}, or {@code -1} if the cell is not an open end.
+         */
+        @NotNull
+        final int[] openSlots;
+
+        Chunk(@NotNull Object owner) {
+            this.owner = owner;
+            this.onPath = new boolean[CHUNK_CELLS];
+            this.inflow = new byte[CHUNK_CELLS];
+            this.openSlots = new int[CHUNK_CELLS];
+            Arrays.fill(openSlots, -1);
+        }
+
+        Chunk(@NotNull Object owner, @NotNull Chunk other) {
+            this.owner = owner;
+            this.onPath = other.onPath.clone();
+            this.inflow = other.inflow.clone();
+            this.openSlots = other.openSlots.clone();
+        }
+    }
+
+    @NotNull
+    private final Map map;
+    private final int rows;
+    private final int cols;
+
+    /**
+     * Flattened indices of the sources.
+     */
+    @NotNull
+    private final int[] sourceIndices;
+    /**
+     * Direction of the outlet of each source.
+     */
+    @NotNull
+    private final Direction[] sourceDirections;
+    /**
+     * Flattened indices of the cells next to the inlet of each sink.
+     */
+    @NotNull
+    private final int[] sinkInlets;
+    /**
+     * Direction from {@link HintEngine#sinkInlets} into each sink.
+     */
+    @NotNull
+    private final Direction[] sinkDirections;
+    /**
+     * Whether the path already leads into each sink.
+     */
+    @NotNull
+    private final boolean[] sinkReached;
+
+    /**
+     * {@link Map#getSinkDistance(int, int)} of every cell, by flattened index.
+     */
+    @NotNull
+    private final int[] sinkDistances;
+
+    /**
+     * State of every cell, by flattened index divided by {@link HintEngine#CHUNK_CELLS}.
+     */
+    @NotNull
+    private Chunk[] chunks;
+    /**
+     * Whether {@link HintEngine#chunks} is shared with another engine, and must be copied before a chunk is replaced.
+     */
+    private boolean chunksShared = false;
+    /**
+     * Token identifying the chunks owned by this engine.
+     */
+    @NotNull
+    private Object owner = new Object();
+    /**
+     * Flattened indices of the open ends, in no particular order. Engines copied for a fork start with room for a few
+     * more open ends than they have, and grow this when needed.
+     */
+    @NotNull
+    private int[] openCells;
+    private int openCount = 0;
+    /**
+     * Every cell before this index is an open end, has a pipe or is not fillable, so it is not an idle placement. An
+     * open end only stops being one when a pipe is placed on it, so this only moves forward until the path is rebuilt.
+     */
+    private int idleCursor = 0;
+    /**
+     * Pipes joining the path which have not been explored yet. Like {@link HintEngine#openCells}, this grows when
+     * needed in engines copied for a fork.
+     */
+    @NotNull
+    private int[] stack;
+
+    /**
+     * Creates an engine for the current state of a map.
+     *
+     * @param map Map to score placements on.
+     */
+    public HintEngine(@NotNull Map map) {
+        this.map = map;
+        this.rows = map.getRows();
+        this.cols = map.getCols();
+
+        final var sources = map.getSources();
+        sourceIndices = new int[sources.size()];
+        sourceDirections = new Direction[sources.size()];
+        for (int i = 0; i < sourceIndices.length; ++i) {
+            sourceIndices[i] = sources.get(i).coord.row * cols + sources.get(i).coord.col;
+            sourceDirections[i] = sources.get(i).pointingTo;
+        }
+
+        final var sinks = map.getSinks();
+        sinkInlets = new int[sinks.size()];
+        sinkDirections = new Direction[sinks.size()];
+        sinkReached = new boolean[sinks.size()];
+        for (int i = 0; i < sinkInlets.length; ++i) {
+            final TerminationCell sink = sinks.get(i);
+            final var offset = sink.pointingTo.getOpposite().getOffset();
+            final int row = sink.coord.row + offset.row;
+            final int col = sink.coord.col + offset.col;
+            sinkInlets[i] = map.isFillable(row, col) ? row * cols + col : -1;
+            sinkDirections[i] = sink.pointingTo;
+        }
+
+        sinkDistances = new int[rows * cols];
+        for (int index = 0; index < sinkDistances.length; ++index) {
+            sinkDistances[index] = map.getSinkDistance(index / cols, index % cols);
+        }
+
+        chunks = new Chunk[(rows * cols + CHUNK_MASK) >> CHUNK_BITS];
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = new Chunk(owner);
+        }
+        openCells = new int[rows * cols];
+        stack = new int[rows * cols];
+        rebuild();
+    }
+
+    /**
+     * Creates an engine with the same path as another engine, for a fork of its map.
+     *
+     * <p>
+     * This copies the state of the path instead of finding it from scratch, and shares everything which never changes
+     * with the other engine. The state of each cell is shared as well, and neither engine owns any of its chunks
+     * afterwards, so a change to one engine is never observed by the other.
+     * </p>
+     *
+     * @param other Engine to copy.
+     * @param map   Fork of the map of the other engine, in the same state.
+     */
+    HintEngine(@NotNull HintEngine other, @NotNull Map map) {
+        this.map = map;
+        this.rows = other.rows;
+        this.cols = other.cols;
+
+        sourceIndices = other.sourceIndices;
+        sourceDirections = other.sourceDirections;
+        sinkInlets = other.sinkInlets;
+        sinkDirections = other.sinkDirections;
+        sinkReached = other.sinkReached.clone();
+        sinkDistances = other.sinkDistances;
+
+        chunks = other.chunks;
+        chunksShared = true;
+        other.chunksShared = true;
+        other.owner = new Object();
+        openCells = Arrays.copyOf(other.openCells, Math.min(rows * cols, other.openCount + FORK_SLACK));
+        openCount = other.openCount;
+        idleCursor = other.idleCursor;
+        stack = new int[Math.min(rows * cols, FORK_SLACK)];
+    }
+
+    /**
+     * Updates the path after a pipe is placed.
+     *
+     * @param row Row of the pipe.
+     * @param col Column of the pipe.
+     */
+    public void onPlaced(int row, int col) {
+        final int index = row * cols + col;
+        final int sides = inflow(index);
+        if (sides == 0) {
+            return;
+        }
+
+        writableChunk(index).inflow[index & CHUNK_MASK] = 0;
+        removeOpenCell(index);
+
+        final var shape = map.getShapeAt(row, col);
+        if (shape != null && connectsTo(shape, sides)) {
+            writableChunk(index).onPath[index & CHUNK_MASK] = true;
+            stack[0] = index;
+            explore(1);
+        }
+    }
+
+    /**
+     * Updates the path after a pipe is removed.
+     *
+     * @param row Row of the pipe.
+     * @param col Column of the pipe.
+     */
+    public void onUndone(int row, int col) {
+        rebuild();
+    }
+
+    /**
+     * Finds the path from scratch.
+     */
+    private void rebuild() {
+        if (chunksShared) {
+            chunks = chunks.clone();
+            chunksShared = false;
+        }
+        for (int i = 0; i < chunks.length; ++i) {
+            final var chunk = chunks[i];
+            if (chunk.owner == owner) {
+                Arrays.fill(chunk.onPath, false);
+                Arrays.fill(chunk.inflow, (byte) 0);
+                Arrays.fill(chunk.openSlots, -1);
+            } else {
+                chunks[i] = new Chunk(owner);
+            }
+        }
+        idleCursor = 0;
+        Arrays.fill(sinkReached, false);
+        openCount = 0;
+
+        int top = 0;
+        for (int i = 0; i < sourceIndices.length; ++i) {
+            top = flowInto(sourceIndices[i], sourceDirections[i], top);
+        }
+        explore(top);
+    }
+
+    /**
+     * Adds the pipes connected to the pipes on the stack to the path, and records the open ends found along the way.
+     *
+     * @param top Number of pipes on the stack.
+     */
+    private void explore(int top) {
+        while (top > 0) {
+            final int index = stack[--top];
+            final var shape = map.getShapeAt(index / cols, index % cols);
+            if (shape == null) {
+                continue;
+            }
+            for (var d : shape.getConnections()) {
+                top = flowInto(index, d, top);
+            }
+        }
+    }
+
+    /**
+     * Lets the path flow out of a cell.
+     *
+     * @param index Flattened index of the cell on the path.
+     * @param dir   Direction of the outlet.
+     * @param top   Number of pipes on the stack.
+     * @return New number of pipes on the stack.
+     */
+    private int flowInto(int index, @NotNull Direction dir, int top) {
+        final int sink = sinkAt(index, dir);
+        if (sink >= 0) {
+            sinkReached[sink] = true;
+            return top;
+        }
+
+        final var offset = dir.getOffset();
+        final int row = index / cols + offset.row;
+        final int col = index % cols + offset.col;
+        if (!map.isFillable(row, col)) {
+            return top;
+        }
+
+        final int next = row * cols + col;
+        final var shape = map.getShapeAt(row, col);
+        if (shape == null) {
+            writableChunk(next).inflow[next & CHUNK_MASK] |= 1 << dir.getOpposite().ordinal();
+            addOpenCell(next);
+        } else if (shape.hasConnection(dir.getOpposite()) && !onPath(next)) {
+            writableChunk(next).onPath[next & CHUNK_MASK] = true;
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, Math.min(rows * cols, stack.length * 2));
+            }
+            stack[top++] = next;
+        }
+        return top;
+    }
+
+    /**
+     * @param index Flattened index of a cell.
+     * @param dir   Direction of an outlet of the cell.
+     * @return Index of the sink which the outlet leads into, or {@code -1} if it does not lead into a sink.
+     */
+    private int sinkAt(int index, @NotNull Direction dir) {
+        for (int i = 0; i < sinkInlets.length; ++i) {
+            if (sinkInlets[i] == index && sinkDirections[i] == dir) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addOpenCell(int index) {
+        final var chunk = chunks[index >> CHUNK_BITS];
+        if (chunk.openSlots[index & CHUNK_MASK] < 0) {
+            if (openCount == openCells.length) {
+                openCells = Arrays.copyOf(openCells, Math.min(rows * cols, openCells.length * 2));
+            }
+            writableChunk(index).openSlots[index & CHUNK_MASK] = openCount;
+            openCells[openCount++] = index;
+        }
+    }
+
+    private void removeOpenCell(int index) {
+        final int slot = chunks[index >> CHUNK_BITS].openSlots[index & CHUNK_MASK];
+        if (slot < 0) {
+            return;
+        }
+        final int last = openCells[--openCount];
+        openCells[slot] = last;
+        writableChunk(last).openSlots[last & CHUNK_MASK] = slot;
+        writableChunk(index).openSlots[index & CHUNK_MASK] = -1;
+    }
+
+    /**
+     * @param index Flattened index of a cell.
+     * @return Whether the cell has a pipe on the path.
+     */
+    private boolean onPath(int index) {
+        return chunks[index >> CHUNK_BITS].onPath[index & CHUNK_MASK];
+    }
+
+    /**
+     * @param index Flattened index of a cell.
+     * @return Bit mask of the directions from which the path opens into the cell.
+     */
+    private int inflow(int index) {
+        return chunks[index >> CHUNK_BITS].inflow[index & CHUNK_MASK];
+    }
+
+    /**
+     * Makes the chunk containing a cell owned by this engine, copying it and {@link HintEngine#chunks} if they are
+     * shared.
+     *
+     * @param index Flattened index of a cell.
+     * @return The chunk containing the cell, which may be changed in place.
+     */
+    @NotNull
+    private Chunk writableChunk(int index) {
+        if (chunksShared) {
+            chunks = chunks.clone();
+            chunksShared = false;
+        }
+        final int i = index >> CHUNK_BITS;
+        if (chunks[i].owner != owner) {
+            chunks[i] = new Chunk(owner, chunks[i]);
+        }
+        return chunks[i];
+    }
+
+    /**
+     * @param shape Shape of a pipe.
+     * @param sides Bit mask of directions.
+     * @return Whether the shape has an opening towards any of the directions.
+     */
+    private static boolean connectsTo(@NotNull Pipe.Shape shape, int sides) {
+        for (var d : shape.getConnections()) {
+            if ((sides & (1 << d.ordinal())) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of open ends of the path.
+     */
+    public int getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * Scores placing a pipe on a cell.
+     *
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     * @param shape Shape of the pipe.
+     * @return Score of the placement, or {@link Integer#MIN_VALUE} if a pipe cannot be placed on the cell.
+     */
+    public int score(int row, int col, @NotNull Pipe.Shape shape) {
+        if (!map.isFillable(row, col) || map.getShapeAt(row, col) != null) {
+            return Integer.MIN_VALUE;
+        }
+
+        final int index = row * cols + col;
+        if (inflow(index) == 0) {
+            return map.isLiveCell(row, col) ? SCORE_IDLE_LIVE : SCORE_IDLE_DEAD;
+        }
+        return scoreOpenCell(index, shape);
+    }
+
+    /**
+     * @param index Flattened index of an open end.
+     * @param shape Shape of the pipe.
+     * @return Score of placing a pipe on the open end.
+     */
+    private int scoreOpenCell(int index, @NotNull Pipe.Shape shape) {
+        final int sides = inflow(index);
+        if (!connectsTo(shape, sides)) {
+            return SCORE_BLOCKED;
+        }
+
+        final int distance = sinkDistances[index];
+        final int row = index / cols;
+        final int col = index - row * cols;
+        int best = SCORE_DEAD_END;
+        for (var d : shape.getConnections()) {
+            if ((sides & (1 << d.ordinal())) != 0) {
+                continue;
+            }
+
+            final int sink = sinkAt(index, d);
+            if (sink >= 0) {
+                if (!sinkReached[sink]) {
+                    return SCORE_WIN;
+                }
+                continue;
+            }
+
+            final var offset = d.getOffset();
+            final int nextRow = row + offset.row;
+            final int nextCol = col + offset.col;
+            if (nextRow < 0 || nextRow >= rows || nextCol < 0 || nextCol >= cols) {
+                continue;
+            }
+            final int nextIndex = nextRow * cols + nextCol;
+            final int nextDistance = sinkDistances[nextIndex];
+            if (nextDistance < 0 || distance - nextDistance <= best || onPath(nextIndex)) {
+                continue;
+            }
+            final var nextShape = map.getShapeAt(nextRow, nextCol);
+            if (nextShape == null || nextShape.hasConnection(d.getOpposite())) {
+                best = Math.max(best, distance - nextDistance);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param shape Shape of a pipe.
+     * @return The highest score of any placement of the pipe, which is at least {@link HintEngine#SCORE_IDLE_LIVE}.
+     */
+    public int bestScore(@NotNull Pipe.Shape shape) {
+        int best = SCORE_IDLE_LIVE;
+        for (int i = 0; i < openCount; ++i) {
+            best = Math.max(best, scoreOpenCell(openCells[i], shape));
+        }
+        return best;
+    }
+
+    /**
+     * Finds the open end with the highest score for a pipe, without allocating.
+     *
+     * @param shape Shape of a pipe.
+     * @return Flattened index of the open end, i.e. {@code row * cols + col}, or {@code -1} if no placement at an open
+     * end scores higher than {@link HintEngine#SCORE_IDLE_LIVE}. Placements with the same score are ordered
+     * arbitrarily.
+     */
+    public int bestOpenCell(@NotNull Pipe.Shape shape) {
+        int best = SCORE_IDLE_LIVE;
+        int bestIndex = -1;
+        for (int i = 0; i < openCount; ++i) {
+            final int score = scoreOpenCell(openCells[i], shape);
+            if (score > best) {
+                best = score;
+                bestIndex = openCells[i];
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * Finds the best placements of a pipe.
+     *
+     * <p>
+     * Every open end is scored individually. All other empty cells score {@link HintEngine#SCORE_IDLE_LIVE} or
+     * {@link HintEngine#SCORE_IDLE_DEAD}, so they are only visited in row-major order until enough of them are found.
+     * Placements with the same score are ordered by row and column. This takes time proportional to the number of open
+     * ends times {@code k}, plus the number of cells visited for idle placements.
+     * </p>
+     *
+     * @param shape Shape of the pipe to place.
+     * @param next  Shape of the pipe after it, or {@code null} if skipping should not be considered.
+     * @param k     Maximum number of placements to return.
+     * @return The best {@code k} placements in descending order of score, and whether to skip the pipe instead.
+     */
+    @NotNull
+    public Hints hints(@NotNull Pipe.Shape shape, @Nullable Pipe.Shape next, int k) {
+        if (k <= 0) {
+            return new Hints(Collections.emptyList(), false);
+        }
+
+        final int[] topIndices = new int[k];
+        final int[] topScores = new int[k];
+        int count = 0;
+        int best = SCORE_IDLE_LIVE;
+        int bestNext = SCORE_IDLE_LIVE;
+        for (int i = 0; i < openCount; ++i) {
+            final int index = openCells[i];
+            final int score = scoreOpenCell(index, shape);
+            best = Math.max(best, score);
+            if (next != null) {
+                bestNext = Math.max(bestNext, scoreOpenCell(index, next));
+            }
+            count = offer(topIndices, topScores, count, index, score);
+        }
+
+        // idle placements are visited in increasing index, so none can rank higher once the last one ranks high enough
+        boolean skipped = false;
+        for (int index = idleCursor; index < rows * cols && (count < k || topScores[k - 1] < SCORE_IDLE_LIVE); ++index) {
+            final int row = index / cols;
+            final int col = index % cols;
+            if (inflow(index) != 0 || !map.isFillable(row, col) || map.getShapeAt(row, col) != null) {
+                if (!skipped) {
+                    idleCursor = index + 1;
+                }
+                continue;
+            }
+            skipped = true;
+            final int score = map.isLiveCell(row, col) ? SCORE_IDLE_LIVE : SCORE_IDLE_DEAD;
+            count = offer(topIndices, topScores, count, index, score);
+        }
+
+        final var placements = new ArrayList<Placement>(count);
+        for (int i = 0; i < count; ++i) {
+            placements.add(new Placement(topIndices[i] / cols, topIndices[i] % cols, topScores[i]));
+        }
+        return new Hints(Collections.unmodifiableList(placements), next != null && bestNext > best);
+    }
+
+    /**
+     * Inserts a placement into a list of the best placements, if it ranks high enough.
+     *
+     * @param indices Flattened indices of the best placements, in descending order of rank.
+     * @param scores  Scores of the best placements.
+     * @param count   Number of placements in the list.
+     * @param index   Flattened index of the placement.
+     * @param score   Score of the placement.
+     * @return New number of placements in the list.
+     */
+    private static int offer(@NotNull int[] indices, @NotNull int[] scores, int count, int index, int score) {
+        int pos = count;
+        while (pos > 0 && (scores[pos - 1] < score || (scores[pos - 1] == score && indices[pos - 1] > index))) {
+            --pos;
+        }
+        if (pos == indices.length) {
+            return count;
+        }
+
+        final int end = Math.min(count, indices.length - 1);
+        System.arraycopy(indices, pos, indices, pos + 1, end - pos);
+        System.arraycopy(scores, pos, scores, pos + 1, end - pos);
+        indices[pos] = index;
+        scores[pos] = score;
+        return end + 1;
+    }
+}
@@ -0,0 +1,250 @@
+package models;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Timeline of changes to a grid of cells, which supports jumping to any step in the timeline.
+ *
+ * <p>
+ * Each cell in the grid is represented by a 4-bit code, whose meaning is defined by the owner of the history. Every
+ * change to a cell is recorded as a packed {@code int} containing the cell index, the old code and the new code, and
+ * changes are grouped into steps. A copy of the grid is kept every {@link MoveHistory#checkpointInterval} steps, so
+ * that jumping to any step only needs to apply the changes since the closest checkpoint.
+ * </p>
+ *
+ * <p>
+ * Recording a change while the current step is not the latest step discards all steps after the current step.
+ * </p>
+ */
+public class MoveHistory {
+
+    /**
+     * Default number of steps between each checkpoint.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+
+    /**
+     * Maximum number of cells supported by the packed representation.
+     */
+    private static final int MAX_CELLS = 1 << 24;
+
+    private final int checkpointInterval;
+
+    /**
+     * The grid at {@link MoveHistory#currentStep}.
+     */
+    @NotNull
+    private final byte[] grid;
+
+    /**
+     * Recorded changes. Each change is packed as {@code index << 8 | oldCode << 4 | newCode}.
+     */
+    @NotNull
+    private int[] changes = new int[256];
+    private int changeCount = 0;
+
+    /**
+     * {@code stepEnds[i]} is the number of changes up to and including step {@code i + 1}.
+     */
+    @NotNull
+    private int[] stepEnds = new int[64];
+    private int stepCount = 0;
+
+    /**
+     * {@code checkpoints[i]} is a copy of the grid at step {@code i * checkpointInterval}.
+     */
+    @NotNull
+    private byte[][] checkpoints = new byte[8][];
+    private int checkpointCount = 1;
+
+    /**
+     * The step which {@link MoveHistory#grid} currently represents.
+     */
+    private int currentStep = 0;
+
+    /**
+     * Creates a history with {@link MoveHistory#DEFAULT_CHECKPOINT_INTERVAL}.
+     *
+     * @param initialGrid Codes of all cells at step 0. The array is copied.
+     */
+    public MoveHistory(@NotNull byte[] initialGrid) {
+        this(initialGrid, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param initialGrid        Codes of all cells at step 0. The array is copied.
+     * @param checkpointInterval Number of steps between each checkpoint.
+     * @throws IllegalArgumentException if the grid is too large or the interval is not positive.
+     */
+    public MoveHistory(@NotNull byte[] initialGrid, int checkpointInterval) {
+        if (initialGrid.length > MAX_CELLS) {
+            throw new IllegalArgumentException("Grid is too large for history");
+        }
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+
+        this.checkpointInterval = checkpointInterval;
+        this.grid = initialGrid.clone();
+        this.checkpoints[0] = initialGrid.clone();
+    }
+
+    /**
+     * Records a change of a cell in the current step. The step is not complete until {@link MoveHistory#commitStep()}
+     * is invoked.
+     *
+     * @param index   Index of the cell.
+     * @param newCode New code of the cell, between 0 and 15.
+     */
+    public synchronized void record(int index, int newCode) {
+        truncate();
+
+        final int oldCode = grid[index];
+        if (oldCode == newCode) {
+            return;
+        }
+
+        if (changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = index << 8 | oldCode << 4 | newCode;
+        grid[index] = (byte) newCode;
+    }
+
+    /**
+     * @return Whether there are changes which are not committed into a step.
+     */
+    public synchronized boolean hasPendingChanges() {
+        return currentStep == stepCount && changeCount > (stepCount == 0 ? 0 : stepEnds[stepCount - 1]);
+    }
+
+    /**
+     * Completes the current step, containing all changes recorded since the last step. The step may contain no
+     * changes.
+     */
+    public synchronized void commitStep() {
+        truncate();
+
+        if (stepCount == stepEnds.length) {
+            stepEnds = Arrays.copyOf(stepEnds, stepCount * 2);
+        }
+        stepEnds[stepCount++] = changeCount;
+        currentStep = stepCount;
+
+        if (stepCount % checkpointInterval == 0) {
+            if (checkpointCount == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+            }
+            checkpoints[checkpointCount++] = grid.clone();
+        }
+    }
+
+    /**
+     * Moves to a step in the timeline.
+     *
+     * <p>
+     * This takes time proportional to the number of changes within {@link MoveHistory#checkpointInterval} steps,
+     * regardless of the distance between the current step and the target step.
+     * </p>
+     *
+     * <p>
+     * Uncommitted changes are only visible at the latest step.
+     * </p>
+     *
+     * @param step Step to move to, between 0 and {@link MoveHistory#getStepCount()} inclusive.
+     * @return The grid at the given step. The array is owned by this history and must not be modified.
+     * @throws IndexOutOfBoundsException if the step is not in the timeline.
+     */
+    @NotNull
+    public synchronized byte[] seek(int step) {
+        if (step < 0 || step > stepCount) {
+            throw new IndexOutOfBoundsException("Step " + step + " is not in history");
+        }
+
+        final int from = position(currentStep);
+        final int to = position(step);
+        final int checkpointStep = step / checkpointInterval * checkpointInterval;
+
+        if (Math.abs(to - from) <= to - changeStart(checkpointStep)) {
+            if (to > from) {
+                applyChanges(from, to);
+            } else {
+                rewindChanges(from, to);
+            }
+        } else {
+            System.arraycopy(checkpoints[step / checkpointInterval], 0, grid, 0, grid.length);
+            applyChanges(changeStart(checkpointStep), to);
+        }
+
+        currentStep = step;
+        return grid;
+    }
+
+    /**
+     * @return Number of committed steps.
+     */
+    public synchronized int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return The step which the grid currently represents.
+     */
+    public synchronized int getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * @param index Index of the cell.
+     * @return Code of the cell at the current step.
+     */
+    public synchronized int getCode(int index) {
+        return grid[index];
+    }
+
+    /**
+     * @param step Step number.
+     * @return Number of changes applied to the grid at {@code step}, including uncommitted changes at the latest step.
+     */
+    private int position(int step) {
+        return step == stepCount ? changeCount : changeStart(step);
+    }
+
+    /**
+     * @param step Step number.
+     * @return Index of the first change after {@code step}.
+     */
+    private int changeStart(int step) {
+        return step == 0 ? 0 : stepEnds[step - 1];
+    }
+
+    private void applyChanges(int from, int to) {
+        for (int i = from; i < to; ++i) {
+            final int change = changes[i];
+            grid[change >>> 8] = (byte) (change & 0xF);
+        }
+    }
+
+    private void rewindChanges(int from, int to) {
+        for (int i = from - 1; i >= to; --i) {
+            final int change = changes[i];
+            grid[change >>> 8] = (byte) ((change >>> 4) & 0xF);
+        }
+    }
+
+    /**
+     * Discards all steps after the current step.
+     */
+    private void truncate() {
+        if (currentStep == stepCount) {
+            return;
+        }
+
+        stepCount = currentStep;
+        changeCount = changeStart(currentStep);
+        checkpointCount = currentStep / checkpointInterval + 1;
+        Arrays.fill(checkpoints, checkpointCount, checkpoints.length, null);
+    }
+}
@@ -5,13 +5,22 @@ import javafx.scene.canvas.Canvas;
 import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import util.Zobrist;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Class encapsulating the pipe queue.
+ *
+ * <p>
+ * Upcoming pipes are stored as shape ordinals in a ring buffer, and are generated from a {@link SplittableRandom}
+ * stream. Queues created with the same seed and weights generate the same sequence of pipes, regardless of how far
+ * ahead the queue has been peeked. A {@link Pipe} object is only created when the next pipe is requested by
+ * {@link PipeQueue#peek()}.
+ * </p>
  */
 public class PipeQueue {
 
@@ -20,8 +29,54 @@ public class PipeQueue {
      */
     private static final int MAX_GEN_LENGTH = 5;
 
+    /**
+     * Initial capacity of the ring buffer. Must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    @NotNull
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    /**
+     * Unfilled pipes of each shape, used for displaying the queue.
+     */
+    @NotNull
+    private static final Pipe[] DISPLAY_PIPES = Arrays.stream(SHAPES).map(Pipe::new).toArray(Pipe[]::new);
+
+    /**
+     * Shape ordinals of upcoming pipes. The next pipe is at {@code ring[head]}.
+     */
     @NotNull
-    private final LinkedList<Pipe> pipeQueue;
+    private byte[] ring = new byte[INITIAL_CAPACITY];
+    private int head = 0;
+    private int size = 0;
+    /**
+     * Number of pipes generated from {@link PipeQueue#rng} so far.
+     */
+    private long generated = 0;
+
+    /**
+     * The {@link Pipe} object of the next pipe, or {@code null} if it has not been created yet.
+     */
+    @Nullable
+    private Pipe headPipe = null;
+
+    /**
+     * Generator for new pipes.
+     */
+    @NotNull
+    private final SplittableRandom rng;
+
+    /**
+     * {@code cumulativeWeights[i]} is the sum of weights of all shapes with ordinals up to and including {@code i}.
+     */
+    @NotNull
+    private final int[] cumulativeWeights;
+
+    @NotNull
+    private final Pipe[] displayBuffer = new Pipe[MAX_GEN_LENGTH];
+    @NotNull
+    private final List<Pipe> displayList = Arrays.asList(displayBuffer);
 
     /**
      * Creates an empty pipe queue.
@@ -31,11 +86,7 @@ public class PipeQueue {
      * </p>
      */
     public PipeQueue() {
-        pipeQueue = new LinkedList<>();
-
-        while (pipeQueue.size() < MAX_GEN_LENGTH) {
-            pipeQueue.add(generateNewPipe());
-        }
+        this(null);
     }
 
     /**
@@ -48,14 +99,173 @@ public class PipeQueue {
      * @param pipes List of pipes to display before generated pipes.
      */
     public PipeQueue(@Nullable List<Pipe> pipes) {
-        pipeQueue = new LinkedList<>();
+        this(pipes, new Random().nextLong());
+    }
+
+    /**
+     * Creates a pipe queue with pipes already filled in the queue, and generates all subsequent pipes from the given
+     * seed with equal probability for every shape.
+     *
+     * @param pipes List of pipes to display before generated pipes.
+     * @param seed  Seed for generating new pipes.
+     */
+    public PipeQueue(@Nullable List<Pipe> pipes, long seed) {
+        this(pipes, seed, null);
+    }
+
+    /**
+     * Creates a pipe queue with pipes already filled in the queue, and generates all subsequent pipes from the given
+     * seed.
+     *
+     * @param pipes   List of pipes to display before generated pipes.
+     * @param seed    Seed for generating new pipes.
+     * @param weights Relative weight of each shape, indexed by {@link Pipe.Shape#ordinal()}, or {@code null} to
+     *                generate every shape with equal probability.
+     * @throws IllegalArgumentException if the weights are negative, all zero, or do not cover every shape.
+     */
+    public PipeQueue(@Nullable List<Pipe> pipes, long seed, @Nullable int[] weights) {
+        rng = new SplittableRandom(seed);
+        cumulativeWeights = toCumulativeWeights(weights);
+
         if (pipes != null) {
-            pipeQueue.addAll(pipes);
+            for (var p : pipes) {
+                pushBack(p.getShape());
+            }
         }
 
-        while (pipeQueue.size() < MAX_GEN_LENGTH) {
-            pipeQueue.add(generateNewPipe());
+        fill(MAX_GEN_LENGTH);
+    }
+
+    /**
+     * Recreates a queue from its saved state.
+     *
+     * <p>
+     * The generator is advanced past the pipes which have already been generated, so the restored queue generates the
+     * same pipes as the saved queue would have.
+     * </p>
+     *
+     * @param seed      Seed the saved queue was created with.
+     * @param weights   Weights the saved queue was created with, or {@code null} if every shape has equal weight.
+     * @param pending   Shape ordinals of the pipes in the queue, as given by {@link PipeQueue#copyPending()}.
+     * @param generated Number of pipes the saved queue has generated, as given by {@link PipeQueue#getGeneratedCount()}.
+     * @throws IllegalArgumentException if a shape ordinal or the weights are invalid.
+     */
+    PipeQueue(long seed, @Nullable int[] weights, @NotNull byte[] pending, long generated) {
+        rng = new SplittableRandom(seed);
+        cumulativeWeights = toCumulativeWeights(weights);
+
+        while (this.generated < generated) {
+            generateNewShape();
+        }
+        for (byte ordinal : pending) {
+            if (ordinal < 0 || ordinal >= SHAPES.length) {
+                throw new IllegalArgumentException("Invalid pipe shape " + ordinal);
+            }
+            pushBack(SHAPES[ordinal]);
         }
+
+        fill(MAX_GEN_LENGTH);
+    }
+
+    /**
+     * Creates a fork of a pipe queue, which starts with the pipes displayed in the queue and generates all subsequent
+     * pipes from another seed.
+     *
+     * @param other Pipe queue to fork.
+     * @param seed  Seed for generating the pipes after the displayed pipes.
+     */
+    private PipeQueue(@NotNull PipeQueue other, long seed) {
+        rng = new SplittableRandom(seed);
+        cumulativeWeights = other.cumulativeWeights;
+
+        final int known = Math.min(other.size, MAX_GEN_LENGTH);
+        for (int i = 0; i < known; ++i) {
+            pushBack(SHAPES[other.ring[(other.head + i) & (other.ring.length - 1)]]);
+        }
+
+        fill(MAX_GEN_LENGTH);
+    }
+
+    /**
+     * Creates a queue which displays the same pipes as this queue, but does not know which pipes come after them.
+     *
+     * <p>
+     * The fork generates the pipes after the displayed pipes from the given seed with the same weights as this queue,
+     * so that a player simulating the game with the fork cannot see further ahead than the player of this queue.
+     * </p>
+     *
+     * @param seed Seed for generating the pipes after the displayed pipes.
+     * @return The fork.
+     */
+    @NotNull
+    PipeQueue fork(long seed) {
+        return new PipeQueue(this, seed);
+    }
+
+    /**
+     * @return Shape ordinals of all pipes in the queue, starting from the next pipe.
+     */
+    @NotNull
+    byte[] copyPending() {
+        final var pending = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            pending[i] = ring[(head + i) & (ring.length - 1)];
+        }
+        return pending;
+    }
+
+    /**
+     * @return Number of pipes generated by this queue so far, excluding the pipes the queue is created with.
+     */
+    long getGeneratedCount() {
+        return generated;
+    }
+
+    /**
+     * @return Number of pipes displayed in the queue, which are known to the player.
+     */
+    static int getDisplayLength() {
+        return MAX_GEN_LENGTH;
+    }
+
+    /**
+     * Checks whether a queue can be created with the given weights.
+     *
+     * @param weights Relative weight of each shape, indexed by {@link Pipe.Shape#ordinal()}.
+     * @throws IllegalArgumentException if the weights are negative, all zero, or do not cover every shape.
+     */
+    public static void checkWeights(@NotNull int[] weights) {
+        toCumulativeWeights(weights);
+    }
+
+    @NotNull
+    private static int[] toCumulativeWeights(@Nullable int[] weights) {
+        final var cumulative = new int[SHAPES.length];
+        if (weights == null) {
+            for (int i = 0; i < cumulative.length; ++i) {
+                cumulative[i] = i + 1;
+            }
+            return cumulative;
+        }
+
+        if (weights.length != SHAPES.length) {
+            throw new IllegalArgumentException("Expected " + SHAPES.length + " weights, got " + weights.length);
+        }
+        long total = 0;
+        for (int i = 0; i < weights.length; ++i) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Weight of " + SHAPES[i] + " is negative");
+            }
+            total += weights[i];
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Sum of weights is too large");
+            }
+            cumulative[i] = (int) total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one shape must have a positive weight");
+        }
+        return cumulative;
     }
 
     /**
@@ -66,12 +276,35 @@ public class PipeQueue {
      */
     @NotNull
     public Pipe peek() {
-        var p = pipeQueue.peek();
-        if (p == null) {
+        if (size == 0) {
             throw new IllegalStateException();
         }
 
-        return p;
+        if (headPipe == null) {
+            headPipe = new Pipe(SHAPES[ring[head]]);
+        }
+        return headPipe;
+    }
+
+    /**
+     * Peeks the shape of a pipe further down the queue, generating pipes if needed.
+     *
+     * <p>
+     * Peeking does not change the sequence of pipes generated by this queue.
+     * </p>
+     *
+     * @param depth Position of the pipe in the queue, where 0 is the next pipe.
+     * @return Shape of the pipe at the given position.
+     * @throws IndexOutOfBoundsException if {@code depth} is negative.
+     */
+    @NotNull
+    public Pipe.Shape peekShape(int depth) {
+        if (depth < 0) {
+            throw new IndexOutOfBoundsException("Negative depth " + depth);
+        }
+
+        fill(depth + 1);
+        return SHAPES[ring[(head + depth) & (ring.length - 1)]];
     }
 
     /**
@@ -81,11 +314,15 @@ public class PipeQueue {
      * {@code pipeQueue}.
      */
     public void consume() {
-        pipeQueue.remove();
-
-        while (pipeQueue.size() < MAX_GEN_LENGTH) {
-            pipeQueue.add(generateNewPipe());
+        if (size == 0) {
+            throw new IllegalStateException();
         }
+
+        head = (head + 1) & (ring.length - 1);
+        --size;
+        headPipe = null;
+
+        fill(MAX_GEN_LENGTH);
     }
 
     /**
@@ -94,7 +331,29 @@ public class PipeQueue {
      * @param pipe Pipe to insert to front of queue.
      */
     public void undo(@NotNull final Pipe pipe) {
-        pipeQueue.addFirst(pipe);
+        ensureCapacity();
+        head = (head - 1) & (ring.length - 1);
+        ring[head] = (byte) pipe.getShape().ordinal();
+        ++size;
+        headPipe = pipe;
+    }
+
+    /**
+     * Computes the Zobrist hash of the pipes displayed in the queue, which covers the shape of each of the next
+     * {@link PipeQueue#MAX_GEN_LENGTH} pipes and its position in the queue.
+     *
+     * <p>
+     * Combined with {@link models.map.Map#zobristHash()} via XOR, this gives a key of the state seen by the player.
+     * </p>
+     *
+     * @return 64-bit Zobrist hash of the displayed pipes.
+     */
+    public long windowHash() {
+        long hash = 0;
+        for (int i = 0; i < MAX_GEN_LENGTH; ++i) {
+            hash ^= Zobrist.key(Zobrist.QUEUE_SLOT, i, peekShape(i).ordinal());
+        }
+        return hash;
     }
 
     /**
@@ -102,8 +361,8 @@ public class PipeQueue {
      */
     public void display() {
         System.out.print("Next Pipes:  ");
-        for (var p : pipeQueue) {
-            System.out.print(p.toSingleChar() + "    ");
+        for (int i = 0; i < MAX_GEN_LENGTH; ++i) {
+            System.out.print(DISPLAY_PIPES[peekShape(i).ordinal()].toSingleChar() + "    ");
         }
         System.out.println();
     }
@@ -114,26 +373,59 @@ public class PipeQueue {
      * @param canvas Canvas to render to.
      */
     public void render(@NotNull Canvas canvas) {
-        // TODO
-        List<Pipe> p=this.pipeQueue.subList(0,MAX_GEN_LENGTH);
-        Renderer.renderQueue(canvas,p);
+        for (int i = 0; i < MAX_GEN_LENGTH; ++i) {
+            displayBuffer[i] = DISPLAY_PIPES[peekShape(i).ordinal()];
+        }
+        Renderer.renderQueue(canvas, displayList);
     }
 
     /**
-     * Generates a new pipe.
+     * Generates pipes until the queue has at least {@code count} pipes.
      *
-     * <p>
-     * Hint: Use {@link Random#nextInt(int)} to generate random numbers.
-     * </p>
+     * @param count Minimum number of pipes in the queue.
+     */
+    private void fill(int count) {
+        while (size < count) {
+            pushBack(generateNewShape());
+        }
+    }
+
+    private void pushBack(@NotNull Pipe.Shape shape) {
+        ensureCapacity();
+        ring[(head + size) & (ring.length - 1)] = (byte) shape.ordinal();
+        ++size;
+    }
+
+    /**
+     * Doubles the capacity of the ring buffer if it is full.
+     */
+    private void ensureCapacity() {
+        if (size < ring.length) {
+            return;
+        }
+
+        final var newRing = new byte[ring.length * 2];
+        for (int i = 0; i < size; ++i) {
+            newRing[i] = ring[(head + i) & (ring.length - 1)];
+        }
+        ring = newRing;
+        head = 0;
+    }
+
+    /**
+     * Generates the shape of a new pipe.
      *
-     * @return A new pipe.
+     * @return Shape of the new pipe, chosen according to the weights of this queue.
      */
     @NotNull
-    private static Pipe generateNewPipe() {
-        var rand = new Random();
-        var availablePipes = Pipe.Shape.values();
-        int index = rand.nextInt(availablePipes.length);
+    private Pipe.Shape generateNewShape() {
+        final int value = rng.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        ++generated;
 
-        return new Pipe(availablePipes[index]);
+        int index = 0;
+        while (cumulativeWeights[index] <= value) {
+            ++index;
+        }
+        return SHAPES[index];
     }
 }
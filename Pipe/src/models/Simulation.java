@@ -0,0 +1,241 @@
+package models;
+
+import models.map.Map;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import util.Coordinate;
+
+/**
+ * A private copy of the state of a game, which bots can play ahead on to evaluate their moves.
+ *
+ * <p>
+ * A simulation is created from a game by {@link GameView#simulate(long)}, and can be forked any number of times via
+ * {@link Simulation#fork(long)}. Forking does not take time proportional to the size of the map, as the map is forked
+ * via {@link Map#fork()} and the state of the {@link HintEngine} is shared with the fork until either of them changes
+ * it. The simulation only knows the pipes displayed in the queue of the game, and generates the pipes after them from
+ * its own seed, so that playing ahead does not reveal the pipes the game will actually give.
+ * </p>
+ *
+ * <p>
+ * The water flows as in {@link FXGame} when driven by {@link FXGame#tick()}, except that no moves or ticks are recorded
+ * and no metrics are collected. A simulation is not thread-safe, but different simulations can be used on different threads,
+ * including forks of the same simulation once the fork is created.
+ * </p>
+ */
+public final class Simulation {
+
+    @NotNull
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    /**
+     * Pipes of each shape placed on the map. Forks of a map only keep the codes of their cells, so these are never
+     * retained or filled by the map.
+     */
+    @NotNull
+    private static final Pipe[] PIPES = new Pipe[SHAPES.length];
+
+    static {
+        for (int i = 0; i < SHAPES.length; ++i) {
+            PIPES[i] = new Pipe(SHAPES[i]);
+        }
+    }
+
+    @NotNull
+    private final Map map;
+    @NotNull
+    private final PipeQueue pipeQueue;
+    @NotNull
+    private final HintEngine hintEngine;
+
+    private final int flowDuration;
+    /**
+     * Number of ticks since the water started flowing, as in {@link FlowTimer}.
+     */
+    private int ticksElapsed;
+    /**
+     * Distance of the water flow, as given by {@link FlowTimer#distance()}.
+     */
+    private int distance;
+
+    private boolean won = false;
+    private boolean lost = false;
+
+    /**
+     * @param map          Fork of the map of the game.
+     * @param pipeQueue    Fork of the pipe queue of the game.
+     * @param hintEngine   Hint engine of the forked map.
+     * @param flowDuration Number of ticks between each water flow.
+     * @param ticksElapsed Number of ticks since the water started flowing.
+     * @param distance     Distance of the water flow.
+     */
+    Simulation(@NotNull Map map, @NotNull PipeQueue pipeQueue, @NotNull HintEngine hintEngine, int flowDuration,
+               int ticksElapsed, int distance) {
+        this.map = map;
+        this.pipeQueue = pipeQueue;
+        this.hintEngine = hintEngine;
+        this.flowDuration = flowDuration;
+        this.ticksElapsed = ticksElapsed;
+        this.distance = distance;
+    }
+
+    /**
+     * Creates a simulation in the same state as this simulation.
+     *
+     * <p>
+     * The fork starts with the pipes displayed in the queue of this simulation, and generates the pipes after them from
+     * the given seed.
+     * </p>
+     *
+     * @param seed Seed for generating the pipes after the displayed pipes.
+     * @return The fork.
+     */
+    @NotNull
+    public Simulation fork(long seed) {
+        final var forkMap = map.fork();
+        final var fork = new Simulation(forkMap, pipeQueue.fork(seed), new HintEngine(hintEngine, forkMap),
+                flowDuration, ticksElapsed, distance);
+        fork.won = won;
+        fork.lost = lost;
+        return fork;
+    }
+
+    /**
+     * @return Number of pipes displayed in the queue, whose shapes are the same in every fork.
+     */
+    public static int getKnownPipes() {
+        return PipeQueue.getDisplayLength();
+    }
+
+    /**
+     * @return Number of rows, including the side walls.
+     */
+    public int getRows() {
+        return map.getRows();
+    }
+
+    /**
+     * @return Number of columns, including the side walls.
+     */
+    public int getCols() {
+        return map.getCols();
+    }
+
+    /**
+     * @param depth Position of the pipe in the queue, where 0 is the next pipe to be placed.
+     * @return Shape of the pipe at the given position.
+     * @see PipeQueue#peekShape(int)
+     */
+    @NotNull
+    public Pipe.Shape peekShape(int depth) {
+        return pipeQueue.peekShape(depth);
+    }
+
+    /**
+     * @return Number of tiles the water has flowed, or a negative number if the water has not started flowing yet.
+     */
+    public int getFlowDistance() {
+        return distance;
+    }
+
+    /**
+     * @return Whether every sink can be reached from a source.
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * @return Whether the water could not flow any further in the last tick.
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    /**
+     * @return Whether the game is won or lost.
+     */
+    public boolean isOver() {
+        return won || lost;
+    }
+
+    /**
+     * @return Number of open ends of the wetted path.
+     * @see HintEngine#getOpenCount()
+     */
+    public int getOpenCount() {
+        return hintEngine.getOpenCount();
+    }
+
+    /**
+     * @return Flattened index of the best open end for the next pipe, or {@code -1} if there is none.
+     * @see HintEngine#bestOpenCell(Pipe.Shape)
+     */
+    public int bestOpenCell() {
+        return hintEngine.bestOpenCell(pipeQueue.peekShape(0));
+    }
+
+    /**
+     * @return The highest score of any placement of the next pipe.
+     * @see HintEngine#bestScore(Pipe.Shape)
+     */
+    public int bestScore() {
+        return hintEngine.bestScore(pipeQueue.peekShape(0));
+    }
+
+    /**
+     * @param k Maximum number of placements to return.
+     * @return The best placements of the next pipe.
+     * @see HintEngine#hints(Pipe.Shape, Pipe.Shape, int)
+     */
+    @NotNull
+    public HintEngine.Hints getHints(int k) {
+        return hintEngine.hints(pipeQueue.peekShape(0), pipeQueue.peekShape(1), k);
+    }
+
+    /**
+     * Places the next pipe.
+     *
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Whether the pipe is placed, which consumes it from the queue.
+     */
+    public boolean place(int row, int col) {
+        final Pipe.Shape shape = pipeQueue.peekShape(0);
+        if (!map.tryPlacePipe(new Coordinate(row, col), PIPES[shape.ordinal()])) {
+            return false;
+        }
+
+        pipeQueue.consume();
+        hintEngine.onPlaced(row, col);
+        won = map.checkPath();
+        return true;
+    }
+
+    /**
+     * Skips the next pipe.
+     */
+    public void skip() {
+        pipeQueue.consume();
+    }
+
+    /**
+     * Advances the flow of water by one tick, and checks whether the game is lost.
+     *
+     * @see FlowTimer#tick()
+     * @see FXGame#updateState()
+     * @see FXGame#hasLost()
+     */
+    public void tick() {
+        ++ticksElapsed;
+        if (ticksElapsed < 0 || ticksElapsed % flowDuration != 0) {
+            return;
+        }
+
+        ++distance;
+        if (distance == 0) {
+            map.fillBeginTile();
+        }
+        map.fillTiles(distance);
+        lost = distance > 0 && map.hasLost();
+    }
+}
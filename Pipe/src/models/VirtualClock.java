@@ -0,0 +1,95 @@
+package models;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A clock which only advances when told to, for driving {@link FlowTimer} without waiting in real time.
+ *
+ * <p>
+ * Timers started while a clock is installed via {@link FlowTimer#setVirtualClock(VirtualClock)} are scheduled on the
+ * clock, and their ticks are run on the thread calling {@link VirtualClock#advance(long)}.
+ * </p>
+ */
+public class VirtualClock {
+
+    /**
+     * A timer scheduled on this clock.
+     */
+    private static class Entry {
+        @NotNull
+        final FlowTimer timer;
+        final long periodMillis;
+        long nextTickMillis;
+
+        Entry(@NotNull FlowTimer timer, long periodMillis, long nextTickMillis) {
+            this.timer = timer;
+            this.periodMillis = periodMillis;
+            this.nextTickMillis = nextTickMillis;
+        }
+    }
+
+    @NotNull
+    private final List<Entry> entries = new ArrayList<>();
+    private long nowMillis = 0;
+
+    /**
+     * Schedules a timer to tick periodically, starting one period from now.
+     *
+     * @param timer        Timer to tick.
+     * @param periodMillis Duration between each tick.
+     */
+    synchronized void schedule(@NotNull FlowTimer timer, long periodMillis) {
+        entries.add(new Entry(timer, periodMillis, nowMillis + periodMillis));
+    }
+
+    /**
+     * Stops ticking a timer.
+     *
+     * @param timer Timer to stop ticking.
+     */
+    synchronized void cancel(@NotNull FlowTimer timer) {
+        entries.removeIf(e -> e.timer == timer);
+    }
+
+    /**
+     * Advances the clock, running every tick which falls due in order of time.
+     *
+     * @param millis Duration to advance by.
+     */
+    public synchronized void advance(long millis) {
+        final long target = nowMillis + millis;
+        while (true) {
+            Entry next = null;
+            for (var e : entries) {
+                if (e.nextTickMillis <= target && (next == null || e.nextTickMillis < next.nextTickMillis)) {
+                    next = e;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+
+            nowMillis = next.nextTickMillis;
+            next.nextTickMillis += next.periodMillis;
+            next.timer.tick();
+        }
+        nowMillis = target;
+    }
+
+    /**
+     * @return Milliseconds elapsed on this clock since it is created.
+     */
+    public synchronized long currentTimeMillis() {
+        return nowMillis;
+    }
+
+    /**
+     * @return Number of timers currently scheduled on this clock.
+     */
+    public synchronized int getScheduledCount() {
+        return entries.size();
+    }
+}
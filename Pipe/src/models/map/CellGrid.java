@@ -0,0 +1,223 @@
+package models.map;
+
+import models.map.cells.Cell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Grid of 4-bit cell codes, as given by {@link Map#encodeCell(Cell)}, stored in a persistent trie.
+ *
+ * <p>
+ * Cells are stored in row-major order in leaves of {@link CellGrid#LEAF_CELLS} cells, and the leaves are grouped under
+ * branches of {@link CellGrid#BRANCH_WIDTH} children each. Forking a grid shares the whole trie with the fork, so it
+ * takes constant time regardless of the size of the grid.
+ * </p>
+ *
+ * <p>
+ * Every node is owned by at most one grid. Changing a cell copies the leaf containing it and the branches on the path
+ * to it, unless they are already owned by the grid being changed. Once a grid is forked, neither the grid nor the fork
+ * owns any of the shared nodes, so a change to one is never observed by the other. A grid which is never forked only
+ * copies each node once, and is changed in place afterwards.
+ * </p>
+ *
+ * <p>
+ * Reading a cell does not change the grid, so any number of threads may read a grid which is not being changed. The
+ * cells sharing a word are changed together, so a grid must not be changed by more than one thread at the same time.
+ * </p>
+ */
+final class CellGrid {
+
+    private static final int LEAF_BITS = 6;
+    /**
+     * Number of cells in each leaf.
+     */
+    static final int LEAF_CELLS = 1 << LEAF_BITS;
+    private static final int LEAF_MASK = LEAF_CELLS - 1;
+    private static final int CELLS_PER_WORD = Long.SIZE / 4;
+
+    private static final int BRANCH_BITS = 5;
+    /**
+     * Number of children of each branch.
+     */
+    static final int BRANCH_WIDTH = 1 << BRANCH_BITS;
+    private static final int BRANCH_MASK = BRANCH_WIDTH - 1;
+
+    /**
+     * A node holding the codes of {@link CellGrid#LEAF_CELLS} consecutive cells, 16 codes per word.
+     */
+    private static final class Leaf {
+        @Nullable
+        final Object owner;
+        @NotNull
+        final long[] words;
+
+        Leaf(@Nullable Object owner, @NotNull long[] words) {
+            this.owner = owner;
+            this.words = words;
+        }
+    }
+
+    /**
+     * A node holding up to {@link CellGrid#BRANCH_WIDTH} nodes of the level below.
+     */
+    private static final class Branch {
+        @Nullable
+        final Object owner;
+        @NotNull
+        final Object[] children;
+
+        Branch(@Nullable Object owner, @NotNull Object[] children) {
+            this.owner = owner;
+            this.children = children;
+        }
+    }
+
+    /**
+     * Number of cells in the grid.
+     */
+    private final int size;
+    /**
+     * Number of levels of branches above the leaves.
+     */
+    private final int depth;
+    /**
+     * Root of the trie, which is a {@link Leaf} if {@link CellGrid#depth} is 0, or a {@link Branch} otherwise.
+     */
+    @NotNull
+    private Object root;
+    /**
+     * Token identifying the nodes owned by this grid.
+     */
+    @NotNull
+    private Object owner = new Object();
+
+    /**
+     * Creates a grid with the code of every cell set to 0.
+     *
+     * <p>
+     * All leaves initially share the same empty node, which is not owned by any grid.
+     * </p>
+     *
+     * @param size Number of cells.
+     */
+    CellGrid(int size) {
+        this.size = size;
+
+        int levels = 0;
+        for (int capacity = LEAF_CELLS; capacity < size; capacity *= BRANCH_WIDTH) {
+            ++levels;
+        }
+        this.depth = levels;
+
+        Object node = new Leaf(null, new long[LEAF_CELLS / CELLS_PER_WORD]);
+        for (int level = 0; level < levels; ++level) {
+            final var children = new Object[BRANCH_WIDTH];
+            Arrays.fill(children, node);
+            node = new Branch(null, children);
+        }
+        this.root = node;
+    }
+
+    private CellGrid(@NotNull CellGrid other) {
+        this.size = other.size;
+        this.depth = other.depth;
+        this.root = other.root;
+    }
+
+    /**
+     * @return Number of cells in the grid.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index Row-major index of the cell.
+     * @return Code of the cell.
+     */
+    int get(int index) {
+        final int leafIndex = index >>> LEAF_BITS;
+        final Leaf leaf = findLeaf(leafIndex);
+
+        final int offset = index & LEAF_MASK;
+        final long word = leaf.words[offset / CELLS_PER_WORD];
+        return (int) (word >>> ((offset % CELLS_PER_WORD) * 4)) & 0xF;
+    }
+
+    /**
+     * @param leafIndex Index of the leaf.
+     * @return The leaf.
+     */
+    @NotNull
+    private Leaf findLeaf(int leafIndex) {
+        Object node = root;
+        for (int shift = (depth - 1) * BRANCH_BITS; shift >= 0; shift -= BRANCH_BITS) {
+            node = ((Branch) node).children[(leafIndex >>> shift) & BRANCH_MASK];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * Sets the code of a cell, copying the nodes on the path to the cell which are not owned by this grid.
+     *
+     * @param index Row-major index of the cell.
+     * @param code  New code of the cell.
+     */
+    void set(int index, int code) {
+        if (get(index) == code) {
+            return;
+        }
+
+        final int leafIndex = index >>> LEAF_BITS;
+        final Leaf leaf;
+        if (depth == 0) {
+            leaf = ownedLeaf((Leaf) root);
+            root = leaf;
+        } else {
+            Branch branch = ownedBranch((Branch) root);
+            root = branch;
+            for (int shift = (depth - 1) * BRANCH_BITS; shift > 0; shift -= BRANCH_BITS) {
+                final int slot = (leafIndex >>> shift) & BRANCH_MASK;
+                final var child = ownedBranch((Branch) branch.children[slot]);
+                branch.children[slot] = child;
+                branch = child;
+            }
+
+            final int slot = leafIndex & BRANCH_MASK;
+            leaf = ownedLeaf((Leaf) branch.children[slot]);
+            branch.children[slot] = leaf;
+        }
+
+        final int offset = index & LEAF_MASK;
+        final int bit = (offset % CELLS_PER_WORD) * 4;
+        final long word = leaf.words[offset / CELLS_PER_WORD];
+        leaf.words[offset / CELLS_PER_WORD] = (word & ~(0xFL << bit)) | ((long) (code & 0xF) << bit);
+    }
+
+    /**
+     * Creates a grid with the same codes as this grid.
+     *
+     * <p>
+     * This grid gives up the ownership of all of its nodes, which are shared with the fork.
+     * </p>
+     *
+     * @return The fork.
+     */
+    @NotNull
+    CellGrid fork() {
+        owner = new Object();
+        return new CellGrid(this);
+    }
+
+    @NotNull
+    private Leaf ownedLeaf(@NotNull Leaf leaf) {
+        return leaf.owner == owner ? leaf : new Leaf(owner, leaf.words.clone());
+    }
+
+    @NotNull
+    private Branch ownedBranch(@NotNull Branch branch) {
+        return branch.owner == owner ? branch : new Branch(owner, branch.children.clone());
+    }
+}
@@ -10,29 +10,405 @@ import models.map.cells.TerminationCell;
 import models.map.cells.Wall;
 import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import util.Coordinate;
 import util.Direction;
+import util.jfr.FillTilesEvent;
 import util.StringUtils;
+import util.Zobrist;
 
 import java.util.*;
 
 /**
  * Map of the game.
+ *
+ * <p>
+ * A map has at least one source and at least one sink. Water flows out of every source at the same time, and the game
+ * is won once every sink can be reached from a source.
+ * </p>
+ *
+ * <p>
+ * The state of every cell is stored as its code, as given by {@link Map#encodeCell(Cell)}, in a {@link CellGrid}. A map
+ * can be forked in constant time via {@link Map#fork()}, after which the map and its fork share all cells until either
+ * is changed, and each change only copies the part of the grid containing the changed cell. This allows solvers to
+ * branch from the same state many times without copying the whole map.
+ * </p>
  */
 public class Map {
 
+    /**
+     * Terrain of a {@link Wall}.
+     */
+    private static final byte TERRAIN_WALL = 0;
+    /**
+     * Terrain of a {@link FillableCell}.
+     */
+    private static final byte TERRAIN_FILLABLE = 1;
+    /**
+     * Terrain of a source, plus the ordinal of the direction it points to.
+     */
+    private static final byte TERRAIN_SOURCE = 2;
+    /**
+     * Terrain of a sink, plus the ordinal of the direction it points to.
+     */
+    private static final byte TERRAIN_SINK = 6;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    /**
+     * Scratch buffers for the search of {@link Map#checkPath()}, reused across calls on the same thread.
+     */
+    private static final ThreadLocal<SearchBuffers> SEARCH_BUFFERS = ThreadLocal.withInitial(SearchBuffers::new);
+
     private final int rows;
     private final int cols;
     @NotNull
+    private final Layout layout;
+    @NotNull
+    private final CellGrid grid;
+
+    /**
+     * Cells of the map, kept in sync with {@link Map#grid}, or {@code null} if this map is a fork. Forks create their
+     * cells from the grid when they are needed instead.
+     */
+    @Nullable
     private final Cell[][] cells;
 
-    private TerminationCell sourceCell;
-    private TerminationCell sinkCell;
+    /**
+     * Zobrist hash of the terrain and code of every cell, updated whenever the code of a cell changes.
+     */
+    private long zobristHash;
 
-    @NotNull
-    private final Set<Coordinate> filledTiles = new HashSet<>();
+    private int filledTileCount = 0;
     private int prevFilledTiles = 0;
-    private Integer prevFilledDistance;
+    private int prevFilledDistance = 0;
+
+    /**
+     * Flattened indices of the tiles at the flow fronts, i.e. the sources and filled tiles which still have an outlet
+     * the water may flow through. The fronts of all sources share these buffers, so that they are expanded in a single
+     * pass per distance, and fronts which merge into the same tile only continue from it once.
+     */
+    private int[] frontier;
+    private int frontierSize;
+    /**
+     * Buffer for the front of the next distance, or {@code null} if it has not been allocated yet.
+     */
+    @Nullable
+    private int[] nextFrontier;
+    private int nextFrontierSize;
+    /**
+     * Whether {@link Map#frontier} is shared with a fork, and must not be reused once the fronts advance.
+     */
+    private boolean frontierShared = false;
+
+    /**
+     * Bit set of the cells visited by the search of {@link Map#checkPath()}, or {@code null} if the search has not run
+     * yet. The search is extended from every pipe placed on a visited cell, as placing a pipe can only make more cells
+     * reachable.
+     */
+    @Nullable
+    private long[] reached;
+    /**
+     * Whether {@link Map#reached} is shared with a fork, and must be copied before the search is extended.
+     */
+    private boolean reachedShared = false;
+    /**
+     * Whether {@link Map#reached} is up to date. Removing a pipe may make any number of cells unreachable, after which
+     * the search runs again from the sources.
+     */
+    private boolean reachedValid = false;
+    /**
+     * Number of sinks in {@link Map#reached}.
+     */
+    private int sinksReached = 0;
+
+    /**
+     * Listener to notify when the state of a cell changes.
+     */
+    @Nullable
+    private CellChangeListener cellChangeListener;
+
+    /**
+     * Listener for changes to the state of a cell, i.e. when a pipe is placed or removed, or when a cell is filled.
+     */
+    @FunctionalInterface
+    public interface CellChangeListener {
+
+        /**
+         * @param row  Row of the changed cell.
+         * @param col  Column of the changed cell.
+         * @param cell The cell after the change.
+         */
+        void onCellChanged(int row, int col, @NotNull Cell cell);
+    }
+
+    /**
+     * Parts of a map which never change, shared between a map and all of its forks.
+     */
+    private static class Layout {
+
+        /**
+         * Cells without pipes and not filled, used as templates for {@link Map#decodeCell(Cell, int)}.
+         */
+        @NotNull
+        final Cell[][] templates;
+        /**
+         * Terrain of every cell in row-major order, as one of the {@code TERRAIN_} constants.
+         */
+        @NotNull
+        final byte[] terrain;
+        @NotNull
+        final List<TerminationCell> sources = new ArrayList<>();
+        @NotNull
+        final List<TerminationCell> sinks = new ArrayList<>();
+        /**
+         * Flattened indices of {@link Layout#sources}.
+         */
+        @NotNull
+        final int[] sourceIndices;
+        /**
+         * Fillable cells which can lie on a route from a source to a sink, by flattened index.
+         */
+        @NotNull
+        final BitSet liveCells;
+        /**
+         * Distances to a sink by flattened index, computed on first use by {@link Layout#sinkDistances(int, int)}.
+         */
+        @Nullable
+        private volatile int[] sinkDistances;
+
+        /**
+         * @param rows  Number of rows.
+         * @param cols  Number of columns.
+         * @param cells Cells of the map.
+         * @throws IllegalArgumentException if the map does not contain at least one source and one sink.
+         */
+        Layout(int rows, int cols, @NotNull Cell[][] cells) {
+            templates = new Cell[rows][cols];
+            terrain = new byte[rows * cols];
+
+            for (int r = 0; r < rows; ++r) {
+                for (int c = 0; c < cols; ++c) {
+                    final var cell = cells[r][c];
+
+                    if (cell instanceof FillableCell) {
+                        // an empty cell never changes, so it can be shared
+                        final boolean empty = ((FillableCell) cell).getPipeOrNull() == null;
+                        templates[r][c] = empty ? cell : new FillableCell(cell.coord);
+                        terrain[r * cols + c] = TERRAIN_FILLABLE;
+                    } else if (cell instanceof TerminationCell) {
+                        final var tCell = (TerminationCell) cell;
+                        final var template = new TerminationCell(tCell.coord, tCell.pointingTo, tCell.type);
+                        templates[r][c] = template;
+
+                        if (tCell.type == TerminationCell.Type.SOURCE) {
+                            terrain[r * cols + c] = (byte) (TERRAIN_SOURCE + tCell.pointingTo.ordinal());
+                            sources.add(template);
+                        } else {
+                            terrain[r * cols + c] = (byte) (TERRAIN_SINK + tCell.pointingTo.ordinal());
+                            sinks.add(template);
+                        }
+                    } else {
+                        templates[r][c] = cell;
+                        terrain[r * cols + c] = TERRAIN_WALL;
+                    }
+                }
+            }
+
+            if (sources.isEmpty() || sinks.isEmpty()) {
+                throw new IllegalArgumentException();
+            }
+            sourceIndices = sources.stream().mapToInt(cell -> cell.coord.row * cols + cell.coord.col).toArray();
+            liveCells = computeLiveCells(rows, cols);
+        }
+
+        /**
+         * Computes the fillable cells which can lie on a route from a source to a sink, given the walls.
+         *
+         * <p>
+         * A cell can only lie on a route if it can be reached from the outlet of a source, and if the inlet of a sink can
+         * be reached from it, through fillable cells. Cells which cannot be entered and left through two different sides
+         * are then pruned repeatedly, such as the cells of a dead-end corridor, as water can only pass through them by
+         * turning back. Each step takes time proportional to the number of cells.
+         * </p>
+         *
+         * @param rows Number of rows.
+         * @param cols Number of columns.
+         * @return Flattened indices of the live cells.
+         */
+        @NotNull
+        private BitSet computeLiveCells(int rows, int cols) {
+            final int[] queue = new int[rows * cols];
+            // number of termination cells which open into each cell
+            final var openings = new byte[rows * cols];
+
+            final int[] outlets = new int[sources.size()];
+            for (int i = 0; i < outlets.length; ++i) {
+                outlets[i] = neighbourIndex(rows, cols, sources.get(i), sources.get(i).pointingTo);
+                if (outlets[i] >= 0) {
+                    ++openings[outlets[i]];
+                }
+            }
+            final int[] inlets = new int[sinks.size()];
+            for (int i = 0; i < inlets.length; ++i) {
+                inlets[i] = neighbourIndex(rows, cols, sinks.get(i), sinks.get(i).pointingTo.getOpposite());
+                if (inlets[i] >= 0) {
+                    ++openings[inlets[i]];
+                }
+            }
+
+            final var live = reachableFrom(rows, cols, outlets, queue);
+            live.and(reachableFrom(rows, cols, inlets, queue));
+
+            final var degrees = new byte[rows * cols];
+            int tail = 0;
+            for (int index = live.nextSetBit(0); index >= 0; index = live.nextSetBit(index + 1)) {
+                int degree = openings[index];
+                for (var d : DIRECTIONS) {
+                    final int n = neighbourIndex(rows, cols, index, d);
+                    if (n >= 0 && live.get(n)) {
+                        ++degree;
+                    }
+                }
+                degrees[index] = (byte) degree;
+                if (degree < 2) {
+                    queue[tail++] = index;
+                }
+            }
+
+            for (int head = 0; head != tail; ++head) {
+                final int index = queue[head];
+                live.clear(index);
+                for (var d : DIRECTIONS) {
+                    final int n = neighbourIndex(rows, cols, index, d);
+                    if (n >= 0 && live.get(n) && --degrees[n] == 1) {
+                        queue[tail++] = n;
+                    }
+                }
+            }
+            return live;
+        }
+
+        /**
+         * Returns the distance from every cell to the nearest sink, given the walls.
+         *
+         * <p>
+         * The distance of the inlet of a sink is 1, and the distance of any other fillable cell is one more than the
+         * smallest distance of its fillable neighbours, or {@code -1} if no sink can be reached from it. The distance of
+         * cells which are not fillable is {@code -1}. The distances are computed once, and are shared with all forks.
+         * </p>
+         *
+         * @param rows Number of rows.
+         * @param cols Number of columns.
+         * @return Distances by flattened index. The array must not be modified.
+         */
+        @NotNull
+        int[] sinkDistances(int rows, int cols) {
+            var distances = sinkDistances;
+            if (distances != null) {
+                return distances;
+            }
+
+            distances = new int[rows * cols];
+            Arrays.fill(distances, -1);
+            final int[] queue = new int[rows * cols];
+            int tail = 0;
+            for (var sink : sinks) {
+                final int inlet = neighbourIndex(rows, cols, sink, sink.pointingTo.getOpposite());
+                if (inlet >= 0 && terrain[inlet] == TERRAIN_FILLABLE && distances[inlet] < 0) {
+                    distances[inlet] = 1;
+                    queue[tail++] = inlet;
+                }
+            }
+
+            for (int head = 0; head != tail; ++head) {
+                final int index = queue[head];
+                for (var d : DIRECTIONS) {
+                    final int n = neighbourIndex(rows, cols, index, d);
+                    if (n >= 0 && terrain[n] == TERRAIN_FILLABLE && distances[n] < 0) {
+                        distances[n] = distances[index] + 1;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+
+            sinkDistances = distances;
+            return distances;
+        }
+
+        /**
+         * Finds the fillable cells which can be reached from any of the given cells through fillable cells.
+         *
+         * @param rows   Number of rows.
+         * @param cols   Number of columns.
+         * @param starts Flattened indices of the cells to start from. Negative indices and cells which are not fillable
+         *               are skipped.
+         * @param queue  Buffer for the search, with space for every cell.
+         * @return Flattened indices of the reachable cells.
+         */
+        @NotNull
+        private BitSet reachableFrom(int rows, int cols, @NotNull int[] starts, @NotNull int[] queue) {
+            final var visited = new BitSet(rows * cols);
+            int tail = 0;
+            for (int index : starts) {
+                if (index >= 0 && terrain[index] == TERRAIN_FILLABLE && !visited.get(index)) {
+                    visited.set(index);
+                    queue[tail++] = index;
+                }
+            }
+
+            for (int head = 0; head != tail; ++head) {
+                final int index = queue[head];
+                for (var d : DIRECTIONS) {
+                    final int n = neighbourIndex(rows, cols, index, d);
+                    if (n >= 0 && terrain[n] == TERRAIN_FILLABLE && !visited.get(n)) {
+                        visited.set(n);
+                        queue[tail++] = n;
+                    }
+                }
+            }
+            return visited;
+        }
+
+        /**
+         * @return Flattened index of the neighbour of a termination cell, or {@code -1} if it is out of bounds.
+         */
+        private static int neighbourIndex(int rows, int cols, @NotNull TerminationCell cell, @NotNull Direction dir) {
+            return neighbourIndex(rows, cols, cell.coord.row * cols + cell.coord.col, dir);
+        }
+
+        /**
+         * @return Flattened index of the neighbour of a cell, or {@code -1} if it is out of bounds.
+         */
+        private static int neighbourIndex(int rows, int cols, int index, @NotNull Direction dir) {
+            final var offset = dir.getOffset();
+            final int row = index / cols + offset.row;
+            final int col = index % cols + offset.col;
+            if (row < 0 || row >= rows || col < 0 || col >= cols) {
+                return -1;
+            }
+            return row * cols + col;
+        }
+    }
+
+    /**
+     * Scratch buffers for a breadth-first search.
+     */
+    private static class SearchBuffers {
+        int[] queue = new int[0];
+
+        /**
+         * Starts a new search.
+         *
+         * @param size Number of cells to search.
+         */
+        void begin(int size) {
+            if (queue.length < size) {
+                queue = new int[size];
+            }
+        }
+    }
 
     /**
      * Creates a map with size of rows x cols.
@@ -45,32 +421,7 @@ public class Map {
      * @param cols Number of columns.
      */
     public Map(int rows, int cols) {
-        cells = new Cell[rows][cols];
-
-        for (int r = 0; r < rows; ++r) {
-            for (int c = 0; c < cols; ++c) {
-                var coord = new Coordinate(r, c);
-
-                if (r == 0 || c == 0) {
-                    cells[r][c] = new Wall(coord);
-                } else if (r == rows - 1 || c == cols - 1) {
-                    cells[r][c] = new Wall(coord);
-                } else {
-                    cells[r][c] = new FillableCell(coord);
-                }
-            }
-        }
-
-        this.rows = rows;
-        this.cols = cols;
-
-        TerminationCell.CreateInfo startCellInfo = generateStartCellInfo();
-        sourceCell = new TerminationCell(startCellInfo.coord, startCellInfo.dir, TerminationCell.Type.SOURCE);
-        cells[startCellInfo.coord.row][startCellInfo.coord.col] = sourceCell;
-
-        TerminationCell.CreateInfo sinkCellInfo = generateEndCellInfo();
-        sinkCell = new TerminationCell(sinkCellInfo.coord, sinkCellInfo.dir, TerminationCell.Type.SINK);
-        cells[sinkCellInfo.coord.row][sinkCellInfo.coord.col] = sinkCell;
+        this(rows, cols, generateCells(rows, cols));
     }
 
     /**
@@ -83,6 +434,7 @@ public class Map {
      * @param rows  Number of rows.
      * @param cols  Number of columns.
      * @param cells Cells to fill the map.
+     * @throws IllegalArgumentException if the map does not contain at least one source and one sink.
      */
     public Map(int rows, int cols, @NotNull Cell[][] cells) {
         this.cells = cells;
@@ -90,31 +442,51 @@ public class Map {
         this.rows = rows;
         this.cols = cols;
 
+        this.layout = new Layout(rows, cols, cells);
+        this.grid = new CellGrid(rows * cols);
+        this.zobristHash = Zobrist.key(Zobrist.MAP_SIZE, rows, cols);
+        for (int index = 0; index < rows * cols; ++index) {
+            zobristHash ^= cellKey(index, 0);
+        }
         for (int r = 0; r < rows; ++r) {
             for (int c = 0; c < cols; ++c) {
-                var cell = cells[r][c];
-
-                if (cell instanceof TerminationCell) {
-                    var tCell = (TerminationCell) cell;
-                    if (tCell.type == TerminationCell.Type.SOURCE) {
-                        if (sourceCell != null) {
-                            throw new IllegalArgumentException();
-                        } else {
-                            sourceCell = tCell;
-                        }
-                    } else if (tCell.type == TerminationCell.Type.SINK) {
-                        if (sinkCell != null) {
-                            throw new IllegalArgumentException();
-                        } else {
-                            sinkCell = tCell;
-                        }
-                    }
-                }
+                setCode(r * cols + c, encodeCell(cells[r][c]));
             }
         }
+    }
+
+    /**
+     * Creates a fork of a map.
+     *
+     * @param other Map to fork.
+     */
+    private Map(@NotNull Map other) {
+        this.cells = null;
+
+        this.rows = other.rows;
+        this.cols = other.cols;
+
+        this.layout = other.layout;
+        this.grid = other.grid.fork();
+        this.zobristHash = other.zobristHash;
+
+        this.filledTileCount = other.filledTileCount;
+        this.prevFilledTiles = other.prevFilledTiles;
+        this.prevFilledDistance = other.prevFilledDistance;
+
+        if (other.frontier != null) {
+            this.frontier = other.frontier;
+            this.frontierSize = other.frontierSize;
+            this.frontierShared = true;
+            other.frontierShared = true;
+        }
 
-        if (sourceCell == null || sinkCell == null) {
-            throw new IllegalArgumentException();
+        if (other.reachedValid) {
+            this.reached = other.reached;
+            this.sinksReached = other.sinksReached;
+            this.reachedValid = true;
+            this.reachedShared = true;
+            other.reachedShared = true;
         }
     }
 
@@ -137,6 +509,395 @@ public class Map {
         return new Map(rows, cols, cells);
     }
 
+    /**
+     * Creates a map with the same state as this map, including the progress of the water.
+     *
+     * <p>
+     * This takes constant time, and the fork initially shares all of its cells with this map. Changes made to either
+     * map afterwards are not visible to the other. The fork does not notify the {@link CellChangeListener} of this map.
+     * The flow fronts and the cells visited by {@link Map#checkPath()} are shared with the fork as well, and are only
+     * copied by the first map which changes them, so that checking the path of the fork does not search from the
+     * sources again.
+     * </p>
+     *
+     * @return The fork.
+     */
+    @NotNull
+    public Map fork() {
+        return new Map(this);
+    }
+
+    /**
+     * @return The sources of this map, in row-major order. The returned cells are never filled.
+     */
+    @NotNull
+    public List<TerminationCell> getSources() {
+        return Collections.unmodifiableList(layout.sources);
+    }
+
+    /**
+     * @return The sinks of this map, in row-major order. The returned cells are never filled.
+     */
+    @NotNull
+    public List<TerminationCell> getSinks() {
+        return Collections.unmodifiableList(layout.sinks);
+    }
+
+    /**
+     * @return The cells of this map, which are created from the grid if this map is a fork.
+     */
+    @NotNull
+    private Cell[][] cells() {
+        if (cells != null) {
+            return cells;
+        }
+
+        final var forkCells = new Cell[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                forkCells[r][c] = decodeCell(layout.templates[r][c], grid.get(r * cols + c));
+            }
+        }
+        return forkCells;
+    }
+
+    /**
+     * Returns whether a cell can lie on a route from a source to a sink, given the walls of the map.
+     *
+     * <p>
+     * Water can never flow from a source to a sink through a pipe placed on any other cell, so solvers can skip such
+     * placements. As walls never change, this is computed once when the map is created, and is shared with its forks.
+     * </p>
+     *
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return {@code true} if the cell is a {@link FillableCell} which may be part of a route, else {@code false}.
+     */
+    public boolean isLiveCell(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        return layout.liveCells.get(row * cols + col);
+    }
+
+    /**
+     * @return Number of cells for which {@link Map#isLiveCell(int, int)} is {@code true}.
+     */
+    public int getLiveCellCount() {
+        return layout.liveCells.cardinality();
+    }
+
+    /**
+     * @return Number of rows, including the side walls.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Number of columns, including the side walls.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return {@code true} if the cell is a {@link FillableCell}, else {@code false}.
+     */
+    public boolean isFillable(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        return layout.terrain[row * cols + col] == TERRAIN_FILLABLE;
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Shape of the pipe in the cell, or {@code null} if the cell is not a {@link FillableCell} or has no pipe.
+     */
+    @Nullable
+    public Pipe.Shape getShapeAt(int row, int col) {
+        if (!isFillable(row, col)) {
+            return null;
+        }
+        final int code = grid.get(row * cols + col) & 7;
+        return code == 0 ? null : SHAPES[code - 1];
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return {@code true} if the cell is a filled pipe, source or sink, else {@code false}.
+     */
+    public boolean isFilled(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        return (grid.get(row * cols + col) & 8) != 0;
+    }
+
+    /**
+     * Returns the number of cells which water has to pass through from a cell to reach a sink, given the walls of the
+     * map.
+     *
+     * <p>
+     * The cell next to the inlet of a sink has a distance of 1. Pipes are not taken into account, so the distance is a
+     * lower bound of the length of any route from the cell to a sink. As walls never change, the distances are computed
+     * once for the map and all of its forks.
+     * </p>
+     *
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Distance to the nearest sink, or {@code -1} if the cell is not fillable or no sink can be reached from it.
+     */
+    public int getSinkDistance(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return -1;
+        }
+        return layout.sinkDistances(rows, cols)[row * cols + col];
+    }
+
+    /**
+     * Finds the number of pipes needed to lead the water from a source to a sink, given the walls of the map.
+     *
+     * <p>
+     * This is the length of a solution of a level with a single sink, and a lower bound of the length of a solution
+     * otherwise. Pipes already on the map are not taken into account.
+     * </p>
+     *
+     * @return The smallest {@link Map#getSinkDistance(int, int)} of the cell next to the outlet of any source, or
+     * {@code -1} if no sink can be reached from any source.
+     */
+    public int getShortestRouteLength() {
+        int shortest = -1;
+        for (var source : layout.sources) {
+            final var offset = source.pointingTo.getOffset();
+            final int distance = getSinkDistance(source.coord.row + offset.row, source.coord.col + offset.col);
+            if (distance > 0 && (shortest < 0 || distance < shortest)) {
+                shortest = distance;
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * @return A copy of the cell grid. The rows are copied, but the cells themselves are shared with this map.
+     */
+    @NotNull
+    public Cell[][] copyCells() {
+        if (cells == null) {
+            return cells();
+        }
+
+        final var copy = new Cell[rows][];
+        for (int r = 0; r < rows; ++r) {
+            copy[r] = cells[r].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Sets the listener to notify when the state of a cell changes.
+     *
+     * @param listener Listener to notify, or {@code null} to remove the listener.
+     */
+    public void setCellChangeListener(@Nullable CellChangeListener listener) {
+        this.cellChangeListener = listener;
+    }
+
+    private void notifyCellChanged(int row, int col) {
+        if (cellChangeListener != null) {
+            final var cell = cells != null ? cells[row][col]
+                    : decodeCell(layout.templates[row][col], grid.get(row * cols + col));
+            cellChangeListener.onCellChanged(row, col, cell);
+        }
+    }
+
+    /**
+     * Encodes the state of a cell into a 4-bit code.
+     *
+     * <p>
+     * The lower 3 bits contain the shape of the pipe in a {@link FillableCell} plus 1, or 0 if there is no pipe. The
+     * highest bit is set if the cell is filled. The code of a {@link Wall} is always 0.
+     * </p>
+     *
+     * @param cell Cell to encode.
+     * @return Code of the cell.
+     */
+    public static int encodeCell(@NotNull Cell cell) {
+        if (cell instanceof FillableCell) {
+            final var pipe = ((FillableCell) cell).getPipeOrNull();
+            if (pipe == null) {
+                return 0;
+            }
+            return (pipe.getShape().ordinal() + 1) | (pipe.getFilled() ? 8 : 0);
+        } else if (cell instanceof TerminationCell) {
+            return ((TerminationCell) cell).isFilled() ? 8 : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a cell from its code.
+     *
+     * @param template Cell at the same location, which provides the type, location and direction of the new cell.
+     * @param code     Code of the cell, as given by {@link Map#encodeCell(Cell)}.
+     * @return A new cell with the state given by {@code code}, or {@code template} if the cell has no state.
+     */
+    @NotNull
+    public static Cell decodeCell(@NotNull Cell template, int code) {
+        final boolean filled = (code & 8) != 0;
+
+        if (template instanceof FillableCell) {
+            if ((code & 7) == 0) {
+                return new FillableCell(template.coord);
+            }
+            final var pipe = new Pipe(Pipe.Shape.values()[(code & 7) - 1]);
+            if (filled) {
+                pipe.setFilled();
+            }
+            return new FillableCell(template.coord, pipe);
+        } else if (template instanceof TerminationCell) {
+            final var tCell = (TerminationCell) template;
+            final var newCell = new TerminationCell(tCell.coord, tCell.pointingTo, tCell.type);
+            if (filled) {
+                newCell.setFilled();
+            }
+            return newCell;
+        }
+        return template;
+    }
+
+    /**
+     * Copies the state of this map which changes during a game.
+     *
+     * @return Copy of the code of every cell and the progress of the water, which shares nothing with this map.
+     */
+    @NotNull
+    public MapState captureState() {
+        final var codes = new byte[rows * cols];
+        for (int index = 0; index < codes.length; ++index) {
+            codes[index] = (byte) grid.get(index);
+        }
+        final int[] front = frontier != null ? Arrays.copyOf(frontier, frontierSize) : null;
+        return new MapState(codes, front, filledTileCount, prevFilledTiles, prevFilledDistance);
+    }
+
+    /**
+     * Sets the state of this map to a state captured from a map of the same level.
+     *
+     * <p>
+     * The {@link CellChangeListener} is not notified, so this should be done before the listener is set.
+     * </p>
+     *
+     * @param state State to restore, as given by {@link Map#captureState()}.
+     * @throws IllegalArgumentException if the state does not fit the cells of this map.
+     */
+    public void restoreState(@NotNull MapState state) {
+        if (state.codes.length != rows * cols) {
+            throw new IllegalArgumentException("Expected " + rows * cols + " cells, got " + state.codes.length);
+        }
+
+        for (int index = 0; index < state.codes.length; ++index) {
+            final int code = state.codes[index];
+            final boolean valid;
+            if (layout.terrain[index] == TERRAIN_FILLABLE) {
+                // an empty cell cannot be filled
+                valid = code == 0 || (code > 0 && code < 16 && (code & 7) != 0 && (code & 7) <= SHAPES.length);
+            } else {
+                valid = code == 0 || (code == 8 && layout.terrain[index] != TERRAIN_WALL);
+            }
+            if (!valid) {
+                throw new IllegalArgumentException("Invalid code " + code + " of cell " + index);
+            }
+
+            setCode(index, code);
+            if (cells != null) {
+                cells[index / cols][index % cols] = decodeCell(layout.templates[index / cols][index % cols], code);
+            }
+        }
+
+        if (state.front != null) {
+            for (int index : state.front) {
+                if (index < 0 || index >= rows * cols) {
+                    throw new IllegalArgumentException("Invalid flow front " + index);
+                }
+            }
+            frontier = Arrays.copyOf(state.front, Math.max(16, state.front.length));
+            frontierSize = state.front.length;
+            nextFrontier = null;
+        } else {
+            frontier = null;
+            frontierSize = 0;
+            nextFrontier = null;
+        }
+        frontierShared = false;
+
+        filledTileCount = state.filledTileCount;
+        prevFilledTiles = state.prevFilledTiles;
+        prevFilledDistance = state.prevFilledDistance;
+        reachedValid = false;
+    }
+
+    /**
+     * Sets the code of a cell in {@link Map#grid}, and updates {@link Map#zobristHash} accordingly.
+     *
+     * @param index Flattened index of the cell.
+     * @param code  New code of the cell.
+     */
+    private void setCode(int index, int code) {
+        final int oldCode = grid.get(index);
+        if (oldCode == code) {
+            return;
+        }
+        zobristHash ^= cellKey(index, oldCode) ^ cellKey(index, code);
+        grid.set(index, code);
+    }
+
+    /**
+     * @param index Flattened index of the cell.
+     * @param code  Code of the cell.
+     * @return Zobrist key of the cell with the given code.
+     */
+    private long cellKey(int index, int code) {
+        return Zobrist.key(Zobrist.MAP_CELL, index, (layout.terrain[index] << 4) | code);
+    }
+
+    /**
+     * Returns the Zobrist hash of the current state of the map, which covers the size of the map, and the type, shape
+     * and filled state of every cell.
+     *
+     * <p>
+     * The hash is maintained as cells change, so this takes constant time. Maps in the same state have the same hash,
+     * regardless of the order of the moves which lead to the state, so the hash can be used as the key of states
+     * explored by solvers.
+     * </p>
+     *
+     * @return 64-bit Zobrist hash of the map.
+     */
+    public long zobristHash() {
+        return zobristHash;
+    }
+
+    /**
+     * Computes a hash of the current state of the map, which covers the type, shape and filled state of every cell.
+     *
+     * @return 64-bit FNV-1a hash of the character representation of all cells.
+     */
+    public long stateHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (var row : cells()) {
+            for (var cell : row) {
+                hash ^= cell.toSingleChar();
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
     /**
      * Tries to place a pipe at (row, col).
      *
@@ -172,21 +933,61 @@ public class Map {
             return false;
         }
 
-        if (!(cells[row][col] instanceof FillableCell)) {
+        final int index = row * cols + col;
+        if (layout.terrain[index] != TERRAIN_FILLABLE) {
             return false;
         }
-
-        var cell = (FillableCell) (cells[row][col]);
-        if (cell.getPipe().isPresent()) {
+        if ((grid.get(index) & 7) != 0) {
             return false;
         }
 
-        cells[row][col] = new FillableCell(new Coordinate(row, col), p);
+        setCode(index, (p.getShape().ordinal() + 1) | (p.getFilled() ? 8 : 0));
+        if (cells != null) {
+            cells[row][col] = new FillableCell(cells[row][col].coord, p);
+        }
+        extendReached(index);
+        notifyCellChanged(row, col);
         return true;
     }
 
+    /**
+     * Randomly generates the cells of a map with a single source and a single sink.
+     *
+     * @param rows Number of rows.
+     * @param cols Number of columns.
+     * @return A new cell array.
+     */
     @NotNull
-    private TerminationCell.CreateInfo generateStartCellInfo() {
+    private static Cell[][] generateCells(int rows, int cols) {
+        final var cells = new Cell[rows][cols];
+
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                var coord = new Coordinate(r, c);
+
+                if (r == 0 || c == 0) {
+                    cells[r][c] = new Wall(coord);
+                } else if (r == rows - 1 || c == cols - 1) {
+                    cells[r][c] = new Wall(coord);
+                } else {
+                    cells[r][c] = new FillableCell(coord);
+                }
+            }
+        }
+
+        TerminationCell.CreateInfo startCellInfo = generateStartCellInfo(rows, cols);
+        cells[startCellInfo.coord.row][startCellInfo.coord.col] =
+                new TerminationCell(startCellInfo.coord, startCellInfo.dir, TerminationCell.Type.SOURCE);
+
+        TerminationCell.CreateInfo sinkCellInfo = generateEndCellInfo(rows, cols, startCellInfo.coord);
+        cells[sinkCellInfo.coord.row][sinkCellInfo.coord.col] =
+                new TerminationCell(sinkCellInfo.coord, sinkCellInfo.dir, TerminationCell.Type.SINK);
+
+        return cells;
+    }
+
+    @NotNull
+    private static TerminationCell.CreateInfo generateStartCellInfo(int rows, int cols) {
         Random rng = new Random();
 
         Coordinate coord;
@@ -236,7 +1037,7 @@ public class Map {
     }
 
     @NotNull
-    private TerminationCell.CreateInfo generateEndCellInfo() {
+    private static TerminationCell.CreateInfo generateEndCellInfo(int rows, int cols, @NotNull Coordinate sourceCoord) {
         Random rng = new Random();
 
         Coordinate coord;
@@ -269,7 +1070,7 @@ public class Map {
             }
 
             var adjacentCell = coord.add(direction.getOpposite().getOffset());
-            if (adjacentCell.equals(sourceCell.coord)) {
+            if (adjacentCell.equals(sourceCoord)) {
                 continue;
             }
 
@@ -283,6 +1084,7 @@ public class Map {
      * Displays the current map.
      */
     public void display() {
+        final var cells = cells();
         final int padLength = Integer.valueOf(rows - 1).toString().length();
 
         Runnable printColumns = () -> {
@@ -321,6 +1123,7 @@ public class Map {
      * @param canvas Canvas to render to.
      */
     public void render(@NotNull Canvas canvas) {
+        final var cells = cells();
         Platform.runLater(() -> Renderer.renderMap(canvas, cells));
     }
 
@@ -335,159 +1138,342 @@ public class Map {
      * @throws IllegalArgumentException if the cell is not an instance of {@link FillableCell}.
      */
     public void undo(@NotNull final Coordinate coord) {
-        if (!(cells[coord.row][coord.col] instanceof FillableCell)) {
+        final int index = coord.row * cols + coord.col;
+        if (layout.terrain[index] != TERRAIN_FILLABLE) {
             throw new IllegalArgumentException("Cannot undo on non-FillableCell types!");
         }
-        cells[coord.row][coord.col] = new FillableCell(coord);
+        setCode(index, 0);
+        if (cells != null) {
+            cells[coord.row][coord.col] = new FillableCell(coord);
+        }
+        reachedValid = false;
+        notifyCellChanged(coord.row, coord.col);
     }
 
-    public void fillBeginTile() {
-        sourceCell.setFilled();
+    /**
+     * Marks a termination cell as filled.
+     *
+     * @param tCell Termination cell of {@link Layout}.
+     */
+    private void fillTermination(@NotNull TerminationCell tCell) {
+        final int row = tCell.coord.row;
+        final int col = tCell.coord.col;
+        setCode(row * cols + col, 8);
+        if (cells != null) {
+            ((TerminationCell) cells[row][col]).setFilled();
+        }
+        notifyCellChanged(row, col);
     }
 
-    @NotNull
-    private List<Coordinate> getTraversedCoords() {
-        return new ArrayList<>(filledTiles);
+    /**
+     * Fills every source of the map.
+     */
+    public void fillBeginTile() {
+        for (var sourceCell : layout.sources) {
+            fillTermination(sourceCell);
+        }
     }
 
     /**
-     * Fills all pipes that are within {@code distance} units from the {@code sourceCell}.
+     * Fills all pipes that are within {@code distance} units from any source.
      *
      * <p>
-     * Hint: There are two ways to approach this. You can either iteratively fill the tiles by distance (i.e. filling
-     * distance=0, distance=1, etc), or you can save the tiles you have already filled, and fill all adjacent cells of
-     * the already-filled tiles. Whichever method you choose is up to you, as long as the result is the same.
+     * Every source runs its own flow front, and all fronts advance by one tile per unit of distance. Only the tiles at
+     * the fronts are visited, so each distance takes time proportional to the number of fronts rather than to the
+     * number of filled tiles. A tile stays at a front while one of its outlets leads to a cell which may still accept
+     * water, so that a pipe placed next to a filled tile is filled in the next distance.
      * </p>
      *
      * @param distance Distance to fill pipes.
      */
     public void fillTiles(int distance) {
-        if (prevFilledDistance == null) {
-            prevFilledDistance = 0;
+        final var event = new FillTilesEvent();
+        event.begin();
+        final int filledBefore = filledTileCount;
+
+        doFillTiles(distance);
+
+        if (event.shouldCommit()) {
+            event.distance = distance;
+            event.tilesFilled = filledTileCount - filledBefore;
+            event.commit();
         }
+    }
 
-        while (prevFilledDistance != distance) {
-            var currentDistance = prevFilledDistance + 1;
-            prevFilledTiles = 0;
+    /**
+     * Implementation of {@link Map#fillTiles(int)}.
+     *
+     * @param distance Distance to fill pipes.
+     */
+    private void doFillTiles(int distance) {
+        if (frontier == null) {
+            frontier = new int[Math.max(16, layout.sourceIndices.length)];
+            System.arraycopy(layout.sourceIndices, 0, frontier, 0, layout.sourceIndices.length);
+            frontierSize = layout.sourceIndices.length;
+        }
 
-            if (currentDistance == 0) {
-                filledTiles.add(sourceCell.coord);
-                prevFilledTiles = 1;
-            } else if (currentDistance == 1) {
-                var coord = sourceCell.coord;
-                var newCoord = coord.add(sourceCell.pointingTo.getOffset());
+        while (prevFilledDistance < distance) {
+            prevFilledTiles = expandFronts();
 
-                if (!(cells[newCoord.row][newCoord.col] instanceof FillableCell)) {
-                    return;
-                }
-                var cell = (FillableCell) cells[newCoord.row][newCoord.col];
-                if (cell.getPipe().isEmpty()) {
-                    return;
-                }
-                if (Arrays.stream(cell.getPipe().get().getConnections()).noneMatch(it -> sourceCell.pointingTo == it.getOpposite())) {
-                    return;
+            if (prevFilledTiles == 0) {
+                // the fronts cannot advance until the map changes, and the distance is only counted from when the water
+                // first leaves a source
+                if (filledTileCount != 0) {
+                    prevFilledDistance = distance;
                 }
+                return;
+            }
+            ++prevFilledDistance;
+        }
+    }
 
-                cell.getPipe().get().setFilled();
-                filledTiles.add(newCoord);
-                prevFilledTiles = 1;
+    /**
+     * Advances every flow front by one tile.
+     *
+     * @return Number of tiles filled.
+     */
+    private int expandFronts() {
+        if (nextFrontier == null) {
+            nextFrontier = new int[frontier.length];
+        }
+        nextFrontierSize = 0;
+        int filled = 0;
+
+        for (int i = 0; i < frontierSize; ++i) {
+            final int index = frontier[i];
+            final int terrain = layout.terrain[index];
+
+            boolean open = false;
+            if (terrain >= TERRAIN_SOURCE) {
+                final int result = flowTowards(index, DIRECTIONS[(terrain - TERRAIN_SOURCE) & 3]);
+                open = result == OUTLET_OPEN;
+                filled += result == OUTLET_FILLED ? 1 : 0;
             } else {
-                final var traversedTiles = getTraversedCoords();
+                final int code = grid.get(index);
+                if ((code & 7) == 0) {
+                    throw new IllegalStateException();
+                }
+                for (Direction d : SHAPES[(code & 7) - 1].getConnections()) {
+                    final int result = flowTowards(index, d);
+                    open |= result == OUTLET_OPEN;
+                    filled += result == OUTLET_FILLED ? 1 : 0;
+                }
+            }
 
-                for (Coordinate c : traversedTiles) {
-                    if (!(cells[c.row][c.col] instanceof FillableCell)) {
-                        continue;
-                    }
+            if (open) {
+                pushFront(index);
+            }
+        }
 
-                    var tile = (FillableCell) cells[c.row][c.col];
-                    if (tile.getPipe().isEmpty()) {
-                        throw new IllegalStateException();
-                    }
+        final var previous = frontier;
+        frontier = nextFrontier;
+        frontierSize = nextFrontierSize;
+        nextFrontier = frontierShared ? null : previous;
+        frontierShared = false;
+        return filled;
+    }
 
-                    for (Direction d : tile.getPipe().get().getConnections()) {
-                        var newCoord = c.add(d.getOffset());
+    /**
+     * The outlet leads to a cell which cannot accept water.
+     */
+    private static final int OUTLET_CLOSED = 0;
+    /**
+     * The outlet leads to a cell which does not accept water yet, but may after a pipe is placed or undone.
+     */
+    private static final int OUTLET_OPEN = 1;
+    /**
+     * Water has flowed through the outlet.
+     */
+    private static final int OUTLET_FILLED = 2;
 
-                        if (!(cells[newCoord.row][newCoord.col] instanceof FillableCell)) {
-                            continue;
-                        }
-                        if (traversedTiles.stream().anyMatch(it -> it.equals(newCoord))) {
-                            continue;
-                        }
-                        var cell = (FillableCell) cells[newCoord.row][newCoord.col];
-                        if (cell.getPipe().isEmpty()) {
-                            continue;
-                        }
-                        if (Arrays.stream(cell.getPipe().get().getConnections()).noneMatch(it -> d == it.getOpposite())) {
-                            continue;
-                        }
+    /**
+     * Lets water flow from a tile at a front into its neighbour, adding the neighbour to the next front if it is filled.
+     *
+     * @param index Flattened index of the tile.
+     * @param dir   Direction of the outlet.
+     * @return One of {@link Map#OUTLET_CLOSED}, {@link Map#OUTLET_OPEN} or {@link Map#OUTLET_FILLED}.
+     */
+    private int flowTowards(int index, @NotNull Direction dir) {
+        final var offset = dir.getOffset();
+        final int row = index / cols + offset.row;
+        final int col = index % cols + offset.col;
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return OUTLET_CLOSED;
+        }
 
-                        cell.getPipe().get().setFilled();
-                        filledTiles.add(newCoord);
-                    }
-                }
+        final int newIndex = row * cols + col;
+        if (layout.terrain[newIndex] != TERRAIN_FILLABLE) {
+            return OUTLET_CLOSED;
+        }
+        final int code = grid.get(newIndex);
+        if ((code & 8) != 0) {
+            return OUTLET_CLOSED;
+        }
+        if ((code & 7) == 0 || !SHAPES[(code & 7) - 1].hasConnection(dir.getOpposite())) {
+            return OUTLET_OPEN;
+        }
 
-                prevFilledTiles = filledTiles.size() - traversedTiles.size();
-            }
+        setCode(newIndex, code | 8);
+        if (cells != null) {
+            Objects.requireNonNull(((FillableCell) cells[row][col]).getPipeOrNull()).setFilled();
+        }
+        notifyCellChanged(row, col);
+        ++filledTileCount;
+        pushFront(newIndex);
+        return OUTLET_FILLED;
+    }
 
-            prevFilledDistance = currentDistance;
+    /**
+     * Adds a tile to the front of the next distance.
+     *
+     * @param index Flattened index of the tile.
+     */
+    private void pushFront(int index) {
+        if (nextFrontierSize == nextFrontier.length) {
+            nextFrontier = Arrays.copyOf(nextFrontier, nextFrontier.length * 2);
         }
+        nextFrontier[nextFrontierSize++] = index;
     }
 
     /**
-     * Fills the source and sink tiles, as well as any tiles which can be reached from the source tile.
+     * Fills the source and sink tiles, as well as any tiles which can be reached from the source tiles.
      */
     public void fillAll() {
         // TODO
-        this.sourceCell.setFilled();
+        this.fillBeginTile();
         this.fillTiles(this.cols*this.rows);
-        this.sinkCell.setFilled();
+        for (var sinkCell : layout.sinks) {
+            fillTermination(sinkCell);
+        }
     }
 
     /**
-     * Checks whether there exists a path from {@code sourceCell} to {@code sinkCell}.
+     * Checks whether every sink can be reached from a source.
      *
      * <p>
      * Hint: This problem is similar to finding a specific node in a graph. As stated in the README, one of the ways you
      * could approach this is to use Breadth-First Search.
      * </p>
      *
-     * @return {@code true} if a path exists, else {@code false}.
+     * <p>
+     * The search starts from all sources at once, and ends as soon as the last sink is reached. The visited cells are
+     * kept, and the search is extended from every pipe subsequently placed on a visited cell, so checking the path after
+     * every move takes time proportional to the number of cells which become reachable. The search only runs again from
+     * the sources after a pipe is removed.
+     * </p>
+     *
+     * @return {@code true} if a path exists to every sink, else {@code false}.
      */
     public boolean checkPath() {
         // BFS woohoo!
-        var coordsTraversed = new ArrayList<Coordinate>();
+        if (!reachedValid) {
+            if (reached == null || reachedShared) {
+                reached = new long[(rows * cols + 63) >>> 6];
+                reachedShared = false;
+            } else {
+                Arrays.fill(reached, 0);
+            }
+            sinksReached = 0;
+            reachedValid = true;
+
+            final var buffers = SEARCH_BUFFERS.get();
+            buffers.begin(rows * cols);
+            int tail = 0;
+            for (int index : layout.sourceIndices) {
+                tail = visit(buffers, index, tail);
+            }
+            search(buffers, tail);
+        }
 
-        Queue<Coordinate> coordsToCheck = new LinkedList<>();
-        coordsToCheck.add(sourceCell.coord);
+        return sinksReached == layout.sinks.size();
+    }
 
-        while (!coordsToCheck.isEmpty()) {
-            var thisCoord = coordsToCheck.remove();
-            if (coordsTraversed.stream().anyMatch(it -> it.equals(thisCoord))) {
-                continue;
-            }
+    /**
+     * Extends the search of {@link Map#checkPath()} after a pipe is placed.
+     *
+     * @param index Flattened index of the pipe.
+     */
+    private void extendReached(int index) {
+        if (!reachedValid || (reached[index >>> 6] & (1L << index)) == 0 || sinksReached == layout.sinks.size()) {
+            return;
+        }
+        if (reachedShared) {
+            reached = reached.clone();
+            reachedShared = false;
+        }
 
-            var thisCell = cells[thisCoord.row][thisCoord.col];
-            if (thisCell instanceof TerminationCell) {
-                var thisTermCell = (TerminationCell) thisCell;
-                if (thisTermCell.type == TerminationCell.Type.SINK) {
-                    return true;
-                } else {
-                    coordsToCheck.add(thisTermCell.coord.add(thisTermCell.pointingTo.getOffset()));
-                }
-            }
+        final var buffers = SEARCH_BUFFERS.get();
+        buffers.begin(rows * cols);
+        buffers.queue[0] = index;
+        search(buffers, 1);
+    }
 
-            if (thisCell instanceof FillableCell) {
-                ((FillableCell) thisCell).getPipe().ifPresent(pipe -> {
-                    for (Direction dir : pipe.getConnections()) {
-                        coordsToCheck.add(thisCoord.add(dir.getOffset()));
+    /**
+     * Visits every cell reachable from the cells in the search queue, and stops as soon as the last sink is reached.
+     *
+     * @param buffers Buffers of the search.
+     * @param tail    Number of cells in the search queue.
+     */
+    private void search(@NotNull SearchBuffers buffers, int tail) {
+        final int[] queue = buffers.queue;
+        for (int head = 0; head != tail && sinksReached != layout.sinks.size(); ++head) {
+            final int index = queue[head];
+            final int terrain = layout.terrain[index];
+
+            if (terrain >= TERRAIN_SINK) {
+                continue;
+            }
+            if (terrain >= TERRAIN_SOURCE) {
+                tail = visitNeighbour(buffers, index, DIRECTIONS[terrain - TERRAIN_SOURCE], tail);
+            } else if (terrain == TERRAIN_FILLABLE) {
+                final int code = grid.get(index);
+                if ((code & 7) != 0) {
+                    for (Direction dir : SHAPES[(code & 7) - 1].getConnections()) {
+                        tail = visitNeighbour(buffers, index, dir, tail);
                     }
-                });
+                }
             }
+        }
+    }
 
-            coordsTraversed.add(thisCoord);
+    /**
+     * Visits the neighbour of a cell.
+     *
+     * @param buffers Buffers of the search.
+     * @param index   Flattened index of the cell.
+     * @param dir     Direction of the neighbour.
+     * @param tail    Current tail of the queue.
+     * @return New tail of the queue.
+     */
+    private int visitNeighbour(@NotNull SearchBuffers buffers, int index, @NotNull Direction dir, int tail) {
+        final var offset = dir.getOffset();
+        final int row = index / cols + offset.row;
+        final int col = index % cols + offset.col;
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return tail;
         }
+        return visit(buffers, row * cols + col, tail);
+    }
 
-        return false;
+    /**
+     * Adds a cell into the search queue if it has not been visited.
+     *
+     * @param buffers Buffers of the search.
+     * @param index   Flattened index of the cell.
+     * @param tail    Current tail of the queue.
+     * @return New tail of the queue.
+     */
+    private int visit(@NotNull SearchBuffers buffers, int index, int tail) {
+        final long bit = 1L << index;
+        if ((reached[index >>> 6] & bit) != 0) {
+            return tail;
+        }
+        reached[index >>> 6] |= bit;
+        if (layout.terrain[index] >= TERRAIN_SINK) {
+            ++sinksReached;
+        }
+        buffers.queue[tail] = index;
+        return tail + 1;
     }
 
     /**
@@ -0,0 +1,58 @@
+package models.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Copy of the state of a {@link Map} which changes during a game, i.e. the code of every cell and the progress of the
+ * water.
+ *
+ * <p>
+ * A state is created by {@link Map#captureState()} and applied to a map of the same level by
+ * {@link Map#restoreState(MapState)}. It shares nothing with the map it is captured from, so it can be handed to another
+ * thread while the game goes on. The arrays must not be modified.
+ * </p>
+ */
+public final class MapState {
+
+    /**
+     * Code of every cell in row-major order, as given by {@link Map#encodeCell(models.map.cells.Cell)}.
+     */
+    @NotNull
+    public final byte[] codes;
+    /**
+     * Flattened indices of the tiles at the flow fronts, or {@code null} if the water has not been let out of the
+     * sources yet.
+     */
+    @Nullable
+    public final int[] front;
+    /**
+     * Number of tiles filled so far.
+     */
+    public final int filledTileCount;
+    /**
+     * Number of tiles filled in the last distance the water advanced by.
+     */
+    public final int prevFilledTiles;
+    /**
+     * Distance the water has been advanced to.
+     */
+    public final int prevFilledDistance;
+
+    /**
+     * @param codes              Code of every cell in row-major order.
+     * @param front              Flattened indices of the tiles at the flow fronts, or {@code null} if the water has not
+     *                           been let out of the sources yet.
+     * @param filledTileCount    Number of tiles filled so far.
+     * @param prevFilledTiles    Number of tiles filled in the last distance.
+     * @param prevFilledDistance Distance the water has been advanced to.
+     */
+    public MapState(@NotNull byte[] codes, @Nullable int[] front, int filledTileCount, int prevFilledTiles,
+                    int prevFilledDistance) {
+        this.codes = codes;
+        this.front = front;
+        this.filledTileCount = filledTileCount;
+        this.prevFilledTiles = prevFilledTiles;
+        this.prevFilledDistance = prevFilledDistance;
+    }
+}
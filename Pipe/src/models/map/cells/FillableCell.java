@@ -20,6 +20,7 @@ public class FillableCell extends Cell implements MapElement {
      * Image representing a cell.
      */
     private static final Image IMAGE = new Image(ResourceLoader.getResource("assets/images/empty-cell.png"));
+    private static final Renderer.CellImage CELL_IMAGE = new Renderer.CellImage(IMAGE, 0);
 
     @Nullable
     private final Pipe pipe;
@@ -53,6 +54,17 @@ public class FillableCell extends Cell implements MapElement {
         return Optional.ofNullable(pipe);
     }
 
+    /**
+     * Same as {@link FillableCell#getPipe()}, but without allocating an {@link Optional}. This should be preferred in
+     * code which runs on every move or every flow of water.
+     *
+     * @return The pipe in this tile, or {@code null} if the tile is empty.
+     */
+    @Nullable
+    public Pipe getPipeOrNull() {
+        return pipe;
+    }
+
     /**
      * @return The character representation of the pipe, or {@code '.'} if the cell is empty.
      */
@@ -71,7 +83,7 @@ public class FillableCell extends Cell implements MapElement {
     public Renderer.CellImage getImageRep() {
         // TODO
         if(this.pipe==null){
-            return new Renderer.CellImage(IMAGE,0);
+            return CELL_IMAGE;
         }
         return this.pipe.getImageRep();
     }
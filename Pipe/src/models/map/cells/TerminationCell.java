@@ -21,6 +21,18 @@ public class TerminationCell extends Cell {
      * Image representing a filled termination cell.
      */
     private static final Image FILLED_IMG = new Image(ResourceLoader.getResource("assets/images/dest-filled.png"));
+    /**
+     * Image representations of termination cells, indexed by whether the cell is filled and the rotation in quarter
+     * turns.
+     */
+    private static final Renderer.CellImage[][] CELL_IMAGES = new Renderer.CellImage[2][4];
+
+    static {
+        for (int quarter = 0; quarter < 4; ++quarter) {
+            CELL_IMAGES[0][quarter] = new Renderer.CellImage(UNFILLED_IMG, quarter * 90);
+            CELL_IMAGES[1][quarter] = new Renderer.CellImage(FILLED_IMG, quarter * 90);
+        }
+    }
 
     private boolean isFilled = false;
     @NotNull
@@ -78,7 +90,6 @@ public class TerminationCell extends Cell {
     @Override
     public Renderer.CellImage getImageRep() {
         // TODO
-        Image img=this.isFilled?FILLED_IMG:UNFILLED_IMG;
         int rotation=switch(this.pointingTo){
             case UP ->0;
             case DOWN -> 180;
@@ -88,7 +99,7 @@ public class TerminationCell extends Cell {
         if(this.type==Type.SINK){
             rotation+=180;
         }
-        return new Renderer.CellImage(img,rotation);
+        return CELL_IMAGES[this.isFilled ? 1 : 0][(rotation % 360) / 90];
     }
 
     @NotNull
@@ -17,6 +17,7 @@ public class Wall extends Cell {
      * Image representing a wall.
      */
     private static final Image IMAGE = new Image(ResourceLoader.getResource("assets/images/wall.png"));
+    private static final Renderer.CellImage CELL_IMAGE = new Renderer.CellImage(IMAGE, 0);
 
     public Wall(@NotNull Coordinate coord) {
         super(coord);
@@ -31,7 +32,7 @@ public class Wall extends Cell {
     @Override
     public Renderer.CellImage getImageRep() {
         // TODO
-        return new Renderer.CellImage(IMAGE,0);
+        return CELL_IMAGE;
     }
 
     @NotNull
@@ -32,6 +32,14 @@ public class Pipe implements MapElement {
         filled = true;
     }
 
+    /**
+     * @return Shape of this pipe.
+     */
+    @NotNull
+    public Shape getShape() {
+        return shape;
+    }
+
     /**
      * @return Whether this pipe is filled.
      */
@@ -40,29 +48,20 @@ public class Pipe implements MapElement {
     }
 
     /**
-     * @return List of connections for this pipe.
-     * @throws IllegalStateException if {@code this} pipe cannot be identified.
+     * @return List of connections for this pipe. The array is shared between all pipes of the same shape, and must not
+     * be modified.
      */
     @NotNull
     public Direction[] getConnections() {
-        switch (shape) {
-            case HORIZONTAL:
-                return new Direction[]{Direction.LEFT, Direction.RIGHT};
-            case VERTICAL:
-                return new Direction[]{Direction.UP, Direction.DOWN};
-            case TOP_LEFT:
-                return new Direction[]{Direction.UP, Direction.LEFT};
-            case TOP_RIGHT:
-                return new Direction[]{Direction.UP, Direction.RIGHT};
-            case BOTTOM_LEFT:
-                return new Direction[]{Direction.DOWN, Direction.LEFT};
-            case BOTTOM_RIGHT:
-                return new Direction[]{Direction.DOWN, Direction.RIGHT};
-            case CROSS:
-                return Direction.values();
-            default:
-                throw new IllegalStateException("Unknown shape");
-        }
+        return shape.getConnections();
+    }
+
+    /**
+     * @param dir Direction to check.
+     * @return Whether this pipe has an opening towards {@code dir}.
+     */
+    public boolean hasConnection(@NotNull Direction dir) {
+        return shape.hasConnection(dir);
     }
 
     /**
@@ -118,13 +117,20 @@ public class Pipe implements MapElement {
      * Helper class for different pipe shapes.
      */
     public enum Shape {
-        HORIZONTAL("HZ", PipePatterns.Filled.HORIZONTAL, PipePatterns.Unfilled.HORIZONTAL),
-        VERTICAL("VT", PipePatterns.Filled.VERTICAL, PipePatterns.Unfilled.VERTICAL),
-        TOP_LEFT("TL", PipePatterns.Filled.TOP_LEFT, PipePatterns.Unfilled.TOP_LEFT),
-        TOP_RIGHT("TR", PipePatterns.Filled.TOP_RIGHT, PipePatterns.Unfilled.TOP_RIGHT),
-        BOTTOM_LEFT("BL", PipePatterns.Filled.BOTTOM_LEFT, PipePatterns.Unfilled.BOTTOM_LEFT),
-        BOTTOM_RIGHT("BR", PipePatterns.Filled.BOTTOM_RIGHT, PipePatterns.Unfilled.BOTTOM_RIGHT),
-        CROSS("CR", PipePatterns.Filled.CROSS, PipePatterns.Unfilled.CROSS);
+        HORIZONTAL("HZ", PipePatterns.Filled.HORIZONTAL, PipePatterns.Unfilled.HORIZONTAL,
+                Direction.LEFT, Direction.RIGHT),
+        VERTICAL("VT", PipePatterns.Filled.VERTICAL, PipePatterns.Unfilled.VERTICAL,
+                Direction.UP, Direction.DOWN),
+        TOP_LEFT("TL", PipePatterns.Filled.TOP_LEFT, PipePatterns.Unfilled.TOP_LEFT,
+                Direction.UP, Direction.LEFT),
+        TOP_RIGHT("TR", PipePatterns.Filled.TOP_RIGHT, PipePatterns.Unfilled.TOP_RIGHT,
+                Direction.UP, Direction.RIGHT),
+        BOTTOM_LEFT("BL", PipePatterns.Filled.BOTTOM_LEFT, PipePatterns.Unfilled.BOTTOM_LEFT,
+                Direction.DOWN, Direction.LEFT),
+        BOTTOM_RIGHT("BR", PipePatterns.Filled.BOTTOM_RIGHT, PipePatterns.Unfilled.BOTTOM_RIGHT,
+                Direction.DOWN, Direction.RIGHT),
+        CROSS("CR", PipePatterns.Filled.CROSS, PipePatterns.Unfilled.CROSS,
+                Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT);
 
         private static final Image CORNER_UNFILLED = new Image(ResourceLoader.getResource("assets/images/top-left-unfilled.png"));
         private static final Image CORNER_FILLED = new Image(ResourceLoader.getResource("assets/images/top-left-filled.png"));
@@ -133,15 +139,57 @@ public class Pipe implements MapElement {
         private static final Image STRAIGHT_UNFILLED = new Image(ResourceLoader.getResource("assets/images/vert-unfilled.png"));
         private static final Image STRAIGHT_FILLED = new Image(ResourceLoader.getResource("assets/images/vert-filled.png"));
 
+        /**
+         * Image representations of each shape, indexed by ordinal.
+         */
+        private static final Renderer.CellImage[] FILLED_IMAGES = new Renderer.CellImage[values().length];
+        private static final Renderer.CellImage[] UNFILLED_IMAGES = new Renderer.CellImage[values().length];
+
+        static {
+            for (var shape : values()) {
+                FILLED_IMAGES[shape.ordinal()] = shape.createCellImage(true);
+                UNFILLED_IMAGES[shape.ordinal()] = shape.createCellImage(false);
+            }
+        }
+
         @NotNull
         final String rep;
         final char filledChar;
         final char unfilledChar;
+        @NotNull
+        final Direction[] connections;
+        /**
+         * Bit {@code d.ordinal()} is set for every direction {@code d} in {@link Shape#connections}.
+         */
+        final int connectionMask;
 
-        Shape(@NotNull String rep, char filled, char unfilled) {
+        Shape(@NotNull String rep, char filled, char unfilled, @NotNull Direction... connections) {
             this.rep = rep;
             this.filledChar = filled;
             this.unfilledChar = unfilled;
+            this.connections = connections;
+
+            int mask = 0;
+            for (var d : connections) {
+                mask |= 1 << d.ordinal();
+            }
+            this.connectionMask = mask;
+        }
+
+        /**
+         * @return List of connections for this shape. The array is shared, and must not be modified.
+         */
+        @NotNull
+        public Direction[] getConnections() {
+            return connections;
+        }
+
+        /**
+         * @param dir Direction to check.
+         * @return Whether this shape has an opening towards {@code dir}.
+         */
+        public boolean hasConnection(@NotNull Direction dir) {
+            return (connectionMask & (1 << dir.ordinal())) != 0;
         }
 
         char getCharByState(boolean isFilled) {
@@ -153,9 +201,20 @@ public class Pipe implements MapElement {
          *
          * @param isFilled Whether the pipe is filled.
          * @return Image representation of the pipe.
-         * @throws IllegalStateException When {@code this} is not a known pipe shape.
          */
         @NotNull Renderer.CellImage getCellImage(boolean isFilled) {
+            return (isFilled ? FILLED_IMAGES : UNFILLED_IMAGES)[ordinal()];
+        }
+
+        /**
+         * Creates the image representation of the pipe.
+         *
+         * @param isFilled Whether the pipe is filled.
+         * @return Image representation of the pipe.
+         * @throws IllegalStateException When {@code this} is not a known pipe shape.
+         */
+        @NotNull
+        private Renderer.CellImage createCellImage(boolean isFilled) {
             // TODO
             Image img=null;
             int rotation=0;
@@ -2,7 +2,15 @@ module pipes {
     requires javafx.controls;
     requires javafx.graphics;
     requires javafx.media;
+    requires java.management;
+    requires jdk.jfr;
+    requires jdk.management;
     requires org.jetbrains.annotations;
 
     exports main;
+    exports bots;
+    exports controllers to java.management;
+
+    uses bots.Strategy;
+    provides bots.Strategy with bots.GreedyStrategy, bots.MctsStrategy, bots.RandomStrategy;
 }
\ No newline at end of file
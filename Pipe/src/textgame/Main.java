@@ -3,10 +3,7 @@ package textgame;
 import io.Deserializer;
 import textgame.game.Game;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.util.Arrays;
 
 public class Main {
@@ -28,41 +25,16 @@ public class Main {
             System.out.println("Usage: java -jar PA1.jar");
             System.out.println("Usage: java -jar PA1.jar [file]");
             System.out.println("Usage: java -jar PA1.jar [rows] [cols]");
+            System.out.println("Usage: java -jar PA1.jar --script <moves-file|-> [file | rows cols]");
             System.exit(0);
         }
 
-        Game g = null;
-
-        try {
-            if (args.length == 0) {
-                int rows = 8;
-                int cols = 8;
-
-                g = new Game(rows, cols);
-            } else if (args.length == 1) {
-                try {
-                    var deserializer = new Deserializer(args[0]);
-                    g = deserializer.parseGame();
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                    throw e;
-                }
-            } else if (args.length == 2) {
-                int rows = Integer.parseInt(args[0]);
-                int cols = Integer.parseInt(args[1]);
-
-                g = new Game(rows, cols);
-            }
-        } catch (final Throwable tr) {
-            tr.printStackTrace();
-            System.err.println("Unable to create game: " + tr.getMessage());
-            System.exit(1);
+        if (args.length >= 2 && args[0].equals("--script")) {
+            runScript(args[1], Arrays.copyOfRange(args, 2, args.length));
+            return;
         }
 
-        if (g == null) {
-            System.err.println("Unable to create game!");
-            System.exit(1);
-        }
+        Game g = createGame(args);
 
         System.out.println("Enter \":q\" to quit the game.");
         System.out.println("Enter \":u\" to undo the last step.");
@@ -120,4 +92,71 @@ public class Main {
             System.exit(1);
         }
     }
+
+    /**
+     * Creates a game from the command line arguments, or exits if the game cannot be created.
+     *
+     * @param args Either empty, a path to a map file, or the number of rows and columns.
+     * @return The created game.
+     */
+    private static Game createGame(String[] args) {
+        Game g = null;
+
+        try {
+            if (args.length == 0) {
+                int rows = 8;
+                int cols = 8;
+
+                g = new Game(rows, cols);
+            } else if (args.length == 1) {
+                try {
+                    var deserializer = new Deserializer(args[0]);
+                    g = deserializer.parseGame();
+                } catch (FileNotFoundException e) {
+                    e.printStackTrace();
+                    throw e;
+                }
+            } else if (args.length == 2) {
+                int rows = Integer.parseInt(args[0]);
+                int cols = Integer.parseInt(args[1]);
+
+                g = new Game(rows, cols);
+            }
+        } catch (final Throwable tr) {
+            tr.printStackTrace();
+            System.err.println("Unable to create game: " + tr.getMessage());
+            System.exit(1);
+        }
+
+        if (g == null) {
+            System.err.println("Unable to create game!");
+            System.exit(1);
+        }
+
+        return g;
+    }
+
+    /**
+     * Applies the moves from {@code movesPath} to a new game without displaying the game, then prints the result.
+     *
+     * @param movesPath Path to the file containing the moves, or {@code "-"} to read from {@link System#in}.
+     * @param gameArgs  Arguments for creating the game.
+     * @see ScriptRunner
+     */
+    private static void runScript(String movesPath, String[] gameArgs) {
+        final var g = createGame(gameArgs);
+        final var runner = new ScriptRunner(g);
+
+        try (var in = movesPath.equals("-") ? System.in : new FileInputStream(movesPath)) {
+            final long start = System.nanoTime();
+            runner.run(in);
+            final long elapsed = System.nanoTime() - start;
+
+            runner.printStats(System.out, elapsed);
+        } catch (IOException e) {
+            System.err.println("Cannot read moves from " + movesPath + "!");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,234 @@
+package textgame;
+
+import org.jetbrains.annotations.NotNull;
+import textgame.game.Game;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Applies a stream of moves to a {@link Game} without rendering anything.
+ *
+ * <p>
+ * Moves are separated by whitespace or commas. Each move is one of:
+ * <ul>
+ * <li>{@code <col><row>} (e.g. {@code B3}): Places the next pipe at the given location.</li>
+ * <li>{@code s}, {@code :s} or {@code skip}: Skips the next pipe.</li>
+ * <li>{@code u}, {@code :u} or {@code undo}: Undoes the last step.</li>
+ * <li>{@code :q}, {@code quit} or {@code exit}: Stops reading moves.</li>
+ * </ul>
+ * Anything after a {@code '#'} until the end of the line is ignored.
+ * </p>
+ *
+ * <p>
+ * The input is tokenized directly from bytes into a reused buffer, so that no {@link String} is created per move.
+ * </p>
+ */
+public class ScriptRunner {
+
+    /**
+     * Size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Maximum length of a single move. Longer tokens are treated as invalid.
+     */
+    private static final int MAX_TOKEN_LENGTH = 16;
+
+    /**
+     * Result of the game after the script has finished.
+     */
+    public enum Result {
+        WON, LOST, INCOMPLETE
+    }
+
+    @NotNull
+    private final Game game;
+
+    private final byte[] token = new byte[MAX_TOKEN_LENGTH];
+    private int tokenLength = 0;
+    private boolean tokenOverflow = false;
+
+    private long movesRead = 0;
+    private long pipesPlaced = 0;
+    private long placementsRejected = 0;
+    private long skips = 0;
+    private long undos = 0;
+    private long undosRejected = 0;
+    private long invalidMoves = 0;
+
+    @NotNull
+    private Result result = Result.INCOMPLETE;
+    private boolean finished = false;
+
+    /**
+     * @param game Game to apply moves to.
+     */
+    public ScriptRunner(@NotNull Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Reads and applies all moves from the stream, until the stream ends, the game ends or a quit command is read.
+     *
+     * @param in Stream to read moves from.
+     * @return The result of the game.
+     * @throws IOException if the stream cannot be read.
+     */
+    @NotNull
+    public Result run(@NotNull InputStream in) throws IOException {
+        final var buffer = new byte[BUFFER_SIZE];
+        boolean inComment = false;
+
+        int read;
+        while (!finished && (read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read && !finished; ++i) {
+                final byte b = buffer[i];
+
+                if (inComment) {
+                    inComment = b != '\n';
+                    continue;
+                }
+
+                switch (b) {
+                    case '#':
+                        inComment = true;
+                        endToken();
+                        break;
+                    case ' ':
+                    case '\t':
+                    case '\r':
+                    case '\n':
+                    case ',':
+                    case ';':
+                        endToken();
+                        break;
+                    default:
+                        if (tokenLength < MAX_TOKEN_LENGTH) {
+                            token[tokenLength++] = b;
+                        } else {
+                            tokenOverflow = true;
+                        }
+                        break;
+                }
+            }
+        }
+        if (!finished) {
+            endToken();
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies the move in {@link ScriptRunner#token}, if there is one.
+     */
+    private void endToken() {
+        if (tokenLength == 0 && !tokenOverflow) {
+            return;
+        }
+
+        ++movesRead;
+        if (tokenOverflow) {
+            ++invalidMoves;
+        } else {
+            applyToken();
+        }
+
+        tokenLength = 0;
+        tokenOverflow = false;
+    }
+
+    private void applyToken() {
+        if (tokenEquals("s") || tokenEquals(":s") || tokenEquals("skip")) {
+            game.skipPipe();
+            ++skips;
+            return;
+        }
+        if (tokenEquals("u") || tokenEquals(":u") || tokenEquals("undo")) {
+            if (game.undoStep()) {
+                ++undos;
+            } else {
+                ++undosRejected;
+            }
+            return;
+        }
+        if (tokenEquals(":q") || tokenEquals("quit") || tokenEquals("exit")) {
+            finished = true;
+            return;
+        }
+
+        final var col = (char) Character.toUpperCase(token[0]);
+        if (col < 'A' || col > 'Z' || tokenLength == 1) {
+            ++invalidMoves;
+            return;
+        }
+
+        int row = 0;
+        for (int i = 1; i < tokenLength; ++i) {
+            final byte b = token[i];
+            if (b < '0' || b > '9') {
+                ++invalidMoves;
+                return;
+            }
+            row = row * 10 + (b - '0');
+        }
+
+        if (!game.placePipe(row, col)) {
+            ++placementsRejected;
+            return;
+        }
+
+        ++pipesPlaced;
+        game.updateState();
+        if (game.hasWon()) {
+            result = Result.WON;
+            finished = true;
+        } else if (game.hasLost()) {
+            result = Result.LOST;
+            finished = true;
+        }
+    }
+
+    /**
+     * @param s ASCII string to compare against.
+     * @return Whether the current token equals {@code s}, ignoring case.
+     */
+    private boolean tokenEquals(@NotNull String s) {
+        if (s.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; ++i) {
+            if (Character.toLowerCase(token[i]) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints the result and statistics of the run.
+     *
+     * @param out       Stream to print to.
+     * @param elapsedNs Time taken to run the script, in nanoseconds.
+     */
+    public void printStats(@NotNull PrintStream out, long elapsedNs) {
+        out.println("result: " + result);
+        out.println("steps: " + game.getNumOfSteps());
+        out.println("moves: " + movesRead);
+        out.println("placed: " + pipesPlaced);
+        out.println("rejected: " + placementsRejected);
+        out.println("skips: " + skips);
+        out.println("undos: " + undos);
+        out.println("undos-rejected: " + undosRejected);
+        out.println("invalid: " + invalidMoves);
+        out.println("elapsed-ms: " + String.format("%.3f", elapsedNs / 1e6));
+        out.println("moves-per-sec: " + (elapsedNs > 0 ? (long) (movesRead * 1e9 / elapsedNs) : 0));
+    }
+
+    @NotNull
+    public Result getResult() {
+        return result;
+    }
+}
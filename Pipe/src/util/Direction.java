@@ -9,23 +9,27 @@ import org.jetbrains.annotations.NotNull;
 public enum Direction {
     UP, DOWN, LEFT, RIGHT;
 
+    /**
+     * Offsets returned by {@link Direction#getOffset()}, shared as {@link Coordinate} is immutable.
+     */
+    private static final Coordinate UP_OFFSET = new Coordinate(-1, 0);
+    private static final Coordinate DOWN_OFFSET = new Coordinate(1, 0);
+    private static final Coordinate LEFT_OFFSET = new Coordinate(0, -1);
+    private static final Coordinate RIGHT_OFFSET = new Coordinate(0, 1);
+
+    /**
+     * Results of {@link Direction#getOpposite()} and {@link Direction#getOffset()} by ordinal, which are looked up on
+     * every step of the flow and path searches.
+     */
+    private static final Direction[] OPPOSITES = {DOWN, UP, RIGHT, LEFT};
+    private static final Coordinate[] OFFSETS = {UP_OFFSET, DOWN_OFFSET, LEFT_OFFSET, RIGHT_OFFSET};
+
     /**
      * @return The opposite direction of {@code this}.
      */
     @NotNull
     public Direction getOpposite() {
-        switch (this) {
-            case UP:
-                return DOWN;
-            case DOWN:
-                return UP;
-            case LEFT:
-                return RIGHT;
-            case RIGHT:
-                return LEFT;
-            default:
-                throw new IllegalStateException("Unknown direction");
-        }
+        return OPPOSITES[ordinal()];
     }
 
     /**
@@ -33,18 +37,7 @@ public enum Direction {
      */
     @NotNull
     public Coordinate getOffset() {
-        switch (this) {
-            case UP:
-                return new Coordinate(-1, 0);
-            case DOWN:
-                return new Coordinate(1, 0);
-            case LEFT:
-                return new Coordinate(0, -1);
-            case RIGHT:
-                return new Coordinate(0, 1);
-            default:
-                throw new IllegalStateException("Unknown direction");
-        }
+        return OFFSETS[ordinal()];
     }
 
     /**
@@ -0,0 +1,124 @@
+package util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations, which can be recorded into from multiple threads without contention.
+ *
+ * <p>
+ * Durations are recorded in nanoseconds into buckets of powers of two, i.e. bucket {@code i} holds durations in
+ * {@code [2^(i-1), 2^i)}. Percentiles are therefore accurate to within a factor of two, which is sufficient for
+ * spotting latency regressions.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    @NotNull
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    @NotNull
+    private final LongAdder count = new LongAdder();
+    @NotNull
+    private final LongAdder totalNanos = new LongAdder();
+    @NotNull
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos Duration in nanoseconds. Negative durations are recorded as zero.
+     */
+    public void record(long nanos) {
+        final long n = Math.max(0, nanos);
+        buckets[BUCKETS - Long.numberOfLeadingZeros(n)].increment();
+        count.increment();
+        totalNanos.add(n);
+        maxNanos.accumulate(n);
+    }
+
+    /**
+     * @return Number of recorded durations.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return Mean of all recorded durations in nanoseconds, or 0 if nothing is recorded.
+     */
+    public double getMeanNanos() {
+        final long c = count.sum();
+        return c == 0 ? 0 : (double) totalNanos.sum() / c;
+    }
+
+    /**
+     * @return Longest recorded duration in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param quantile Quantile between 0 and 1, e.g. 0.99 for the 99th percentile.
+     * @return Upper bound of the bucket containing the quantile in nanoseconds, or 0 if nothing is recorded.
+     */
+    public long getPercentileNanos(double quantile) {
+        final long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long target = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= target && snapshot[i] != 0) {
+                return Math.min(upperBound(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * @return Number of durations in each bucket. Bucket {@code i} holds durations below {@code 2^i} nanoseconds, and
+     * at least {@code 2^(i-1)} nanoseconds for {@code i > 0}.
+     */
+    @NotNull
+    public long[] snapshot() {
+        final var snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = buckets[i].sum();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Clears all recorded durations.
+     */
+    public void reset() {
+        for (var b : buckets) {
+            b.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
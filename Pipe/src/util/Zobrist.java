@@ -0,0 +1,52 @@
+package util;
+
+/**
+ * Keys for Zobrist hashing of game states.
+ *
+ * <p>
+ * The Zobrist hash of a state is the XOR of one key per element of the state, so that changing a single element only
+ * takes XOR-ing out its old key and XOR-ing in its new key. Keys are derived from the position and value of each element
+ * by a 64-bit mixing function instead of being stored in a table, so that they are the same in every run, and take no
+ * memory regardless of the size of the map.
+ * </p>
+ */
+public final class Zobrist {
+
+    /**
+     * Domain of the keys of the cells of a map.
+     */
+    public static final long MAP_CELL = 0x6d61702d63656c6cL;
+    /**
+     * Domain of the key of the dimensions of a map.
+     */
+    public static final long MAP_SIZE = 0x6d61702d73697a65L;
+    /**
+     * Domain of the keys of the positions in a pipe queue.
+     */
+    public static final long QUEUE_SLOT = 0x71756575652d736cL;
+
+    private Zobrist() {
+    }
+
+    /**
+     * Mixes the bits of a value, such that every bit of the input affects every bit of the output.
+     *
+     * @param z Value to mix.
+     * @return Mixed value, as given by the finalizer of SplitMix64.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param domain   Domain of the key, to tell apart elements of different kinds at the same position.
+     * @param position Position of the element.
+     * @param value    Value of the element, between 0 and 65535.
+     * @return Key of the element.
+     */
+    public static long key(long domain, int position, int value) {
+        return mix64(domain + ((((long) position) << 16) | value) * 0x9e3779b97f4a7c15L);
+    }
+}
@@ -0,0 +1,27 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every invocation of {@link models.map.Map#fillTiles(int)}.
+ */
+@Name("pipes.FillTiles")
+@Label("Fill Tiles")
+@Category({"Pipes", "Map"})
+@Description("Filling pipes up to a distance from the source")
+@StackTrace(false)
+public class FillTilesEvent extends Event {
+
+    @Label("Distance")
+    @Description("Distance which the pipes are filled up to")
+    public int distance;
+
+    @Label("Tiles Filled")
+    @Description("Number of tiles filled by this invocation")
+    public int tilesFilled;
+}
@@ -0,0 +1,23 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted when the water flows an additional tile, spanning all flow callbacks.
+ */
+@Name("pipes.Flow")
+@Label("Flow")
+@Category({"Pipes", "Flow"})
+@Description("The water flowing an additional tile, including all flow callbacks")
+@StackTrace(false)
+public class FlowEvent extends Event {
+
+    @Label("Distance")
+    @Description("Distance of the water flow after this flow")
+    public int distance;
+}
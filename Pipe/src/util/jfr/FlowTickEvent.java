@@ -0,0 +1,27 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every tick of a {@link models.FlowTimer}, spanning all tick and flow callbacks of the tick.
+ */
+@Name("pipes.FlowTick")
+@Label("Flow Tick")
+@Category({"Pipes", "Flow"})
+@Description("A tick of the flow timer, including all tick and flow callbacks")
+@StackTrace(false)
+public class FlowTickEvent extends Event {
+
+    @Label("Ticks Elapsed")
+    @Description("Number of ticks since the water started flowing; negative during the initial delay")
+    public int ticksElapsed;
+
+    @Label("Flowed")
+    @Description("Whether the water flowed in this tick")
+    public boolean flowed;
+}
@@ -0,0 +1,28 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every input handled by {@link views.panes.GameplayPane}, spanning the game update and rendering caused
+ * by the input.
+ */
+@Name("pipes.Input")
+@Label("Gameplay Input")
+@Category({"Pipes", "Input"})
+@Description("Handling of a mouse click or key press during gameplay")
+@StackTrace(false)
+public class InputEvent extends Event {
+
+    @Label("Input")
+    @Description("The input, e.g. a key name or the clicked cell")
+    public String input;
+
+    @Label("Handled")
+    @Description("Whether the input changed the game")
+    public boolean handled;
+}
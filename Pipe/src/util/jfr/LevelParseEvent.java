@@ -0,0 +1,30 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every map file parsed by {@link io.Deserializer}.
+ */
+@Name("pipes.LevelParse")
+@Label("Level Parse")
+@Category({"Pipes", "Levels"})
+@Description("Parsing a map file")
+@StackTrace(false)
+public class LevelParseEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
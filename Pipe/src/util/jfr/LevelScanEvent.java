@@ -0,0 +1,25 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every scan of the map directory by {@link controllers.LevelManager}.
+ */
+@Name("pipes.LevelScan")
+@Label("Level Scan")
+@Category({"Pipes", "Levels"})
+@Description("Scanning the map directory for levels")
+@StackTrace(false)
+public class LevelScanEvent extends Event {
+
+    @Label("Directory")
+    public String directory;
+
+    @Label("Levels Found")
+    public int levelsFound;
+}
@@ -0,0 +1,26 @@
+package util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every map rendered by {@link controllers.Renderer}.
+ */
+@Name("pipes.RenderMap")
+@Label("Render Map")
+@Category({"Pipes", "Rendering"})
+@Description("Drawing a map onto a canvas")
+@StackTrace(false)
+public class RenderMapEvent extends Event {
+
+    @Label("Cells Drawn")
+    public int cellsDrawn;
+
+    @Label("Cells Cached")
+    @Description("Number of cells not redrawn because they are unchanged since the last render")
+    public int cellsCached;
+}
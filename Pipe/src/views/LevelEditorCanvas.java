@@ -3,12 +3,14 @@ package views;
 import controllers.Renderer;
 import io.Deserializer;
 import io.GameProperties;
+import io.LevelValidator;
 import io.Serializer;
 import javafx.application.Platform;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.stage.FileChooser;
+import models.MoveHistory;
 import models.exceptions.InvalidMapException;
 import models.map.cells.Cell;
 import models.map.cells.FillableCell;
@@ -30,13 +32,6 @@ import static models.Config.TILE_SIZE;
 
 public class LevelEditorCanvas extends Canvas {
 
-    private static final String MSG_MISSING_SOURCE = "Source tile is missing!";
-    private static final String MSG_MISSING_SINK = "Sink tile is missing!";
-    private static final String MSG_BAD_DIMS = "Map size must be at least 2x2!";
-    private static final String MSG_BAD_DELAY = "Delay must be a positive value!";
-    private static final String MSG_SOURCE_TO_WALL = "Source tile is blocked by a wall!";
-    private static final String MSG_SINK_TO_WALL = "Sink tile is blocked by a wall!";
-
     private GameProperties gameProp;
 
     @Nullable
@@ -44,6 +39,17 @@ public class LevelEditorCanvas extends Canvas {
     @Nullable
     private TerminationCell sinkCell;
 
+    /**
+     * History of edits to the current map, for undoing and redoing edits.
+     */
+    private MoveHistory history;
+
+    /**
+     * Serializer of exported maps, which is kept between exports so that its buffer is reused.
+     */
+    @Nullable
+    private Serializer serializer;
+
     public LevelEditorCanvas(int rows, int cols, int delay) {
         super();
 
@@ -85,7 +91,112 @@ public class LevelEditorCanvas extends Canvas {
                 }
             }
         }
+        this.resetHistory();
+        this.renderCanvas();
+    }
+
+    /**
+     * Starts a new history of edits from the current map.
+     */
+    private void resetHistory() {
+        final int cols = this.gameProp.cols;
+        final var grid = new byte[this.gameProp.rows * cols];
+        for (int i = 0; i < this.gameProp.rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                grid[i * cols + j] = (byte) encodeCell(this.gameProp.cells[i][j]);
+            }
+        }
+        this.history = new MoveHistory(grid);
+    }
+
+    /**
+     * Encodes the type of a cell, and the direction of a termination cell.
+     *
+     * @param cell Cell to encode.
+     * @return 0 for a wall, 1 for an empty cell, 2-5 for a source, and 6-9 for a sink.
+     */
+    private static int encodeCell(@NotNull Cell cell) {
+        if (cell instanceof TerminationCell) {
+            final var tCell = (TerminationCell) cell;
+            return (tCell.type == TerminationCell.Type.SOURCE ? 2 : 6) + tCell.pointingTo.ordinal();
+        }
+        return cell instanceof FillableCell ? 1 : 0;
+    }
+
+    @NotNull
+    private static Cell decodeCell(@NotNull Coordinate coord, int code) {
+        if (code == 0) {
+            return new Wall(coord);
+        } else if (code == 1) {
+            return new FillableCell(coord);
+        } else if (code < 6) {
+            return new TerminationCell(coord, Direction.values()[code - 2], TerminationCell.Type.SOURCE);
+        } else {
+            return new TerminationCell(coord, Direction.values()[code - 6], TerminationCell.Type.SINK);
+        }
+    }
+
+    /**
+     * Records the change of a cell in {@link LevelEditorCanvas#history} as a single edit.
+     *
+     * @param cell The new cell.
+     */
+    private void recordEdit(@NotNull Cell cell) {
+        this.history.record(cell.coord.row * this.gameProp.cols + cell.coord.col, encodeCell(cell));
+        this.history.commitStep();
+    }
+
+    /**
+     * Undoes the last edit.
+     *
+     * @return {@code true} if an edit is undone.
+     */
+    public boolean undo() {
+        return this.moveInHistory(this.history.getCurrentStep() - 1);
+    }
+
+    /**
+     * Redoes the last undone edit.
+     *
+     * @return {@code true} if an edit is redone.
+     */
+    public boolean redo() {
+        return this.moveInHistory(this.history.getCurrentStep() + 1);
+    }
+
+    /**
+     * Replaces the map with the map at a step of the history.
+     *
+     * @param step Step to move to.
+     * @return {@code true} if the step is in the history.
+     */
+    private boolean moveInHistory(int step) {
+        if (step < 0 || step > this.history.getStepCount()) {
+            return false;
+        }
+
+        final var grid = this.history.seek(step);
+        final int cols = this.gameProp.cols;
+        this.sourceCell = null;
+        this.sinkCell = null;
+        for (int i = 0; i < this.gameProp.rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                Cell cell = this.gameProp.cells[i][j];
+                if (encodeCell(cell) != grid[i * cols + j]) {
+                    cell = decodeCell(cell.coord, grid[i * cols + j]);
+                    this.gameProp.cells[i][j] = cell;
+                }
+                if (cell instanceof TerminationCell) {
+                    if (((TerminationCell) cell).type == TerminationCell.Type.SOURCE) {
+                        this.sourceCell = (TerminationCell) cell;
+                    } else {
+                        this.sinkCell = (TerminationCell) cell;
+                    }
+                }
+            }
+        }
         this.renderCanvas();
+        return true;
     }
 
     /**
@@ -186,6 +297,7 @@ public class LevelEditorCanvas extends Canvas {
             }
         }
         this.gameProp.cells[cor.row][cor.col]=cell;
+        this.recordEdit(cell);
         this.renderCanvas();
 
     }
@@ -203,6 +315,7 @@ public class LevelEditorCanvas extends Canvas {
         TerminationCell t=new TerminationCell(this.sourceCell.coord,dir,this.sourceCell.type);
         this.gameProp.cells[cor.row][cor.col]=t;
         this.sourceCell = t;
+        this.recordEdit(t);
         this.renderCanvas();
     }
 
@@ -262,6 +375,7 @@ public class LevelEditorCanvas extends Canvas {
         this.sinkCell=null;
         try{
             this.gameProp=new Deserializer(path).parseGameFile();
+            this.resetHistory();
             for(int i=0;i<this.gameProp.rows;i++){
                 for(int j=0;j<this.gameProp.cols;j++){
                     Cell cell=this.gameProp.cells[i][j];
@@ -340,9 +454,13 @@ public class LevelEditorCanvas extends Canvas {
      */
     private void exportToFile(@NotNull Path p) {
         // TODO
-        Serializer serializer=new Serializer(p);
+        if(this.serializer==null){
+            this.serializer=new Serializer(p);
+        }else{
+            this.serializer.setPath(p);
+        }
         try{
-            serializer.serializeGameProp(this.gameProp);
+            this.serializer.serializeGameProp(this.gameProp);
         }catch (Exception e){
             Alert a = new Alert(Alert.AlertType.ERROR);
             a.setTitle("Error");
@@ -354,9 +472,11 @@ public class LevelEditorCanvas extends Canvas {
 
     /**
      * Checks whether the current map and its properties are valid.
+     *
      * <p>
-     * Hint:
-     * You should check for the following conditions:
+     * The map is checked by {@link LevelValidator}, which covers the conditions below, as well as the border of the
+     * map and whether every sink can be reached from a source:
+     * </p>
      * <ul>
      * <li>Source cell is present</li>
      * <li>Sink cell is present</li>
@@ -365,31 +485,14 @@ public class LevelEditorCanvas extends Canvas {
      * <li>Source/Sink tiles are not blocked by walls</li>
      * </ul>
      *
-     * @return {@link Optional} containing the error message, or an empty {@link Optional} if the map is valid.
+     * @return {@link Optional} containing the message of the first error, or an empty {@link Optional} if the map is
+     * valid.
      */
     private Optional<String> checkValidity() {
-        // TODO
-        if(this.sourceCell==null){
-            return Optional.of(MSG_MISSING_SOURCE);
-        }
-        if(this.sinkCell==null){
-            return Optional.of(MSG_MISSING_SINK);
-        }
-        if(this.gameProp.rows>=2 && this.gameProp.cols>=2){
-            if(this.gameProp.delay<=0){
-                return Optional.of(MSG_BAD_DELAY);
-            }
-            Coordinate source=this.sourceCell.coord.add(this.sourceCell.pointingTo.getOffset());
-            Coordinate sink=this.sinkCell.coord.add(this.sinkCell.pointingTo.getOpposite().getOffset());
-            if(this.gameProp.cells[source.row][source.col] instanceof Wall){
-                return Optional.of(MSG_SOURCE_TO_WALL);
-            }
-            if(this.gameProp.cells[sink.row][sink.col] instanceof Wall){
-                return Optional.of(MSG_SINK_TO_WALL);
-            }
-            return Optional.empty();
-        }
-        return Optional.of(MSG_BAD_DIMS);
+        return new LevelValidator().validate(this.gameProp).stream()
+                .filter(issue -> issue.severity == LevelValidator.Severity.ERROR)
+                .map(issue -> issue.message)
+                .findFirst();
     }
 
     public int getNumOfRows() {
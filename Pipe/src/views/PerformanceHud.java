@@ -0,0 +1,135 @@
+package views;
+
+import controllers.Metrics;
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Overlay displaying rendering and engine performance, sampled on every JavaFX pulse.
+ *
+ * <p>
+ * Frame statistics are accumulated on every pulse, but the labels are only updated every
+ * {@link PerformanceHud#UPDATE_INTERVAL_NS}, so that the overlay itself does not cause a layout pass on every frame.
+ * The overlay is hidden and does not sample anything until it is toggled on.
+ * </p>
+ */
+public class PerformanceHud extends BigVBox {
+
+    /**
+     * Interval between each update of the labels.
+     */
+    private static final long UPDATE_INTERVAL_NS = 250_000_000;
+
+    private final Label fpsLabel = new Label();
+    private final Label pulseLabel = new Label();
+    private final Label renderLabel = new Label();
+    private final Label cellsLabel = new Label();
+    private final Label tickLabel = new Label();
+    private final Label heapLabel = new Label();
+
+    @NotNull
+    private final AnimationTimer sampler = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            onPulse(now);
+        }
+    };
+
+    private boolean active = false;
+
+    private long lastPulse = 0;
+    private long windowStart = 0;
+    private int windowFrames = 0;
+    private long windowMaxPulse = 0;
+    private long windowStartCellsDrawn = 0;
+
+    public PerformanceHud() {
+        super(4);
+        this.getStyleClass().add("perf-hud");
+        this.getChildren().addAll(fpsLabel, pulseLabel, renderLabel, cellsLabel, tickLabel, heapLabel);
+        this.setMouseTransparent(true);
+        this.setVisible(false);
+        this.setManaged(false);
+    }
+
+    /**
+     * Shows the overlay if it is hidden, or hides it if it is shown.
+     */
+    public void toggle() {
+        setActive(!active);
+    }
+
+    /**
+     * Shows or hides the overlay, and starts or stops sampling accordingly.
+     *
+     * @param active Whether the overlay should be shown.
+     */
+    public void setActive(boolean active) {
+        if (this.active == active) {
+            return;
+        }
+
+        this.active = active;
+        this.setVisible(active);
+        this.setManaged(active);
+        if (active) {
+            lastPulse = 0;
+            windowStart = 0;
+            sampler.start();
+        } else {
+            sampler.stop();
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Accumulates the statistics of a pulse, and updates the labels if the update interval has elapsed.
+     *
+     * @param now Timestamp of the pulse in nanoseconds.
+     */
+    private void onPulse(long now) {
+        final var metrics = Metrics.getInstance();
+
+        if (lastPulse != 0) {
+            windowMaxPulse = Math.max(windowMaxPulse, now - lastPulse);
+            ++windowFrames;
+        }
+        lastPulse = now;
+
+        if (windowStart == 0) {
+            resetWindow(now, metrics.getTileCacheMisses());
+            return;
+        }
+
+        final long elapsed = now - windowStart;
+        if (elapsed < UPDATE_INTERVAL_NS || windowFrames == 0) {
+            return;
+        }
+
+        final long cellsDrawn = metrics.getTileCacheMisses();
+        final var runtime = Runtime.getRuntime();
+        final long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+
+        fpsLabel.setText(String.format("FPS: %.1f", windowFrames * 1e9 / elapsed));
+        pulseLabel.setText(String.format("Pulse: %.1f ms avg, %.1f ms max",
+                elapsed / 1e6 / windowFrames, windowMaxPulse / 1e6));
+        renderLabel.setText(String.format("Last render: %.2f ms", metrics.getLastRenderMicros() / 1e3));
+        cellsLabel.setText(String.format("Cells redrawn: %.1f / frame",
+                (double) (cellsDrawn - windowStartCellsDrawn) / windowFrames));
+        tickLabel.setText("Tick lateness: " + metrics.getLastTickLatenessMillis() + " ms");
+        heapLabel.setText(String.format("Heap: %d / %d MB", usedHeap >> 20, runtime.maxMemory() >> 20));
+
+        resetWindow(now, cellsDrawn);
+    }
+
+    private void resetWindow(long now, long cellsDrawn) {
+        windowStart = now;
+        windowFrames = 0;
+        windowMaxPulse = 0;
+        windowStartCellsDrawn = cellsDrawn;
+    }
+}
@@ -1,9 +1,14 @@
 package views.panes;
 
 import controllers.AudioManager;
+import controllers.GameSession;
 import controllers.LevelManager;
+import controllers.Renderer;
 import controllers.SceneManager;
 import io.Deserializer;
+import io.MoveLog;
+import io.ReplayRecorder;
+import io.SaveGame;
 import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -14,6 +19,7 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.Slider;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
@@ -21,11 +27,14 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import models.FXGame;
 import org.jetbrains.annotations.NotNull;
+import util.jfr.InputEvent;
 import views.BigButton;
 import views.BigVBox;
 import views.GameplayInfoPane;
+import views.PerformanceHud;
 import javafx.scene.input.KeyCode;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Optional;
 
 import static models.Config.TILE_SIZE;
@@ -41,8 +50,17 @@ public class GameplayPane extends GamePane {
     private HBox bottomBar = new HBox(20);
     private Canvas queueCanvas = new Canvas();
     private Button quitToMenuButton = new BigButton("Quit to menu");
+    /**
+     * Slider for reviewing the history of the game after it has ended.
+     */
+    private Slider historySlider = new Slider(0, 0, 0);
+    /**
+     * Performance overlay, toggled with F3.
+     */
+    private PerformanceHud performanceHud = new PerformanceHud();
 
     private FXGame game;
+    private GameSession session;
 
     private final IntegerProperty ticksElapsed = new SimpleIntegerProperty();
     private GameplayInfoPane infoPane = null;
@@ -60,7 +78,8 @@ public class GameplayPane extends GamePane {
     void connectComponents() {
         // TODO
         this.canvasContainer.getChildren().addAll(this.gameplayCanvas);
-        this.bottomBar.getChildren().addAll(this.queueCanvas,this.quitToMenuButton);
+        this.topBar.getChildren().add(this.performanceHud);
+        this.bottomBar.getChildren().addAll(this.queueCanvas,this.quitToMenuButton,this.historySlider);
         this.setCenter(this.canvasContainer);
         this.setTop(this.topBar);
         this.setBottom(bottomBar);
@@ -73,6 +92,8 @@ public class GameplayPane extends GamePane {
     void styleComponents() {
         // TODO
         this.bottomBar.getStyleClass().add("bottom-menu");
+        this.historySlider.setDisable(true);
+        HBox.setHgrow(this.historySlider, Priority.ALWAYS);
     }
 
     /**
@@ -84,6 +105,22 @@ public class GameplayPane extends GamePane {
         this.gameplayCanvas.setOnMouseClicked(this::onCanvasClicked);
         this.quitToMenuButton.setOnAction(event -> GameplayPane.this.doQuitToMenuAction());
         this.setOnKeyPressed(this::onKeyPressed);
+        this.historySlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (this.game != null && !this.historySlider.isDisabled()) {
+                this.game.renderHistory(this.gameplayCanvas, newValue.intValue());
+            }
+        });
+    }
+
+    /**
+     * Enables {@link GameplayPane#historySlider} for reviewing the game, which should only be done after the game has
+     * ended.
+     */
+    private void enableHistoryReview() {
+        final int length = this.game.getHistoryLength();
+        this.historySlider.setMax(length);
+        this.historySlider.setValue(length);
+        this.historySlider.setDisable(false);
     }
 
     /**
@@ -93,21 +130,36 @@ public class GameplayPane extends GamePane {
      */
     private void onCanvasClicked(MouseEvent event) {
         // TODO
-        if(!this.game.hasWon()&&!this.game.hasLost()){
-            this.game.placePipe((int)event.getY()/TILE_SIZE,(int)event.getX()/TILE_SIZE);
-            if(this.game.hasWon()){
-                AudioManager.getInstance().playSound(AudioManager.SoundRes.WIN);
-                Platform.runLater(this::createWinPopup);
-            }
-            else if(this.game.hasLost()){
-                AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
-                Platform.runLater(this::createLosePopup);
-            }
-            else{
-                AudioManager.getInstance().playSound(AudioManager.SoundRes.MOVE);
+        final var inputEvent = new InputEvent();
+        inputEvent.begin();
+        final int stepsBefore = this.game.getNumOfSteps().get();
+
+        synchronized (this.game) {
+            // no tick may run between the move and the checks around it, which a replay applies together
+            if(!this.game.hasWon()&&!this.game.hasLost()){
+                this.game.placePipe((int)event.getY()/TILE_SIZE,(int)event.getX()/TILE_SIZE);
+                if(this.game.hasWon()){
+                    AudioManager.getInstance().playSound(AudioManager.SoundRes.WIN);
+                    this.enableHistoryReview();
+                    Platform.runLater(this::createWinPopup);
+                }
+                else if(this.game.hasLost()){
+                    AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
+                    this.enableHistoryReview();
+                    Platform.runLater(this::createLosePopup);
+                }
+                else{
+                    AudioManager.getInstance().playSound(AudioManager.SoundRes.MOVE);
+                }
+                this.game.renderMap(this.gameplayCanvas);
+                this.game.renderQueue(this.queueCanvas);
             }
-            this.game.renderMap(this.gameplayCanvas);
-            this.game.renderQueue(this.queueCanvas);
+        }
+
+        if (inputEvent.shouldCommit()) {
+            inputEvent.input = "click (" + (int) event.getY() / TILE_SIZE + ", " + (int) event.getX() / TILE_SIZE + ")";
+            inputEvent.handled = this.game.getNumOfSteps().get() != stepsBefore;
+            inputEvent.commit();
         }
     }
 
@@ -118,17 +170,51 @@ public class GameplayPane extends GamePane {
      */
     private void onKeyPressed(KeyEvent event) {
         // TODO
-        if(!this.game.hasWon()&&!this.game.hasLost()){
-            if(event.getCode()==KeyCode.U){
-                this.game.undoStep();
-                this.game.renderMap(this.gameplayCanvas);
-                this.game.renderQueue(this.queueCanvas);
-            }
-            else if(event.getCode()==KeyCode.S){
-                this.game.skipPipe();
-                this.game.renderQueue(this.queueCanvas);
+        if (event.getCode() == KeyCode.F3) {
+            this.performanceHud.toggle();
+            return;
+        }
+
+        final var inputEvent = new InputEvent();
+        inputEvent.begin();
+        final int stepsBefore = this.game.getNumOfSteps().get();
+
+        synchronized (this.game) {
+            // no tick may run between the check and the move, which a replay applies together
+            if(!this.game.hasWon()&&!this.game.hasLost()){
+                if(event.getCode()==KeyCode.U){
+                    this.game.undoStep();
+                    this.game.renderMap(this.gameplayCanvas);
+                    this.game.renderQueue(this.queueCanvas);
+                }
+                else if(event.getCode()==KeyCode.S){
+                    this.game.skipPipe();
+                    this.game.renderQueue(this.queueCanvas);
+                }
+                else if(event.getCode()==KeyCode.H){
+                    this.showHint();
+                }
             }
         }
+
+        if (inputEvent.shouldCommit()) {
+            inputEvent.input = "key " + event.getCode();
+            inputEvent.handled = this.game.getNumOfSteps().get() != stepsBefore;
+            inputEvent.commit();
+        }
+    }
+
+    /**
+     * Outlines the best placement of the next pipe, or the next pipe in the queue if it should be skipped instead.
+     */
+    private void showHint() {
+        final var hints = this.game.getHints(1);
+        if (hints.skipRecommended) {
+            Platform.runLater(() -> Renderer.renderHighlight(this.queueCanvas, 0, 0));
+        } else if (!hints.placements.isEmpty()) {
+            final var best = hints.placements.get(0);
+            Platform.runLater(() -> Renderer.renderHighlight(this.gameplayCanvas, best.row, best.col));
+        }
     }
 
     /**
@@ -138,7 +224,7 @@ public class GameplayPane extends GamePane {
         // TODO
         Alert a=new Alert(Alert.AlertType.CONFIRMATION);
         a.setTitle("level clear popup");
-        a.getButtonTypes().addAll(new ButtonType("Next Map"),new ButtonType("Return"));
+        a.getButtonTypes().addAll(new ButtonType("Next Map"),new ButtonType("Return"),new ButtonType("Review"));
         Optional<ButtonType> c=a.showAndWait();
         String cmd=c.orElseThrow().getText();
         if(cmd.equals("Next Map")){
@@ -180,7 +266,7 @@ public class GameplayPane extends GamePane {
         Alert a = new Alert(Alert.AlertType.CONFIRMATION);
         a.setTitle("Lose popup");
         a.setHeaderText("you lose");
-        a.getButtonTypes().setAll(new ButtonType("Return"));
+        a.getButtonTypes().setAll(new ButtonType("Return"),new ButtonType("Review"));
         Optional<ButtonType> c=a.showAndWait();
         String cmd=c.orElseThrow().getText();
         if(cmd.equals("Return")){
@@ -196,15 +282,76 @@ public class GameplayPane extends GamePane {
         Alert a = new Alert(Alert.AlertType.CONFIRMATION);
         a.setTitle("quit to menu popup");
         a.setHeaderText("Quit to menu?");
-        a.setContentText("current progress may not be saved");
+        // only games in progress are saved, see saveGame
+        final boolean ended = this.game.hasWon() || this.game.hasLost();
+        a.setContentText(ended
+                ? "the game has ended, so it will not be saved"
+                : "current progress will be saved, and can be resumed from the main menu");
         a.getButtonTypes().setAll(ButtonType.CANCEL, ButtonType.OK);
         a.showAndWait();
         ButtonType cmd=a.getResult();
         if(cmd.equals(ButtonType.OK)) {
+            this.saveGame();
             this.doQuitToMenu();
         }
     }
 
+    /**
+     * Saves the current game into {@link SaveGame#DEFAULT_PATH} if it has not ended, so that it can be resumed later.
+     *
+     * <p>
+     * The session is ended first so that the water stops changing the map, and the save is written on a background
+     * thread. The files of the move log of the game are only deleted once the save is written, so that the game can
+     * still be recovered from them if the save is interrupted or fails.
+     * </p>
+     */
+    private void saveGame() {
+        if (this.game.hasWon() || this.game.hasLost()) {
+            return;
+        }
+
+        this.session.end(true);
+        final MoveLog moveLog = this.session.getMoveLog();
+        final var save = new SaveGame(LevelManager.getInstance().getCurrentLevelProperty().get(), this.game.snapshot());
+        save.writeAsync(SaveGame.DEFAULT_PATH).whenComplete((v, e) -> {
+            if (e == null) {
+                if (moveLog != null) {
+                    moveLog.deleteFiles();
+                }
+                return;
+            }
+
+            e.printStackTrace();
+            Platform.runLater(() -> {
+                Alert a = new Alert(Alert.AlertType.ERROR);
+                a.setTitle("Error");
+                a.setHeaderText("fail to save game");
+                a.setContentText(moveLog != null
+                        ? "The game will be recovered when resuming a game from the main menu."
+                        : "The game cannot be resumed.");
+                a.showAndWait();
+            });
+        });
+    }
+
+    /**
+     * Resumes a saved game.
+     *
+     * <p>
+     * The save is deleted once the game is resumed, and the resumed game is not recorded, as a replay can only be played
+     * from the start of a game.
+     * </p>
+     *
+     * @param save Save to resume.
+     * @throws IllegalArgumentException if the save is inconsistent.
+     */
+    void resumeGame(@NotNull SaveGame save) {
+        final var game = FXGame.restore(save.snapshot);
+        LevelManager.getInstance().setLevel(save.levelName);
+        SaveGame.deleteAsync(SaveGame.DEFAULT_PATH);
+        this.startGame(game, false);
+    }
+
     /**
      * Go back to the Level Select scene.
      */
@@ -220,6 +367,16 @@ public class GameplayPane extends GamePane {
      * @param game New game to start.
      */
     void startGame(@NotNull FXGame game) {
+        this.startGame(game, true);
+    }
+
+    /**
+     * Starts a game.
+     *
+     * @param game   Game to start.
+     * @param record Whether to record a replay of the game.
+     */
+    private void startGame(@NotNull FXGame game, boolean record) {
         // TODO
         if(this.game!=null){
             this.endGame();
@@ -234,26 +391,44 @@ public class GameplayPane extends GamePane {
         );
         this.topBar.getChildren().add(this.infoPane);
         HBox.setHgrow(this.infoPane,Priority.ALWAYS);
-        game.addOnTickHandler(new Runnable() {
+        this.ticksElapsed.set(game.getTicksSinceStart());
+        ReplayRecorder recorder = null;
+        if (record) {
+            try {
+                recorder = new ReplayRecorder(ReplayRecorder.newSessionPath(sp.get()), game);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        this.session = new GameSession(game, recorder, new MoveLog(sp.get(), game), new GameSession.Listener() {
             @Override
-            public void run() {
-                Platform.runLater(()-> GameplayPane.this.ticksElapsed.set(GameplayPane.this.ticksElapsed.get()+1));
+            public void onTick(@NotNull GameSession session) {
+                Platform.runLater(() -> {
+                    if (GameplayPane.this.session == session) {
+                        GameplayPane.this.ticksElapsed.set(GameplayPane.this.ticksElapsed.get() + 1);
+                    }
+                });
             }
-        });
-        game.addOnFlowHandler(new Runnable() {
+
             @Override
-            public void run() {
-                game.updateState();
-                game.renderMap(GameplayPane.this.gameplayCanvas);
-                if(game.hasLost()){
-                    AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
-                    Platform.runLater(GameplayPane.this::createLosePopup);
-                }
+            public void onFlow(@NotNull GameSession session) {
+                session.getGame().renderMap(GameplayPane.this.gameplayCanvas);
+            }
+
+            @Override
+            public void onLost(@NotNull GameSession session) {
+                AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
+                Platform.runLater(() -> {
+                    if (GameplayPane.this.session == session) {
+                        GameplayPane.this.enableHistoryReview();
+                        GameplayPane.this.createLosePopup();
+                    }
+                });
             }
         });
         game.renderMap(this.gameplayCanvas);
         game.renderQueue(this.queueCanvas);
-        game.startCountdown();
+        this.session.start();
     }
 
     /**
@@ -261,12 +436,16 @@ public class GameplayPane extends GamePane {
      */
     private void endGame() {
         // TODO
-        this.game.stopCountdown();
+        this.session.end();
+        this.session = null;
         this.gameplayCanvas.setWidth(0);
         this.gameplayCanvas.setHeight(0);
         this.queueCanvas.setWidth(0);
         this.queueCanvas.setHeight(0);
         this.ticksElapsed.set(0);
+        this.historySlider.setDisable(true);
+        this.historySlider.setValue(0);
+        this.historySlider.setMax(0);
         this.topBar.getChildren().remove(this.infoPane);
         this.infoPane=null;
         this.game=null;
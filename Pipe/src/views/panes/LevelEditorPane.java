@@ -6,6 +6,7 @@ import javafx.collections.ObservableList;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import models.Config;
@@ -43,10 +44,16 @@ public class LevelEditorPane extends GamePane {
     private ListView<LevelEditorCanvas.CellSelection> selectedCell = new ListView<>();
 
     private Button toggleRotationButton = new BigButton("Toggle Source Rotation");
+    private Button undoButton = new BigButton("Undo");
+    private Button redoButton = new BigButton("Redo");
     private Button loadButton = new BigButton("Load");
     private Button saveButton = new BigButton("Save As");
 
     private VBox centerContainer = new BigVBox();
+    /**
+     * Performance overlay, toggled with F3.
+     */
+    private PerformanceHud performanceHud = new PerformanceHud();
 
     public LevelEditorPane() {
         connectComponents();
@@ -63,11 +70,12 @@ public class LevelEditorPane extends GamePane {
         this.centerContainer.getChildren().add(this.levelEditor);
         this.leftContainer.getChildren().addAll(returnButton,rowBox
                 ,colBox,newGridButton,delayBox,selectedCell,
-                toggleRotationButton,loadButton,saveButton);
+                toggleRotationButton,undoButton,redoButton,loadButton,saveButton);
         this.selectedCell.setItems(this.cellList);
         this.selectedCell.getSelectionModel().select(0);
         this.setLeft(this.leftContainer);
         this.setCenter(this.centerContainer);
+        this.setRight(this.performanceHud);
     }
 
     /**
@@ -99,6 +107,8 @@ public class LevelEditorPane extends GamePane {
         this.delayField.setOnAction(e->this.levelEditor.setAmountOfDelay(delayField.getValue()));
 
         this.toggleRotationButton.setOnAction(e->this.levelEditor.toggleSourceTileRotation());
+        this.undoButton.setOnAction(e->this.levelEditor.undo());
+        this.redoButton.setOnAction(e->this.levelEditor.redo());
         this.loadButton.setOnAction(e->
         {
             if(levelEditor.loadFromFile()){
@@ -110,6 +120,11 @@ public class LevelEditorPane extends GamePane {
         this.saveButton.setOnAction(e->
                 this.levelEditor.saveToFile()
         );
+        this.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.F3) {
+                this.performanceHud.toggle();
+            }
+        });
         this.levelEditor.setOnMouseClicked(e->{
             this.levelEditor.setTile(
                     this.selectedCell.getSelectionModel().getSelectedItem(),e.getX(),e.getY());
@@ -22,6 +22,7 @@ public class LevelSelectPane extends GamePane {
     private BigButton playButton = new BigButton("Play");
     private BigButton playRandom = new BigButton("Generate Map and Play");
     private BigButton chooseMapDirButton = new BigButton("Choose map directory");
+    private BigButton sortButton = new BigButton("Sort by difficulty");
     private ListView<String> levelsListView = new ListView<>(LevelManager.getInstance().getLevelNames());
     private BigVBox centerContainer = new BigVBox();
     private Canvas levelPreview = new Canvas();
@@ -39,7 +40,7 @@ public class LevelSelectPane extends GamePane {
     void connectComponents() {
         // TODO
         this.leftContainer.getChildren().addAll(returnButton
-                ,chooseMapDirButton,levelsListView,playButton,playRandom);
+                ,chooseMapDirButton,sortButton,levelsListView,playButton,playRandom);
         this.centerContainer.getChildren().add(this.levelPreview);
         this.setLeft(this.leftContainer);
         this.setCenter(this.centerContainer);
@@ -64,6 +65,7 @@ public class LevelSelectPane extends GamePane {
         this.playRandom.setOnAction(e->startGame(true));
         this.returnButton.setOnAction(e->SceneManager.getInstance().showPane(MainMenuPane.class));
         this.chooseMapDirButton.setOnAction(e->promptUserForMapDirectory());
+        this.sortButton.setOnAction(e->toggleSortOrder());
         this.levelsListView.getSelectionModel().selectedItemProperty().addListener(this::onMapSelected);
     }
 
@@ -136,6 +138,19 @@ public class LevelSelectPane extends GamePane {
         }
     }
 
+    /**
+     * Toggles the order of the levels between by name and by estimated difficulty, keeping the selected level.
+     */
+    private void toggleSortOrder() {
+        LevelManager mgr = LevelManager.getInstance();
+        String selected = this.levelsListView.getSelectionModel().getSelectedItem();
+        mgr.setSortByDifficulty(!mgr.isSortByDifficulty());
+        this.sortButton.setText(mgr.isSortByDifficulty() ? "Sort by name" : "Sort by difficulty");
+        if (selected != null) {
+            this.levelsListView.getSelectionModel().select(selected);
+        }
+    }
+
     /**
      * Prompts the user for a map directory.
      *
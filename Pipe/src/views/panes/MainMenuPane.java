@@ -1,7 +1,10 @@
 package views.panes;
 
 import controllers.SceneManager;
+import io.MoveLog;
+import io.SaveGame;
 import javafx.application.Platform;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.VBox;
@@ -9,6 +12,9 @@ import org.jetbrains.annotations.NotNull;
 import views.BigButton;
 import views.BigVBox;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
 /**
  * Pane for displaying the main menu.
  */
@@ -19,6 +25,8 @@ public class MainMenuPane extends GamePane {
     @NotNull
     private final Label title = new Label("Pipes");
     @NotNull
+    private final Button resumeButton = new BigButton("Resume Game");
+    @NotNull
     private final Button levelSelectButton = new BigButton("Play Game");
     @NotNull
     private final Button levelEditorButton = new BigButton("Level Editor");
@@ -39,7 +47,7 @@ public class MainMenuPane extends GamePane {
     @Override
     void connectComponents() {
         // TODO
-        this.container.getChildren().addAll(title,levelSelectButton,levelEditorButton,settingsButton,quitButton);
+        this.container.getChildren().addAll(title,resumeButton,levelSelectButton,levelEditorButton,settingsButton,quitButton);
         this.setCenter(this.container);
     }
 
@@ -57,9 +65,56 @@ public class MainMenuPane extends GamePane {
     @Override
     void setCallbacks() {
         // TODO
+        resumeButton.setOnAction(e->resumeGame());
         levelSelectButton.setOnAction(e->SceneManager.getInstance().showPane(LevelSelectPane.class));
         levelEditorButton.setOnAction(e->SceneManager.getInstance().showPane(LevelEditorPane.class));
         settingsButton.setOnAction(e->SceneManager.getInstance().showPane(SettingsPane.class));
         quitButton.setOnAction(e->Platform.exit());
     }
+
+    /**
+     * Resumes the game saved in {@link SaveGame#DEFAULT_PATH}, or tells the player if there is no saved game.
+     *
+     * <p>
+     * A game which was interrupted by a crash is first recovered from its {@link MoveLog} into the save, if it is newer
+     * than the saved game.
+     * </p>
+     */
+    private void resumeGame() {
+        try {
+            MoveLog.recover(MoveLog.DEFAULT_DIRECTORY, SaveGame.DEFAULT_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        final SaveGame save;
+        try {
+            save = SaveGame.read(SaveGame.DEFAULT_PATH);
+        } catch (NoSuchFileException e) {
+            showResumeError("There is no saved game to resume.");
+            return;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            showResumeError("The saved game cannot be read.");
+            return;
+        }
+
+        final GameplayPane pane = SceneManager.getInstance().getPane(GameplayPane.class);
+        try {
+            pane.resumeGame(save);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            showResumeError("The saved game is invalid.");
+            return;
+        }
+        SceneManager.getInstance().showPane(GameplayPane.class);
+    }
+
+    private void showResumeError(@NotNull String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Resume Game");
+        alert.setHeaderText("Cannot resume game");
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
 }
@@ -2,6 +2,7 @@ package views.panes;
 
 import controllers.AudioManager;
 import controllers.SceneManager;
+import io.MoveLog;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -38,6 +39,14 @@ public class SettingsPane extends GamePane {
     private final Button returnButton = new BigButton("Return");
     @NotNull
     private final Button toggleSoundButton = new BigButton("Sound FX: Enabled");
+    /**
+     * Button for cycling through the policies of syncing autosave logs to disk.
+     *
+     * @see MoveLog#getDefaultFsyncPolicy()
+     * @see MoveLog#setDefaultFsyncPolicy(MoveLog.FsyncPolicy)
+     */
+    @NotNull
+    private final Button toggleFsyncButton = new BigButton("Autosave Sync: PERIODIC");
     /**
      * Text field for modifying the number of rows for generated maps.
      *
@@ -97,7 +106,7 @@ public class SettingsPane extends GamePane {
         // TODO
         this.centerContainer.getChildren().add(infoText);
         this.leftContainer.getChildren().addAll(returnButton,
-                saveButton,rowBox,colBox,delayBox,flowBox,toggleSoundButton);
+                saveButton,rowBox,colBox,delayBox,flowBox,toggleSoundButton,toggleFsyncButton);
         this.setLeft(this.leftContainer);
         this.setCenter(this.centerContainer);
     }
@@ -142,6 +151,11 @@ public class SettingsPane extends GamePane {
             manager.setEnabled(!manager.isEnabled());
             fillValues();
         });
+        this.toggleFsyncButton.setOnAction(e->{
+            MoveLog.FsyncPolicy[] policies=MoveLog.FsyncPolicy.values();
+            MoveLog.setDefaultFsyncPolicy(policies[(MoveLog.getDefaultFsyncPolicy().ordinal()+1)%policies.length]);
+            fillValues();
+        });
     }
 
     /**
@@ -150,6 +164,7 @@ public class SettingsPane extends GamePane {
     private void fillValues() {
         // TODO
         this.toggleSoundButton.setText("FX Sound: "+(AudioManager.getInstance().isEnabled()?"enabled":"disabled"));
+        this.toggleFsyncButton.setText("Autosave Sync: "+MoveLog.getDefaultFsyncPolicy());
         this.rowsField.clear();
         this.colsField.clear();
         this.delayField.clear();